@@ -1,5 +1,60 @@
 package com.greenowl.callisto.cache;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.greenowl.callisto.web.rest.dto.ParkingPlanDTO;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cache regions, each with its default time to live, maximum size and the type of the values it holds.
+ * Defaults can be overridden per region under callisto_config.cache.regions.
+ */
 public enum CacheKeys {
-    APP_CONFIG_MAP
+    APP_CONFIG_MAP(3600, 100, new TypeReference<Map<String, String>>() {
+    }),
+    PARKING_PLAN(3600, 1000, new TypeReference<ParkingPlanDTO>() {
+    }),
+    ELIGIBLE_PLAN_IDS(300, 10000, new TypeReference<List<Long>>() {
+    });
+
+    private final int timeToLiveSeconds;
+
+    private final long maxEntries;
+
+    private final TypeReference<?> valueType;
+
+    CacheKeys(int timeToLiveSeconds, long maxEntries, TypeReference<?> valueType) {
+        this.timeToLiveSeconds = timeToLiveSeconds;
+        this.maxEntries = maxEntries;
+        this.valueType = valueType;
+    }
+
+    public int getTimeToLiveSeconds() {
+        return timeToLiveSeconds;
+    }
+
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return the type values of this region are read back as when they are stored outside the JVM.
+     */
+    public TypeReference<?> getValueType() {
+        return valueType;
+    }
+
+    /**
+     * Region names as constants, for use in {@code @Cacheable} and {@code @CacheEvict}.
+     */
+    public static final class Names {
+
+        public static final String PARKING_PLAN = "PARKING_PLAN";
+
+        public static final String ELIGIBLE_PLAN_IDS = "ELIGIBLE_PLAN_IDS";
+
+        private Names() {
+        }
+    }
 }
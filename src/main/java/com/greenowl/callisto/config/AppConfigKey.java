@@ -4,5 +4,21 @@ package com.greenowl.callisto.config;
  * Created by greenowl on 16-02-24.
  */
 public enum AppConfigKey {
-    GATE_SIMULATION_MODE, STRIPE_ENABLED
+    GATE_SIMULATION_MODE(Boolean.class),
+    STRIPE_ENABLED(Boolean.class),
+    GATE_API_IP(String.class),
+    GATE_API_PORT(Integer.class);
+
+    private final Class<?> type;
+
+    AppConfigKey(Class<?> type) {
+        this.type = type;
+    }
+
+    /**
+     * @return the type the value of this key is parsed into.
+     */
+    public Class<?> getType() {
+        return type;
+    }
 }
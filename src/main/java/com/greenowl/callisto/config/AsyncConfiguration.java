@@ -12,7 +12,10 @@ import org.springframework.core.env.Environment;
 import org.springframework.scheduling.annotation.AsyncConfigurer;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.SchedulingConfigurer;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.config.ScheduledTaskRegistrar;
 
 import java.util.concurrent.Executor;
 
@@ -21,7 +24,7 @@ import com.greenowl.callisto.async.ExceptionHandlingAsyncTaskExecutor;
 @Configuration
 @EnableAsync
 @EnableScheduling
-public class AsyncConfiguration implements AsyncConfigurer, EnvironmentAware {
+public class AsyncConfiguration implements AsyncConfigurer, SchedulingConfigurer, EnvironmentAware {
 
     private final Logger log = LoggerFactory.getLogger(AsyncConfiguration.class);
 
@@ -48,4 +51,22 @@ public class AsyncConfiguration implements AsyncConfigurer, EnvironmentAware {
     public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
         return new SimpleAsyncUncaughtExceptionHandler();
     }
+
+    /**
+     * Runs the @Scheduled jobs on a pool rather than the single thread Spring falls back to, so a long
+     * flush or reconcile does not hold back the registry and config refreshes scheduled behind it.
+     */
+    @Bean(destroyMethod = "shutdown")
+    public ThreadPoolTaskScheduler taskScheduler() {
+        log.debug("Creating Task Scheduler");
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(propertyResolver.getProperty("schedulerPoolSize", Integer.class, 4));
+        scheduler.setThreadNamePrefix("dido-Scheduler-");
+        return scheduler;
+    }
+
+    @Override
+    public void configureTasks(ScheduledTaskRegistrar taskRegistrar) {
+        taskRegistrar.setTaskScheduler(taskScheduler());
+    }
 }
@@ -0,0 +1,67 @@
+package com.greenowl.callisto.config;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greenowl.callisto.service.cache.LocalCacheService;
+import com.greenowl.callisto.service.cache.RedisCacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+@Configuration
+@EnableCaching
+public class CacheConfiguration {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CacheConfiguration.class);
+
+    /**
+     * The local cache service doubles as the cache manager, so @Cacheable regions and direct
+     * CacheService calls share the same bounded caches and metrics.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "callisto_config.cache.redis", name = "enabled", havingValue = "false",
+            matchIfMissing = true)
+    static class LocalCacheConfiguration {
+
+        @Bean
+        public LocalCacheService cacheManager(CallistoBeanConfigurationProperties props, MetricRegistry metricRegistry) {
+            LOG.debug("Creating local cache manager");
+            return new LocalCacheService(props.getCache(), metricRegistry);
+        }
+    }
+
+    /**
+     * With several nodes behind the load balancer, the cache lives in Redis and each node keeps a near-cache
+     * that the invalidation channel keeps in step.
+     */
+    @Configuration
+    @ConditionalOnProperty(prefix = "callisto_config.cache.redis", name = "enabled", havingValue = "true")
+    static class RedisCacheConfiguration {
+
+        @Bean
+        public RedisCacheService cacheManager(CallistoBeanConfigurationProperties props,
+                                              RedisConnectionFactory connectionFactory,
+                                              MappingJackson2HttpMessageConverter converter,
+                                              MetricRegistry metricRegistry) {
+            LOG.debug("Creating redis cache manager");
+            return new RedisCacheService(props.getCache(), connectionFactory, converter.getObjectMapper(),
+                    metricRegistry);
+        }
+
+        @Bean
+        public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                                RedisCacheService cacheManager) {
+            RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+            container.setConnectionFactory(connectionFactory);
+            container.addMessageListener(cacheManager, new ChannelTopic(cacheManager.getInvalidationChannel()));
+            return container;
+        }
+    }
+}
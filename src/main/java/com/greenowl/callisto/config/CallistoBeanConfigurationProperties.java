@@ -4,6 +4,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.web.cors.CorsConfiguration;
 
 import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 @ConfigurationProperties(prefix = "callisto_config", ignoreUnknownFields = false)
 public class CallistoBeanConfigurationProperties {
@@ -28,6 +33,22 @@ public class CallistoBeanConfigurationProperties {
 
     private final Admin admin = new Admin();
 
+    private final Gate gate = new Gate();
+
+    private final Admission admission = new Admission();
+
+    private final RuntimeConfig runtimeConfig = new RuntimeConfig();
+
+    private final Push push = new Push();
+
+    private final Ticket ticket = new Ticket();
+
+    private final Reporting reporting = new Reporting();
+
+    private final Occupancy occupancy = new Occupancy();
+
+    private final Analytics analytics = new Analytics();
+
     public Async getAsync() {
         return async;
     }
@@ -68,6 +89,38 @@ public class CallistoBeanConfigurationProperties {
         return admin;
     }
 
+    public Gate getGate() {
+        return gate;
+    }
+
+    public Admission getAdmission() {
+        return admission;
+    }
+
+    public RuntimeConfig getRuntimeConfig() {
+        return runtimeConfig;
+    }
+
+    public Push getPush() {
+        return push;
+    }
+
+    public Ticket getTicket() {
+        return ticket;
+    }
+
+    public Reporting getReporting() {
+        return reporting;
+    }
+
+    public Occupancy getOccupancy() {
+        return occupancy;
+    }
+
+    public Analytics getAnalytics() {
+        return analytics;
+    }
+
     public static class Async {
 
         private int corePoolSize = 2;
@@ -170,6 +223,12 @@ public class CallistoBeanConfigurationProperties {
 
         private int timeToLiveSeconds = 3600;
 
+        private long maxEntries = 1000;
+
+        private final Map<String, Region> regions = new HashMap<>();
+
+        private final Redis redis = new Redis();
+
         public int getTimeToLiveSeconds() {
             return timeToLiveSeconds;
         }
@@ -177,6 +236,101 @@ public class CallistoBeanConfigurationProperties {
         public void setTimeToLiveSeconds(int timeToLiveSeconds) {
             this.timeToLiveSeconds = timeToLiveSeconds;
         }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * Per region overrides of the defaults declared in CacheKeys, keyed by region name.
+         */
+        public Map<String, Region> getRegions() {
+            return regions;
+        }
+
+        public Redis getRedis() {
+            return redis;
+        }
+
+        public static class Redis {
+
+            private boolean enabled = false;
+
+            private String keyPrefix = "callisto:cache:";
+
+            private String invalidationChannel = "callisto:cache:invalidation";
+
+            private int nearCacheTimeToLiveSeconds = 60;
+
+            private long nearCacheMaxEntries = 1000;
+
+            public boolean isEnabled() {
+                return enabled;
+            }
+
+            public void setEnabled(boolean enabled) {
+                this.enabled = enabled;
+            }
+
+            public String getKeyPrefix() {
+                return keyPrefix;
+            }
+
+            public void setKeyPrefix(String keyPrefix) {
+                this.keyPrefix = keyPrefix;
+            }
+
+            public String getInvalidationChannel() {
+                return invalidationChannel;
+            }
+
+            public void setInvalidationChannel(String invalidationChannel) {
+                this.invalidationChannel = invalidationChannel;
+            }
+
+            public int getNearCacheTimeToLiveSeconds() {
+                return nearCacheTimeToLiveSeconds;
+            }
+
+            public void setNearCacheTimeToLiveSeconds(int nearCacheTimeToLiveSeconds) {
+                this.nearCacheTimeToLiveSeconds = nearCacheTimeToLiveSeconds;
+            }
+
+            public long getNearCacheMaxEntries() {
+                return nearCacheMaxEntries;
+            }
+
+            public void setNearCacheMaxEntries(long nearCacheMaxEntries) {
+                this.nearCacheMaxEntries = nearCacheMaxEntries;
+            }
+        }
+
+        public static class Region {
+
+            private Integer timeToLiveSeconds;
+
+            private Long maxEntries;
+
+            public Integer getTimeToLiveSeconds() {
+                return timeToLiveSeconds;
+            }
+
+            public void setTimeToLiveSeconds(Integer timeToLiveSeconds) {
+                this.timeToLiveSeconds = timeToLiveSeconds;
+            }
+
+            public Long getMaxEntries() {
+                return maxEntries;
+            }
+
+            public void setMaxEntries(Long maxEntries) {
+                this.maxEntries = maxEntries;
+            }
+        }
     }
 
     public static class Mail {
@@ -339,6 +493,383 @@ public class CallistoBeanConfigurationProperties {
         }
     }
 
+    public static class Gate {
+
+        private int connectTimeoutMillis = 10000;
+
+        private int socketTimeoutMillis = 20000;
+
+        private int poolLeaseTimeoutMillis = 2000;
+
+        private int maxConnectionsPerController = 20;
+
+        private int keepAliveSeconds = 30;
+
+        private int schedulerPoolSize = 4;
+
+        /**
+         * Time allowed, after the last attempt of an open, to record its outcome before the caller is answered.
+         * The caller waits at most this plus the queue wait and the timeouts and backoffs of every attempt.
+         */
+        private long responseMarginMillis = 2000;
+
+        private final Retry retry = new Retry();
+
+        private final LoopPoll loopPoll = new LoopPoll();
+
+        private final Health health = new Health();
+
+        private final Cycle cycle = new Cycle();
+
+        private final Queue queue = new Queue();
+
+        private final Registry registry = new Registry();
+
+        public int getConnectTimeoutMillis() {
+            return connectTimeoutMillis;
+        }
+
+        public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+            this.connectTimeoutMillis = connectTimeoutMillis;
+        }
+
+        public int getSocketTimeoutMillis() {
+            return socketTimeoutMillis;
+        }
+
+        public void setSocketTimeoutMillis(int socketTimeoutMillis) {
+            this.socketTimeoutMillis = socketTimeoutMillis;
+        }
+
+        public int getPoolLeaseTimeoutMillis() {
+            return poolLeaseTimeoutMillis;
+        }
+
+        public void setPoolLeaseTimeoutMillis(int poolLeaseTimeoutMillis) {
+            this.poolLeaseTimeoutMillis = poolLeaseTimeoutMillis;
+        }
+
+        public int getMaxConnectionsPerController() {
+            return maxConnectionsPerController;
+        }
+
+        public void setMaxConnectionsPerController(int maxConnectionsPerController) {
+            this.maxConnectionsPerController = maxConnectionsPerController;
+        }
+
+        public int getKeepAliveSeconds() {
+            return keepAliveSeconds;
+        }
+
+        public void setKeepAliveSeconds(int keepAliveSeconds) {
+            this.keepAliveSeconds = keepAliveSeconds;
+        }
+
+        public int getSchedulerPoolSize() {
+            return schedulerPoolSize;
+        }
+
+        public void setSchedulerPoolSize(int schedulerPoolSize) {
+            this.schedulerPoolSize = schedulerPoolSize;
+        }
+
+        public long getResponseMarginMillis() {
+            return responseMarginMillis;
+        }
+
+        public void setResponseMarginMillis(long responseMarginMillis) {
+            this.responseMarginMillis = responseMarginMillis;
+        }
+
+        public Retry getRetry() {
+            return retry;
+        }
+
+        public LoopPoll getLoopPoll() {
+            return loopPoll;
+        }
+
+        public Health getHealth() {
+            return health;
+        }
+
+        public Cycle getCycle() {
+            return cycle;
+        }
+
+        public Queue getQueue() {
+            return queue;
+        }
+
+        public Registry getRegistry() {
+            return registry;
+        }
+
+        public static class Registry {
+
+            private long refreshIntervalMillis = 60000;
+
+            /**
+             * Threads querying the gates of a lot in parallel.
+             */
+            private int fanOutPoolSize = 16;
+
+            /**
+             * Time allowed for all gates of a lot to answer, gates still silent after that are reported unknown.
+             */
+            private long fanOutTimeoutMillis = 3000;
+
+            public long getRefreshIntervalMillis() {
+                return refreshIntervalMillis;
+            }
+
+            public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+                this.refreshIntervalMillis = refreshIntervalMillis;
+            }
+
+            public int getFanOutPoolSize() {
+                return fanOutPoolSize;
+            }
+
+            public void setFanOutPoolSize(int fanOutPoolSize) {
+                this.fanOutPoolSize = fanOutPoolSize;
+            }
+
+            public long getFanOutTimeoutMillis() {
+                return fanOutTimeoutMillis;
+            }
+
+            public void setFanOutTimeoutMillis(long fanOutTimeoutMillis) {
+                this.fanOutTimeoutMillis = fanOutTimeoutMillis;
+            }
+        }
+
+        public static class Queue {
+
+            /**
+             * Commands allowed to wait for a gate behind the one in progress, more are turned away.
+             */
+            private int maxDepth = 10;
+
+            /**
+             * Sustained rate of open commands admitted per gate, up to one second of unused permits can be spent as a burst.
+             */
+            private double permitsPerSecond = 2.0;
+
+            /**
+             * Time a command may wait for its gate, a command that reaches the head of the queue later is turned away.
+             */
+            private long maxWaitMillis = 15000;
+
+            public int getMaxDepth() {
+                return maxDepth;
+            }
+
+            public void setMaxDepth(int maxDepth) {
+                this.maxDepth = maxDepth;
+            }
+
+            public double getPermitsPerSecond() {
+                return permitsPerSecond;
+            }
+
+            public void setPermitsPerSecond(double permitsPerSecond) {
+                this.permitsPerSecond = permitsPerSecond;
+            }
+
+            public long getMaxWaitMillis() {
+                return maxWaitMillis;
+            }
+
+            public void setMaxWaitMillis(long maxWaitMillis) {
+                this.maxWaitMillis = maxWaitMillis;
+            }
+        }
+
+        public static class Cycle {
+
+            private long maxOpenCycles = 10000;
+
+            private int openCycleTimeoutMinutes = 10;
+
+            private int recentCycles = 500;
+
+            public long getMaxOpenCycles() {
+                return maxOpenCycles;
+            }
+
+            public void setMaxOpenCycles(long maxOpenCycles) {
+                this.maxOpenCycles = maxOpenCycles;
+            }
+
+            public int getOpenCycleTimeoutMinutes() {
+                return openCycleTimeoutMinutes;
+            }
+
+            public void setOpenCycleTimeoutMinutes(int openCycleTimeoutMinutes) {
+                this.openCycleTimeoutMinutes = openCycleTimeoutMinutes;
+            }
+
+            public int getRecentCycles() {
+                return recentCycles;
+            }
+
+            public void setRecentCycles(int recentCycles) {
+                this.recentCycles = recentCycles;
+            }
+        }
+
+        public static class Health {
+
+            private int recentHeartbeats = 720;
+
+            private List<String> upStatuses = new ArrayList<>(Arrays.asList("OK", "UP", "ON", "NORMAL"));
+
+            private long rollupFlushIntervalMillis = 60000;
+
+            private int retentionDays = 90;
+
+            private int purgeBatchSize = 1000;
+
+            private long purgeIntervalMillis = 3600000;
+
+            public int getRecentHeartbeats() {
+                return recentHeartbeats;
+            }
+
+            public void setRecentHeartbeats(int recentHeartbeats) {
+                this.recentHeartbeats = recentHeartbeats;
+            }
+
+            public List<String> getUpStatuses() {
+                return upStatuses;
+            }
+
+            public void setUpStatuses(List<String> upStatuses) {
+                this.upStatuses = upStatuses;
+            }
+
+            public long getRollupFlushIntervalMillis() {
+                return rollupFlushIntervalMillis;
+            }
+
+            public void setRollupFlushIntervalMillis(long rollupFlushIntervalMillis) {
+                this.rollupFlushIntervalMillis = rollupFlushIntervalMillis;
+            }
+
+            public int getRetentionDays() {
+                return retentionDays;
+            }
+
+            public void setRetentionDays(int retentionDays) {
+                this.retentionDays = retentionDays;
+            }
+
+            public int getPurgeBatchSize() {
+                return purgeBatchSize;
+            }
+
+            public void setPurgeBatchSize(int purgeBatchSize) {
+                this.purgeBatchSize = purgeBatchSize;
+            }
+
+            public long getPurgeIntervalMillis() {
+                return purgeIntervalMillis;
+            }
+
+            public void setPurgeIntervalMillis(long purgeIntervalMillis) {
+                this.purgeIntervalMillis = purgeIntervalMillis;
+            }
+        }
+
+        public static class LoopPoll {
+
+            private List<String> gates = new ArrayList<>(Arrays.asList("1", "2"));
+
+            private long intervalMillis = 1000;
+
+            private long streamTimeoutMillis = 300000;
+
+            public List<String> getGates() {
+                return gates;
+            }
+
+            public void setGates(List<String> gates) {
+                this.gates = gates;
+            }
+
+            public long getIntervalMillis() {
+                return intervalMillis;
+            }
+
+            public void setIntervalMillis(long intervalMillis) {
+                this.intervalMillis = intervalMillis;
+            }
+
+            public long getStreamTimeoutMillis() {
+                return streamTimeoutMillis;
+            }
+
+            public void setStreamTimeoutMillis(long streamTimeoutMillis) {
+                this.streamTimeoutMillis = streamTimeoutMillis;
+            }
+        }
+
+        public static class Retry {
+
+            private int maxAttempts = 2;
+
+            private long initialBackoffMillis = 2000;
+
+            private double backoffMultiplier = 1.0;
+
+            private long maxBackoffMillis = 10000;
+
+            public int getMaxAttempts() {
+                return maxAttempts;
+            }
+
+            public void setMaxAttempts(int maxAttempts) {
+                this.maxAttempts = maxAttempts;
+            }
+
+            public long getInitialBackoffMillis() {
+                return initialBackoffMillis;
+            }
+
+            public void setInitialBackoffMillis(long initialBackoffMillis) {
+                this.initialBackoffMillis = initialBackoffMillis;
+            }
+
+            public double getBackoffMultiplier() {
+                return backoffMultiplier;
+            }
+
+            public void setBackoffMultiplier(double backoffMultiplier) {
+                this.backoffMultiplier = backoffMultiplier;
+            }
+
+            public long getMaxBackoffMillis() {
+                return maxBackoffMillis;
+            }
+
+            public void setMaxBackoffMillis(long maxBackoffMillis) {
+                this.maxBackoffMillis = maxBackoffMillis;
+            }
+
+            /**
+             * Delay before attempt number :attempt (1-based, attempt 1 runs immediately).
+             */
+            public long backoffBefore(int attempt) {
+                if (attempt <= 1) {
+                    return 0;
+                }
+                double delay = initialBackoffMillis * Math.pow(backoffMultiplier, attempt - 2);
+                return Math.min((long) delay, maxBackoffMillis);
+            }
+        }
+    }
+
     public static class Metrics {
 
         private final Jmx jmx = new Jmx();
@@ -449,4 +980,282 @@ public class CallistoBeanConfigurationProperties {
             }
         }
     }
+
+    public static class Admission {
+
+        private long maxEntries = 10000;
+
+        private int timeToLiveMinutes = 60;
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public int getTimeToLiveMinutes() {
+            return timeToLiveMinutes;
+        }
+
+        public void setTimeToLiveMinutes(int timeToLiveMinutes) {
+            this.timeToLiveMinutes = timeToLiveMinutes;
+        }
+    }
+
+    public static class RuntimeConfig {
+
+        private long refreshIntervalMillis = 30000;
+
+        public long getRefreshIntervalMillis() {
+            return refreshIntervalMillis;
+        }
+
+        public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+            this.refreshIntervalMillis = refreshIntervalMillis;
+        }
+    }
+
+    public static class Push {
+
+        private long streamTimeoutMillis = 1800000;
+
+        private int heartbeatSeconds = 25;
+
+        private long reconnectMillis = 3000;
+
+        private int maxReplay = 20;
+
+        public long getStreamTimeoutMillis() {
+            return streamTimeoutMillis;
+        }
+
+        public void setStreamTimeoutMillis(long streamTimeoutMillis) {
+            this.streamTimeoutMillis = streamTimeoutMillis;
+        }
+
+        public int getHeartbeatSeconds() {
+            return heartbeatSeconds;
+        }
+
+        public void setHeartbeatSeconds(int heartbeatSeconds) {
+            this.heartbeatSeconds = heartbeatSeconds;
+        }
+
+        public long getReconnectMillis() {
+            return reconnectMillis;
+        }
+
+        public void setReconnectMillis(long reconnectMillis) {
+            this.reconnectMillis = reconnectMillis;
+        }
+
+        public int getMaxReplay() {
+            return maxReplay;
+        }
+
+        public void setMaxReplay(int maxReplay) {
+            this.maxReplay = maxReplay;
+        }
+    }
+
+    public static class Ticket {
+
+        private int maxBatchSize = 500;
+
+        private long recentKeysMaxEntries = 100000;
+
+        private int recentKeysTimeToLiveMinutes = 1440;
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public void setMaxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public long getRecentKeysMaxEntries() {
+            return recentKeysMaxEntries;
+        }
+
+        public void setRecentKeysMaxEntries(long recentKeysMaxEntries) {
+            this.recentKeysMaxEntries = recentKeysMaxEntries;
+        }
+
+        public int getRecentKeysTimeToLiveMinutes() {
+            return recentKeysTimeToLiveMinutes;
+        }
+
+        public void setRecentKeysTimeToLiveMinutes(int recentKeysTimeToLiveMinutes) {
+            this.recentKeysTimeToLiveMinutes = recentKeysTimeToLiveMinutes;
+        }
+    }
+
+    public static class Reporting {
+
+        /**
+         * Time zone the hourly and daily rollup buckets are aligned to.
+         */
+        private String timeZone = "UTC";
+
+        private long flushIntervalMillis = 30000;
+
+        /**
+         * Days, up to yesterday, recomputed from the activity timelines by the nightly reconciliation.
+         */
+        private int reconcileDays = 2;
+
+        /**
+         * Status changes read per page by the reconciliation.
+         */
+        private int reconcileBatchSize = 5000;
+
+        private String reconcileCron = "0 30 2 * * *";
+
+        /**
+         * Longest stay counted when the reconciliation rebuilds the hourly occupancy from entry and exit times.
+         */
+        private int occupancyLookbackDays = 7;
+
+        public String getTimeZone() {
+            return timeZone;
+        }
+
+        public void setTimeZone(String timeZone) {
+            this.timeZone = timeZone;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+
+        public int getReconcileDays() {
+            return reconcileDays;
+        }
+
+        public void setReconcileDays(int reconcileDays) {
+            this.reconcileDays = reconcileDays;
+        }
+
+        public int getReconcileBatchSize() {
+            return reconcileBatchSize;
+        }
+
+        public void setReconcileBatchSize(int reconcileBatchSize) {
+            this.reconcileBatchSize = reconcileBatchSize;
+        }
+
+        public String getReconcileCron() {
+            return reconcileCron;
+        }
+
+        public void setReconcileCron(String reconcileCron) {
+            this.reconcileCron = reconcileCron;
+        }
+
+        public int getOccupancyLookbackDays() {
+            return occupancyLookbackDays;
+        }
+
+        public void setOccupancyLookbackDays(int occupancyLookbackDays) {
+            this.occupancyLookbackDays = occupancyLookbackDays;
+        }
+    }
+
+    public static class Occupancy {
+
+        /**
+         * How often each node reads the occupancy of every lot, reads in between answer from the last one.
+         */
+        private long refreshIntervalMillis = 5000;
+
+        private long reconcileIntervalMillis = 300000;
+
+        /**
+         * Parking spaces per lot id, lots not listed have :defaultCapacity spaces.
+         */
+        private Map<String, Integer> capacities = new HashMap<>();
+
+        /**
+         * Parking spaces of a lot without a capacity of its own, 0 for unlimited.
+         */
+        private int defaultCapacity = 0;
+
+        /**
+         * Share of the capacity from which a lot is reported as nearly full.
+         */
+        private double nearCapacityRatio = 0.9;
+
+        public long getRefreshIntervalMillis() {
+            return refreshIntervalMillis;
+        }
+
+        public void setRefreshIntervalMillis(long refreshIntervalMillis) {
+            this.refreshIntervalMillis = refreshIntervalMillis;
+        }
+
+        public long getReconcileIntervalMillis() {
+            return reconcileIntervalMillis;
+        }
+
+        public void setReconcileIntervalMillis(long reconcileIntervalMillis) {
+            this.reconcileIntervalMillis = reconcileIntervalMillis;
+        }
+
+        public Map<String, Integer> getCapacities() {
+            return capacities;
+        }
+
+        public void setCapacities(Map<String, Integer> capacities) {
+            this.capacities = capacities;
+        }
+
+        public int getDefaultCapacity() {
+            return defaultCapacity;
+        }
+
+        public void setDefaultCapacity(int defaultCapacity) {
+            this.defaultCapacity = defaultCapacity;
+        }
+
+        public double getNearCapacityRatio() {
+            return nearCapacityRatio;
+        }
+
+        public void setNearCapacityRatio(double nearCapacityRatio) {
+            this.nearCapacityRatio = nearCapacityRatio;
+        }
+    }
+
+    public static class Analytics {
+
+        /**
+         * Name of this node in the sketch table, the host name if empty. Must differ between the nodes.
+         */
+        private String nodeId = "";
+
+        private long flushIntervalMillis = 60000;
+
+        public String getNodeId() {
+            return nodeId;
+        }
+
+        public void setNodeId(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        public long getFlushIntervalMillis() {
+            return flushIntervalMillis;
+        }
+
+        public void setFlushIntervalMillis(long flushIntervalMillis) {
+            this.flushIntervalMillis = flushIntervalMillis;
+        }
+    }
 }
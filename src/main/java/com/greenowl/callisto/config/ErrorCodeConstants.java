@@ -24,6 +24,7 @@ public class ErrorCodeConstants {
     public static final Integer GATE_USER_UNSUBSCRIBED = 5;
     public static final Integer GATE_RECORD_NOTFOUND = 6;
     public static final Integer GATE_USER_NOT_INSIDE_PARKING_LOT = 7;
+    public static final Integer GATE_BUSY = 8;
 
     public static final Integer SUBSCRIPITION_DATABASE_ERROR = 3;
 
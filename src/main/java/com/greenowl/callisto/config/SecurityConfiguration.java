@@ -1,8 +1,11 @@
 package com.greenowl.callisto.config;
 
+import com.codahale.metrics.MetricRegistry;
 import com.greenowl.callisto.security.AuthoritiesConstants;
 import com.greenowl.callisto.security.Http401UnauthorizedEntryPoint;
 import com.greenowl.callisto.security.password.PasswordResetTokenProvider;
+import com.greenowl.callisto.security.xauth.TokenCache;
+import com.greenowl.callisto.security.xauth.TokenGenerations;
 import com.greenowl.callisto.security.xauth.TokenProvider;
 import com.greenowl.callisto.security.xauth.XAuthTokenConfigurer;
 import org.springframework.boot.bind.RelaxedPropertyResolver;
@@ -38,6 +41,15 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter implemen
     @Inject
     private TokenProvider tokenProvider;
 
+    @Inject
+    private TokenCache tokenCache;
+
+    @Inject
+    private TokenGenerations tokenGenerations;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
     private RelaxedPropertyResolver propertyResolver;
 
     @Bean
@@ -114,7 +126,7 @@ public class SecurityConfiguration extends WebSecurityConfigurerAdapter implemen
     }
 
     private XAuthTokenConfigurer securityConfigurerAdapter() {
-        return new XAuthTokenConfigurer(userDetailsService, tokenProvider);
+        return new XAuthTokenConfigurer(userDetailsService, tokenProvider, tokenCache, tokenGenerations, metricRegistry);
     }
 
     @Bean
@@ -1,5 +1,9 @@
 package com.greenowl.callisto.config;
 
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.repository.UserRepository;
+import com.greenowl.callisto.security.xauth.TokenCache;
+import com.greenowl.callisto.security.xauth.TokenGenerations;
 import com.greenowl.callisto.security.xauth.TokenProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,4 +36,25 @@ public class XAuthConfiguration implements EnvironmentAware {
         LOG.debug("Setting token life span to {} seconds", validityInSeconds);
         return new TokenProvider(secret, validityInSeconds);
     }
+
+    /**
+     * Validated tokens are trusted for at most cache.timeToLiveSeconds before the user is read again.
+     */
+    @Bean
+    public TokenCache tokenCache(MetricRegistry metricRegistry) {
+        long maxEntries = propertyResolver.getProperty("cache.maxEntries", Long.class, 10000L);
+        int timeToLiveSeconds = propertyResolver.getProperty("cache.timeToLiveSeconds", Integer.class, 300);
+        LOG.debug("Caching validated tokens for {} seconds", timeToLiveSeconds);
+        return new TokenCache(maxEntries, timeToLiveSeconds, metricRegistry);
+    }
+
+    /**
+     * Another node's password change reaches this node's v2 tokens within cache.timeToLiveSeconds.
+     */
+    @Bean
+    public TokenGenerations tokenGenerations(UserRepository userRepository) {
+        long maxEntries = propertyResolver.getProperty("cache.maxEntries", Long.class, 10000L);
+        int timeToLiveSeconds = propertyResolver.getProperty("cache.timeToLiveSeconds", Integer.class, 300);
+        return new TokenGenerations(userRepository, maxEntries, timeToLiveSeconds);
+    }
 }
@@ -1,8 +1,14 @@
 package com.greenowl.callisto.domain;
 
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.PreUpdate;
 import javax.persistence.Table;
 import java.io.Serializable;
 
@@ -20,9 +26,22 @@ public class AppConfig implements Serializable {
     @Column(name = "type", nullable = false)
     private String type;
 
+    /**
+     * Bumped on every write so running nodes can detect configuration changes, see ConfigServiceImpl.
+     */
+    @Column(name = "last_modified_date")
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime lastModifiedDate;
+
     public AppConfig() {
     }
 
+    @PrePersist
+    @PreUpdate
+    public void touch() {
+        this.lastModifiedDate = DateTime.now(DateTimeZone.UTC);
+    }
+
     public String getKey() {
         return key;
     }
@@ -47,6 +66,14 @@ public class AppConfig implements Serializable {
         this.type = type;
     }
 
+    public DateTime getLastModifiedDate() {
+        return lastModifiedDate;
+    }
+
+    public void setLastModifiedDate(DateTime lastModifiedDate) {
+        this.lastModifiedDate = lastModifiedDate;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -7,6 +7,10 @@ import javax.persistence.*;
 import java.io.Serializable;
 
 
+/**
+ * A change of the status a gate reports in its heartbeats. Heartbeats repeating the previous status are
+ * only counted, see {@link GateStatusRollup}.
+ */
 @Entity
 @Table(name = "T_GATE_STATUS")
 public class GateStatus implements Serializable{
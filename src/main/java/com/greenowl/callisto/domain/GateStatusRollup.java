@@ -0,0 +1,109 @@
+package com.greenowl.callisto.domain;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * The heartbeats of one gate over one minute, downsampled to how many reported the gate up and down. A node
+ * that restarted, or several nodes receiving the same gate, may write more than one row for the same minute.
+ */
+@Entity
+@Table(name = "T_GATE_STATUS_ROLLUP")
+public class GateStatusRollup implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "gateStatusRollupGenerator")
+    @TableGenerator(name = "gateStatusRollupGenerator", table = "T_ID_GENERATOR", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "T_GATE_STATUS_ROLLUP", allocationSize = 50)
+    @Access(AccessType.PROPERTY)
+    private Long id;
+
+    @Column(name = "gate_id", nullable = false, updatable = false)
+    private String gateId;
+
+    @Column(name = "bucket_start", nullable = false, updatable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime bucketStart;
+
+    @Column(name = "up_count", nullable = false, updatable = false)
+    private int upCount;
+
+    @Column(name = "down_count", nullable = false, updatable = false)
+    private int downCount;
+
+    @Column(name = "last_status", updatable = false)
+    private String lastStatus;
+
+    public GateStatusRollup() {
+    }
+
+    public GateStatusRollup(String gateId, DateTime bucketStart, int upCount, int downCount, String lastStatus) {
+        this.gateId = gateId;
+        this.bucketStart = bucketStart;
+        this.upCount = upCount;
+        this.downCount = downCount;
+        this.lastStatus = lastStatus;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+
+    public DateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(DateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getUpCount() {
+        return upCount;
+    }
+
+    public void setUpCount(int upCount) {
+        this.upCount = upCount;
+    }
+
+    public int getDownCount() {
+        return downCount;
+    }
+
+    public void setDownCount(int downCount) {
+        this.downCount = downCount;
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    public void setLastStatus(String lastStatus) {
+        this.lastStatus = lastStatus;
+    }
+
+    @Override
+    public String toString() {
+        return "GateStatusRollup{" +
+                "gateId='" + gateId + '\'' +
+                ", bucketStart=" + bucketStart +
+                ", upCount=" + upCount +
+                ", downCount=" + downCount +
+                ", lastStatus='" + lastStatus + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,123 @@
+package com.greenowl.callisto.domain;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * What one node saw of one lot over one day: a HyperLogLog sketch of the users who entered and a histogram
+ * of the dwell times of the stays that ended, serialized by {@link com.greenowl.callisto.service.analytics}.
+ * Every node writes its own row, the rows of several nodes and days are merged when read.
+ */
+@Entity
+@Table(name = "T_LOT_DAY_SKETCH", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_lot_day_sketch_node", columnNames = {"lot_id", "day", "node_id"})
+})
+public class LotDaySketch implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "lotDaySketchGenerator")
+    @TableGenerator(name = "lotDaySketchGenerator", table = "T_ID_GENERATOR", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "T_LOT_DAY_SKETCH", allocationSize = 50)
+    @Access(AccessType.PROPERTY)
+    private Long id;
+
+    @Column(name = "lot_id", nullable = false, updatable = false)
+    private Long lotId;
+
+    @Column(name = "day", nullable = false, updatable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime day;
+
+    @Column(name = "node_id", length = 64, nullable = false, updatable = false)
+    private String nodeId;
+
+    @Lob
+    @Column(name = "unique_parkers", nullable = false)
+    private byte[] uniqueParkers;
+
+    @Lob
+    @Column(name = "dwell_times", nullable = false)
+    private byte[] dwellTimes;
+
+    @Column(name = "updated_at", nullable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime updatedAt;
+
+    public LotDaySketch() {
+    }
+
+    public LotDaySketch(Long lotId, DateTime day, String nodeId) {
+        this.lotId = lotId;
+        this.day = day;
+        this.nodeId = nodeId;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public DateTime getDay() {
+        return day;
+    }
+
+    public void setDay(DateTime day) {
+        this.day = day;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public byte[] getUniqueParkers() {
+        return uniqueParkers;
+    }
+
+    public void setUniqueParkers(byte[] uniqueParkers) {
+        this.uniqueParkers = uniqueParkers;
+    }
+
+    public byte[] getDwellTimes() {
+        return dwellTimes;
+    }
+
+    public void setDwellTimes(byte[] dwellTimes) {
+        this.dwellTimes = dwellTimes;
+    }
+
+    public DateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(DateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "LotDaySketch{" +
+                "lotId=" + lotId +
+                ", day=" + day +
+                ", nodeId='" + nodeId + '\'' +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
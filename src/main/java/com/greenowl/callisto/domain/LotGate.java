@@ -0,0 +1,138 @@
+package com.greenowl.callisto.domain;
+
+import javax.persistence.*;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.io.Serializable;
+
+/**
+ * A gate of a parking lot and the controller that drives it.
+ */
+@Entity
+@Table(name = "T_LOT_GATE", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_lot_gate_lot_gate", columnNames = {"lot_id", "gate_id"})
+})
+public class LotGate implements Serializable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.AUTO)
+    @Access(AccessType.PROPERTY)
+    private Long id;
+
+    @NotNull
+    @Column(name = "lot_id", nullable = false)
+    private Long lotId;
+
+    /**
+     * Id of the gate as sent by the devices.
+     */
+    @NotNull
+    @Size(max = 100)
+    @Column(name = "gate_id", length = 100, nullable = false)
+    private String gateId;
+
+    /**
+     * Number of the gate on its controller.
+     */
+    @NotNull
+    @Column(name = "gate_no", nullable = false)
+    private Integer gateNo;
+
+    /**
+     * {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_ENTER} or
+     * {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_EXIT}.
+     */
+    @NotNull
+    @Column(name = "gate_type", nullable = false)
+    private Integer gateType;
+
+    @NotNull
+    @Size(max = 255)
+    @Column(name = "controller_host", nullable = false)
+    private String controllerHost;
+
+    @NotNull
+    @Column(name = "controller_port", nullable = false)
+    private Integer controllerPort;
+
+    @Column(name = "enabled", nullable = false)
+    private boolean enabled = true;
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+
+    public Integer getGateNo() {
+        return gateNo;
+    }
+
+    public void setGateNo(Integer gateNo) {
+        this.gateNo = gateNo;
+    }
+
+    public Integer getGateType() {
+        return gateType;
+    }
+
+    public void setGateType(Integer gateType) {
+        this.gateType = gateType;
+    }
+
+    public String getControllerHost() {
+        return controllerHost;
+    }
+
+    public void setControllerHost(String controllerHost) {
+        this.controllerHost = controllerHost;
+    }
+
+    public Integer getControllerPort() {
+        return controllerPort;
+    }
+
+    public void setControllerPort(Integer controllerPort) {
+        this.controllerPort = controllerPort;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public String toString() {
+        return "LotGate{" +
+                "id=" + id +
+                ", lotId=" + lotId +
+                ", gateId='" + gateId + '\'' +
+                ", gateNo=" + gateNo +
+                ", gateType=" + gateType +
+                ", controllerHost='" + controllerHost + '\'' +
+                ", controllerPort=" + controllerPort +
+                ", enabled=" + enabled +
+                '}';
+    }
+}
@@ -0,0 +1,59 @@
+package com.greenowl.callisto.domain;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * How many cars are inside a lot right now.
+ */
+@Entity
+@Table(name = "T_LOT_OCCUPANCY")
+public class LotOccupancy implements Serializable {
+
+    @Id
+    @Column(name = "lot_id")
+    private Long lotId;
+
+    @Column(name = "occupancy", nullable = false)
+    private long occupancy;
+
+    @Column(name = "updated_at", nullable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime updatedAt;
+
+    public LotOccupancy() {
+    }
+
+    public LotOccupancy(Long lotId, long occupancy, DateTime updatedAt) {
+        this.lotId = lotId;
+        this.occupancy = occupancy;
+        this.updatedAt = updatedAt;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public void setOccupancy(long occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    public DateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(DateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
@@ -0,0 +1,152 @@
+package com.greenowl.callisto.domain;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * The traffic of one lot over one hour or one day: passes through its gates, alarms, manual opens, and how
+ * many cars were inside as of the last change in the bucket.
+ */
+@Entity
+@Table(name = "T_LOT_TRAFFIC_ROLLUP", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_lot_traffic_rollup_bucket", columnNames = {"lot_id", "period", "bucket_start"})
+})
+public class LotTrafficRollup implements Serializable {
+
+    public static final String HOUR = "HOUR";
+
+    public static final String DAY = "DAY";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "lotTrafficRollupGenerator")
+    @TableGenerator(name = "lotTrafficRollupGenerator", table = "T_ID_GENERATOR", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "T_LOT_TRAFFIC_ROLLUP", allocationSize = 50)
+    @Access(AccessType.PROPERTY)
+    private Long id;
+
+    @Column(name = "lot_id", nullable = false, updatable = false)
+    private Long lotId;
+
+    /**
+     * {@link #HOUR} or {@link #DAY}.
+     */
+    @Column(name = "period", length = 8, nullable = false, updatable = false)
+    private String period;
+
+    @Column(name = "bucket_start", nullable = false, updatable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime bucketStart;
+
+    @Column(name = "entries", nullable = false)
+    private long entries;
+
+    @Column(name = "exits", nullable = false)
+    private long exits;
+
+    @Column(name = "exceptions", nullable = false)
+    private long exceptions;
+
+    @Column(name = "manual_opens", nullable = false)
+    private long manualOpens;
+
+    @Column(name = "occupancy", nullable = false)
+    private long occupancy;
+
+    public LotTrafficRollup() {
+    }
+
+    public LotTrafficRollup(Long lotId, String period, DateTime bucketStart) {
+        this.lotId = lotId;
+        this.period = period;
+        this.bucketStart = bucketStart;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public DateTime getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(DateTime bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    public void setExits(long exits) {
+        this.exits = exits;
+    }
+
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public void setExceptions(long exceptions) {
+        this.exceptions = exceptions;
+    }
+
+    public long getManualOpens() {
+        return manualOpens;
+    }
+
+    public void setManualOpens(long manualOpens) {
+        this.manualOpens = manualOpens;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public void setOccupancy(long occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    @Override
+    public String toString() {
+        return "LotTrafficRollup{" +
+                "lotId=" + lotId +
+                ", period='" + period + '\'' +
+                ", bucketStart=" + bucketStart +
+                ", entries=" + entries +
+                ", exits=" + exits +
+                ", exceptions=" + exceptions +
+                ", manualOpens=" + manualOpens +
+                ", occupancy=" + occupancy +
+                '}';
+    }
+}
@@ -39,6 +39,12 @@ public class ParkingActivity extends AbstractAuditingEntity implements Serializa
     @Column(name = "parking_status")
     private String parkingStatus;
 
+    /**
+     * Coded form of :parkingStatus, kept in step by the setters. Null for statuses outside the lifecycle.
+     */
+    @Column(name = "parking_state")
+    private ParkingState parkingState;
+
     @Column(name = "exception_flag")
     private String exceptionFlag;
 
@@ -51,6 +57,14 @@ public class ParkingActivity extends AbstractAuditingEntity implements Serializa
     @Column(name = "open_log")
     private String openLog;
 
+    /**
+     * Bumped on every write, including the bulk updates of the repository, so a save based on a stale read
+     * fails instead of overwriting a concurrent change.
+     */
+    @Version
+    @Column(name = "version", nullable = false)
+    private long version;
+
     public ParkingActivity() {
     }
 
@@ -62,6 +76,14 @@ public class ParkingActivity extends AbstractAuditingEntity implements Serializa
         this.id = id;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public Long getLotId() {
         return lotId;
     }
@@ -108,6 +130,19 @@ public class ParkingActivity extends AbstractAuditingEntity implements Serializa
 
     public void setParkingStatus(String parkingStatus) {
         this.parkingStatus = parkingStatus;
+        this.parkingState = ParkingState.fromStatus(parkingStatus);
+    }
+
+    /**
+     * @return the lifecycle state, derived from the legacy status on rows written before the state column existed.
+     */
+    public ParkingState getParkingState() {
+        return (parkingState != null) ? parkingState : ParkingState.fromStatus(parkingStatus);
+    }
+
+    public void setParkingState(ParkingState parkingState) {
+        this.parkingState = parkingState;
+        this.parkingStatus = (parkingState == null) ? null : parkingState.getStatus();
     }
 
     public String getExceptionFlag() {
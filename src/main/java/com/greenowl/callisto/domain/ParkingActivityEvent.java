@@ -0,0 +1,212 @@
+package com.greenowl.callisto.domain;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import javax.persistence.*;
+import java.io.Serializable;
+
+/**
+ * One entry of the append-only timeline of a parking activity. Events are only ever inserted, so the
+ * parent T_PARKING_ACTIVITY row keeps a fixed size no matter how many gate steps an activity goes through.
+ */
+@Entity
+@Table(name = "T_PARKING_ACTIVITY_EVENT")
+public class ParkingActivityEvent implements Serializable {
+
+    private static final int MAX_PAYLOAD_LENGTH = 512;
+
+    private static final int MAX_GATE_LENGTH = 255;
+
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "parkingActivityEventGenerator")
+    @TableGenerator(name = "parkingActivityEventGenerator", table = "T_ID_GENERATOR", pkColumnName = "sequence_name",
+            valueColumnName = "next_val", pkColumnValue = "T_PARKING_ACTIVITY_EVENT", allocationSize = 50)
+    @Access(AccessType.PROPERTY)
+    private Long id;
+
+    @Column(name = "activity_id", nullable = false, updatable = false)
+    private Long activityId;
+
+    @Column(name = "event_code", nullable = false, updatable = false)
+    private ParkingEventCode code;
+
+    @Column(name = "parking_status", length = 32, updatable = false)
+    private String parkingStatus;
+
+    /**
+     * Entrance (1) or exit (2), as the gate controller reports it.
+     */
+    @Column(name = "gate_id", updatable = false)
+    private Integer gateId;
+
+    /**
+     * Host, port and gate number of the gate a gate open event was sent to.
+     */
+    @Column(name = "gate", length = MAX_GATE_LENGTH, updatable = false)
+    private String gate;
+
+    @Column(name = "attempt", updatable = false)
+    private Integer attempt;
+
+    @Column(name = "payload", length = MAX_PAYLOAD_LENGTH, updatable = false)
+    private String payload;
+
+    @Column(name = "event_time", nullable = false, updatable = false)
+    @Type(type = "org.jadira.usertype.dateandtime.joda.PersistentDateTime")
+    private DateTime eventTime = DateTime.now(DateTimeZone.UTC);
+
+    /**
+     * Key the sender attached to the report this event records, unique so a replayed report is never
+     * recorded twice. Null for events not reported by a device.
+     */
+    @Column(name = "idempotency_key", length = MAX_IDEMPOTENCY_KEY_LENGTH, updatable = false)
+    private String idempotencyKey;
+
+    public ParkingActivityEvent() {
+    }
+
+    public ParkingActivityEvent(Long activityId, ParkingEventCode code) {
+        this.activityId = activityId;
+        this.code = code;
+    }
+
+    public static ParkingActivityEvent statusChange(Long activityId, String parkingStatus) {
+        ParkingActivityEvent event = new ParkingActivityEvent(activityId, ParkingEventCode.STATUS_CHANGE);
+        event.setParkingStatus(parkingStatus);
+        return event;
+    }
+
+    public static ParkingActivityEvent gateOpen(Long activityId, String gate, int gateId, int attempt, String response,
+                                                boolean success) {
+        ParkingActivityEvent event = new ParkingActivityEvent(activityId,
+                success ? ParkingEventCode.GATE_OPEN_SUCCESSFUL : ParkingEventCode.GATE_OPEN_UNSUCCESSFUL);
+        event.setGate(gate);
+        event.setGateId(gateId);
+        event.setAttempt(attempt);
+        event.setPayload(response);
+        return event;
+    }
+
+    public static ParkingActivityEvent ticketCallback(Long activityId, int gateId, String parkingStatus, String payload,
+                                                      DateTime accessTime) {
+        ParkingActivityEvent event = new ParkingActivityEvent(activityId, ParkingEventCode.TICKET_CALLBACK);
+        event.setGateId(gateId);
+        event.setParkingStatus(parkingStatus);
+        event.setPayload(payload);
+        if (accessTime != null) {
+            event.setEventTime(accessTime);
+        }
+        return event;
+    }
+
+    public static ParkingActivityEvent adminUpdate(Long activityId, String parkingStatus, String payload) {
+        ParkingActivityEvent event = new ParkingActivityEvent(activityId, ParkingEventCode.ADMIN_UPDATE);
+        event.setParkingStatus(parkingStatus);
+        event.setPayload(payload);
+        return event;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getActivityId() {
+        return activityId;
+    }
+
+    public void setActivityId(Long activityId) {
+        this.activityId = activityId;
+    }
+
+    public ParkingEventCode getCode() {
+        return code;
+    }
+
+    public void setCode(ParkingEventCode code) {
+        this.code = code;
+    }
+
+    public String getParkingStatus() {
+        return parkingStatus;
+    }
+
+    public void setParkingStatus(String parkingStatus) {
+        this.parkingStatus = parkingStatus;
+    }
+
+    public Integer getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(Integer gateId) {
+        this.gateId = gateId;
+    }
+
+    public String getGate() {
+        return gate;
+    }
+
+    public void setGate(String gate) {
+        if (gate != null && gate.length() > MAX_GATE_LENGTH) {
+            gate = gate.substring(0, MAX_GATE_LENGTH);
+        }
+        this.gate = gate;
+    }
+
+    public Integer getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(Integer attempt) {
+        this.attempt = attempt;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        if (payload != null && payload.length() > MAX_PAYLOAD_LENGTH) {
+            payload = payload.substring(0, MAX_PAYLOAD_LENGTH);
+        }
+        this.payload = payload;
+    }
+
+    public DateTime getEventTime() {
+        return eventTime;
+    }
+
+    public void setEventTime(DateTime eventTime) {
+        this.eventTime = eventTime;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    @Override
+    public String toString() {
+        return "ParkingActivityEvent{" +
+                "id=" + id +
+                ", activityId=" + activityId +
+                ", code=" + code +
+                ", parkingStatus='" + parkingStatus + '\'' +
+                ", gateId=" + gateId +
+                (gate != null ? ", gate='" + gate + '\'' : "") +
+                ", attempt=" + attempt +
+                ", eventTime=" + eventTime +
+                '}';
+    }
+}
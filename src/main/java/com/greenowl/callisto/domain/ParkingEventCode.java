@@ -0,0 +1,51 @@
+package com.greenowl.callisto.domain;
+
+/**
+ * Typed codes of the events recorded in a parking activity timeline, persisted as a small integer.
+ */
+public enum ParkingEventCode {
+
+    /**
+     * The parking status of the activity changed, the new status is carried in the event.
+     */
+    STATUS_CHANGE(1),
+
+    /**
+     * The gate controller confirmed an open command.
+     */
+    GATE_OPEN_SUCCESSFUL(2),
+
+    /**
+     * The gate controller rejected an open command or could not be reached.
+     */
+    GATE_OPEN_UNSUCCESSFUL(3),
+
+    /**
+     * The gate controller reported a pass or an alarm for the ticket.
+     */
+    TICKET_CALLBACK(4),
+
+    /**
+     * An administrator modified the activity.
+     */
+    ADMIN_UPDATE(5);
+
+    private final int code;
+
+    ParkingEventCode(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public static ParkingEventCode fromCode(int code) {
+        for (ParkingEventCode eventCode : values()) {
+            if (eventCode.code == code) {
+                return eventCode;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parking event code " + code);
+    }
+}
@@ -0,0 +1,148 @@
+package com.greenowl.callisto.domain;
+
+import com.greenowl.callisto.config.Constants;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Lifecycle states of a parking activity, persisted as a small integer. Each state keeps the legacy
+ * status string it replaces, see {@link Constants}.
+ */
+public enum ParkingState {
+
+    PARKING_START(1, Constants.PARKING_STATUS_PARKING_START),
+
+    PENDING_ENTER(10, Constants.PARKING_STATUS_PENDING_ENTER),
+
+    PENDING_ENTER_MANUAL(11, Constants.PARKING_STATUS_PENDING_ENTER_MANUAL),
+
+    CONNECTION_TIMEOUT_ENTER(12, Constants.PARKING_STATUS_CONNECTION_TIMEOUT_ENTER),
+
+    IN_FLIGHT(20, Constants.PARKING_STATUS_IN_FLIGHT),
+
+    IN_FLIGHT_MANUAL(21, Constants.PARKING_STATUS_IN_FLIGHT_MANUAL),
+
+    ALARM_ENTER(30, Constants.PARKING_STATUS_EXCEPTION_ENTER),
+
+    ALARM_ENTER_MANUAL(31, Constants.PARKING_STATUS_EXCEPTION_ENTER_MANUAL),
+
+    PENDING_EXIT(40, Constants.PARKING_STATUS_PENDING_EXIT),
+
+    PENDING_EXIT_MANUAL(41, Constants.PARKING_STATUS_PENDING_EXIT_MANUAL),
+
+    CONNECTION_TIMEOUT_EXIT(42, Constants.PARKING_STATUS_CONNECTION_TIMEOUT_EXIT),
+
+    ALARM_EXIT(50, Constants.PARKING_STATUS_EXCEPTION_EXIT),
+
+    ALARM_EXIT_MANUAL(51, Constants.PARKING_STATUS_EXCEPTION_EXIT_MANUAL),
+
+    COMPLETED(60, Constants.PARKING_STATUS_COMPLETED),
+
+    COMPLETED_MANUAL(61, Constants.PARKING_STATUS_COMPLETED_MANUAL);
+
+    private static final Set<ParkingState> INSIDE_STATES = Collections.unmodifiableSet(EnumSet.of(IN_FLIGHT,
+            IN_FLIGHT_MANUAL, PENDING_EXIT, PENDING_EXIT_MANUAL, CONNECTION_TIMEOUT_EXIT));
+
+    /**
+     * A car that passed the entry gate and whose stay is not completed, including after an exit alarm, plus the
+     * entries whose outcome is not known for sure: the barrier may have opened while the controller answer or the
+     * ticket callback was lost.
+     */
+    private static final Set<ParkingState> EXITABLE_STATES = Collections.unmodifiableSet(EnumSet.of(PENDING_ENTER,
+            PENDING_ENTER_MANUAL, CONNECTION_TIMEOUT_ENTER, ALARM_ENTER, ALARM_ENTER_MANUAL, IN_FLIGHT, IN_FLIGHT_MANUAL,
+            PENDING_EXIT, PENDING_EXIT_MANUAL, CONNECTION_TIMEOUT_EXIT, ALARM_EXIT, ALARM_EXIT_MANUAL));
+
+    private static final Set<String> INSIDE_STATUSES = Collections.unmodifiableSet(INSIDE_STATES.stream()
+            .map(ParkingState::getStatus).collect(Collectors.toSet()));
+
+    private final int code;
+
+    private final String status;
+
+    ParkingState(int code, String status) {
+        this.code = code;
+        this.status = status;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @return the legacy status string of this state.
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean isManual() {
+        return this == PENDING_ENTER_MANUAL || this == IN_FLIGHT_MANUAL || this == ALARM_ENTER_MANUAL
+                || this == PENDING_EXIT_MANUAL || this == ALARM_EXIT_MANUAL || this == COMPLETED_MANUAL;
+    }
+
+    public boolean isCompleted() {
+        return this == COMPLETED || this == COMPLETED_MANUAL;
+    }
+
+    /**
+     * @return true if the car is known to have entered and not yet to have left the lot. After an exit alarm
+     * the car may or may not have left, it is not counted until the user asks for the exit gate again or the
+     * ticket callback reports the exit. An entry alarm is a car that never entered.
+     */
+    public boolean isInside() {
+        return INSIDE_STATES.contains(this);
+    }
+
+    /**
+     * @return true if the user may ask for the exit gate: the car entered, or its entry is pending or failed
+     * without the gate being sure the barrier stayed closed.
+     */
+    public boolean mayRequestExit() {
+        return EXITABLE_STATES.contains(this);
+    }
+
+    /**
+     * @return the states of a car known to be inside the lot.
+     */
+    public static Set<ParkingState> insideStates() {
+        return INSIDE_STATES;
+    }
+
+    /**
+     * @return the legacy status strings of {@link #insideStates()}.
+     */
+    public static Set<String> insideStatuses() {
+        return INSIDE_STATUSES;
+    }
+
+    public boolean isAlarm() {
+        return this == ALARM_ENTER || this == ALARM_ENTER_MANUAL || this == ALARM_EXIT || this == ALARM_EXIT_MANUAL;
+    }
+
+    public static ParkingState fromCode(int code) {
+        for (ParkingState state : values()) {
+            if (state.code == code) {
+                return state;
+            }
+        }
+        throw new IllegalArgumentException("Unknown parking state code " + code);
+    }
+
+    /**
+     * @return the state of legacy status :status, null if it is not a lifecycle state.
+     */
+    public static ParkingState fromStatus(String status) {
+        if (status == null) {
+            return null;
+        }
+        for (ParkingState state : values()) {
+            if (state.status.equals(status)) {
+                return state;
+            }
+        }
+        return null;
+    }
+}
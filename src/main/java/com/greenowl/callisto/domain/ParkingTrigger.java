@@ -0,0 +1,51 @@
+package com.greenowl.callisto.domain;
+
+/**
+ * What happened to a parking activity, fed to the lifecycle engine which decides the next {@link ParkingState}.
+ */
+public enum ParkingTrigger {
+
+    /**
+     * The user asked to open the entrance gate.
+     */
+    REQUEST_ENTER,
+
+    REQUEST_ENTER_MANUAL,
+
+    /**
+     * The controller did not open the entrance gate.
+     */
+    ENTER_GATE_FAILED,
+
+    /**
+     * The ticket callback reported the car passed the entrance gate.
+     */
+    ENTER_PASSED,
+
+    /**
+     * The ticket callback reported an alarm at the entrance gate.
+     */
+    ENTER_REJECTED,
+
+    /**
+     * The user asked to open the exit gate.
+     */
+    REQUEST_EXIT,
+
+    REQUEST_EXIT_MANUAL,
+
+    /**
+     * The controller did not open the exit gate.
+     */
+    EXIT_GATE_FAILED,
+
+    /**
+     * The ticket callback reported the car passed the exit gate.
+     */
+    EXIT_PASSED,
+
+    /**
+     * The ticket callback reported an alarm at the exit gate.
+     */
+    EXIT_REJECTED
+}
@@ -62,6 +62,11 @@ public class User extends AbstractAuditingEntity implements Serializable {
 
     @Column(name = "stripe_token")
     private String stripeToken;
+
+    @JsonIgnore
+    @Column(name = "token_generation", nullable = false)
+    private int tokenGeneration = 0;
+
     @JsonIgnore
     @OneToMany(mappedBy = "owner", targetEntity = Device.class, fetch = FetchType.LAZY)
     private Set<Device> devices = new HashSet<>();
@@ -218,6 +223,14 @@ public class User extends AbstractAuditingEntity implements Serializable {
         this.stripeToken = stripeToken;
     }
 
+    public int getTokenGeneration() {
+        return tokenGeneration;
+    }
+
+    public void setTokenGeneration(int tokenGeneration) {
+        this.tokenGeneration = tokenGeneration;
+    }
+
     public Set<ParkingActivity> getParkingActivities() {
         return parkingActivities;
     }
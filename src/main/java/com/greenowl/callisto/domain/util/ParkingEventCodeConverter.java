@@ -0,0 +1,20 @@
+package com.greenowl.callisto.domain.util;
+
+import com.greenowl.callisto.domain.ParkingEventCode;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+@Converter(autoApply = true)
+public class ParkingEventCodeConverter implements AttributeConverter<ParkingEventCode, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(ParkingEventCode eventCode) {
+        return eventCode == null ? null : eventCode.getCode();
+    }
+
+    @Override
+    public ParkingEventCode convertToEntityAttribute(Integer code) {
+        return code == null ? null : ParkingEventCode.fromCode(code);
+    }
+}
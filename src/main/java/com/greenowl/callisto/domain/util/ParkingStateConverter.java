@@ -0,0 +1,20 @@
+package com.greenowl.callisto.domain.util;
+
+import com.greenowl.callisto.domain.ParkingState;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+@Converter(autoApply = true)
+public class ParkingStateConverter implements AttributeConverter<ParkingState, Integer> {
+
+    @Override
+    public Integer convertToDatabaseColumn(ParkingState state) {
+        return state == null ? null : state.getCode();
+    }
+
+    @Override
+    public ParkingState convertToEntityAttribute(Integer code) {
+        return code == null ? null : ParkingState.fromCode(code);
+    }
+}
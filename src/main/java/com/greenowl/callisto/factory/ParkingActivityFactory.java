@@ -10,9 +10,13 @@ import com.greenowl.callisto.domain.User;
 public class ParkingActivityFactory {
 
     public static ParkingActivity create(User user, ParkingPlan plan, String parkingStatus, String deviceInfo) {
+        return create(user, plan.getLotId(), parkingStatus, deviceInfo);
+    }
+
+    public static ParkingActivity create(User user, Long lotId, String parkingStatus, String deviceInfo) {
         ParkingActivity newActivity = new ParkingActivity();
         newActivity.setActivityHolder(user);
-        newActivity.setLotId(plan.getLotId());
+        newActivity.setLotId(lotId);
         newActivity.setType("subscription");
         newActivity.setParkingStatus(parkingStatus);
         newActivity.setDeviceInfo(deviceInfo);
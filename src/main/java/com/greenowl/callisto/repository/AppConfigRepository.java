@@ -1,8 +1,13 @@
 package com.greenowl.callisto.repository;
 
 import com.greenowl.callisto.domain.AppConfig;
+import org.joda.time.DateTime;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 
 public interface AppConfigRepository extends JpaRepository<AppConfig, String> {
 
+    @Query("select max(c.lastModifiedDate) from AppConfig c")
+    DateTime getLastModifiedDate();
+
 }
@@ -1,6 +1,7 @@
 package com.greenowl.callisto.repository;
 
 import com.greenowl.callisto.domain.GateStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -11,6 +12,18 @@ public interface GateStatusRepository extends JpaRepository<GateStatus,Long>{
 
 	@Query("select g from GateStatus g where g.checkTime > ?1 and g.checkTime < ?2")
 	List<GateStatus> getGateStatusBetween(DateTime startTime, DateTime endTime);
-	
-	
+
+	@Query("select g from GateStatus g where g.gateId = ?1 and g.checkTime >= ?2 and g.checkTime < ?3 order by g.checkTime asc")
+	List<GateStatus> getGateStatusBetweenForGate(String gateId, DateTime startTime, DateTime endTime);
+
+	@Query("select g from GateStatus g where g.gateId = ?1 order by g.checkTime desc")
+	List<GateStatus> getLatestGateStatus(String gateId, Pageable page);
+
+	@Query("select g.id from GateStatus g where g.checkTime < ?1")
+	List<Long> getIdsCheckedBefore(DateTime time, Pageable page);
+
+	@Modifying
+	@Query("delete from GateStatus g where g.id in ?1")
+	int deleteByIds(Collection<Long> ids);
+
 }
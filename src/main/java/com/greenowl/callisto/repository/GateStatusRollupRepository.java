@@ -0,0 +1,24 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.GateStatusRollup;
+import org.joda.time.DateTime;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface GateStatusRollupRepository extends JpaRepository<GateStatusRollup, Long> {
+
+    @Query("select r from GateStatusRollup r where r.gateId = ?1 and r.bucketStart >= ?2 and r.bucketStart < ?3 order by r.bucketStart asc")
+    List<GateStatusRollup> getRollupsBetweenForGate(String gateId, DateTime startTime, DateTime endTime);
+
+    @Query("select r.id from GateStatusRollup r where r.bucketStart < ?1")
+    List<Long> getIdsBefore(DateTime time, Pageable page);
+
+    @Modifying
+    @Query("delete from GateStatusRollup r where r.id in ?1")
+    int deleteByIds(Collection<Long> ids);
+}
@@ -0,0 +1,24 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.LotDaySketch;
+import org.joda.time.DateTime;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+import javax.persistence.LockModeType;
+import java.util.List;
+
+public interface LotDaySketchRepository extends JpaRepository<LotDaySketch, Long> {
+
+    /**
+     * Read the row of node :nodeId for lot :lotId and day :day and lock it until the transaction ends, so
+     * concurrent merges into the same row are applied one after the other.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from LotDaySketch s where s.lotId = ?1 and s.day = ?2 and s.nodeId = ?3")
+    LotDaySketch getSketchForUpdate(Long lotId, DateTime day, String nodeId);
+
+    @Query("select s from LotDaySketch s where s.lotId = ?1 and s.day >= ?2 and s.day < ?3 order by s.day asc")
+    List<LotDaySketch> getSketchesBetween(Long lotId, DateTime startTime, DateTime endTime);
+}
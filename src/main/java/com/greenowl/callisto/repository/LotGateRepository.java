@@ -0,0 +1,11 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.LotGate;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface LotGateRepository extends JpaRepository<LotGate, Long> {
+
+    List<LotGate> findByEnabledTrue();
+}
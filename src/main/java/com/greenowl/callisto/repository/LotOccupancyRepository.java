@@ -0,0 +1,31 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.LotOccupancy;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import javax.persistence.LockModeType;
+import java.util.Date;
+
+public interface LotOccupancyRepository extends JpaRepository<LotOccupancy, Long> {
+
+    /**
+     * Add :delta to the occupancy of lot :lotId, creating its row on the first change. One statement, so
+     * concurrent changes of the same lot from any node add up. Takes a {@link Date}, the native statement
+     * does not go through the mapping of the entity.
+     */
+    @Modifying
+    @Query(value = "insert into T_LOT_OCCUPANCY (lot_id, occupancy, updated_at) values (?1, ?2, ?3)"
+            + " on duplicate key update occupancy = occupancy + values(occupancy), updated_at = values(updated_at)",
+            nativeQuery = true)
+    int add(Long lotId, long delta, Date updatedAt);
+
+    /**
+     * Read the row of lot :lotId and lock it until the transaction ends, changes of that lot wait for it.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select o from LotOccupancy o where o.lotId = ?1")
+    LotOccupancy getOccupancyForUpdate(Long lotId);
+}
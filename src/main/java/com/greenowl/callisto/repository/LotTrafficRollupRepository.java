@@ -0,0 +1,29 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.LotTrafficRollup;
+import org.joda.time.DateTime;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.util.List;
+
+public interface LotTrafficRollupRepository extends JpaRepository<LotTrafficRollup, Long> {
+
+    @Query("select r from LotTrafficRollup r where r.lotId = ?1 and r.period = ?2 and r.bucketStart >= ?3 and r.bucketStart < ?4 order by r.bucketStart asc")
+    List<LotTrafficRollup> getRollupsBetween(Long lotId, String period, DateTime startTime, DateTime endTime);
+
+    @Modifying
+    @Query("update LotTrafficRollup r set r.entries = r.entries + :entries, r.exits = r.exits + :exits,"
+            + " r.exceptions = r.exceptions + :exceptions, r.manualOpens = r.manualOpens + :manualOpens,"
+            + " r.occupancy = :occupancy"
+            + " where r.lotId = :lotId and r.period = :period and r.bucketStart = :bucketStart")
+    int add(@Param("lotId") Long lotId, @Param("period") String period, @Param("bucketStart") DateTime bucketStart,
+            @Param("entries") long entries, @Param("exits") long exits, @Param("exceptions") long exceptions,
+            @Param("manualOpens") long manualOpens, @Param("occupancy") long occupancy);
+
+    @Modifying
+    @Query("delete from LotTrafficRollup r where r.bucketStart >= ?1 and r.bucketStart < ?2")
+    int deleteBetween(DateTime startTime, DateTime endTime);
+}
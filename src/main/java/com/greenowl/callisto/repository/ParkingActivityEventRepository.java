@@ -0,0 +1,31 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingEventCode;
+import org.joda.time.DateTime;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface ParkingActivityEventRepository extends JpaRepository<ParkingActivityEvent, Long> {
+
+    @Query("select e from ParkingActivityEvent e where e.activityId = ?1 order by e.id asc")
+    List<ParkingActivityEvent> getTimelineForActivity(Long activityId);
+
+    @Query("select e.idempotencyKey from ParkingActivityEvent e where e.idempotencyKey in ?1")
+    List<String> findIdempotencyKeys(Collection<String> keys);
+
+    /**
+     * @return lot id, event time, parking status and event id of the :code events in [:startTime, :endTime)
+     * with an id above :afterId, in id order.
+     */
+    @Query("select a.lotId, e.eventTime, e.parkingStatus, e.id from ParkingActivityEvent e, ParkingActivity a"
+            + " where a.id = e.activityId and e.code = ?1 and e.eventTime >= ?2 and e.eventTime < ?3 and e.id > ?4"
+            + " order by e.id asc")
+    List<Object[]> getLotEventsBetween(ParkingEventCode code, DateTime startTime, DateTime endTime, Long afterId,
+                                       Pageable page);
+
+}
@@ -1,6 +1,7 @@
 package com.greenowl.callisto.repository;
 
 import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingState;
 import com.greenowl.callisto.domain.User;
 import org.joda.time.DateTime;
 import org.springframework.data.domain.Page;
@@ -8,11 +9,19 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface ParkingActivityRepository extends JpaRepository<ParkingActivity, Long> {
 
+    /**
+     * Flat read model of a parking activity and its holder, selected in one joined query.
+     */
+    String RECORD_PROJECTION = "select new com.greenowl.callisto.web.rest.dto.ParkingActivityDTO(u.id, u.lotId, h.login,"
+            + " h.mobileNumber, h.licensePlate, u.type, u.saleId, u.entryDatetime, u.exitDatetime, u.parkingStatus,"
+            + " u.exceptionFlag, u.createdDate, u.deviceInfo) from ParkingActivity u left join u.activityHolder h";
 
     @Query("select u from ParkingActivity u where u.id = ?1")
     ParkingActivity getParkingActivityById(Long id);
@@ -20,8 +29,13 @@ public interface ParkingActivityRepository extends JpaRepository<ParkingActivity
     @Query("select u from ParkingActivity u where u.createdDate > ?1 and u.createdDate < ?2")
     List<ParkingActivity> getParkingActivityBetween(DateTime startTime, DateTime endTime);
 
-    @Query("select u from ParkingActivity u where u.parkingStatus = ?1")
-    List<ParkingActivity> findAllByStatus(String status);
+    /**
+     * Queries by state also match on the legacy status string of :state when parking_state is null. V14
+     * backfills the column, but nodes still running the previous release during a rolling upgrade keep
+     * writing the status string only.
+     */
+    @Query("select u from ParkingActivity u where u.parkingState = ?1 or (u.parkingState is null and u.parkingStatus = ?2)")
+    List<ParkingActivity> findAllByStatus(ParkingState state, String status);
 
     @Query("select u from ParkingActivity u where u.createdDate > ?1 and u.createdDate < ?2 and u.activityHolder = ?3")
     List<ParkingActivity> getParkingActivityBetweenForUser(DateTime startTime, DateTime endTime,
@@ -30,11 +44,12 @@ public interface ParkingActivityRepository extends JpaRepository<ParkingActivity
     @Query("select u from ParkingActivity u where u.activityHolder = ?1")
     List<ParkingActivity> getParkingActivitiesByUser(User activityHolder);
 
-    @Query("select u from ParkingActivity u where u.activityHolder = ?1 and u.parkingStatus = ?2")
-    ParkingActivity getParkingActivityByUserAndStatus(User user, String status);
+    @Query("select u from ParkingActivity u where u.activityHolder = ?1"
+            + " and (u.parkingState = ?2 or (u.parkingState is null and u.parkingStatus = ?3))")
+    ParkingActivity getParkingActivityByUserAndStatus(User user, ParkingState state, String status);
 
-    @Query("select u from ParkingActivity u where u.parkingStatus = ?1")
-    List<ParkingActivity> getParkingActivitiesByStatus(String status);
+    @Query("select u from ParkingActivity u where u.parkingState = ?1 or (u.parkingState is null and u.parkingStatus = ?2)")
+    List<ParkingActivity> getParkingActivitiesByStatus(ParkingState state, String status);
 
 
     @Query("select u from ParkingActivity u where u.lotId = ?1")
@@ -42,22 +57,73 @@ public interface ParkingActivityRepository extends JpaRepository<ParkingActivity
 
     Page<ParkingActivity> findByActivityHolder(User u, Pageable page);
 
+    @Query("select u from ParkingActivity u where u.activityHolder.id = ?1 order by u.id desc")
+    List<ParkingActivity> getLatestActivitiesForUser(Long userId, Pageable page);
+
+    @Query("select u from ParkingActivity u where u.activityHolder.id = ?1 and u.lastModifiedDate >= ?2 order by u.lastModifiedDate asc, u.id asc")
+    List<ParkingActivity> getActivitiesForUserModifiedSince(Long userId, DateTime since, Pageable page);
+
+    @Modifying
+    @Query("update ParkingActivity u set u.parkingStatus=?1, u.parkingState=?2, u.version = u.version + 1 where u.id = ?3")
+    void setParkingStatusById(String parkingStatus, ParkingState state, long id);
+
+    /**
+     * Move activity :id from state :from to state :to, only if it is still in state :from. Entry and exit
+     * times are only set if they are not set yet, the device info only if :deviceInfo is not null.
+     *
+     * @return the number of updated rows, 0 if the activity left state :from in the meantime.
+     */
+    @Modifying
+    @Query("update ParkingActivity u set u.parkingState = :to, u.parkingStatus = :toStatus,"
+            + " u.entryDatetime = coalesce(u.entryDatetime, :entry), u.exitDatetime = coalesce(u.exitDatetime, :exit),"
+            + " u.deviceInfo = coalesce(:deviceInfo, u.deviceInfo), u.lastModifiedDate = :now,"
+            + " u.version = u.version + 1"
+            + " where u.id = :id and (u.parkingState = :from or (u.parkingState is null and u.parkingStatus = :fromStatus))")
+    int transition(@Param("id") Long id, @Param("from") ParkingState from, @Param("fromStatus") String fromStatus,
+                   @Param("to") ParkingState to, @Param("toStatus") String toStatus, @Param("entry") DateTime entry,
+                   @Param("exit") DateTime exit, @Param("deviceInfo") String deviceInfo, @Param("now") DateTime now);
+
     @Modifying
-    @Query("update ParkingActivity u set u.parkingStatus=?1 where u.id = ?2")
-    void setParkingStatusById(String parkingStatus, long id);
+    @Query("update ParkingActivity u set u.deviceInfo = ?1, u.version = u.version + 1 where u.id = ?2")
+    void setDeviceInfo(String deviceInfo, long id);
 
     @Modifying
-    @Query("update ParkingActivity u set u.gateResponse=?1 where u.id = ?2")
+    @Query("update ParkingActivity u set u.gateResponse=?1, u.version = u.version + 1 where u.id = ?2")
     void setGateResponse(String gateResponse, long id);
 
     @Modifying
-    @Query("update ParkingActivity u set u.exitDatetime=?1 where u.id = ?2")
+    @Query("update ParkingActivity u set u.exitDatetime=?1, u.version = u.version + 1 where u.id = ?2")
     void setExitTime(DateTime time, long id);
 
     @Modifying
-    @Query("update ParkingActivity u set u.exceptionFlag=?1 where u.id = ?2")
+    @Query("update ParkingActivity u set u.exceptionFlag=?1, u.version = u.version + 1 where u.id = ?2")
     void setExceptionFlag(String exceptionFlag, long id);
 
-    @Query("select u from ParkingActivity u where u.createdDate > ?1 and u.createdDate < ?2 and u.parkingStatus = ?3")
-    List<ParkingActivity> getParkingActivityByTypeBetween(DateTime startTime, DateTime endTime, String type);
+    @Query("select u from ParkingActivity u where u.createdDate > ?1 and u.createdDate < ?2"
+            + " and (u.parkingState = ?3 or (u.parkingState is null and u.parkingStatus = ?4))")
+    List<ParkingActivity> getParkingActivityByTypeBetween(DateTime startTime, DateTime endTime, ParkingState state,
+                                                          String status);
+
+    /**
+     * @param statuses the legacy status strings of :states.
+     * @return the lots with activities in one of :states.
+     */
+    @Query("select distinct u.lotId from ParkingActivity u"
+            + " where u.parkingState in ?1 or (u.parkingState is null and u.parkingStatus in ?2)")
+    List<Long> getLotIdsByState(Collection<ParkingState> states, Collection<String> statuses);
+
+    /**
+     * @param statuses the legacy status strings of :states.
+     * @return the number of activities of lot :lotId in one of :states.
+     */
+    @Query("select count(u) from ParkingActivity u where u.lotId = ?1"
+            + " and (u.parkingState in ?2 or (u.parkingState is null and u.parkingStatus in ?3))")
+    long countByStateInLot(Long lotId, Collection<ParkingState> states, Collection<String> statuses);
+
+    /**
+     * @return lot id and number of cars inside at :time per lot, counting those that entered since :enteredSince.
+     */
+    @Query("select u.lotId, count(u) from ParkingActivity u where u.entryDatetime >= ?2 and u.entryDatetime < ?1"
+            + " and (u.exitDatetime is null or u.exitDatetime >= ?1) group by u.lotId")
+    List<Object[]> countInsideAtPerLot(DateTime time, DateTime enteredSince);
 }
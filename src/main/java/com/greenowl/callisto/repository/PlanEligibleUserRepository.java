@@ -13,6 +13,9 @@ public interface PlanEligibleUserRepository extends JpaRepository<PlanEligibleUs
     @Query("select u from PlanEligibleUser u where u.userEmail = ?1")
     List<PlanEligibleUser> getEligibleUsersByUserEmail(String userEmail);
 
+    @Query("select u.planGroup.id from PlanEligibleUser u where u.userEmail = ?1")
+    List<Long> getEligiblePlanIdsByUserEmail(String userEmail);
+
     Optional<PlanEligibleUser> findOneByUserEmail(String userEmail);
 
     @Query("select u from PlanEligibleUser u where u.subscribed = true")
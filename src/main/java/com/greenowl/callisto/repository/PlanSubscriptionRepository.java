@@ -18,6 +18,12 @@ public interface PlanSubscriptionRepository extends JpaRepository<PlanSubscripti
     @Query("select u from PlanSubscription u where u.user = ?1")
     List<PlanSubscription> getPlanSubscriptionByUser(User user);
 
+    @Query("select u from PlanSubscription u left join fetch u.planGroup where u.user = ?1")
+    List<PlanSubscription> getPlanSubscriptionWithPlanByUser(User user);
+
+    @Query("select u from PlanSubscription u left join fetch u.planGroup where u.user.id = ?1")
+    List<PlanSubscription> getPlanSubscriptionWithPlanByUserId(Long userId);
+
     @Query("select u from PlanSubscription u where u.paymentProfile = ?1")
     List<PlanSubscription> getPlanSubscriptionByPaymentProfile(PaymentProfile paymentProfile);
 
@@ -0,0 +1,157 @@
+package com.greenowl.callisto.repository;
+
+import com.greenowl.callisto.util.KeysetCursor;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.joda.time.DateTime;
+import org.springframework.stereotype.Repository;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Reads record tables (parking activities, sales records) as flat read models in (created_date desc, id desc)
+ * order, either one keyset page at a time or as a forward-only scroll, so no caller ever holds a whole table
+ * in memory.
+ */
+@Repository
+public class RecordQueryRepository {
+
+    /**
+     * Tells the MySQL driver to stream rows one by one instead of buffering the whole result set.
+     */
+    private static final int STREAMING_FETCH_SIZE = Integer.MIN_VALUE;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Return at most :limit records matching :filter that come after :after.
+     *
+     * @param filter the records to select.
+     * @param after  the cursor of the last record of the previous page, null for the first page.
+     * @param limit  the page size.
+     * @return
+     */
+    public <T> List<T> findPage(Filter<T> filter, KeysetCursor after, int limit) {
+        TypedQuery<T> query = entityManager.createQuery(filter.toJpql(after != null), filter.getResultType());
+        filter.getParameters().forEach(query::setParameter);
+        if (after != null) {
+            query.setParameter("cursorDate", after.getCreatedDate());
+            query.setParameter("cursorId", after.getId());
+        }
+        query.setMaxResults(limit);
+        return query.getResultList();
+    }
+
+    /**
+     * Hand every record matching :filter to :consumer through a forward-only cursor. Must be called
+     * inside a transaction, and :consumer must not issue further queries while the scroll is open.
+     *
+     * @param filter   the records to select.
+     * @param consumer receives the records one by one.
+     */
+    public <T> void scroll(Filter<T> filter, Consumer<T> consumer) {
+        Session session = entityManager.unwrap(Session.class);
+        org.hibernate.Query query = session.createQuery(filter.toJpql(false));
+        filter.getParameters().forEach(query::setParameter);
+        query.setReadOnly(true);
+        query.setCacheable(false);
+        query.setFetchSize(STREAMING_FETCH_SIZE);
+        ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+        try {
+            while (results.next()) {
+                consumer.accept(filter.getResultType().cast(results.get(0)));
+            }
+        } finally {
+            results.close();
+        }
+    }
+
+    /**
+     * Selection of records through a projection: an optional created_date range plus equality conditions.
+     * The projection must alias the record as "u", see ParkingActivityRepository.RECORD_PROJECTION.
+     */
+    public static class Filter<T> {
+
+        private final Class<T> resultType;
+
+        private final String projection;
+
+        private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+        private final StringBuilder where = new StringBuilder();
+
+        public Filter(Class<T> resultType, String projection) {
+            this.resultType = resultType;
+            this.projection = projection;
+        }
+
+        public Filter<T> createdAfter(DateTime start) {
+            if (start != null) {
+                where.append(" and u.createdDate > :start");
+                parameters.put("start", start);
+            }
+            return this;
+        }
+
+        public Filter<T> createdBefore(DateTime end) {
+            if (end != null) {
+                where.append(" and u.createdDate < :end");
+                parameters.put("end", end);
+            }
+            return this;
+        }
+
+        /**
+         * Only keep records whose :property equals :value, ignored if :value is null.
+         */
+        public Filter<T> equal(String property, Object value) {
+            if (value != null) {
+                String name = "p" + parameters.size();
+                where.append(" and u.").append(property).append(" = :").append(name);
+                parameters.put(name, value);
+            }
+            return this;
+        }
+
+        /**
+         * Only keep records whose :property equals :value or, for records where :property is null, whose
+         * :fallbackProperty equals :fallbackValue. Ignored if :value is null.
+         */
+        public Filter<T> equalOrFallback(String property, Object value, String fallbackProperty, Object fallbackValue) {
+            if (value != null) {
+                String name = "p" + parameters.size();
+                String fallbackName = "p" + (parameters.size() + 1);
+                where.append(" and (u.").append(property).append(" = :").append(name)
+                        .append(" or (u.").append(property).append(" is null and u.").append(fallbackProperty)
+                        .append(" = :").append(fallbackName).append("))");
+                parameters.put(name, value);
+                parameters.put(fallbackName, fallbackValue);
+            }
+            return this;
+        }
+
+        public Class<T> getResultType() {
+            return resultType;
+        }
+
+        Map<String, Object> getParameters() {
+            return parameters;
+        }
+
+        String toJpql(boolean afterCursor) {
+            StringBuilder jpql = new StringBuilder(projection).append(" where 1 = 1").append(where);
+            if (afterCursor) {
+                jpql.append(" and (u.createdDate < :cursorDate or (u.createdDate = :cursorDate and u.id < :cursorId))");
+            }
+            return jpql.append(" order by u.createdDate desc, u.id desc").toString();
+        }
+    }
+}
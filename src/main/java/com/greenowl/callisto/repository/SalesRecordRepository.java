@@ -8,14 +8,42 @@ import org.springframework.data.jpa.repository.Query;
 
 import com.greenowl.callisto.domain.SalesRecord;
 import com.greenowl.callisto.domain.User;
+import com.greenowl.callisto.web.rest.dto.RevenueSummaryDTO;
+import com.greenowl.callisto.web.rest.dto.SalesRecordDTO;
 
 public interface SalesRecordRepository extends JpaRepository<SalesRecord, Long> {
 	@Query("select u from SalesRecord u where u.id = ?1")
 	SalesRecord getSalesRecordById(Long id);
 
+	/**
+	 * Flat read model of a sales record and its holder, selected in one joined query.
+	 */
+	String RECORD_PROJECTION = "select new com.greenowl.callisto.web.rest.dto.SalesRecordDTO(u.id, u.lotId, h.id, u.planId,"
+			+ " h.login, h.mobileNumber, h.licensePlate, u.chargeAmount, u.serviceAmount, u.netAmount, u.ppId, u.type,"
+			+ " u.invoiceId, u.createdDate) from SalesRecord u left join u.activityHolder h";
+
 	@Query("select u from SalesRecord u where u.createdDate > ?1 and u.createdDate < ?2")
 	List<SalesRecord> getSalesRecordsBetween(DateTime startTime, DateTime endTime);
 
+	@Query(RECORD_PROJECTION + " where u.createdDate > ?1 and u.createdDate < ?2")
+	List<SalesRecordDTO> getSalesRecordDTOsBetween(DateTime startTime, DateTime endTime);
+
+	@Query(RECORD_PROJECTION + " where u.createdDate > ?1 and u.createdDate < ?2 and u.type = ?3")
+	List<SalesRecordDTO> getSalesRecordDTOsBetweenOfType(DateTime startTime, DateTime endTime, String type);
+
+	/**
+	 * Revenue totals per lot, plan, type and day of the records created in [:startTime, :endTime), of lot
+	 * :lotId and type :type unless null, summed by the database.
+	 */
+	@Query("select new com.greenowl.callisto.web.rest.dto.RevenueSummaryDTO(u.lotId, u.planId, u.type,"
+			+ " year(u.createdDate), month(u.createdDate), day(u.createdDate), count(u), sum(u.chargeAmount),"
+			+ " sum(u.serviceAmount), sum(u.netAmount)) from SalesRecord u"
+			+ " where u.createdDate >= ?1 and u.createdDate < ?2 and (?3 is null or u.lotId = ?3)"
+			+ " and (?4 is null or u.type = ?4)"
+			+ " group by year(u.createdDate), month(u.createdDate), day(u.createdDate), u.lotId, u.planId, u.type"
+			+ " order by year(u.createdDate), month(u.createdDate), day(u.createdDate), u.lotId, u.planId, u.type")
+	List<RevenueSummaryDTO> getRevenueSummary(DateTime startTime, DateTime endTime, Long lotId, String type);
+
 	@Query("select u from SalesRecord u where u.createdDate > ?1 and u.createdDate < ?2 and u.activityHolder = ?3")
 	List<SalesRecord> getSalesRecordsBetweenForUser(DateTime startTime, DateTime endTime,
 			User activityHolder);
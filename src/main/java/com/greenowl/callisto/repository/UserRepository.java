@@ -28,4 +28,7 @@ public interface UserRepository extends JpaRepository<User, Long> {
 
     Optional<User> findOneByMobileNumber(String mobileNumber);
 
+    @Query("select u.tokenGeneration from User u where u.id = ?1 and u.activated = true")
+    Integer getTokenGeneration(Long id);
+
 }
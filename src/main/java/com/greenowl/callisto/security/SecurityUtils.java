@@ -37,6 +37,17 @@ public final class SecurityUtils {
         return userName;
     }
 
+    /**
+     * Get the id of the current user, null if the principal does not carry it.
+     */
+    public static Long getCurrentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication != null && authentication.getPrincipal() instanceof UserPrincipal) {
+            return ((UserPrincipal) authentication.getPrincipal()).getId();
+        }
+        return null;
+    }
+
     /**
      * Check if a user is authenticated.
      *
@@ -49,8 +49,8 @@ public class UserDetailsService implements org.springframework.security.core.use
             GrantedAuthority grantedAuthority = new SimpleGrantedAuthority(authority.getName());
             grantedAuthorities.add(grantedAuthority);
         }
-        return new org.springframework.security.core.userdetails.User(login,
-                userFromDatabase.getPassword(), grantedAuthorities);
+        return new UserPrincipal(userFromDatabase.getId(), login, userFromDatabase.getPassword(),
+                userFromDatabase.getTokenGeneration(), grantedAuthorities);
     }
 
 
@@ -0,0 +1,32 @@
+package com.greenowl.callisto.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.userdetails.User;
+
+import java.util.Collection;
+
+/**
+ * Spring Security user that also carries the user id and token generation, which is everything a v2
+ * x-auth token needs to authenticate a request without reading T_USER.
+ */
+public class UserPrincipal extends User {
+
+    private final Long id;
+
+    private final int tokenGeneration;
+
+    public UserPrincipal(Long id, String login, String password, int tokenGeneration,
+                         Collection<? extends GrantedAuthority> authorities) {
+        super(login, password, authorities);
+        this.id = id;
+        this.tokenGeneration = tokenGeneration;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public int getTokenGeneration() {
+        return tokenGeneration;
+    }
+}
@@ -0,0 +1,106 @@
+package com.greenowl.callisto.security.xauth;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.crypto.codec.Hex;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the principal of tokens that passed validation, keyed by a hash of the token, so an authenticated
+ * request does not load the user and recompute the signature again. An entry never outlives its token, and is
+ * dropped when the user's password changes or the user is removed.
+ */
+public class TokenCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TokenCache.class);
+
+    private final Cache<String, Entry> entries;
+
+    private final Meter hits;
+
+    private final Meter misses;
+
+    public TokenCache(long maxEntries, int timeToLiveSeconds, MetricRegistry metricRegistry) {
+        LOG.debug("Creating token cache with ttl = {}s and max entries = {}", timeToLiveSeconds, maxEntries);
+        this.entries = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .build();
+        this.hits = metricRegistry.meter(MetricRegistry.name(TokenCache.class, "hits"));
+        this.misses = metricRegistry.meter(MetricRegistry.name(TokenCache.class, "misses"));
+        metricRegistry.register(MetricRegistry.name(TokenCache.class, "hit-ratio"), new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                return Ratio.of(hits.getOneMinuteRate(), hits.getOneMinuteRate() + misses.getOneMinuteRate());
+            }
+        });
+    }
+
+    /**
+     * @return the principal of :authToken if it was validated before and has not expired yet, null otherwise.
+     */
+    public UserDetails get(String authToken) {
+        String key = hash(authToken);
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            misses.mark();
+            return null;
+        }
+        if (entry.expires < System.currentTimeMillis()) {
+            entries.invalidate(key);
+            misses.mark();
+            return null;
+        }
+        hits.mark();
+        return entry.details;
+    }
+
+    /**
+     * Remember that :authToken, valid until :expires, authenticates :details.
+     */
+    public void put(String authToken, UserDetails details, long expires) {
+        entries.put(hash(authToken), new Entry(details, expires));
+    }
+
+    /**
+     * Forget every token of user :login.
+     */
+    public void invalidate(String login) {
+        entries.asMap().values().removeIf(entry -> entry.details.getUsername().equals(login));
+    }
+
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    private static String hash(String authToken) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new String(Hex.encode(digest.digest(authToken.getBytes(StandardCharsets.UTF_8))));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("No SHA-256 algorithm available!");
+        }
+    }
+
+    private static class Entry {
+
+        private final UserDetails details;
+
+        private final long expires;
+
+        Entry(UserDetails details, long expires) {
+            this.details = details;
+            this.expires = expires;
+        }
+    }
+}
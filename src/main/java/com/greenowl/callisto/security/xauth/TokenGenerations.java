@@ -0,0 +1,51 @@
+package com.greenowl.callisto.security.xauth;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.greenowl.callisto.repository.UserRepository;
+import com.greenowl.callisto.security.UserPrincipal;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Current token generation of each user. Bumping a user's generation revokes every v2 token issued
+ * before, the value is read from T_USER at most once per time to live.
+ */
+public class TokenGenerations {
+
+    /**
+     * Generation of unknown or deactivated users, no token carries it.
+     */
+    private static final int REVOKED = -1;
+
+    private final LoadingCache<Long, Integer> generations;
+
+    public TokenGenerations(UserRepository userRepository, long maxEntries, int timeToLiveSeconds) {
+        this.generations = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .build(new CacheLoader<Long, Integer>() {
+                    @Override
+                    public Integer load(Long userId) {
+                        Integer generation = userRepository.getTokenGeneration(userId);
+                        return (generation == null) ? REVOKED : generation;
+                    }
+                });
+    }
+
+    /**
+     * @return true if :principal was issued with the current generation of its user.
+     */
+    public boolean isCurrent(UserPrincipal principal) {
+        return generations.getUnchecked(principal.getId()) == principal.getTokenGeneration();
+    }
+
+    public void update(Long userId, int generation) {
+        generations.put(userId, generation);
+    }
+
+    public void invalidate(Long userId) {
+        generations.invalidate(userId);
+    }
+}
@@ -1,23 +1,68 @@
 package com.greenowl.callisto.security.xauth;
 
+import com.greenowl.callisto.security.UserPrincipal;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.crypto.codec.Hex;
 
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
 
+/**
+ * Issues and verifies x-auth tokens.
+ * <p>
+ * v1: login:expires:md5(login:expires:password:secret), verifying needs the password hash from the database.
+ * <p>
+ * v2: v2:userId:generation:expires:AUTHORITY,...:login:hmacSha256, self contained, verified from the token alone.
+ * Users with a {@link UserPrincipal} get v2 tokens, v1 tokens are still accepted until they expire.
+ */
 public class TokenProvider {
 
+    private static final String V2_PREFIX = "v2:";
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private static final int MAC_LENGTH = 32;
+
+    private static final int SIGNATURE_LENGTH = MAC_LENGTH * 2;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     private final String secretKey;
     private final int tokenValidity;
 
+    private final ThreadLocal<Mac> macs;
+
+    private final ThreadLocal<byte[]> macBuffers = ThreadLocal.withInitial(() -> new byte[MAC_LENGTH]);
+
     public TokenProvider(String secretKey, int tokenValidity) {
         this.secretKey = secretKey;
         this.tokenValidity = tokenValidity;
+        SecretKeySpec key = new SecretKeySpec(secretKey.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+                mac.init(key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("No " + HMAC_ALGORITHM + " algorithm available!", e);
+            }
+        });
     }
 
     public Token createToken(UserDetails userDetails) {
         long expires = System.currentTimeMillis() + 1000L * tokenValidity;
+        if (userDetails instanceof UserPrincipal) {
+            return new Token(createV2Token((UserPrincipal) userDetails, expires), expires);
+        }
         String token = userDetails.getUsername() + ":" + expires + ":" + computeSignature(userDetails, expires);
         return new Token(token, expires);
     }
@@ -46,11 +91,131 @@ public class TokenProvider {
         return parts[0];
     }
 
+    public long getExpiresFromToken(String authToken) {
+        return Long.parseLong(authToken.split(":")[1]);
+    }
+
     public boolean validateToken(String authToken, UserDetails userDetails) {
         String[] parts = authToken.split(":");
         long expires = Long.parseLong(parts[1]);
         String signature = parts[2];
         String signatureToMatch = computeSignature(userDetails, expires);
-        return expires >= System.currentTimeMillis() && signature.equals(signatureToMatch);
+        return expires >= System.currentTimeMillis() && MessageDigest.isEqual(
+                signature.getBytes(StandardCharsets.US_ASCII), signatureToMatch.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    public boolean isV2Token(String authToken) {
+        return authToken.startsWith(V2_PREFIX);
+    }
+
+    /**
+     * Verify a v2 token, the token generation is left to the caller to check.
+     *
+     * @param authToken the token from the request header.
+     * @return the principal the token was issued to, null if the token is malformed, expired or forged.
+     */
+    public UserPrincipal verifyV2Token(String authToken) {
+        int signatureStart = authToken.length() - SIGNATURE_LENGTH;
+        int idEnd = authToken.indexOf(':', V2_PREFIX.length());
+        int generationEnd = (idEnd < 0) ? -1 : authToken.indexOf(':', idEnd + 1);
+        int expiresEnd = (generationEnd < 0) ? -1 : authToken.indexOf(':', generationEnd + 1);
+        int authoritiesEnd = (expiresEnd < 0) ? -1 : authToken.indexOf(':', expiresEnd + 1);
+        if (authoritiesEnd < 0 || authoritiesEnd >= signatureStart - 1 || authToken.charAt(signatureStart - 1) != ':') {
+            return null;
+        }
+        long expires = parseLong(authToken, generationEnd + 1, expiresEnd);
+        if (expires < System.currentTimeMillis() || !signatureMatches(authToken, signatureStart)) {
+            return null;
+        }
+        long id = parseLong(authToken, V2_PREFIX.length(), idEnd);
+        long generation = parseLong(authToken, idEnd + 1, generationEnd);
+        if (id < 0 || generation < 0 || generation > Integer.MAX_VALUE) {
+            return null;
+        }
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        int start = expiresEnd + 1;
+        while (start < authoritiesEnd) {
+            int end = authToken.indexOf(',', start);
+            if (end < 0 || end > authoritiesEnd) {
+                end = authoritiesEnd;
+            }
+            authorities.add(new SimpleGrantedAuthority(authToken.substring(start, end)));
+            start = end + 1;
+        }
+        String login = authToken.substring(authoritiesEnd + 1, signatureStart - 1);
+        return new UserPrincipal(id, login, "", (int) generation, authorities);
+    }
+
+    private String createV2Token(UserPrincipal principal, long expires) {
+        StringBuilder token = new StringBuilder(V2_PREFIX)
+                .append(principal.getId()).append(':')
+                .append(principal.getTokenGeneration()).append(':')
+                .append(expires).append(':');
+        boolean first = true;
+        for (GrantedAuthority authority : principal.getAuthorities()) {
+            if (!first) {
+                token.append(',');
+            }
+            token.append(authority.getAuthority());
+            first = false;
+        }
+        token.append(':').append(principal.getUsername());
+        byte[] signature = sign(token, token.length());
+        token.append(':');
+        for (byte b : signature) {
+            token.append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+        }
+        return token.toString();
+    }
+
+    /**
+     * Compare the signature at :signatureStart with the mac of what precedes it, in constant time.
+     */
+    private boolean signatureMatches(String authToken, int signatureStart) {
+        byte[] expected = sign(authToken, signatureStart - 1);
+        int diff = 0;
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            diff |= HEX[(expected[i] >> 4) & 0xf] ^ authToken.charAt(signatureStart + 2 * i);
+            diff |= HEX[expected[i] & 0xf] ^ authToken.charAt(signatureStart + 2 * i + 1);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * Mac of the first :length chars of :payload, each char fed as its two UTF-16 bytes. The returned
+     * array is a per thread buffer, overwritten by the next call.
+     */
+    private byte[] sign(CharSequence payload, int length) {
+        Mac mac = macs.get();
+        for (int i = 0; i < length; i++) {
+            char c = payload.charAt(i);
+            mac.update((byte) (c >> 8));
+            mac.update((byte) c);
+        }
+        byte[] buffer = macBuffers.get();
+        try {
+            mac.doFinal(buffer, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the non negative number in :s between :start and :end, -1 if there is none.
+     */
+    private static long parseLong(CharSequence s, int start, int end) {
+        if (start >= end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
     }
 }
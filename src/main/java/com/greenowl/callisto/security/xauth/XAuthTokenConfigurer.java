@@ -1,5 +1,6 @@
 package com.greenowl.callisto.security.xauth;
 
+import com.codahale.metrics.MetricRegistry;
 import org.springframework.security.config.annotation.SecurityConfigurerAdapter;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.core.userdetails.UserDetailsService;
@@ -12,14 +13,24 @@ public class XAuthTokenConfigurer extends SecurityConfigurerAdapter<DefaultSecur
 
     private UserDetailsService detailsService;
 
-    public XAuthTokenConfigurer(UserDetailsService detailsService, TokenProvider tokenProvider) {
+    private TokenCache tokenCache;
+
+    private TokenGenerations tokenGenerations;
+
+    private MetricRegistry metricRegistry;
+
+    public XAuthTokenConfigurer(UserDetailsService detailsService, TokenProvider tokenProvider, TokenCache tokenCache,
+                                TokenGenerations tokenGenerations, MetricRegistry metricRegistry) {
         this.detailsService = detailsService;
         this.tokenProvider = tokenProvider;
+        this.tokenCache = tokenCache;
+        this.tokenGenerations = tokenGenerations;
+        this.metricRegistry = metricRegistry;
     }
 
     @Override
     public void configure(HttpSecurity http) throws Exception {
-        XAuthTokenFilter customFilter = new XAuthTokenFilter(detailsService, tokenProvider);
+        XAuthTokenFilter customFilter = new XAuthTokenFilter(detailsService, tokenProvider, tokenCache, tokenGenerations, metricRegistry);
         http.addFilterBefore(customFilter, UsernamePasswordAuthenticationFilter.class);
     }
 }
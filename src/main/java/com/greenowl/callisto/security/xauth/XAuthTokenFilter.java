@@ -1,5 +1,8 @@
 package com.greenowl.callisto.security.xauth;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.greenowl.callisto.security.UserPrincipal;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
@@ -18,7 +21,9 @@ import java.io.IOException;
 
 /**
  * Filters incoming requests and installs a Spring Security principal
- * if a header corresponding to a valid user is found.
+ * if a header corresponding to a valid user is found. v2 tokens are
+ * verified from the token alone, v1 tokens validated once are served
+ * from the {@link TokenCache} afterwards.
  */
 public class XAuthTokenFilter extends GenericFilterBean {
 
@@ -30,9 +35,19 @@ public class XAuthTokenFilter extends GenericFilterBean {
 
     private TokenProvider tokenProvider;
 
-    public XAuthTokenFilter(UserDetailsService detailsService, TokenProvider tokenProvider) {
+    private TokenCache tokenCache;
+
+    private TokenGenerations tokenGenerations;
+
+    private Timer latency;
+
+    public XAuthTokenFilter(UserDetailsService detailsService, TokenProvider tokenProvider, TokenCache tokenCache,
+                            TokenGenerations tokenGenerations, MetricRegistry metricRegistry) {
         this.detailsService = detailsService;
         this.tokenProvider = tokenProvider;
+        this.tokenCache = tokenCache;
+        this.tokenGenerations = tokenGenerations;
+        this.latency = metricRegistry.timer(MetricRegistry.name(XAuthTokenFilter.class, "latency"));
     }
 
     @Override
@@ -42,9 +57,8 @@ public class XAuthTokenFilter extends GenericFilterBean {
             String authToken = httpServletRequest.getHeader(XAUTH_TOKEN_HEADER_NAME);
             if (StringUtils.hasText(authToken)) {
                 LOG.debug("Token in header = {}", authToken);
-                String username = this.tokenProvider.getUserNameFromToken(authToken);
-                UserDetails details = this.detailsService.loadUserByUsername(username);
-                if (this.tokenProvider.validateToken(authToken, details)) {
+                UserDetails details = authenticate(authToken);
+                if (details != null) {
                     UsernamePasswordAuthenticationToken token = new UsernamePasswordAuthenticationToken(details, details.getPassword(), details.getAuthorities());
                     SecurityContextHolder.getContext().setAuthentication(token);
                 }
@@ -54,4 +68,30 @@ public class XAuthTokenFilter extends GenericFilterBean {
             throw new RuntimeException(ex);
         }
     }
+
+    /**
+     * @return the principal :authToken belongs to, null if the token is not valid.
+     */
+    private UserDetails authenticate(String authToken) {
+        Timer.Context context = latency.time();
+        try {
+            if (tokenProvider.isV2Token(authToken)) {
+                UserPrincipal principal = tokenProvider.verifyV2Token(authToken);
+                return (principal != null && tokenGenerations.isCurrent(principal)) ? principal : null;
+            }
+            UserDetails details = tokenCache.get(authToken);
+            if (details != null) {
+                return details;
+            }
+            String username = this.tokenProvider.getUserNameFromToken(authToken);
+            details = this.detailsService.loadUserByUsername(username);
+            if (!this.tokenProvider.validateToken(authToken, details)) {
+                return null;
+            }
+            tokenCache.put(authToken, details, tokenProvider.getExpiresFromToken(authToken));
+            return details;
+        } finally {
+            context.stop();
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package com.greenowl.callisto.service;
 
+import com.greenowl.callisto.cache.CacheKeys;
 import com.greenowl.callisto.config.Constants;
 import com.greenowl.callisto.domain.ParkingPlan;
 import com.greenowl.callisto.domain.PlanEligibleUser;
@@ -11,6 +12,8 @@ import com.stripe.model.Customer;
 import com.stripe.model.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
@@ -53,14 +56,47 @@ public class EligiblePlanUserService {
 		return planEligibleUserRepository.getEligibleUsersByUserEmail(userEmail);
 	}
 
+	/**
+	 * Return the ids of the plans user :userEmail is eligible for, cached in the
+	 * ELIGIBLE_PLAN_IDS region.
+	 *
+	 * @param userEmail
+	 * @return
+	 */
+	@Cacheable(CacheKeys.Names.ELIGIBLE_PLAN_IDS)
+	public List<Long> getEligiblePlanIdsByUserEmail(String userEmail) {
+		return planEligibleUserRepository.getEligiblePlanIdsByUserEmail(userEmail);
+	}
+
+	/**
+	 * Flag user :userEmail as subscribed to plan :planId and evict the user's
+	 * ELIGIBLE_PLAN_IDS entry.
+	 *
+	 * @param userEmail
+	 * @param planId
+	 * @return true if the user is eligible for the plan.
+	 */
+	@CacheEvict(value = CacheKeys.Names.ELIGIBLE_PLAN_IDS, key = "#userEmail")
+	public boolean markSubscribed(String userEmail, Long planId) {
+		for (PlanEligibleUser user : planEligibleUserRepository.getEligibleUsersByUserEmail(userEmail)) {
+			if (user.getPlanGroup().getId().equals(planId)) {
+				user.setSubscribed(true);
+				planEligibleUserRepository.save(user);
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Subscribe the plan based on the username on stripe and create an instance
-	 * in the subscription table.
+	 * in the subscription table. Evicts the user's ELIGIBLE_PLAN_IDS entry.
 	 * 
 	 * @param userEmail
 	 * @param planId
 	 * @return
 	 */
+	@CacheEvict(value = CacheKeys.Names.ELIGIBLE_PLAN_IDS, key = "#userEmail")
 	public String subscribePlan(String userEmail, Long planId) {
 		String userToken = userService.getUser(userEmail).getStripeToken();
 		ParkingPlan parkingPlan = parkingPlanRepository.getOneParkingPlanById(planId);
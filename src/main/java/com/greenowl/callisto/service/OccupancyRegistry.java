@@ -0,0 +1,254 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.LotOccupancy;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.repository.LotOccupancyRepository;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.web.rest.dto.LotOccupancyDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Number of cars inside every lot, kept in T_LOT_OCCUPANCY. Entry and exit transitions of the lifecycle engine
+ * add to the row of their lot in their own transaction, so every node shares one count that commits and rolls
+ * back with the activities it counts. Each node reads the rows every refresh interval and answers from that
+ * read, so reading the occupancy costs no query. A periodic reconciliation recounts the activities inside
+ * each lot, one lot at a time with only the row of that lot locked, and reports the difference found as drift.
+ */
+@Service
+public class OccupancyRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OccupancyRegistry.class);
+
+    private final Map<Long, Lot> lots = new ConcurrentHashMap<>();
+
+    /**
+     * Occupancy by lot as of the last refresh.
+     */
+    private volatile Map<Long, Long> occupancy = Collections.emptyMap();
+
+    private volatile long refreshedAt;
+
+    @Inject
+    private LotOccupancyRepository lotOccupancyRepository;
+
+    @Inject
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Histogram drift;
+
+    private Counter corrections;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        drift = metricRegistry.histogram(MetricRegistry.name(OccupancyRegistry.class, "drift"));
+        corrections = metricRegistry.counter(MetricRegistry.name(OccupancyRegistry.class, "corrections"));
+        try {
+            // lots that had cars inside before their first counted change get their row here
+            reconcile(false);
+        } catch (Exception e) {
+            LOG.error("Unable to seed the lot occupancy, keeping the stored counts until the next reconciliation", e);
+        }
+    }
+
+    /**
+     * Add the move of an activity of lot :lotId from state :from to state :to to the occupancy of the lot,
+     * within the transaction of the move.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void transitioned(Long lotId, ParkingState from, ParkingState to) {
+        if (lotId == null) {
+            return;
+        }
+        int delta = (to.isInside() ? 1 : 0) - (from != null && from.isInside() ? 1 : 0);
+        if (delta != 0) {
+            lotOccupancyRepository.add(lotId, delta, new Date());
+        }
+    }
+
+    /**
+     * @return how many cars were inside lot :lotId at the last refresh, and how that compares to its capacity.
+     */
+    public LotOccupancyDTO getOccupancy(Long lotId) {
+        long count = occupancy.getOrDefault(lotId, 0L);
+        int capacity = capacity(lotId);
+        return new LotOccupancyDTO(lotId, count, refreshedAt, capacity,
+                isNearCapacity(count, capacity), capacity > 0 && count >= capacity);
+    }
+
+    /**
+     * Read the occupancy of every lot. Synchronized so the read taken after a reconcile is not overwritten by an
+     * older one of the scheduled refresh.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.occupancy.refreshIntervalMillis:5000}",
+            fixedDelayString = "${callisto_config.occupancy.refreshIntervalMillis:5000}")
+    public synchronized void refresh() {
+        try {
+            Map<Long, Long> read = new HashMap<>();
+            for (LotOccupancy lotOccupancy : lotOccupancyRepository.findAll()) {
+                read.put(lotOccupancy.getLotId(), lotOccupancy.getOccupancy());
+            }
+            occupancy = read;
+            refreshedAt = System.currentTimeMillis();
+            read.forEach((lotId, count) -> lot(lotId).update(count));
+        } catch (Exception e) {
+            LOG.warn("Unable to read the lot occupancy, keeping the last read: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Correct the stored occupancy with a count of the activities inside each lot.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.occupancy.reconcileIntervalMillis:300000}",
+            fixedDelayString = "${callisto_config.occupancy.reconcileIntervalMillis:300000}")
+    public void reconcile() {
+        try {
+            reconcile(true);
+        } catch (Exception e) {
+            LOG.warn("Unable to reconcile the lot occupancy, keeping the stored counts", e);
+        }
+    }
+
+    private void reconcile(boolean reportDrift) {
+        Set<Long> lotIds = new HashSet<>(parkingActivityRepository.getLotIdsByState(ParkingState.insideStates(),
+                ParkingState.insideStatuses()));
+        for (LotOccupancy lotOccupancy : lotOccupancyRepository.findAll()) {
+            lotIds.add(lotOccupancy.getLotId());
+        }
+        lotIds.remove(null);
+        for (Long lotId : lotIds) {
+            long difference;
+            try {
+                difference = transactionTemplate.execute(status -> recount(lotId));
+            } catch (Exception e) {
+                LOG.warn("Unable to reconcile the occupancy of lot {}, keeping its stored count: {}", lotId,
+                        e.getMessage());
+                continue;
+            }
+            lot(lotId).lastDrift = difference;
+            if (!reportDrift) {
+                continue;
+            }
+            drift.update(Math.abs(difference));
+            if (difference != 0) {
+                corrections.inc();
+                LOG.warn("Occupancy of lot {} drifted by {}, corrected", lotId, difference);
+            }
+        }
+        refresh();
+    }
+
+    /**
+     * Set the occupancy of lot :lotId to the number of its activities inside. The row of the lot is locked
+     * first, so the count sees every change of the lot committed before and the changes made meanwhile wait to
+     * be added to it, while the other lots carry on. A lot without a row gets an empty one to lock.
+     *
+     * @return the stored occupancy minus the count.
+     */
+    private long recount(Long lotId) {
+        LotOccupancy lotOccupancy = lotOccupancyRepository.getOccupancyForUpdate(lotId);
+        if (lotOccupancy == null) {
+            lotOccupancyRepository.add(lotId, 0, new Date());
+            lotOccupancy = lotOccupancyRepository.getOccupancyForUpdate(lotId);
+        }
+        long count = parkingActivityRepository.countByStateInLot(lotId, ParkingState.insideStates(),
+                ParkingState.insideStatuses());
+        long difference = lotOccupancy.getOccupancy() - count;
+        if (difference != 0) {
+            lotOccupancy.setOccupancy(count);
+            lotOccupancy.setUpdatedAt(DateTime.now(DateTimeZone.UTC));
+        }
+        return difference;
+    }
+
+    private Lot lot(Long lotId) {
+        Lot lot = lots.get(lotId);
+        if (lot != null) {
+            return lot;
+        }
+        return lots.computeIfAbsent(lotId, id -> {
+            Lot created = new Lot(id);
+            metricRegistry.register(MetricRegistry.name(OccupancyRegistry.class, "lot", String.valueOf(id), "occupancy"),
+                    (Gauge<Long>) () -> occupancy.getOrDefault(id, 0L));
+            metricRegistry.register(MetricRegistry.name(OccupancyRegistry.class, "lot", String.valueOf(id), "drift"),
+                    (Gauge<Long>) () -> created.lastDrift);
+            return created;
+        });
+    }
+
+    private int capacity(Long lotId) {
+        CallistoBeanConfigurationProperties.Occupancy occupancyProps = callistoProps.getOccupancy();
+        Integer capacity = occupancyProps.getCapacities().get(String.valueOf(lotId));
+        return (capacity == null) ? occupancyProps.getDefaultCapacity() : capacity;
+    }
+
+    private boolean isNearCapacity(long occupancy, int capacity) {
+        return capacity > 0 && occupancy >= capacity * callistoProps.getOccupancy().getNearCapacityRatio();
+    }
+
+    private class Lot {
+
+        private final Long lotId;
+
+        /**
+         * Stored occupancy minus the count of activities inside at the last reconciliation.
+         */
+        private volatile long lastDrift;
+
+        /**
+         * Whether the lot was nearly full at the last refresh, to log the crossings only.
+         */
+        private volatile boolean nearCapacity;
+
+        Lot(Long lotId) {
+            this.lotId = lotId;
+        }
+
+        void update(long count) {
+            int capacity = capacity(lotId);
+            boolean near = isNearCapacity(count, capacity);
+            if (near != nearCapacity) {
+                nearCapacity = near;
+                LOG.info("Lot {} is {} its capacity of {}, {} cars inside", lotId, near ? "close to" : "back below",
+                        capacity, count);
+            }
+        }
+    }
+}
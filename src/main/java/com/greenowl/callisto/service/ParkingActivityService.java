@@ -1,32 +1,91 @@
 package com.greenowl.callisto.service;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
 import com.greenowl.callisto.config.Constants;
 import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
 import com.greenowl.callisto.domain.ParkingPlan;
+import com.greenowl.callisto.domain.ParkingState;
 import com.greenowl.callisto.domain.User;
 import com.greenowl.callisto.factory.ParkingActivityFactory;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
 import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.repository.RecordQueryRepository;
+import com.greenowl.callisto.service.gate.AdmissionService;
+import com.greenowl.callisto.service.push.ParkingActivityChangedEvent;
+import com.greenowl.callisto.util.KeysetCursor;
 import com.greenowl.callisto.util.PaginationUtil;
 import com.greenowl.callisto.util.ParkingActivityUtil;
 import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
+import com.greenowl.callisto.web.rest.dto.ParkingActivityEventDTO;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.data.domain.Page;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Service
 public class ParkingActivityService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ParkingActivityService.class);
 
+    /**
+     * Attempts of one {@link #update(Long, Consumer, List)} before reporting the conflict to the caller.
+     */
+    private static final int MAX_UPDATE_ATTEMPTS = 3;
+
     @Inject
     private ParkingActivityRepository parkingActivityRepository;
 
+    @Inject
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Inject
+    private AdmissionService admissionService;
+
+    @Inject
+    private RecordQueryRepository recordQueryRepository;
+
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Meter updateConflicts;
+
+    private Meter updateFailures;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        updateConflicts = metricRegistry.meter(MetricRegistry.name(ParkingActivityService.class, "update", "conflicts"));
+        updateFailures = metricRegistry.meter(MetricRegistry.name(ParkingActivityService.class, "update", "failures"));
+    }
+
     private List<ParkingActivity> findAllActivityBetween(DateTime startTime, DateTime endTime) {
         LOG.debug("Looking for records between startTime = {} and endTime = {}", startTime, endTime);
         return parkingActivityRepository.getParkingActivityBetween(startTime, endTime);
@@ -34,7 +93,11 @@ public class ParkingActivityService {
 
     private List<ParkingActivity> findAllActivityByTypeBetween(DateTime startTime, DateTime endTime, String type) {
         LOG.debug("Looking for records between startTime = {} and endTime = {}", startTime, endTime);
-        return parkingActivityRepository.getParkingActivityByTypeBetween(startTime, endTime, type);
+        ParkingState state = ParkingState.fromStatus(type);
+        if (state == null) {
+            return Collections.emptyList();
+        }
+        return parkingActivityRepository.getParkingActivityByTypeBetween(startTime, endTime, state, state.getStatus());
     }
 
 
@@ -47,8 +110,21 @@ public class ParkingActivityService {
      * @return
      */
     public ParkingActivityDTO createParkingActivityForPlanUser(User user, ParkingPlan plan, String deviceInfo) {
-        ParkingActivity newActivity = ParkingActivityFactory.create(user, plan, Constants.PARKING_STATUS_PARKING_START, deviceInfo);
+        return createParkingActivityForLot(user, plan.getLotId(), deviceInfo);
+    }
+
+    /**
+     * Create parking activity for a subscribed user in lot :lotId and store in the database.
+     *
+     * @param user       the user entering the lot.
+     * @param lotId      the lot of the user's subscribed plan.
+     * @param deviceInfo user's device that he/she is using.
+     * @return
+     */
+    public ParkingActivityDTO createParkingActivityForLot(User user, Long lotId, String deviceInfo) {
+        ParkingActivity newActivity = ParkingActivityFactory.create(user, lotId, Constants.PARKING_STATUS_PARKING_START, deviceInfo);
         parkingActivityRepository.save(newActivity);
+        afterSave(newActivity);
         return ParkingActivityUtil.constructDTO(newActivity, user);
     }
 
@@ -59,11 +135,11 @@ public class ParkingActivityService {
      * @return
      */
     public Optional<ParkingActivity> getInFlightRecordForUser(User user) {
-        return findByStatusAndUser(user, Constants.PARKING_STATUS_IN_FLIGHT);
+        return findByStatusAndUser(user, ParkingState.IN_FLIGHT);
     }
 
-    private Optional<ParkingActivity> findByStatusAndUser(User user, String status) {
-        ParkingActivity activity = parkingActivityRepository.getParkingActivityByUserAndStatus(user, status);
+    private Optional<ParkingActivity> findByStatusAndUser(User user, ParkingState state) {
+        ParkingActivity activity = parkingActivityRepository.getParkingActivityByUserAndStatus(user, state, state.getStatus());
         return (activity == null) ? Optional.empty() : Optional.of(activity);
     }
 
@@ -81,8 +157,65 @@ public class ParkingActivityService {
         return findAllActivityByTypeBetween(start, end, type);
     }
 
+    /**
+     * Return one keyset page of parking activities, newest first.
+     *
+     * @param start  the lower created date bound, null for none.
+     * @param end    the upper created date bound, null for none.
+     * @param status only return activities in this status, null for all.
+     * @param after  the cursor of the last record of the previous page, null for the first page.
+     * @param limit  the page size.
+     * @return
+     */
+    @Transactional(readOnly = true)
+    public List<ParkingActivityDTO> getRecordsPage(DateTime start, DateTime end, String status, KeysetCursor after, int limit) {
+        return recordQueryRepository.findPage(recordFilter(start, end, status), after, limit);
+    }
+
+    /**
+     * Hand every parking activity matching the filter to :consumer, newest first, without loading them all.
+     *
+     * @param start    the lower created date bound, null for none.
+     * @param end      the upper created date bound, null for none.
+     * @param status   only return activities in this status, null for all.
+     * @param consumer receives the activities one by one.
+     */
+    @Transactional(readOnly = true)
+    public void streamRecords(DateTime start, DateTime end, String status, Consumer<ParkingActivityDTO> consumer) {
+        recordQueryRepository.scroll(recordFilter(start, end, status), consumer);
+    }
+
+    /**
+     * Lifecycle statuses are matched on the indexed state code, or on the legacy column for rows without
+     * one, any other status on the legacy column only.
+     */
+    private RecordQueryRepository.Filter<ParkingActivityDTO> recordFilter(DateTime start, DateTime end, String status) {
+        RecordQueryRepository.Filter<ParkingActivityDTO> filter = new RecordQueryRepository.Filter<>(
+                ParkingActivityDTO.class, ParkingActivityRepository.RECORD_PROJECTION)
+                .createdAfter(start)
+                .createdBefore(end);
+        ParkingState state = ParkingState.fromStatus(status);
+        return (state != null) ? filter.equalOrFallback("parkingState", state, "parkingStatus", status)
+                : filter.equal("parkingStatus", status);
+    }
+
     public void updateParkingStatus(String parkingStatus, long id) {
-        parkingActivityRepository.setParkingStatusById(parkingStatus, id);
+        parkingActivityRepository.setParkingStatusById(parkingStatus, ParkingState.fromStatus(parkingStatus), id);
+    }
+
+    /**
+     * Store the device of activity :id and append :events to its timeline, without touching its state.
+     *
+     * @param id         the parking activity id.
+     * @param deviceInfo the device the user is using.
+     * @param events     the timeline entries to append.
+     */
+    @Transactional
+    public void recordGateAttempts(long id, String deviceInfo, List<ParkingActivityEvent> events) {
+        if (deviceInfo != null) {
+            parkingActivityRepository.setDeviceInfo(deviceInfo, id);
+        }
+        recordEvents(events);
     }
 
     public void updateGateResponse(String gateResponse, long id) {
@@ -109,6 +242,136 @@ public class ParkingActivityService {
 
     public void save(ParkingActivity parkingActivity){
     	parkingActivityRepository.save(parkingActivity);
+    	afterSave(parkingActivity);
+    }
+
+    /**
+     * Save the parking activity and append :events to its timeline in the same transaction.
+     * The events are written as one batch of inserts.
+     *
+     * @param parkingActivity the activity carrying the current status.
+     * @param events          the timeline entries to append.
+     */
+    @Transactional
+    public void save(ParkingActivity parkingActivity, List<ParkingActivityEvent> events) {
+        parkingActivityRepository.save(parkingActivity);
+        recordEvents(events);
+        afterSave(parkingActivity);
+    }
+
+    /**
+     * Apply :change to a fresh copy of activity :id and save it, guarded by its version. When another writer
+     * got in between the read and the save, the activity is read again and :change applied again on top of
+     * the other writer's result, so :change must only set the fields it owns. :events are appended once the
+     * save went through.
+     *
+     * @param id     the parking activity id.
+     * @param change the modification, applied to the activity as currently stored.
+     * @param events the timeline entries to append.
+     * @return the saved activity, null if there is no activity :id.
+     * @throws OptimisticLockingFailureException if the activity kept changing for every attempt.
+     */
+    public ParkingActivity update(Long id, Consumer<ParkingActivity> change, List<ParkingActivityEvent> events) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                ParkingActivity saved = transactionTemplate.execute(status -> {
+                    ParkingActivity activity = parkingActivityRepository.findOne(id);
+                    if (activity == null) {
+                        return null;
+                    }
+                    change.accept(activity);
+                    parkingActivityRepository.saveAndFlush(activity);
+                    recordEvents(events);
+                    return activity;
+                });
+                if (saved != null) {
+                    onCommitted(saved);
+                }
+                return saved;
+            } catch (OptimisticLockingFailureException e) {
+                updateConflicts.mark();
+                if (attempt >= MAX_UPDATE_ATTEMPTS) {
+                    updateFailures.mark();
+                    LOG.warn("Giving up update of parking activity {} after {} conflicting attempts", id, attempt);
+                    throw e;
+                }
+                LOG.debug("Parking activity {} changed during update, attempt {} of {}", id, attempt, MAX_UPDATE_ATTEMPTS);
+            }
+        }
+    }
+
+    /**
+     * Push the new state of :parkingActivity to the admission snapshot of its holder and announce the
+     * change, once the surrounding transaction (if any) has committed.
+     */
+    private void afterSave(ParkingActivity parkingActivity) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    onCommitted(parkingActivity);
+                }
+            });
+        } else {
+            onCommitted(parkingActivity);
+        }
+    }
+
+    /**
+     * Announce a change of activity :id that was committed outside this service.
+     */
+    void activityChanged(Long id) {
+        ParkingActivity parkingActivity = findById(id);
+        if (parkingActivity != null) {
+            onCommitted(parkingActivity);
+        }
+    }
+
+    private void onCommitted(ParkingActivity parkingActivity) {
+        admissionService.onActivitySaved(parkingActivity);
+        User holder = parkingActivity.getActivityHolder();
+        if (holder != null) {
+            eventPublisher.publishEvent(new ParkingActivityChangedEvent(this, holder.getId(),
+                    ParkingActivityUtil.constructDTO(parkingActivity, holder),
+                    parkingActivity.getLastModifiedDate().getMillis()));
+        }
+    }
+
+    /**
+     * Append :events to the timeline of their parking activities.
+     *
+     * @param events the timeline entries to append.
+     */
+    @Transactional
+    public void recordEvents(List<ParkingActivityEvent> events) {
+        if (events != null && !events.isEmpty()) {
+            parkingActivityEventRepository.save(events);
+        }
+    }
+
+    /**
+     * Return the timeline of a parking activity, oldest event first.
+     *
+     * @param activityId the parking activity id.
+     * @return
+     */
+    public List<ParkingActivityEventDTO> getTimeline(Long activityId) {
+        return parkingActivityEventRepository.getTimelineForActivity(activityId).stream()
+                .map(ParkingActivityEventDTO::new)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Attach the timeline of the activity to :dto.
+     *
+     * @param dto the parking activity to decorate.
+     * @return the same dto.
+     */
+    public ParkingActivityDTO withTimeline(ParkingActivityDTO dto) {
+        if (dto != null && dto.getId() != null) {
+            dto.setTimeline(getTimeline(dto.getId()));
+        }
+        return dto;
     }
     
     public ParkingActivity findById(Long id){
@@ -0,0 +1,302 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.LotDaySketch;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.repository.LotDaySketchRepository;
+import com.greenowl.callisto.service.analytics.DwellHistogram;
+import com.greenowl.callisto.service.analytics.HyperLogLog;
+import com.greenowl.callisto.web.rest.dto.LotAnalyticsDTO;
+import com.greenowl.callisto.web.rest.dto.ParkerStatsDTO;
+import org.apache.commons.lang.StringUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per lot and per day, estimates the number of distinct users who entered and the dwell time percentiles
+ * of the stays that ended, from the transitions of the lifecycle engine and without reading the parking
+ * activities back. The sketches of the current period are kept in memory and periodically merged into the
+ * row of this node in T_LOT_DAY_SKETCH; reads merge the rows of every node and day of the range.
+ */
+@Service
+public class ParkingAnalyticsService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingAnalyticsService.class);
+
+    /**
+     * Sketches not yet merged into the database, by lot and day.
+     */
+    private final Map<Bucket, Sketch> pending = new ConcurrentHashMap<>();
+
+    @Inject
+    private LotDaySketchRepository lotDaySketchRepository;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private DateTimeZone zone;
+
+    private String nodeId;
+
+    private Meter flushFailures;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        zone = DateTimeZone.forID(callistoProps.getReporting().getTimeZone());
+        nodeId = StringUtils.left(resolveNodeId(callistoProps.getAnalytics().getNodeId()), 64);
+        flushFailures = metricRegistry.meter(MetricRegistry.name(ParkingAnalyticsService.class, "flushFailures"));
+        metricRegistry.register(MetricRegistry.name(ParkingAnalyticsService.class, "pendingSketches"),
+                (Gauge<Integer>) pending::size);
+        LOG.info("Parking analytics sketches are written as node {}", nodeId);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Count the move of an activity of lot :lotId held by user :userId from :from to :to, once the
+     * surrounding transaction, if any, has committed.
+     *
+     * @param enteredAt when the car entered, null if not known.
+     * @param exitedAt  when the car left, null if not known.
+     */
+    public void transitioned(Long lotId, Long userId, ParkingState from, ParkingState to, DateTime enteredAt,
+                             DateTime exitedAt) {
+        if (lotId == null) {
+            return;
+        }
+        boolean entered = userId != null && to.isInside() && (from == null || !from.isInside());
+        boolean completed = enteredAt != null && to.isCompleted() && (from == null || !from.isCompleted());
+        if (!entered && !completed) {
+            return;
+        }
+        DateTime now = DateTime.now(zone);
+        Runnable record = () -> {
+            if (entered) {
+                DateTime day = (enteredAt == null ? now : enteredAt.withZone(zone)).withTimeAtStartOfDay();
+                pending.compute(new Bucket(lotId, day), (bucket, sketch) -> Sketch.orNew(sketch).entered(userId));
+            }
+            if (completed) {
+                DateTime exit = (exitedAt == null) ? now : exitedAt.withZone(zone);
+                long seconds = TimeUnit.MILLISECONDS.toSeconds(exit.getMillis() - enteredAt.getMillis());
+                pending.compute(new Bucket(lotId, exit.withTimeAtStartOfDay()),
+                        (bucket, sketch) -> Sketch.orNew(sketch).stayed(seconds));
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    record.run();
+                }
+            });
+        } else {
+            record.run();
+        }
+    }
+
+    /**
+     * Merge the pending sketches into the rows of this node.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.analytics.flushIntervalMillis:60000}",
+            fixedDelayString = "${callisto_config.analytics.flushIntervalMillis:60000}")
+    public void flush() {
+        Map<Bucket, Sketch> batch = new TreeMap<>();
+        for (Bucket bucket : pending.keySet()) {
+            // removal takes the same lock as compute, no value is recorded into a sketch after it is taken
+            Sketch sketch = pending.remove(bucket);
+            if (sketch != null) {
+                batch.put(bucket, sketch);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                write(batch);
+                return null;
+            });
+        } catch (Exception e) {
+            flushFailures.mark();
+            LOG.warn("Unable to write {} parking analytics sketches, keeping them for the next flush: {}",
+                    batch.size(), e.getMessage());
+            batch.forEach((bucket, sketch) -> pending.merge(bucket, sketch, Sketch::merge));
+        }
+    }
+
+    /**
+     * Merge :batch into the rows of this node, read with a write lock so a flush racing with the shutdown
+     * flush, or another node configured with the same node id, cannot overwrite the merge of the other. Two
+     * first inserts of the same row fail on its unique key, the losing batch is kept for the next flush.
+     */
+    private void write(Map<Bucket, Sketch> batch) {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        batch.forEach((bucket, sketch) -> {
+            LotDaySketch row = lotDaySketchRepository.getSketchForUpdate(bucket.lotId, bucket.day, nodeId);
+            Sketch merged = new Sketch().merge(sketch);
+            if (row == null) {
+                row = new LotDaySketch(bucket.lotId, bucket.day, nodeId);
+            } else {
+                merged.merge(Sketch.of(row));
+            }
+            row.setUniqueParkers(merged.parkers.toBytes());
+            row.setDwellTimes(merged.dwellTimes.toBytes());
+            row.setUpdatedAt(now);
+            lotDaySketchRepository.save(row);
+        });
+    }
+
+    /**
+     * @return the unique parkers and dwell times of lot :lotId per day from the day of :start to before :end,
+     * oldest first, and over the whole range. Values not flushed yet are not included.
+     */
+    public LotAnalyticsDTO getAnalytics(Long lotId, DateTime start, DateTime end) {
+        DateTime firstDay = start.withZone(zone).withTimeAtStartOfDay();
+        Map<DateTime, Sketch> days = new TreeMap<>();
+        for (LotDaySketch row : lotDaySketchRepository.getSketchesBetween(lotId, firstDay, end)) {
+            days.merge(row.getDay(), Sketch.of(row), Sketch::merge);
+        }
+        Sketch total = new Sketch();
+        List<ParkerStatsDTO> perDay = new ArrayList<>();
+        days.forEach((day, sketch) -> {
+            total.merge(sketch);
+            perDay.add(sketch.toDTO(lotId, day.getMillis()));
+        });
+        return new LotAnalyticsDTO(lotId, firstDay.getMillis(), end.getMillis(), total.toDTO(lotId, null), perDay);
+    }
+
+    private static String resolveNodeId(String configured) {
+        if (StringUtils.isNotBlank(configured)) {
+            return configured;
+        }
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (UnknownHostException e) {
+            LOG.warn("Unable to resolve the host name, set callisto_config.analytics.nodeId on every node", e);
+            return "default";
+        }
+    }
+
+    private static final class Bucket implements Comparable<Bucket> {
+
+        private final Long lotId;
+
+        private final DateTime day;
+
+        Bucket(Long lotId, DateTime day) {
+            this.lotId = lotId;
+            this.day = day.withZone(DateTimeZone.UTC);
+        }
+
+        @Override
+        public int compareTo(Bucket other) {
+            int byLot = lotId.compareTo(other.lotId);
+            return (byLot != 0) ? byLot : day.compareTo(other.day);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Bucket bucket = (Bucket) o;
+            return lotId.equals(bucket.lotId) && day.getMillis() == bucket.day.getMillis();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lotId, day.getMillis());
+        }
+    }
+
+    /**
+     * The users and dwell times of one lot and day. Only changed under the lock of its entry in the pending
+     * map, or once it has been taken out of it.
+     */
+    private static final class Sketch {
+
+        private final HyperLogLog parkers;
+
+        private final DwellHistogram dwellTimes;
+
+        Sketch() {
+            this(new HyperLogLog(), new DwellHistogram());
+        }
+
+        private Sketch(HyperLogLog parkers, DwellHistogram dwellTimes) {
+            this.parkers = parkers;
+            this.dwellTimes = dwellTimes;
+        }
+
+        static Sketch orNew(Sketch sketch) {
+            return (sketch == null) ? new Sketch() : sketch;
+        }
+
+        static Sketch of(LotDaySketch row) {
+            return new Sketch(HyperLogLog.fromBytes(row.getUniqueParkers()), DwellHistogram.fromBytes(row.getDwellTimes()));
+        }
+
+        Sketch entered(Long userId) {
+            parkers.offer(userId);
+            return this;
+        }
+
+        Sketch stayed(long seconds) {
+            dwellTimes.record(seconds);
+            return this;
+        }
+
+        Sketch merge(Sketch other) {
+            parkers.merge(other.parkers);
+            dwellTimes.merge(other.dwellTimes);
+            return this;
+        }
+
+        ParkerStatsDTO toDTO(Long lotId, Long day) {
+            return new ParkerStatsDTO(lotId, day, parkers.cardinality(), dwellTimes.getCount(), dwellTimes.getMean(),
+                    dwellTimes.valueAtPercentile(50), dwellTimes.valueAtPercentile(90),
+                    dwellTimes.valueAtPercentile(99), dwellTimes.getMax());
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.domain.ParkingTrigger;
+import com.greenowl.callisto.domain.User;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Moves parking activities through their lifecycle according to an explicit transition table. Every
+ * transition commits in its own short transaction as a conditional update on the expected prior state,
+ * so a gate response and a ticket callback racing on the same activity never overwrite each other: the
+ * loser re-reads the state and is re-evaluated against the table.
+ */
+@Service
+public class ParkingLifecycleEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingLifecycleEngine.class);
+
+    /**
+     * Attempts of one transition before giving up on an activity that keeps changing under it.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    private static final Map<ParkingTrigger, Map<ParkingState, ParkingState>> TRANSITIONS = new EnumMap<>(ParkingTrigger.class);
+
+    static {
+        for (ParkingTrigger trigger : ParkingTrigger.values()) {
+            TRANSITIONS.put(trigger, new EnumMap<>(ParkingState.class));
+        }
+        allow(ParkingTrigger.REQUEST_ENTER, ParkingState.PARKING_START, ParkingState.PENDING_ENTER);
+        allow(ParkingTrigger.REQUEST_ENTER_MANUAL, ParkingState.PARKING_START, ParkingState.PENDING_ENTER_MANUAL);
+
+        allow(ParkingTrigger.ENTER_GATE_FAILED, ParkingState.PENDING_ENTER, ParkingState.ALARM_ENTER);
+        allow(ParkingTrigger.ENTER_GATE_FAILED, ParkingState.PENDING_ENTER_MANUAL, ParkingState.ALARM_ENTER_MANUAL);
+
+        // the ticket callback is what the gate actually saw, it wins over an earlier gate failure
+        for (ParkingState from : new ParkingState[]{ParkingState.PARKING_START, ParkingState.PENDING_ENTER,
+                ParkingState.CONNECTION_TIMEOUT_ENTER, ParkingState.ALARM_ENTER}) {
+            allow(ParkingTrigger.ENTER_PASSED, from, ParkingState.IN_FLIGHT);
+            allow(ParkingTrigger.ENTER_REJECTED, from, ParkingState.ALARM_ENTER);
+        }
+        allow(ParkingTrigger.ENTER_PASSED, ParkingState.PENDING_ENTER_MANUAL, ParkingState.IN_FLIGHT_MANUAL);
+        allow(ParkingTrigger.ENTER_PASSED, ParkingState.ALARM_ENTER_MANUAL, ParkingState.IN_FLIGHT_MANUAL);
+        allow(ParkingTrigger.ENTER_REJECTED, ParkingState.PENDING_ENTER_MANUAL, ParkingState.ALARM_ENTER_MANUAL);
+
+        // a user who entered and is not known to have left may ask for the exit gate, again after an exit alarm.
+        // So may a user whose entry was never confirmed: the barrier may have opened while its callback was lost
+        for (ParkingState from : ParkingState.values()) {
+            if (from.mayRequestExit()) {
+                allow(ParkingTrigger.REQUEST_EXIT, from, ParkingState.PENDING_EXIT);
+                allow(ParkingTrigger.REQUEST_EXIT_MANUAL, from, ParkingState.PENDING_EXIT_MANUAL);
+            }
+        }
+        // the ticket callback of the exit gate wins over whatever the engine believed
+        for (ParkingState from : ParkingState.values()) {
+            if (from.isCompleted()) {
+                continue;
+            }
+            boolean manualExit = from == ParkingState.PENDING_EXIT_MANUAL || from == ParkingState.ALARM_EXIT_MANUAL;
+            allow(ParkingTrigger.EXIT_PASSED, from, manualExit ? ParkingState.COMPLETED_MANUAL : ParkingState.COMPLETED);
+            allow(ParkingTrigger.EXIT_REJECTED, from, manualExit ? ParkingState.ALARM_EXIT_MANUAL : ParkingState.ALARM_EXIT);
+        }
+
+        allow(ParkingTrigger.EXIT_GATE_FAILED, ParkingState.PENDING_EXIT, ParkingState.ALARM_EXIT);
+        allow(ParkingTrigger.EXIT_GATE_FAILED, ParkingState.PENDING_EXIT_MANUAL, ParkingState.ALARM_EXIT_MANUAL);
+    }
+
+    @Inject
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Inject
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Inject
+    private ParkingActivityService parkingActivityService;
+
+    @Inject
+    private ReportingService reportingService;
+
+    @Inject
+    private OccupancyRegistry occupancyRegistry;
+
+    @Inject
+    private ParkingAnalyticsService parkingAnalyticsService;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Meter conflicts;
+
+    private Meter failures;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        conflicts = metricRegistry.meter(MetricRegistry.name(ParkingLifecycleEngine.class, "conflicts"));
+        failures = metricRegistry.meter(MetricRegistry.name(ParkingLifecycleEngine.class, "failures"));
+    }
+
+    private static void allow(ParkingTrigger trigger, ParkingState from, ParkingState to) {
+        TRANSITIONS.get(trigger).put(from, to);
+    }
+
+    /**
+     * @return the state :trigger moves an activity in state :from to, null if :trigger is not allowed in :from.
+     */
+    public static ParkingState next(ParkingState from, ParkingTrigger trigger) {
+        return (from == null) ? null : TRANSITIONS.get(trigger).get(from);
+    }
+
+    public Result fire(Long activityId, ParkingTrigger trigger) {
+        return fire(activityId, trigger, new Change(), Collections.emptyList());
+    }
+
+    /**
+     * Apply :trigger to activity :activityId. :events are appended to the timeline whether the transition
+     * applies or not, a status change event is added when it does.
+     *
+     * @param activityId the parking activity.
+     * @param trigger    what happened.
+     * @param change     the fields set along with the new state.
+     * @param events     the timeline entries recording what happened.
+     * @return
+     */
+    public Result fire(Long activityId, ParkingTrigger trigger, Change change, List<ParkingActivityEvent> events) {
+        for (int attempt = 1; attempt <= MAX_ATTEMPTS; attempt++) {
+            Result result = transactionTemplate.execute(status -> attempt(activityId, trigger, change, events));
+            if (result != null) {
+                if (result.isApplied()) {
+                    parkingActivityService.activityChanged(activityId);
+                } else {
+                    LOG.info("Parking activity {} ignored {} in state {}", activityId, trigger, result.getState());
+                }
+                return result;
+            }
+            conflicts.mark();
+            LOG.debug("Parking activity {} changed while applying {}, attempt {} of {}", activityId, trigger,
+                    attempt, MAX_ATTEMPTS);
+        }
+        failures.mark();
+        LOG.warn("Giving up {} on parking activity {} after {} attempts", trigger, activityId, MAX_ATTEMPTS);
+        return transactionTemplate.execute(status -> {
+            recordEvents(events);
+            ParkingActivity activity = parkingActivityRepository.findOne(activityId);
+            return Result.rejected(activity == null ? null : activity.getParkingState());
+        });
+    }
+
+    /**
+     * Apply :commands in order within the caller's transaction, loading every activity they touch in one
+     * query. The new states are written by one flush of version checked updates and the timeline entries
+     * by one batch of inserts, so a conflict with a concurrent writer surfaces as an
+     * {@link org.springframework.dao.OptimisticLockingFailureException} before any event is written. The
+     * caller announces the applied changes once its transaction has committed.
+     *
+     * @param commands the triggers to apply, several may target the same activity.
+     * @return one result per command, in order. The state of an unknown activity is null.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public List<Result> applyAll(List<Command> commands) {
+        Set<Long> ids = commands.stream().map(command -> command.activityId).collect(Collectors.toSet());
+        Map<Long, ParkingActivity> activities = new HashMap<>();
+        parkingActivityRepository.findAll(ids).forEach(activity -> activities.put(activity.getId(), activity));
+        List<Result> results = new ArrayList<>(commands.size());
+        List<ParkingActivityEvent> timeline = new ArrayList<>();
+        for (Command command : commands) {
+            ParkingActivity activity = activities.get(command.activityId);
+            if (activity == null) {
+                results.add(Result.rejected(null));
+                continue;
+            }
+            timeline.addAll(command.events);
+            ParkingState from = activity.getParkingState();
+            ParkingState to = next(from, command.trigger);
+            if (to == null) {
+                results.add(Result.rejected(from));
+                continue;
+            }
+            command.change.applyTo(activity);
+            activity.setParkingState(to);
+            timeline.add(ParkingActivityEvent.statusChange(activity.getId(), to.getStatus()));
+            transitioned(activity, from, to, command.change);
+            results.add(Result.applied(from, to));
+        }
+        parkingActivityRepository.flush();
+        recordEvents(timeline);
+        // surface a duplicate idempotency key here rather than at commit
+        parkingActivityEventRepository.flush();
+        return results;
+    }
+
+    /**
+     * One try at the transition, null if the activity left the state it was read in before the update.
+     */
+    private Result attempt(Long activityId, ParkingTrigger trigger, Change change, List<ParkingActivityEvent> events) {
+        ParkingActivity activity = parkingActivityRepository.findOne(activityId);
+        if (activity == null) {
+            return Result.rejected(null);
+        }
+        ParkingState from = activity.getParkingState();
+        ParkingState to = next(from, trigger);
+        if (to == null) {
+            recordEvents(events);
+            return Result.rejected(from);
+        }
+        int updated = parkingActivityRepository.transition(activityId, from, from.getStatus(), to, to.getStatus(),
+                change.entryDatetime, change.exitDatetime, change.deviceInfo, DateTime.now(DateTimeZone.UTC));
+        if (updated == 0) {
+            return null;
+        }
+        List<ParkingActivityEvent> timeline = new ArrayList<>(events);
+        timeline.add(ParkingActivityEvent.statusChange(activityId, to.getStatus()));
+        recordEvents(timeline);
+        transitioned(activity, from, to, change);
+        return Result.applied(from, to);
+    }
+
+    /**
+     * Feed the move of :activity from :from to :to with :change to the live counters and reports.
+     */
+    private void transitioned(ParkingActivity activity, ParkingState from, ParkingState to, Change change) {
+        reportingService.transitioned(activity.getLotId(), from, to);
+        occupancyRegistry.transitioned(activity.getLotId(), from, to);
+        User holder = activity.getActivityHolder();
+        parkingAnalyticsService.transitioned(activity.getLotId(), holder == null ? null : holder.getId(), from, to,
+                activity.getEntryDatetime() != null ? activity.getEntryDatetime() : change.entryDatetime,
+                activity.getExitDatetime() != null ? activity.getExitDatetime() : change.exitDatetime);
+    }
+
+    private void recordEvents(List<ParkingActivityEvent> events) {
+        if (!events.isEmpty()) {
+            parkingActivityEventRepository.save(events);
+        }
+    }
+
+    /**
+     * Fields written together with the new state.
+     */
+    public static class Change {
+
+        private DateTime entryDatetime;
+
+        private DateTime exitDatetime;
+
+        private String deviceInfo;
+
+        /**
+         * Set the entry time, unless the activity already has one.
+         */
+        public Change enteredAt(DateTime entryDatetime) {
+            this.entryDatetime = entryDatetime;
+            return this;
+        }
+
+        /**
+         * Set the exit time, unless the activity already has one.
+         */
+        public Change exitedAt(DateTime exitDatetime) {
+            this.exitDatetime = exitDatetime;
+            return this;
+        }
+
+        public Change deviceInfo(String deviceInfo) {
+            this.deviceInfo = deviceInfo;
+            return this;
+        }
+
+        /**
+         * Same rules as the conditional update of {@link ParkingActivityRepository#transition}.
+         */
+        void applyTo(ParkingActivity activity) {
+            if (activity.getEntryDatetime() == null) {
+                activity.setEntryDatetime(entryDatetime);
+            }
+            if (activity.getExitDatetime() == null) {
+                activity.setExitDatetime(exitDatetime);
+            }
+            if (deviceInfo != null) {
+                activity.setDeviceInfo(deviceInfo);
+            }
+        }
+    }
+
+    /**
+     * One trigger of a batch, see {@link #applyAll(List)}.
+     */
+    public static class Command {
+
+        private final Long activityId;
+
+        private final ParkingTrigger trigger;
+
+        private final Change change;
+
+        private final List<ParkingActivityEvent> events;
+
+        public Command(Long activityId, ParkingTrigger trigger, Change change, List<ParkingActivityEvent> events) {
+            this.activityId = activityId;
+            this.trigger = trigger;
+            this.change = change;
+            this.events = events;
+        }
+    }
+
+    /**
+     * Outcome of a trigger: whether the activity moved, and the state it is in afterwards.
+     */
+    public static class Result {
+
+        private final boolean applied;
+
+        private final ParkingState previous;
+
+        private final ParkingState state;
+
+        private Result(boolean applied, ParkingState previous, ParkingState state) {
+            this.applied = applied;
+            this.previous = previous;
+            this.state = state;
+        }
+
+        static Result applied(ParkingState previous, ParkingState state) {
+            return new Result(true, previous, state);
+        }
+
+        static Result rejected(ParkingState state) {
+            return new Result(false, state, state);
+        }
+
+        public boolean isApplied() {
+            return applied;
+        }
+
+        public ParkingState getPrevious() {
+            return previous;
+        }
+
+        public ParkingState getState() {
+            return state;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.greenowl.callisto.service;
 
+import com.greenowl.callisto.cache.CacheKeys;
 import com.greenowl.callisto.domain.ParkingPlan;
 import com.greenowl.callisto.domain.PlanEligibleUser;
 import com.greenowl.callisto.repository.ParkingPlanRepository;
@@ -7,6 +8,7 @@ import com.greenowl.callisto.repository.PlanEligibleUserRepository;
 import com.greenowl.callisto.web.rest.dto.ParkingPlanDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
 import javax.inject.Inject;
@@ -48,6 +50,18 @@ public class ParkingPlanService {
     public ParkingPlanService() {
     }
 
+    /**
+     * Return the plan information of plan :planId, cached in the PARKING_PLAN region.
+     *
+     * @param planId the parking plan id.
+     * @return the plan information, null if the plan does not exist.
+     */
+    @Cacheable(value = CacheKeys.Names.PARKING_PLAN, unless = "#result == null")
+    public ParkingPlanDTO getParkingPlanInformation(Long planId) {
+        ParkingPlan parkingPlan = getParkingPlanById(planId);
+        return (parkingPlan == null) ? null : createParkingPlanInformation(parkingPlan);
+    }
+
     public ParkingPlanDTO createParkingPlanInformation(ParkingPlan parkingPlan) {
         ParkingPlanDTO parkingPlanDTO = new ParkingPlanDTO(parkingPlan.getId(),
                 parkingPlan.getPlanName(),
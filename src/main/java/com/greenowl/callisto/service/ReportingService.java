@@ -1,15 +1,404 @@
 package com.greenowl.callisto.service;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.LotOccupancy;
+import com.greenowl.callisto.domain.LotTrafficRollup;
+import com.greenowl.callisto.domain.ParkingEventCode;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.repository.LotOccupancyRepository;
+import com.greenowl.callisto.repository.LotTrafficRollupRepository;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.web.rest.dto.LotTrafficDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Days;
+import org.joda.time.LocalDate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
- * Generic Service responsible for tracking key statistics and logging them with external reporter.
+ * Keeps the hourly and daily traffic of every lot in rollup tables so dashboards read a few rows per lot
+ * instead of scanning the activities. Each rollup also carries the occupancy of its lot, as kept by
+ * {@link OccupancyRegistry}, when the rollup was last written.
+ * <p>
+ * Each committed lifecycle transition is counted in memory and the counts are added to the rollups in one
+ * transaction every flush interval. Counts that could not be written are kept for the next flush. A nightly
+ * reconciliation rebuilds the rollups of the last days from the status changes of the activity timelines,
+ * repairing what a crash or a change outside the lifecycle engine left behind. The same rebuild backfills any
+ * range of days.
  */
 @Service
 public class ReportingService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ReportingService.class);
 
+    /**
+     * Counts not yet added to the rollups, by lot and hour.
+     */
+    private final Map<Bucket, Counts> pending = new ConcurrentHashMap<>();
+
+    @Inject
+    private LotTrafficRollupRepository lotTrafficRollupRepository;
+
+    @Inject
+    private LotOccupancyRepository lotOccupancyRepository;
+
+    @Inject
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Inject
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private ExecutorService backfillExecutor;
+
+    private DateTimeZone zone;
+
+    private Meter flushFailures;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        zone = DateTimeZone.forID(callistoProps.getReporting().getTimeZone());
+        backfillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "reporting-backfill");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flushFailures = metricRegistry.meter(MetricRegistry.name(ReportingService.class, "flushFailures"));
+        metricRegistry.register(MetricRegistry.name(ReportingService.class, "pendingBuckets"),
+                (Gauge<Integer>) pending::size);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        backfillExecutor.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Count the move of an activity of lot :lotId from :from to :to, once the surrounding transaction, if any,
+     * has committed.
+     */
+    public void transitioned(Long lotId, ParkingState from, ParkingState to) {
+        if (lotId == null) {
+            return;
+        }
+        Counts counts = Counts.of(from, to);
+        if (counts.isEmpty()) {
+            return;
+        }
+        Bucket bucket = new Bucket(lotId, hourStart(DateTime.now(zone)));
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    pending.merge(bucket, counts, Counts::plus);
+                }
+            });
+        } else {
+            pending.merge(bucket, counts, Counts::plus);
+        }
+    }
+
+    /**
+     * Add the pending counts to the hourly and daily rollups.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.reporting.flushIntervalMillis:30000}",
+            fixedDelayString = "${callisto_config.reporting.flushIntervalMillis:30000}")
+    public void flush() {
+        Map<Bucket, Counts> batch = new HashMap<>();
+        for (Bucket bucket : pending.keySet()) {
+            Counts counts = pending.remove(bucket);
+            if (counts != null) {
+                batch.put(bucket, counts);
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            transactionTemplate.execute(status -> {
+                write(batch);
+                return null;
+            });
+        } catch (Exception e) {
+            flushFailures.mark();
+            LOG.warn("Unable to write {} traffic rollup buckets, keeping them for the next flush: {}", batch.size(),
+                    e.getMessage());
+            batch.forEach((bucket, counts) -> pending.merge(bucket, counts, Counts::plus));
+        }
+    }
+
+    private void write(Map<Bucket, Counts> batch) {
+        Map<Long, Long> occupancy = new HashMap<>();
+        batch.keySet().forEach(bucket -> occupancy.computeIfAbsent(bucket.lotId, lotId -> {
+            LotOccupancy lotOccupancy = lotOccupancyRepository.findOne(lotId);
+            return (lotOccupancy == null) ? 0L : lotOccupancy.getOccupancy();
+        }));
+
+        Map<Bucket, Counts> days = new HashMap<>();
+        batch.forEach((bucket, counts) -> {
+            add(LotTrafficRollup.HOUR, bucket, counts, occupancy.get(bucket.lotId));
+            days.merge(new Bucket(bucket.lotId, bucket.start.withTimeAtStartOfDay()), counts, Counts::plus);
+        });
+        days.forEach((bucket, counts) -> add(LotTrafficRollup.DAY, bucket, counts, occupancy.get(bucket.lotId)));
+    }
+
+    private void add(String period, Bucket bucket, Counts counts, long occupancy) {
+        DateTime start = bucket.start.withZone(DateTimeZone.UTC);
+        int updated = lotTrafficRollupRepository.add(bucket.lotId, period, start, counts.entries, counts.exits,
+                counts.exceptions, counts.manualOpens, occupancy);
+        if (updated == 0) {
+            lotTrafficRollupRepository.save(counts.toRollup(bucket.lotId, period, start, occupancy));
+        }
+    }
+
+    /**
+     * Rebuild the rollups of the last days, yesterday included.
+     */
+    @Scheduled(cron = "${callisto_config.reporting.reconcileCron:0 30 2 * * *}")
+    public void reconcileRecentDays() {
+        LocalDate today = LocalDate.now(zone);
+        int days = callistoProps.getReporting().getReconcileDays();
+        for (int i = days; i >= 1; i--) {
+            try {
+                reconcile(today.minusDays(i));
+            } catch (Exception e) {
+                LOG.error("Unable to reconcile the traffic rollups of " + today.minusDays(i), e);
+            }
+        }
+    }
+
+    /**
+     * Rebuild the rollups of the days from :from to :to, both included, in the background.
+     *
+     * @return the number of days that will be rebuilt.
+     */
+    public int backfill(LocalDate from, LocalDate to) {
+        LocalDate today = LocalDate.now(zone);
+        LocalDate last = to.isBefore(today) ? to : today.minusDays(1);
+        if (last.isBefore(from)) {
+            return 0;
+        }
+        backfillExecutor.execute(() -> {
+            for (LocalDate day = from; !day.isAfter(last); day = day.plusDays(1)) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    reconcile(day);
+                } catch (Exception e) {
+                    LOG.error("Unable to backfill the traffic rollups of " + day, e);
+                }
+            }
+            LOG.info("Backfilled the traffic rollups from {} to {}", from, last);
+        });
+        return Days.daysBetween(from, last).getDays() + 1;
+    }
+
+    /**
+     * Rebuild the hourly and daily rollups of :day from the status changes recorded that day.
+     */
+    public void reconcile(LocalDate day) {
+        flush();
+        DateTime start = day.toDateTimeAtStartOfDay(zone);
+        DateTime end = day.plusDays(1).toDateTimeAtStartOfDay(zone);
+        Map<Bucket, Counts> hours = new HashMap<>();
+        int pageSize = callistoProps.getReporting().getReconcileBatchSize();
+        long afterId = 0;
+        List<Object[]> page;
+        do {
+            page = parkingActivityEventRepository.getLotEventsBetween(ParkingEventCode.STATUS_CHANGE,
+                    start.withZone(DateTimeZone.UTC), end.withZone(DateTimeZone.UTC), afterId, new PageRequest(0, pageSize));
+            for (Object[] row : page) {
+                afterId = (Long) row[3];
+                ParkingState to = ParkingState.fromStatus((String) row[2]);
+                Counts counts = Counts.of(null, to);
+                if (row[0] != null && !counts.isEmpty()) {
+                    hours.merge(new Bucket((Long) row[0], hourStart(((DateTime) row[1]).withZone(zone))),
+                            counts, Counts::plus);
+                }
+            }
+        } while (page.size() == pageSize);
+
+        transactionTemplate.execute(status -> {
+            lotTrafficRollupRepository.deleteBetween(start.withZone(DateTimeZone.UTC), end.withZone(DateTimeZone.UTC));
+            DateTime lookback = start.minusDays(callistoProps.getReporting().getOccupancyLookbackDays());
+            Map<Long, Counts> dayTotals = new TreeMap<>();
+            Map<Long, Long> dayEndOccupancy = new HashMap<>();
+            for (DateTime hour = start; hour.isBefore(end); hour = hour.plusHours(1)) {
+                DateTime hourEnd = hour.plusHours(1);
+                Map<Long, Long> occupancy = toLotCounts(parkingActivityRepository.countInsideAtPerLot(
+                        hourEnd.withZone(DateTimeZone.UTC), lookback.withZone(DateTimeZone.UTC)));
+                Map<Long, Counts> lots = new HashMap<>();
+                occupancy.keySet().forEach(lotId -> lots.put(lotId, Counts.EMPTY));
+                for (Map.Entry<Bucket, Counts> entry : hours.entrySet()) {
+                    if (entry.getKey().start.equals(hour)) {
+                        lots.put(entry.getKey().lotId, entry.getValue());
+                    }
+                }
+                for (Map.Entry<Long, Counts> lot : lots.entrySet()) {
+                    long lotOccupancy = occupancy.getOrDefault(lot.getKey(), 0L);
+                    lotTrafficRollupRepository.save(lot.getValue().toRollup(lot.getKey(), LotTrafficRollup.HOUR,
+                            hour.withZone(DateTimeZone.UTC), lotOccupancy));
+                    dayTotals.merge(lot.getKey(), lot.getValue(), Counts::plus);
+                    if (hourEnd.equals(end)) {
+                        dayEndOccupancy.put(lot.getKey(), lotOccupancy);
+                    }
+                }
+            }
+            dayTotals.forEach((lotId, counts) -> lotTrafficRollupRepository.save(counts.toRollup(lotId,
+                    LotTrafficRollup.DAY, start.withZone(DateTimeZone.UTC), dayEndOccupancy.getOrDefault(lotId, 0L))));
+            return null;
+        });
+        LOG.info("Reconciled the traffic rollups of {} from {} status changes", day,
+                hours.values().stream().mapToLong(counts -> counts.entries + counts.exits).sum());
+    }
+
+    /**
+     * @param period {@link LotTrafficRollup#HOUR} or {@link LotTrafficRollup#DAY}.
+     * @return the traffic of lot :lotId per :period bucket starting in [:start, :end), oldest first.
+     */
+    public List<LotTrafficDTO> getTraffic(Long lotId, String period, DateTime start, DateTime end) {
+        return lotTrafficRollupRepository.getRollupsBetween(lotId, period, start, end).stream()
+                .map(rollup -> new LotTrafficDTO(rollup.getLotId(), rollup.getPeriod(), rollup.getBucketStart().getMillis(),
+                        rollup.getEntries(), rollup.getExits(), rollup.getExceptions(), rollup.getManualOpens(),
+                        rollup.getOccupancy()))
+                .collect(Collectors.toList());
+    }
+
+    private static DateTime hourStart(DateTime time) {
+        return time.withMinuteOfHour(0).withSecondOfMinute(0).withMillisOfSecond(0);
+    }
+
+    private static Map<Long, Long> toLotCounts(List<Object[]> rows) {
+        Map<Long, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            if (row[0] != null) {
+                counts.put((Long) row[0], ((Number) row[1]).longValue());
+            }
+        }
+        return counts;
+    }
+
+    private static final class Bucket {
+
+        private final Long lotId;
+
+        private final DateTime start;
+
+        Bucket(Long lotId, DateTime start) {
+            this.lotId = lotId;
+            this.start = start;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Bucket)) {
+                return false;
+            }
+            Bucket bucket = (Bucket) o;
+            return lotId.equals(bucket.lotId) && start.getMillis() == bucket.start.getMillis();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(lotId, start.getMillis());
+        }
+    }
+
+    /**
+     * What a set of transitions adds to a rollup.
+     */
+    private static final class Counts {
+
+        private static final Counts EMPTY = new Counts(0, 0, 0, 0);
+
+        private final long entries;
+
+        private final long exits;
+
+        private final long exceptions;
+
+        private final long manualOpens;
+
+        Counts(long entries, long exits, long exceptions, long manualOpens) {
+            this.entries = entries;
+            this.exits = exits;
+            this.exceptions = exceptions;
+            this.manualOpens = manualOpens;
+        }
+
+        /**
+         * An entry or an exit is the pass the gate reported, an exception any alarm, a manual open any manual
+         * request.
+         */
+        static Counts of(ParkingState from, ParkingState to) {
+            if (to == null) {
+                return EMPTY;
+            }
+            boolean entered = to == ParkingState.IN_FLIGHT || to == ParkingState.IN_FLIGHT_MANUAL;
+            boolean manualOpen = to == ParkingState.PENDING_ENTER_MANUAL || to == ParkingState.PENDING_EXIT_MANUAL;
+            return new Counts(entered ? 1 : 0, to.isCompleted() ? 1 : 0, to.isAlarm() ? 1 : 0, manualOpen ? 1 : 0);
+        }
+
+        Counts plus(Counts other) {
+            return new Counts(entries + other.entries, exits + other.exits, exceptions + other.exceptions,
+                    manualOpens + other.manualOpens);
+        }
+
+        boolean isEmpty() {
+            return entries == 0 && exits == 0 && exceptions == 0 && manualOpens == 0;
+        }
+
+        LotTrafficRollup toRollup(Long lotId, String period, DateTime start, long lotOccupancy) {
+            LotTrafficRollup rollup = new LotTrafficRollup(lotId, period, start);
+            rollup.setEntries(entries);
+            rollup.setExits(exits);
+            rollup.setExceptions(exceptions);
+            rollup.setManualOpens(manualOpens);
+            rollup.setOccupancy(lotOccupancy);
+            return rollup;
+        }
+    }
 }
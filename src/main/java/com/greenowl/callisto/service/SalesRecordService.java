@@ -5,8 +5,11 @@ import com.greenowl.callisto.domain.PlanSubscription;
 import com.greenowl.callisto.domain.SalesRecord;
 import com.greenowl.callisto.domain.User;
 import com.greenowl.callisto.repository.PlanSubscriptionRepository;
+import com.greenowl.callisto.repository.RecordQueryRepository;
 import com.greenowl.callisto.repository.SalesRecordRepository;
+import com.greenowl.callisto.util.KeysetCursor;
 import com.greenowl.callisto.util.SalesActivityUtil;
+import com.greenowl.callisto.web.rest.dto.RevenueSummaryDTO;
 import com.greenowl.callisto.web.rest.dto.SalesRecordDTO;
 import com.stripe.Stripe;
 import com.stripe.exception.*;
@@ -15,12 +18,14 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import javax.inject.Inject;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 @Service
 public class SalesRecordService {
@@ -31,51 +36,109 @@ public class SalesRecordService {
 	@Inject
 	private PlanSubscriptionRepository planSubscriptionRepository;
 
+	@Inject
+	private RecordQueryRepository recordQueryRepository;
+
 	private static final Logger LOG = LoggerFactory.getLogger(SalesRecordService.class);
 
+	/**
+	 * Stored record type of each :type filter of the records api, besides "all".
+	 */
+	private static final Map<String, String> TYPE_FILTERS = new HashMap<>();
+
+	static {
+		TYPE_FILTERS.put("subscription", "Subscription");
+		TYPE_FILTERS.put("daily", "Daily");
+	}
+
 	public SalesRecordDTO savePlanSaleRecord(User user, PlanSubscription plan) throws AuthenticationException,
 			InvalidRequestException, APIConnectionException, CardException, APIException {
 		return createPlanSaleRecord(user, plan);
 
 	}
 
-	private List<SalesRecord> findAllSalesRecordsBetween(DateTime startTime, DateTime endTime) {
-		return salesRecordRepository.getSalesRecordsBetween(startTime, endTime);
+	/**
+	 * Return the record type selected by the :type filter of the records api.
+	 *
+	 * @param type "all", "subscription" or "daily", in any case.
+	 * @return the stored type, null for "all" and for an unknown filter, see {@link #isKnownType(String)}.
+	 */
+	public static String toRecordType(String type) {
+		return TYPE_FILTERS.get(type.toLowerCase());
+	}
+
+	public static boolean isKnownType(String type) {
+		return "all".equalsIgnoreCase(type) || TYPE_FILTERS.containsKey(type.toLowerCase());
 	}
 
 	/**
 	 * Return all the records between start date and end date based on the
-	 * filtered type.
+	 * filtered type, filtered by the database.
 	 *
 	 * @param startTime
 	 * @param endTime
 	 * @param type
 	 * @return
 	 */
-	public List<SalesRecord> findAllFilteredSalesRecordsBetweenStartAndEndDate(DateTime start, DateTime end,
+	public List<SalesRecordDTO> findAllFilteredSalesRecordsBetweenStartAndEndDate(DateTime start, DateTime end,
 			String type) {
-		List<SalesRecord> filteredList = new ArrayList<>();
-		List<SalesRecord> salesRecords = findAllSalesRecordsBetween(start, end);
-		for (SalesRecord salesRecord : salesRecords) {
-			switch (type.toLowerCase()) {
-			case "all":
-				filteredList.add(salesRecord);
-				break;
-			case "subscription":
-				if (salesRecord.getType().equals("Subscription")) {
-					filteredList.add(salesRecord);
-				}
-				break;
-			case "daily":
-				if (salesRecord.getType().equals("Daily")) {
-					filteredList.add(salesRecord);
-				}
-				break;
-			default:
-				break;
-			}
+		if (!isKnownType(type)) {
+			return new ArrayList<>();
 		}
-		return filteredList;
+		String recordType = toRecordType(type);
+		if (recordType == null) {
+			return salesRecordRepository.getSalesRecordDTOsBetween(start, end);
+		}
+		return salesRecordRepository.getSalesRecordDTOsBetweenOfType(start, end, recordType);
+	}
+
+	/**
+	 * Return the revenue totals per lot, plan, type and day of the records created
+	 * in [start, end), aggregated by the database.
+	 *
+	 * @param start the lower created date bound, inclusive.
+	 * @param end   the upper created date bound, exclusive.
+	 * @param lotId only this lot, null for every lot.
+	 * @param type  only this stored record type, null for every type.
+	 * @return
+	 */
+	@Transactional(readOnly = true)
+	public List<RevenueSummaryDTO> getRevenueSummary(DateTime start, DateTime end, Long lotId, String type) {
+		return salesRecordRepository.getRevenueSummary(start, end, lotId, type);
+	}
+
+	/**
+	 * Return one keyset page of sales records, newest first.
+	 *
+	 * @param start the lower created date bound, null for none.
+	 * @param end   the upper created date bound, null for none.
+	 * @param type  the stored record type, null for every type.
+	 * @param after the cursor of the last record of the previous page, null for the first page.
+	 * @param limit the page size.
+	 * @return
+	 */
+	@Transactional(readOnly = true)
+	public List<SalesRecordDTO> getRecordsPage(DateTime start, DateTime end, String type, KeysetCursor after,
+			int limit) {
+		return recordQueryRepository.findPage(recordFilter(start, end, type), after, limit);
+	}
+
+	/**
+	 * Hand every sales record in the range to :consumer, newest first, without loading them all.
+	 *
+	 * @param start    the lower created date bound, null for none.
+	 * @param end      the upper created date bound, null for none.
+	 * @param type     the stored record type, null for every type.
+	 * @param consumer receives the records one by one.
+	 */
+	@Transactional(readOnly = true)
+	public void streamRecords(DateTime start, DateTime end, String type, Consumer<SalesRecordDTO> consumer) {
+		recordQueryRepository.scroll(recordFilter(start, end, type), consumer);
+	}
+
+	private RecordQueryRepository.Filter<SalesRecordDTO> recordFilter(DateTime start, DateTime end, String type) {
+		return new RecordQueryRepository.Filter<>(SalesRecordDTO.class, SalesRecordRepository.RECORD_PROJECTION)
+				.createdAfter(start).createdBefore(end).equal("type", type);
 	}
 
 	public boolean validNewTransaction(User user, DateTime startDate, DateTime endDate) {
@@ -4,6 +4,7 @@ import com.greenowl.callisto.config.Constants;
 import com.greenowl.callisto.domain.*;
 import com.greenowl.callisto.factory.PaymentProfileFactory;
 import com.greenowl.callisto.repository.*;
+import com.greenowl.callisto.service.gate.AdmissionService;
 import com.greenowl.callisto.web.rest.dto.payment.CardProfile;
 import com.stripe.Stripe;
 import com.stripe.exception.*;
@@ -35,16 +36,29 @@ public class SubscriptionService {
 	@Inject
 	private UserRepository userRepository;
 
-	@Inject
-	private PlanEligibleUserRepository planEligibleUserRepository;
-	
 	@Inject
 	private SalesRecordService salesRecordService;
 
+	@Inject
+	private AdmissionService admissionService;
+
+	@Inject
+	private EligiblePlanUserService eligiblePlanUserService;
+
 	public PlanSubscription getPlanSubscriptionById(Long id) {
 		return planSubscriptionRepository.getPlanSubscriptionById(id);
 	}
 
+	/**
+	 * Get the subscriptions of a user with their parking plan already loaded.
+	 *
+	 * @param user
+	 * @return
+	 */
+	public List<PlanSubscription> getPlanSubscriptionsWithPlan(User user) {
+		return planSubscriptionRepository.getPlanSubscriptionWithPlanByUser(user);
+	}
+
 	/**
 	 * Update plan subscription for a user based on one payment.
 	 *
@@ -67,6 +81,7 @@ public class SubscriptionService {
 			planSubscription.setPlanChargeAmount(parkingPlan.getUnitChargeAmount());
 			planSubscription.setStripeId(stripeId);
 			planSubscriptionRepository.save(planSubscription);
+			admissionService.evict(user.getId());
 			return planSubscription;
 		} else {
 			return null;
@@ -145,14 +160,7 @@ public class SubscriptionService {
 				"Remote Subscriber");
 		paymentProfileRepository.save(savedProfile);
 		// might need to change this one later
-		List<PlanEligibleUser> users = planEligibleUserRepository.getEligibleUsersByUserEmail(user.getLogin());
-		for (PlanEligibleUser eligibleUser : users) {
-			if (eligibleUser.getPlanGroup().getId().equals(planId)) {
-				eligibleUser.setSubscribed(true);
-				planEligibleUserRepository.save(eligibleUser);
-				break;
-			}
-		}
+		eligiblePlanUserService.markSubscribed(user.getLogin(), planId);
 		PlanSubscription planSubscription = createPlanSubscription(user, planId, savedProfile.getId(),
 				"Remote Subscribed");
 		return planSubscription;
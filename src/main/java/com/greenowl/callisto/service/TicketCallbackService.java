@@ -0,0 +1,300 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingTrigger;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
+import com.greenowl.callisto.service.gate.GateCycleTracker;
+import com.greenowl.callisto.web.rest.dto.TicketEventDTO;
+import com.greenowl.callisto.web.rest.dto.TicketEventResultDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the passes reported by the gate controller. A batch is applied in one transaction: the activities
+ * it touches are loaded with one query, updated with one flush and its timeline entries written as one batch
+ * of inserts. Every item carries an idempotency key, replayed items are recognised from a set of recently seen
+ * keys and, past that, from the unique key of the recorded ticket callback event.
+ */
+@Service
+public class TicketCallbackService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TicketCallbackService.class);
+
+    /**
+     * Format of the access time sent by the gate controller.
+     */
+    private static final DateTimeFormatter ACCESS_TIME_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd_HH:mm:ss");
+
+    /**
+     * Attempts of one batch before its remaining items are reported as failed.
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
+    @Inject
+    private ParkingLifecycleEngine parkingLifecycleEngine;
+
+    @Inject
+    private ParkingActivityService parkingActivityService;
+
+    @Inject
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Inject
+    private GateCycleTracker gateCycleTracker;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Cache<String, Boolean> recentKeys;
+
+    private Meter duplicates;
+
+    private Meter conflicts;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        CallistoBeanConfigurationProperties.Ticket ticketProps = callistoProps.getTicket();
+        recentKeys = CacheBuilder.newBuilder()
+                .maximumSize(ticketProps.getRecentKeysMaxEntries())
+                .expireAfterWrite(ticketProps.getRecentKeysTimeToLiveMinutes(), TimeUnit.MINUTES)
+                .build();
+        duplicates = metricRegistry.meter(MetricRegistry.name(TicketCallbackService.class, "duplicates"));
+        conflicts = metricRegistry.meter(MetricRegistry.name(TicketCallbackService.class, "conflicts"));
+    }
+
+    /**
+     * @return the trigger of a pass through gate :gateId reported with :status, null for an unknown gate.
+     */
+    public static ParkingTrigger toTrigger(int gateId, String status) {
+        boolean passed = status != null && status.toLowerCase().contains("pass");
+        if (Constants.PARKING_TICKET_TYPE_ENTER == gateId) {
+            return passed ? ParkingTrigger.ENTER_PASSED : ParkingTrigger.ENTER_REJECTED;
+        } else if (Constants.PARKING_TICKET_TYPE_EXIT == gateId) {
+            return passed ? ParkingTrigger.EXIT_PASSED : ParkingTrigger.EXIT_REJECTED;
+        }
+        return null;
+    }
+
+    /**
+     * @return the fields set by a pass through gate :gateId at :now.
+     */
+    public static ParkingLifecycleEngine.Change changeFor(int gateId, DateTime now) {
+        ParkingLifecycleEngine.Change change = new ParkingLifecycleEngine.Change();
+        return (Constants.PARKING_TICKET_TYPE_ENTER == gateId) ? change.enteredAt(now) : change.exitedAt(now);
+    }
+
+    /**
+     * @return the timeline payload of a callback reporting :status with the url encoded :message.
+     */
+    public static String payload(String status, String message) {
+        if (message == null) {
+            return status;
+        }
+        try {
+            return status + ", " + URLDecoder.decode(message, "utf-8");
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+            return status + ", " + message;
+        }
+    }
+
+    /**
+     * Apply the passes :events in order.
+     *
+     * @param events the passes as reported by the gate controller, possibly replayed.
+     * @return one result per item of :events, in order.
+     */
+    public List<TicketEventResultDTO> applyAll(List<TicketEventDTO> events) {
+        TicketEventResultDTO[] results = new TicketEventResultDTO[events.size()];
+        List<Integer> pending = new ArrayList<>();
+        Set<String> batchKeys = new HashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            TicketEventDTO event = events.get(i);
+            String error = validate(event);
+            if (error != null) {
+                results[i] = new TicketEventResultDTO(event, TicketEventResultDTO.INVALID, null, error);
+            } else if (!batchKeys.add(event.getIdempotencyKey())
+                    || recentKeys.getIfPresent(event.getIdempotencyKey()) != null) {
+                duplicates.mark();
+                results[i] = new TicketEventResultDTO(event, TicketEventResultDTO.DUPLICATE, null, null);
+            } else {
+                pending.add(i);
+            }
+        }
+
+        int attempt = 1;
+        String failure = "Parking activity is being updated, send again";
+        while (attempt <= MAX_ATTEMPTS && !pending.isEmpty()) {
+            try {
+                Map<Integer, TicketEventResultDTO> outcome = transactionTemplate.execute(status -> apply(events, pending));
+                Set<Long> changed = new LinkedHashSet<>();
+                outcome.forEach((i, result) -> {
+                    results[i] = result;
+                    if (!TicketEventResultDTO.NOT_FOUND.equals(result.getResult())) {
+                        recentKeys.put(result.getIdempotencyKey(), Boolean.TRUE);
+                    }
+                    if (TicketEventResultDTO.APPLIED.equals(result.getResult())) {
+                        changed.add(result.getTicketNo());
+                    }
+                    if (TicketEventResultDTO.APPLIED.equals(result.getResult())
+                            || TicketEventResultDTO.IGNORED.equals(result.getResult())) {
+                        TicketEventDTO event = events.get(i);
+                        ParkingTrigger trigger = toTrigger(Integer.parseInt(event.getGateId()), event.getStatus());
+                        gateCycleTracker.complete(Integer.parseInt(event.getGateId()), String.valueOf(event.getTicketNo()),
+                                trigger == ParkingTrigger.ENTER_PASSED || trigger == ParkingTrigger.EXIT_PASSED);
+                    }
+                });
+                changed.forEach(parkingActivityService::activityChanged);
+                pending.clear();
+            } catch (OptimisticLockingFailureException e) {
+                // a concurrent writer moved an activity: start over
+                conflicts.mark();
+                LOG.debug("Ticket event batch of {} items conflicted, attempt {} of {}: {}", pending.size(), attempt,
+                        MAX_ATTEMPTS, e.getMessage());
+                attempt++;
+            } catch (DataIntegrityViolationException e) {
+                // a concurrent delivery recorded some of the keys first, those passes are already applied
+                List<Integer> recorded = recorded(events, pending);
+                if (recorded.isEmpty()) {
+                    LOG.error("Ticket event batch of {} items violates a constraint other than the idempotency key",
+                            pending.size(), e);
+                    failure = "Unable to record the ticket event";
+                    break;
+                }
+                for (int i : recorded) {
+                    duplicates.mark();
+                    recentKeys.put(events.get(i).getIdempotencyKey(), Boolean.TRUE);
+                    results[i] = new TicketEventResultDTO(events.get(i), TicketEventResultDTO.DUPLICATE, null, null);
+                }
+                pending.removeAll(recorded);
+            }
+        }
+        for (int i : pending) {
+            LOG.warn("Giving up ticket event {}: {}", events.get(i).getIdempotencyKey(), failure);
+            results[i] = new TicketEventResultDTO(events.get(i), TicketEventResultDTO.FAILED, null, failure);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * @return the items of :pending whose idempotency key is recorded.
+     */
+    private List<Integer> recorded(List<TicketEventDTO> events, List<Integer> pending) {
+        Set<String> keys = new HashSet<>(parkingActivityEventRepository.findIdempotencyKeys(
+                pending.stream().map(i -> events.get(i).getIdempotencyKey()).collect(Collectors.toList())));
+        return pending.stream().filter(i -> keys.contains(events.get(i).getIdempotencyKey())).collect(Collectors.toList());
+    }
+
+    private Map<Integer, TicketEventResultDTO> apply(List<TicketEventDTO> events, List<Integer> pending) {
+        Set<Integer> replayed = new HashSet<>(recorded(events, pending));
+        Map<Integer, TicketEventResultDTO> outcome = new HashMap<>();
+        List<Integer> applying = new ArrayList<>();
+        List<ParkingLifecycleEngine.Command> commands = new ArrayList<>();
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        for (int i : pending) {
+            TicketEventDTO event = events.get(i);
+            if (replayed.contains(i)) {
+                duplicates.mark();
+                outcome.put(i, new TicketEventResultDTO(event, TicketEventResultDTO.DUPLICATE, null, null));
+                continue;
+            }
+            int gateId = Integer.parseInt(event.getGateId());
+            // the status change, if any, is recorded by the lifecycle engine right after this event
+            ParkingActivityEvent callback = ParkingActivityEvent.ticketCallback(event.getTicketNo(), gateId, null,
+                    payload(event.getStatus(), event.getMessage()),
+                    ACCESS_TIME_FORMAT.parseDateTime(event.getAccessDateTime()).withZone(DateTimeZone.UTC));
+            callback.setIdempotencyKey(event.getIdempotencyKey());
+            applying.add(i);
+            commands.add(new ParkingLifecycleEngine.Command(event.getTicketNo(), toTrigger(gateId, event.getStatus()),
+                    changeFor(gateId, now), Collections.singletonList(callback)));
+        }
+        if (commands.isEmpty()) {
+            return outcome;
+        }
+        List<ParkingLifecycleEngine.Result> results = parkingLifecycleEngine.applyAll(commands);
+        for (int n = 0; n < applying.size(); n++) {
+            TicketEventDTO event = events.get(applying.get(n));
+            ParkingLifecycleEngine.Result result = results.get(n);
+            if (result.getState() == null) {
+                outcome.put(applying.get(n), new TicketEventResultDTO(event, TicketEventResultDTO.NOT_FOUND, null,
+                        "Unable to find ticket with id = " + event.getTicketNo()));
+            } else if (result.isApplied()) {
+                outcome.put(applying.get(n), new TicketEventResultDTO(event, TicketEventResultDTO.APPLIED,
+                        result.getState().getStatus(), null));
+            } else {
+                LOG.error("Ticket no:{} ignored {} in state {}", event.getTicketNo(),
+                        toTrigger(Integer.parseInt(event.getGateId()), event.getStatus()), result.getState());
+                outcome.put(applying.get(n), new TicketEventResultDTO(event, TicketEventResultDTO.IGNORED,
+                        result.getState().getStatus(), null));
+            }
+        }
+        return outcome;
+    }
+
+    /**
+     * @return why :event cannot be applied, null if it can.
+     */
+    private static String validate(TicketEventDTO event) {
+        String key = event.getIdempotencyKey();
+        if (key == null || key.isEmpty() || key.length() > ParkingActivityEvent.MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return "Bad idempotencyKey parameter:" + key;
+        }
+        if (event.getTicketNo() == null) {
+            return "Missing ticketNo parameter";
+        }
+        try {
+            ACCESS_TIME_FORMAT.parseDateTime(event.getAccessDateTime());
+        } catch (Exception e) {
+            return "Bad accessDateTime parameter:" + event.getAccessDateTime();
+        }
+        try {
+            if (toTrigger(Integer.parseInt(event.getGateId()), event.getStatus()) != null) {
+                return null;
+            }
+        } catch (NumberFormatException e) {
+            LOG.debug("Wrong gate id:{}", event.getGateId());
+        }
+        return "Bad gateId parameter:" + event.getGateId();
+    }
+}
@@ -6,6 +6,8 @@ import com.greenowl.callisto.repository.AuthorityRepository;
 import com.greenowl.callisto.repository.UserRepository;
 import com.greenowl.callisto.security.AuthoritiesConstants;
 import com.greenowl.callisto.security.SecurityUtils;
+import com.greenowl.callisto.security.xauth.TokenCache;
+import com.greenowl.callisto.security.xauth.TokenGenerations;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.scheduling.annotation.Async;
@@ -36,6 +38,12 @@ public class UserService {
     @Inject
     private AuthorityRepository authorityRepository;
 
+    @Inject
+    private TokenCache tokenCache;
+
+    @Inject
+    private TokenGenerations tokenGenerations;
+
     public void updateUserInformation(String login, String firstName, String lastName, String region) {
         Optional<User> optional = userRepository.findOneByLogin(login);
         if (!optional.isPresent()) {
@@ -88,7 +96,7 @@ public class UserService {
         User currentUser = getCurrentUser();
         String encryptedPassword = passwordEncoder.encode(password);
         currentUser.setPassword(encryptedPassword);
-        userRepository.save(currentUser);
+        revokeTokens(currentUser);
         LOG.debug("Changed password for User: {}", currentUser);
     }
 
@@ -97,10 +105,22 @@ public class UserService {
         if (user == null) return;
         String encryptedPassword = passwordEncoder.encode(password);
         user.setPassword(encryptedPassword);
-        userRepository.save(user);
+        revokeTokens(user);
         LOG.debug("Changed password for User: {}", user);
     }
 
+    /**
+     * Bump the token generation of :user and save it, every token issued to :user so far stops working.
+     *
+     * @param user
+     */
+    private void revokeTokens(User user) {
+        user.setTokenGeneration(user.getTokenGeneration() + 1);
+        userRepository.save(user);
+        tokenGenerations.update(user.getId(), user.getTokenGeneration());
+        tokenCache.invalidate(user.getLogin());
+    }
+
     @Transactional(readOnly = true)
     public User getUserWithAuthorities() {
         User currentUser = getCurrentUser();
@@ -173,6 +193,8 @@ public class UserService {
             return false;
         }
         userRepository.delete(foundUser);
+        tokenCache.invalidate(foundUser.getLogin());
+        tokenGenerations.invalidate(foundUser.getId());
         return !userRepository.exists(foundUser.getId());
     }
 
@@ -0,0 +1,148 @@
+package com.greenowl.callisto.service.analytics;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Distribution of durations in seconds, in log-linear buckets the way an HDR histogram lays them out: exact
+ * below 64 seconds, then 32 buckets per power of two, so any percentile is within about 3% of the exact
+ * one. Durations above {@link #MAX_VALUE} are counted as {@link #MAX_VALUE}. Histograms merge by adding
+ * their buckets. Not thread safe.
+ */
+public class DwellHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private static final int SUB_BUCKET_HALF = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * About 48 days.
+     */
+    public static final long MAX_VALUE = (1L << 22) - 1;
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final long[] counts = new long[BUCKETS];
+
+    private long count;
+
+    private long sum;
+
+    private long max;
+
+    public void record(long seconds) {
+        long value = Math.min(Math.max(seconds, 0), MAX_VALUE);
+        counts[index(value)]++;
+        count++;
+        sum += value;
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Add the durations of :other to this histogram.
+     */
+    public void merge(DwellHistogram other) {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return (count == 0) ? 0 : (double) sum / count;
+    }
+
+    /**
+     * @param percentile in [0, 100].
+     * @return the duration :percentile percent of the recorded durations are at most, 0 if there are none.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min((lowest(i) + highest(i)) / 2, max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * @return the histogram as bytes, only the non empty buckets.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SketchCodec.writeVarLong(out, count);
+        SketchCodec.writeVarLong(out, sum);
+        SketchCodec.writeVarLong(out, max);
+        int used = 0;
+        for (long bucket : counts) {
+            if (bucket != 0) {
+                used++;
+            }
+        }
+        SketchCodec.writeVarLong(out, used);
+        int previous = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                SketchCodec.writeVarLong(out, i - previous);
+                SketchCodec.writeVarLong(out, counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static DwellHistogram fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        DwellHistogram histogram = new DwellHistogram();
+        histogram.count = SketchCodec.readVarLong(in);
+        histogram.sum = SketchCodec.readVarLong(in);
+        histogram.max = SketchCodec.readVarLong(in);
+        long used = SketchCodec.readVarLong(in);
+        int index = 0;
+        for (long n = 0; n < used; n++) {
+            index += (int) SketchCodec.readVarLong(in);
+            histogram.counts[index] = SketchCodec.readVarLong(in);
+        }
+        return histogram;
+    }
+
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKET_HALF) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKET_HALF + (int) (value >>> shift);
+    }
+
+    private static long lowest(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        return (long) (index - shift * SUB_BUCKET_HALF) << shift;
+    }
+
+    private static long highest(int index) {
+        if (index < 2 * SUB_BUCKET_HALF) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF - 1;
+        return lowest(index) + (1L << shift) - 1;
+    }
+}
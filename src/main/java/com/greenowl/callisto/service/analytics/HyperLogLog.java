@@ -0,0 +1,147 @@
+package com.greenowl.callisto.service.analytics;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Estimates the number of distinct values offered to it in a fixed 2^:precision registers, about
+ * 1.04 / sqrt(2^:precision) relative error. Two sketches of the same precision merge into the sketch of the
+ * union of their values, so sketches of several nodes or days add up without double counting. Not thread
+ * safe.
+ */
+public class HyperLogLog {
+
+    public static final int DEFAULT_PRECISION = 12;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    private static final byte DENSE = 0;
+
+    private static final byte SPARSE = 1;
+
+    private final int precision;
+
+    private final byte[] registers;
+
+    public HyperLogLog() {
+        this(DEFAULT_PRECISION);
+    }
+
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("HyperLogLog precision must be in [4, 16], was " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    public void offer(long value) {
+        long hash = HASH.hashLong(value).asLong();
+        int index = (int) (hash >>> (64 - precision));
+        int rank = Math.min(Long.numberOfLeadingZeros(hash << precision), 64 - precision) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /**
+     * Add the values of :other to this sketch.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Cannot merge HyperLogLog of precision " + other.precision
+                    + " into " + precision);
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /**
+     * @return the estimated number of distinct values offered.
+     */
+    public long cardinality() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double estimate = alpha(m) * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // few values: linear counting is more accurate
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * @return the sketch as bytes, only the non empty registers for a sketch of few values.
+     */
+    public byte[] toBytes() {
+        int used = 0;
+        for (byte register : registers) {
+            if (register != 0) {
+                used++;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(precision);
+        if (used * 3 < registers.length) {
+            out.write(SPARSE);
+            SketchCodec.writeVarLong(out, used);
+            int previous = 0;
+            for (int i = 0; i < registers.length; i++) {
+                if (registers[i] != 0) {
+                    SketchCodec.writeVarLong(out, i - previous);
+                    out.write(registers[i]);
+                    previous = i;
+                }
+            }
+        } else {
+            out.write(DENSE);
+            out.write(registers, 0, registers.length);
+        }
+        return out.toByteArray();
+    }
+
+    public static HyperLogLog fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        HyperLogLog sketch = new HyperLogLog(in.get());
+        byte format = in.get();
+        if (format == DENSE) {
+            in.get(sketch.registers);
+        } else if (format == SPARSE) {
+            long used = SketchCodec.readVarLong(in);
+            int index = 0;
+            for (long n = 0; n < used; n++) {
+                index += (int) SketchCodec.readVarLong(in);
+                sketch.registers[index] = in.get();
+            }
+        } else {
+            throw new IllegalArgumentException("Unknown HyperLogLog format " + format);
+        }
+        return sketch;
+    }
+
+    private static double alpha(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+}
@@ -1,5 +1,12 @@
 package com.greenowl.callisto.service.cache;
 
+import com.greenowl.callisto.cache.CacheKeys;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
 public interface CacheService {
 
     void clear();
@@ -8,4 +15,60 @@ public interface CacheService {
 
     void set(String key, Object item);
 
+    /**
+     * Pull :key from region :region, if no object is found will return null.
+     *
+     * @param region
+     * @param key
+     * @param cls
+     * @param <T>
+     * @return
+     */
+    <T> T get(CacheKeys region, Object key, Class<T> cls);
+
+    void set(CacheKeys region, Object key, Object item);
+
+    /**
+     * Pull several keys of region :region at once, keys that are not cached are left out of the result.
+     *
+     * @param region
+     * @param keys
+     * @param cls
+     * @param <T>
+     * @return
+     */
+    default <T> Map<Object, T> getAll(CacheKeys region, Collection<?> keys, Class<T> cls) {
+        Map<Object, T> found = new LinkedHashMap<>();
+        for (Object key : keys) {
+            T value = get(region, key, cls);
+            if (value != null) {
+                found.put(key, value);
+            }
+        }
+        return found;
+    }
+
+    void evict(CacheKeys region, Object key);
+
+    void clear(CacheKeys region);
+
+    /**
+     * Announce :message on :topic to the other nodes sharing this cache. A cache local to the node has
+     * none to tell.
+     *
+     * @param topic
+     * @param message
+     */
+    default void publish(String topic, String message) {
+    }
+
+    /**
+     * Have :listener called with every message another node publishes on :topic.
+     *
+     * @param topic
+     * @param listener
+     */
+    default void subscribe(String topic, Consumer<String> listener) {
+    }
+
 }
@@ -1,29 +1,122 @@
 package com.greenowl.callisto.service.cache;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.CacheBuilder;
+import com.greenowl.callisto.cache.CacheKeys;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.guava.GuavaCache;
 
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
-public class LocalCacheService implements CacheService {
+/**
+ * In-process cache made of one bounded Guava cache per {@link CacheKeys} region, with per region time to
+ * live and LRU eviction. Also serves as the Spring {@link CacheManager} behind {@code @Cacheable}, and
+ * publishes hit, miss, eviction and size figures of every region to the metric registry.
+ */
+public class LocalCacheService implements CacheService, CacheManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(LocalCacheService.class);
 
-    private Map<String, Object> cache = new HashMap<>();
+    /**
+     * Region backing the untyped {@link #get(String, Class)} and {@link #set(String, Object)} calls.
+     */
+    static final String DEFAULT_REGION = "DEFAULT";
+
+    private final Map<String, GuavaCache> caches;
+
+    public LocalCacheService(CallistoBeanConfigurationProperties.Cache props, MetricRegistry metricRegistry) {
+        Map<String, GuavaCache> regions = new LinkedHashMap<>();
+        regions.put(DEFAULT_REGION, build(DEFAULT_REGION, props.getTimeToLiveSeconds(), props.getMaxEntries()));
+        for (CacheKeys key : CacheKeys.values()) {
+            CallistoBeanConfigurationProperties.Cache.Region override = props.getRegions().get(key.name());
+            int timeToLive = (override != null && override.getTimeToLiveSeconds() != null)
+                    ? override.getTimeToLiveSeconds() : key.getTimeToLiveSeconds();
+            long maxEntries = (override != null && override.getMaxEntries() != null)
+                    ? override.getMaxEntries() : key.getMaxEntries();
+            regions.put(key.name(), build(key.name(), timeToLive, maxEntries));
+        }
+        this.caches = Collections.unmodifiableMap(regions);
+        caches.values().forEach(cache -> registerMetrics(metricRegistry, cache));
+    }
+
+    private static GuavaCache build(String name, int timeToLiveSeconds, long maxEntries) {
+        LOG.debug("Creating cache region {} with ttl = {}s and max entries = {}", name, timeToLiveSeconds, maxEntries);
+        return new GuavaCache(name, CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(timeToLiveSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(), true);
+    }
+
+    private static void registerMetrics(MetricRegistry metricRegistry, GuavaCache cache) {
+        com.google.common.cache.Cache<Object, Object> nativeCache = cache.getNativeCache();
+        String region = cache.getName();
+        metricRegistry.register(MetricRegistry.name(CacheService.class, region, "hits"),
+                (Gauge<Long>) () -> nativeCache.stats().hitCount());
+        metricRegistry.register(MetricRegistry.name(CacheService.class, region, "misses"),
+                (Gauge<Long>) () -> nativeCache.stats().missCount());
+        metricRegistry.register(MetricRegistry.name(CacheService.class, region, "evictions"),
+                (Gauge<Long>) () -> nativeCache.stats().evictionCount());
+        metricRegistry.register(MetricRegistry.name(CacheService.class, region, "size"),
+                (Gauge<Long>) nativeCache::size);
+    }
 
     @Override
     public void clear() {
-        cache = new HashMap<>();
+        caches.values().forEach(GuavaCache::clear);
     }
 
     @Override
     public <T> T get(String key, Class<T> cls) {
-        return cls.cast(cache.get(key));
+        return get(caches.get(DEFAULT_REGION), key, cls);
     }
 
     @Override
     public void set(String key, Object item) {
-        cache.put(key, item);
+        caches.get(DEFAULT_REGION).put(key, item);
+    }
+
+    @Override
+    public <T> T get(CacheKeys region, Object key, Class<T> cls) {
+        return get(caches.get(region.name()), key, cls);
+    }
+
+    @Override
+    public void set(CacheKeys region, Object key, Object item) {
+        caches.get(region.name()).put(key, item);
+    }
+
+    @Override
+    public void evict(CacheKeys region, Object key) {
+        caches.get(region.name()).evict(key);
+    }
+
+    @Override
+    public void clear(CacheKeys region) {
+        caches.get(region.name()).clear();
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return caches.get(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return caches.keySet();
+    }
+
+    private static <T> T get(GuavaCache cache, Object key, Class<T> cls) {
+        Cache.ValueWrapper wrapper = cache.get(key);
+        return (wrapper == null) ? null : cls.cast(wrapper.get());
     }
 }
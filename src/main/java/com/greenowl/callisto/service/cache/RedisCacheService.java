@@ -0,0 +1,434 @@
+package com.greenowl.callisto.service.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.greenowl.callisto.cache.CacheKeys;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.support.SimpleValueWrapper;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.Jackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Cache shared by every node through Redis, fronted by a short lived local near-cache per {@link CacheKeys}
+ * region. Writes go to Redis with the region time to live and are announced on a pub/sub channel, so the
+ * other nodes drop their near-cache copy. Redis being unreachable degrades to a cache miss, never to an error.
+ * Also serves as the Spring {@link CacheManager} behind {@code @Cacheable}, and carries the messages services
+ * {@link #publish} to their peers on the other nodes over the same channel.
+ */
+public class RedisCacheService implements CacheService, CacheManager, MessageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RedisCacheService.class);
+
+    private static final String SEPARATOR = "|";
+
+    private static final String OP_EVICT = "evict";
+
+    private static final String OP_CLEAR = "clear";
+
+    private static final String OP_MESSAGE = "message";
+
+    /**
+     * Keys asked per SCAN round trip, and deleted per DEL, when clearing a region.
+     */
+    private static final int SCAN_COUNT = 500;
+
+    /**
+     * Identifies the messages this node published, so it does not invalidate its own fresh writes.
+     */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final CallistoBeanConfigurationProperties.Cache.Redis redisProps;
+
+    private final RedisConnectionFactory connectionFactory;
+
+    private final ObjectMapper valueMapper;
+
+    private final StringRedisTemplate messageTemplate;
+
+    private final Map<String, Region> regions;
+
+    private final ConcurrentMap<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<>();
+
+    private final Meter nearHits;
+
+    private final Meter remoteHits;
+
+    private final Meter misses;
+
+    /**
+     * @param objectMapper copied to read and write the values. Each region reads its values as the type declared
+     *                     by its {@link CacheKeys}, no class name is ever read from Redis. The default region holds
+     *                     plain JSON values, converted to the class the caller asks for; its numbers come back as
+     *                     Long.
+     */
+    public RedisCacheService(CallistoBeanConfigurationProperties.Cache props, RedisConnectionFactory connectionFactory,
+                             ObjectMapper objectMapper, MetricRegistry metricRegistry) {
+        this.redisProps = props.getRedis();
+        this.connectionFactory = connectionFactory;
+        this.valueMapper = objectMapper.copy().enable(DeserializationFeature.USE_LONG_FOR_INTS);
+        this.messageTemplate = new StringRedisTemplate(connectionFactory);
+
+        Map<String, Region> built = new LinkedHashMap<>();
+        built.put(LocalCacheService.DEFAULT_REGION, new Region(LocalCacheService.DEFAULT_REGION,
+                props.getTimeToLiveSeconds(), valueMapper.constructType(Object.class)));
+        for (CacheKeys key : CacheKeys.values()) {
+            CallistoBeanConfigurationProperties.Cache.Region override = props.getRegions().get(key.name());
+            int timeToLive = (override != null && override.getTimeToLiveSeconds() != null)
+                    ? override.getTimeToLiveSeconds() : key.getTimeToLiveSeconds();
+            built.put(key.name(), new Region(key.name(), timeToLive,
+                    valueMapper.getTypeFactory().constructType(key.getValueType())));
+        }
+        this.regions = Collections.unmodifiableMap(built);
+
+        nearHits = metricRegistry.meter(MetricRegistry.name(CacheService.class, "near", "hits"));
+        remoteHits = metricRegistry.meter(MetricRegistry.name(CacheService.class, "remote", "hits"));
+        misses = metricRegistry.meter(MetricRegistry.name(CacheService.class, "misses"));
+        regions.values().forEach(region -> metricRegistry.register(
+                MetricRegistry.name(CacheService.class, region.getName(), "near", "size"),
+                (Gauge<Long>) region.near::size));
+    }
+
+    @Override
+    public void clear() {
+        regions.values().forEach(Region::clear);
+    }
+
+    @Override
+    public <T> T get(String key, Class<T> cls) {
+        return regions.get(LocalCacheService.DEFAULT_REGION).get(key, cls);
+    }
+
+    @Override
+    public void set(String key, Object item) {
+        regions.get(LocalCacheService.DEFAULT_REGION).put(key, item);
+    }
+
+    @Override
+    public <T> T get(CacheKeys region, Object key, Class<T> cls) {
+        return regions.get(region.name()).get(key, cls);
+    }
+
+    @Override
+    public void set(CacheKeys region, Object key, Object item) {
+        regions.get(region.name()).put(key, item);
+    }
+
+    @Override
+    public void evict(CacheKeys region, Object key) {
+        regions.get(region.name()).evict(key);
+    }
+
+    @Override
+    public void clear(CacheKeys region) {
+        regions.get(region.name()).clear();
+    }
+
+    /**
+     * Serve what the near-cache holds and fetch the rest from Redis in a single MGET round trip.
+     */
+    @Override
+    public <T> Map<Object, T> getAll(CacheKeys region, Collection<?> keys, Class<T> cls) {
+        Region cache = regions.get(region.name());
+        Map<Object, T> found = new LinkedHashMap<>();
+        List<Object> remoteKeys = new ArrayList<>();
+        List<String> redisKeys = new ArrayList<>();
+        for (Object key : keys) {
+            String redisKey = cache.redisKey(key);
+            Object value = cache.near.getIfPresent(redisKey);
+            if (value != null) {
+                nearHits.mark();
+                found.put(key, cache.as(value, cls));
+            } else {
+                remoteKeys.add(key);
+                redisKeys.add(redisKey);
+            }
+        }
+        if (redisKeys.isEmpty()) {
+            return found;
+        }
+        List<Object> values;
+        try {
+            values = cache.template.opsForValue().multiGet(redisKeys);
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to read {} keys of cache region {} from redis: {}", redisKeys.size(), region, e.getMessage());
+            misses.mark(redisKeys.size());
+            return found;
+        }
+        for (int i = 0; i < redisKeys.size(); i++) {
+            Object value = (values == null) ? null : values.get(i);
+            if (value == null) {
+                misses.mark();
+                continue;
+            }
+            remoteHits.mark();
+            cache.near.put(redisKeys.get(i), value);
+            found.put(remoteKeys.get(i), cache.as(value, cls));
+        }
+        return found;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return regions.get(name);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return regions.keySet();
+    }
+
+    @Override
+    public void publish(String topic, String message) {
+        publish(OP_MESSAGE, topic, message);
+    }
+
+    @Override
+    public void subscribe(String topic, Consumer<String> listener) {
+        listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<>()).add(listener);
+    }
+
+    /**
+     * Invalidation published by another node: drop the near-cache copy, the next read goes to Redis.
+     * A message on a topic goes to the listeners subscribed to it.
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        String[] parts = body.split("\\" + SEPARATOR, 4);
+        if (parts.length < 3 || nodeId.equals(parts[0])) {
+            return;
+        }
+        if (OP_MESSAGE.equals(parts[1])) {
+            deliver(parts[2], (parts.length == 4) ? parts[3] : "");
+            return;
+        }
+        Region region = regions.get(parts[2]);
+        if (region == null) {
+            LOG.debug("Ignoring invalidation of unknown cache region {}", parts[2]);
+            return;
+        }
+        if (OP_CLEAR.equals(parts[1])) {
+            region.near.invalidateAll();
+        } else if (parts.length == 4) {
+            region.near.invalidate(parts[3]);
+        }
+    }
+
+    private void deliver(String topic, String message) {
+        for (Consumer<String> listener : listeners.getOrDefault(topic, Collections.emptyList())) {
+            try {
+                listener.accept(message);
+            } catch (RuntimeException e) {
+                LOG.warn("Unable to handle message on topic {}: {}", topic, e.getMessage(), e);
+            }
+        }
+    }
+
+    public String getInvalidationChannel() {
+        return redisProps.getInvalidationChannel();
+    }
+
+    /**
+     * @return the keys matching :pattern, walked with SCAN so clearing a region never blocks Redis the way a
+     * KEYS over the whole keyspace does.
+     */
+    private List<String> scan(String pattern) {
+        return messageTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> keys = new ArrayList<>();
+            Cursor<byte[]> cursor = connection.scan(ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build());
+            try {
+                while (cursor.hasNext()) {
+                    keys.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            } finally {
+                try {
+                    cursor.close();
+                } catch (IOException e) {
+                    LOG.debug("Unable to close the scan of {}: {}", pattern, e.getMessage());
+                }
+            }
+            return keys;
+        });
+    }
+
+    private void publish(String op, String region, String redisKey) {
+        String message = nodeId + SEPARATOR + op + SEPARATOR + region + (redisKey == null ? "" : SEPARATOR + redisKey);
+        try {
+            messageTemplate.convertAndSend(redisProps.getInvalidationChannel(), message);
+        } catch (DataAccessException e) {
+            LOG.warn("Unable to publish {} of {}: {}", op, region, e.getMessage());
+        }
+    }
+
+    /**
+     * One region: a Spring cache view over the Redis keys "<prefix><region>:<key>" plus the local near-cache.
+     * Values are read back through a serializer bound to the type of the region.
+     */
+    private class Region implements Cache {
+
+        private final String name;
+
+        private final int timeToLiveSeconds;
+
+        private final RedisTemplate<String, Object> template;
+
+        private final com.google.common.cache.Cache<String, Object> near;
+
+        Region(String name, int timeToLiveSeconds, JavaType valueType) {
+            this.name = name;
+            this.timeToLiveSeconds = timeToLiveSeconds;
+            Jackson2JsonRedisSerializer<Object> serializer = new Jackson2JsonRedisSerializer<>(valueType);
+            serializer.setObjectMapper(valueMapper);
+            this.template = new RedisTemplate<>();
+            template.setConnectionFactory(connectionFactory);
+            template.setKeySerializer(new StringRedisSerializer());
+            template.setValueSerializer(serializer);
+            template.afterPropertiesSet();
+            this.near = CacheBuilder.newBuilder()
+                    .maximumSize(redisProps.getNearCacheMaxEntries())
+                    .expireAfterWrite(Math.min(timeToLiveSeconds, redisProps.getNearCacheTimeToLiveSeconds()),
+                            TimeUnit.SECONDS)
+                    .build();
+        }
+
+        String redisKey(Object key) {
+            return redisProps.getKeyPrefix() + name + ":" + key;
+        }
+
+        /**
+         * @return :value as a :type, converting the plain JSON values of the default region.
+         */
+        @SuppressWarnings("unchecked")
+        <T> T as(Object value, Class<T> type) {
+            return (type == null || type.isInstance(value)) ? (T) value : valueMapper.convertValue(value, type);
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return template;
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            Object value = lookup(redisKey(key));
+            return (value == null) ? null : new SimpleValueWrapper(value);
+        }
+
+        @Override
+        public <T> T get(Object key, Class<T> type) {
+            Object value = lookup(redisKey(key));
+            return (value == null) ? null : as(value, type);
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            if (value == null) {
+                evict(key);
+                return;
+            }
+            String redisKey = redisKey(key);
+            near.put(redisKey, value);
+            try {
+                template.opsForValue().set(redisKey, value, timeToLiveSeconds, TimeUnit.SECONDS);
+            } catch (DataAccessException e) {
+                LOG.warn("Unable to write {} to redis, only cached locally: {}", redisKey, e.getMessage());
+                return;
+            }
+            publish(OP_EVICT, name, redisKey);
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            ValueWrapper existing = get(key);
+            if (existing == null) {
+                put(key, value);
+            }
+            return existing;
+        }
+
+        @Override
+        public void evict(Object key) {
+            String redisKey = redisKey(key);
+            near.invalidate(redisKey);
+            try {
+                template.delete(redisKey);
+            } catch (DataAccessException e) {
+                LOG.warn("Unable to evict {} from redis: {}", redisKey, e.getMessage());
+            }
+            publish(OP_EVICT, name, redisKey);
+        }
+
+        @Override
+        public void clear() {
+            near.invalidateAll();
+            try {
+                for (List<String> keys : Lists.partition(scan(redisKey("*")), SCAN_COUNT)) {
+                    template.delete(keys);
+                }
+            } catch (DataAccessException e) {
+                LOG.warn("Unable to clear cache region {} in redis: {}", name, e.getMessage());
+            }
+            publish(OP_CLEAR, name, null);
+        }
+
+        private Object lookup(String redisKey) {
+            Object value = near.getIfPresent(redisKey);
+            if (value != null) {
+                nearHits.mark();
+                return value;
+            }
+            try {
+                value = template.opsForValue().get(redisKey);
+            } catch (DataAccessException e) {
+                LOG.warn("Unable to read {} from redis: {}", redisKey, e.getMessage());
+                value = null;
+            }
+            if (value == null) {
+                misses.mark();
+                return null;
+            }
+            remoteHits.mark();
+            near.put(redisKey, value);
+            return value;
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.greenowl.callisto.service.config;
 
+import com.greenowl.callisto.config.AppConfigKey;
+
 import java.util.Map;
 
 public interface ConfigService {
@@ -27,6 +29,17 @@ public interface ConfigService {
      */
     <T> T get(String key, Class<T> cls, T defaultValue);
 
+    /**
+     * Pull the typed value of :key with a default value, the value was parsed when the configuration was loaded.
+     *
+     * @param key
+     * @param cls          the type declared by :key.
+     * @param defaultValue
+     * @param <T>
+     * @return
+     */
+    <T> T get(AppConfigKey key, Class<T> cls, T defaultValue);
+
     void set(String key, Object item);
 
     /**
@@ -41,4 +54,9 @@ public interface ConfigService {
     <T> T set(String key, Class<T> cls, T item);
 
     Map<String, String> getMap();
+
+    /**
+     * @return the configuration currently in use, never null.
+     */
+    ConfigSnapshot getSnapshot();
 }
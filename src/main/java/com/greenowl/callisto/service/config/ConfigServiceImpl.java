@@ -1,79 +1,133 @@
 package com.greenowl.callisto.service.config;
 
-import com.greenowl.callisto.domain.AppConfig;
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.AppConfigKey;
 import com.greenowl.callisto.repository.AppConfigRepository;
+import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContextException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
+/**
+ * Serves configuration from an immutable {@link ConfigSnapshot}. Readers never lock, writers build a new
+ * snapshot and swap it in. The snapshot is loaded at startup and reloaded when T_APPLICATION_CONFIG changes.
+ */
 @Service
 public class ConfigServiceImpl implements ConfigService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ConfigServiceImpl.class);
-    private Map<String, String> cache = null;
+
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.empty();
 
     @Inject
     private AppConfigRepository appConfigRepository;
 
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Counter refreshes;
+
+    @PostConstruct
+    public void init() {
+        refreshes = metricRegistry.counter(MetricRegistry.name(ConfigService.class, "refreshes"));
+        metricRegistry.register(MetricRegistry.name(ConfigService.class, "age"),
+                (Gauge<Long>) () -> System.currentTimeMillis() - snapshot.getLoadedAt());
+        metricRegistry.register(MetricRegistry.name(ConfigService.class, "version"),
+                (Gauge<Long>) () -> snapshot.getVersion());
+        try {
+            update();
+        } catch (Exception e) {
+            // running on defaults would silently ignore every setting stored in the database
+            throw new ApplicationContextException("Unable to load configuration from database", e);
+        }
+    }
+
     @Override
     public void update() {
         LOG.info("Updating local copy of configuration map!");
-        cache = new HashMap<>();
-        updateCacheFromDB();
+        reload(sourceStamp());
+    }
+
+    /**
+     * Reload the configuration if the database state changed since the current snapshot was loaded.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.runtimeConfig.refreshIntervalMillis:30000}",
+            fixedDelayString = "${callisto_config.runtimeConfig.refreshIntervalMillis:30000}")
+    public void refreshIfChanged() {
+        try {
+            String stamp = sourceStamp();
+            if (!stamp.equals(snapshot.getSourceStamp())) {
+                LOG.info("Configuration changed in database, refreshing local copy");
+                reload(stamp);
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to check configuration for changes", e);
+        }
     }
 
     @Override
     public <T> T get(String key, Class<T> cls) {
-        healthCheck();
         return get(key, cls, null);
     }
 
     @Override
     public <T> T get(String key, Class<T> cls, T defaultValue) {
-        healthCheck();
-        String value = cache.get(key);
-        T cachedValue = cls.cast(value);
-        return (cachedValue != null) ? cachedValue : defaultValue;
+        T value = snapshot.get(key, cls);
+        return (value != null) ? value : defaultValue;
+    }
+
+    @Override
+    public <T> T get(AppConfigKey key, Class<T> cls, T defaultValue) {
+        Object value = snapshot.get(key);
+        return cls.isInstance(value) ? cls.cast(value) : defaultValue;
     }
 
     @Override
-    public void set(String key, Object item) {
-        healthCheck();
-        cache.put(key, (String) item);
+    public synchronized void set(String key, Object item) {
+        snapshot = snapshot.with(key, (String) item);
     }
 
     @Override
     public <T> T set(String key, Class<T> cls, T item) {
-        healthCheck();
         set(key, item);
         return item;
     }
 
     @Override
     public Map<String, String> getMap() {
-        healthCheck();
-        return cache;
+        return snapshot.getValues();
     }
 
-    private void updateCacheFromDB() {
-        List<AppConfig> configs = appConfigRepository.findAll();
-        LOG.debug("Found {} configurations from database", configs.size());
-        configs.forEach(this::addToCache);
+    @Override
+    public ConfigSnapshot getSnapshot() {
+        return snapshot;
     }
 
-    private void addToCache(AppConfig config) {
-        set(config.getKey(), config.getValue());
+    /**
+     * The stamp is read before the rows, a change in between only causes one extra reload on the next poll.
+     */
+    private synchronized void reload(String stamp) {
+        Map<String, String> values = new HashMap<>();
+        appConfigRepository.findAll().forEach(config -> values.put(config.getKey(), config.getValue()));
+        LOG.debug("Found {} configurations from database", values.size());
+        snapshot = new ConfigSnapshot(snapshot.getVersion() + 1, stamp, values);
+        refreshes.inc();
     }
 
-    private void healthCheck() {
-        if (cache == null) {
-            update();
-        }
+    /**
+     * Cheap marker of the table state: row count plus latest modification time.
+     */
+    private String sourceStamp() {
+        DateTime lastModified = appConfigRepository.getLastModifiedDate();
+        return appConfigRepository.count() + ":" + ((lastModified == null) ? 0 : lastModified.getMillis());
     }
-
 }
@@ -0,0 +1,134 @@
+package com.greenowl.callisto.service.config;
+
+import com.greenowl.callisto.config.AppConfigKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable copy of the application configuration. Values of {@link AppConfigKey} keys are parsed once
+ * into their declared type when the snapshot is built, other keys are kept as raw strings.
+ */
+public class ConfigSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigSnapshot.class);
+
+    private final long version;
+
+    private final long loadedAt;
+
+    private final String sourceStamp;
+
+    private final Map<String, String> values;
+
+    private final Map<AppConfigKey, Object> typed;
+
+    public ConfigSnapshot(long version, String sourceStamp, Map<String, String> values) {
+        this.version = version;
+        this.loadedAt = System.currentTimeMillis();
+        this.sourceStamp = sourceStamp;
+        this.values = Collections.unmodifiableMap(new HashMap<>(values));
+        Map<AppConfigKey, Object> parsed = new EnumMap<>(AppConfigKey.class);
+        for (AppConfigKey key : AppConfigKey.values()) {
+            Object value = convert(key.name(), values.get(key.name()), key.getType());
+            if (value != null) {
+                parsed.put(key, value);
+            }
+        }
+        this.typed = Collections.unmodifiableMap(parsed);
+    }
+
+    public static ConfigSnapshot empty() {
+        return new ConfigSnapshot(0, null, Collections.emptyMap());
+    }
+
+    /**
+     * @return a new snapshot with :key set to :value, one version ahead of this one.
+     */
+    public ConfigSnapshot with(String key, String value) {
+        Map<String, String> copy = new HashMap<>(values);
+        copy.put(key, value);
+        return new ConfigSnapshot(version + 1, sourceStamp, copy);
+    }
+
+    /**
+     * @return the typed value of :key, null if it is not set or cannot be parsed.
+     */
+    public Object get(AppConfigKey key) {
+        return typed.get(key);
+    }
+
+    /**
+     * @return the value of :key as :cls, null if it is not set or cannot be converted.
+     */
+    public <T> T get(String key, Class<T> cls) {
+        AppConfigKey configKey = lookup(key);
+        if (configKey != null) {
+            Object value = typed.get(configKey);
+            if (cls.isInstance(value)) {
+                return cls.cast(value);
+            }
+        }
+        return convert(key, values.get(key), cls);
+    }
+
+    public Map<String, String> getValues() {
+        return values;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * @return the marker of the database state this snapshot was loaded from.
+     */
+    public String getSourceStamp() {
+        return sourceStamp;
+    }
+
+    private static AppConfigKey lookup(String key) {
+        for (AppConfigKey configKey : AppConfigKey.values()) {
+            if (configKey.name().equals(key)) {
+                return configKey;
+            }
+        }
+        return null;
+    }
+
+    private static <T> T convert(String key, String value, Class<T> cls) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            if (cls == String.class || cls == Object.class) {
+                return cls.cast(value);
+            }
+            if (cls == Boolean.class) {
+                return cls.cast(Boolean.valueOf(value.trim()));
+            }
+            if (cls == Integer.class) {
+                return cls.cast(Integer.valueOf(value.trim()));
+            }
+            if (cls == Long.class) {
+                return cls.cast(Long.valueOf(value.trim()));
+            }
+            if (cls == Double.class) {
+                return cls.cast(Double.valueOf(value.trim()));
+            }
+        } catch (NumberFormatException e) {
+            LOG.warn("Unable to parse config {} = {} as {}", key, value, cls.getSimpleName());
+            return null;
+        }
+        LOG.warn("Unsupported config type {} for key {}", cls.getName(), key);
+        return null;
+    }
+}
@@ -0,0 +1,181 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingPlan;
+import com.greenowl.callisto.domain.PlanSubscription;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.repository.PlanSubscriptionRepository;
+import com.greenowl.callisto.service.cache.CacheService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps an {@link AdmissionSnapshot} per user in memory so the gate can decide whether to admit a
+ * user without querying the database. Writers of parking activities and subscriptions keep the
+ * snapshots current, a miss falls back to the database. Each change is announced to the other nodes
+ * through the {@link CacheService}, which drop their copy of the snapshot.
+ */
+@Service
+public class AdmissionService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdmissionService.class);
+
+    static final String TOPIC = "admission";
+
+    private static final int STRIPES = 64;
+
+    @Inject
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Inject
+    private PlanSubscriptionRepository planSubscriptionRepository;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private CacheService cacheService;
+
+    private Cache<Long, AdmissionSnapshot> snapshots;
+
+    /**
+     * Changes seen per stripe of user ids. A snapshot loaded while a change of its user came in may
+     * predate that change, it is then not kept.
+     */
+    private final AtomicLongArray changes = new AtomicLongArray(STRIPES);
+
+    private Meter hits;
+
+    private Meter misses;
+
+    @PostConstruct
+    public void init() {
+        CallistoBeanConfigurationProperties.Admission admission = callistoProps.getAdmission();
+        snapshots = CacheBuilder.newBuilder()
+                .maximumSize(admission.getMaxEntries())
+                .expireAfterWrite(admission.getTimeToLiveMinutes(), TimeUnit.MINUTES)
+                .build();
+        hits = metricRegistry.meter(MetricRegistry.name(AdmissionService.class, "snapshot", "hits"));
+        misses = metricRegistry.meter(MetricRegistry.name(AdmissionService.class, "snapshot", "misses"));
+        cacheService.subscribe(TOPIC, userId -> drop(Long.valueOf(userId)));
+    }
+
+    /**
+     * Return the admission snapshot of user :userId, loading it from the database on a miss.
+     *
+     * @param userId the user id.
+     * @return
+     */
+    public AdmissionSnapshot getSnapshot(Long userId) {
+        AdmissionSnapshot snapshot = snapshots.getIfPresent(userId);
+        if (snapshot != null) {
+            hits.mark();
+            return snapshot;
+        }
+        misses.mark();
+        int stripe = stripe(userId);
+        long seen = changes.get(stripe);
+        AdmissionSnapshot loaded = load(userId);
+        AdmissionSnapshot existing = snapshots.asMap().putIfAbsent(userId, loaded);
+        if (existing != null) {
+            return existing;
+        }
+        if (changes.get(stripe) != seen) {
+            // a change committed while loading may not be in it, and found nothing to update
+            snapshots.asMap().remove(userId, loaded);
+        }
+        return loaded;
+    }
+
+    /**
+     * Return the admission snapshot of user :userId as stored in the database, for a decision that
+     * turns the user away.
+     *
+     * @param userId the user id.
+     * @return
+     */
+    public AdmissionSnapshot reload(Long userId) {
+        drop(userId);
+        return getSnapshot(userId);
+    }
+
+    /**
+     * Apply a saved parking activity to the snapshot of its holder. Activities older than the one
+     * already cached are ignored.
+     *
+     * @param activity the parking activity that was just written.
+     */
+    public void onActivitySaved(ParkingActivity activity) {
+        if (activity == null || activity.getId() == null || activity.getActivityHolder() == null) {
+            return;
+        }
+        Long userId = activity.getActivityHolder().getId();
+        changes.incrementAndGet(stripe(userId));
+        cacheService.publish(TOPIC, userId.toString());
+        snapshots.asMap().computeIfPresent(userId, (id, snapshot) -> {
+            if (snapshot.hasActivity() && snapshot.getActivityId() > activity.getId()) {
+                return snapshot;
+            }
+            return snapshot.withActivity(activity.getId(), activity.getParkingStatus(),
+                    activity.getExitDatetime() != null);
+        });
+    }
+
+    /**
+     * Drop the snapshot of user :userId, the next lookup reloads it from the database.
+     *
+     * @param userId the user id.
+     */
+    public void evict(Long userId) {
+        if (userId != null) {
+            cacheService.publish(TOPIC, userId.toString());
+            drop(userId);
+        }
+    }
+
+    public void evictAll() {
+        snapshots.invalidateAll();
+    }
+
+    private void drop(Long userId) {
+        changes.incrementAndGet(stripe(userId));
+        snapshots.invalidate(userId);
+    }
+
+    private static int stripe(Long userId) {
+        return (int) (userId & (STRIPES - 1));
+    }
+
+    private AdmissionSnapshot load(Long userId) {
+        LOG.debug("Loading admission snapshot for user id = {}", userId);
+        List<PlanSubscription> subscriptions = planSubscriptionRepository.getPlanSubscriptionWithPlanByUserId(userId);
+        boolean subscribed = subscriptions != null && !subscriptions.isEmpty();
+        ParkingPlan plan = subscribed ? subscriptions.get(0).getPlanGroup() : null;
+        Long planId = (plan == null) ? null : plan.getId();
+        Long lotId = (plan == null) ? null : plan.getLotId();
+
+        List<ParkingActivity> activities = parkingActivityRepository.getLatestActivitiesForUser(userId, new PageRequest(0, 1));
+        if (activities == null || activities.isEmpty()) {
+            return new AdmissionSnapshot(userId, subscribed, planId, lotId, null, null, false);
+        }
+        ParkingActivity latest = activities.get(0);
+        return new AdmissionSnapshot(userId, subscribed, planId, lotId, latest.getId(), latest.getParkingStatus(),
+                latest.getExitDatetime() != null);
+    }
+}
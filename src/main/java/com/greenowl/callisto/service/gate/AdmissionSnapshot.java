@@ -0,0 +1,88 @@
+package com.greenowl.callisto.service.gate;
+
+/**
+ * Immutable view of everything the gate needs to admit a user: the state of their latest parking
+ * activity and the plan and lot they are subscribed to.
+ */
+public class AdmissionSnapshot {
+
+    private final Long userId;
+
+    private final boolean subscribed;
+
+    private final Long planId;
+
+    private final Long lotId;
+
+    private final Long activityId;
+
+    private final String parkingStatus;
+
+    private final boolean exited;
+
+    public AdmissionSnapshot(Long userId, boolean subscribed, Long planId, Long lotId, Long activityId,
+                             String parkingStatus, boolean exited) {
+        this.userId = userId;
+        this.subscribed = subscribed;
+        this.planId = planId;
+        this.lotId = lotId;
+        this.activityId = activityId;
+        this.parkingStatus = parkingStatus;
+        this.exited = exited;
+    }
+
+    /**
+     * @return a copy of this snapshot whose latest activity is :activityId in status :parkingStatus.
+     */
+    public AdmissionSnapshot withActivity(Long activityId, String parkingStatus, boolean exited) {
+        return new AdmissionSnapshot(userId, subscribed, planId, lotId, activityId, parkingStatus, exited);
+    }
+
+    public boolean hasActivity() {
+        return activityId != null;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    public Long getPlanId() {
+        return planId;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public Long getActivityId() {
+        return activityId;
+    }
+
+    public String getParkingStatus() {
+        return parkingStatus;
+    }
+
+    /**
+     * @return true if an exit time has been recorded on the latest activity.
+     */
+    public boolean isExited() {
+        return exited;
+    }
+
+    @Override
+    public String toString() {
+        return "AdmissionSnapshot{" +
+                "userId=" + userId +
+                ", subscribed=" + subscribed +
+                ", planId=" + planId +
+                ", lotId=" + lotId +
+                ", activityId=" + activityId +
+                ", parkingStatus='" + parkingStatus + '\'' +
+                ", exited=" + exited +
+                '}';
+    }
+}
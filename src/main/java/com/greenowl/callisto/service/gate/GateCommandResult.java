@@ -0,0 +1,152 @@
+package com.greenowl.callisto.service.gate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a gate open command, including the controller response of every attempt made.
+ */
+public class GateCommandResult {
+
+    /**
+     * {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_ENTER} or
+     * {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_EXIT}, as the ticket callback reports it.
+     */
+    private final int ticketType;
+
+    /**
+     * {@link GateEndpoint#getKey()} of the gate the command opens.
+     */
+    private final String gateKey;
+
+    private final String ticketNo;
+
+    private final List<String> responses = new ArrayList<>();
+
+    private boolean success;
+
+    private String rejection;
+
+    private boolean coalesced;
+
+    private boolean cancelled;
+
+    public GateCommandResult(int ticketType, String gateKey, String ticketNo) {
+        this.ticketType = ticketType;
+        this.gateKey = gateKey;
+        this.ticketNo = ticketNo;
+    }
+
+    /**
+     * @return the result of a command that was turned away before reaching the controller, for :reason.
+     */
+    static GateCommandResult rejected(GateEndpoint gate, String ticketNo, String reason) {
+        GateCommandResult result = new GateCommandResult(gate.getGateType(), gate.getKey(), ticketNo);
+        result.rejection = reason;
+        return result;
+    }
+
+    /**
+     * @return the result of a command cancelled because its caller stopped waiting, with the attempts made so far.
+     * It is unsuccessful even if the last attempt opened the gate, the caller was already told it failed.
+     */
+    GateCommandResult asCancelled() {
+        GateCommandResult result = new GateCommandResult(ticketType, gateKey, ticketNo);
+        result.responses.addAll(responses);
+        result.cancelled = true;
+        return result;
+    }
+
+    /**
+     * @return this result as seen by a duplicate open of the same ticket, which joined the command in progress.
+     */
+    GateCommandResult asCoalesced() {
+        GateCommandResult result = new GateCommandResult(ticketType, gateKey, ticketNo);
+        result.responses.addAll(responses);
+        result.success = success;
+        result.rejection = rejection;
+        result.cancelled = cancelled;
+        result.coalesced = true;
+        return result;
+    }
+
+    void addAttempt(String response, boolean success) {
+        this.responses.add(response);
+        this.success = success;
+    }
+
+    public int getTicketType() {
+        return ticketType;
+    }
+
+    public String getGateKey() {
+        return gateKey;
+    }
+
+    public String getTicketNo() {
+        return ticketNo;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * @return true if the gate was too busy to take the command, which was never sent.
+     */
+    public boolean isRejected() {
+        return rejection != null;
+    }
+
+    public String getRejection() {
+        return rejection;
+    }
+
+    /**
+     * @return true if the command was cancelled because the caller that issued it stopped waiting.
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if this is the outcome of a command issued for an earlier open of the same ticket,
+     * whose attempts are recorded with that open.
+     */
+    public boolean isCoalesced() {
+        return coalesced;
+    }
+
+    public int getAttempts() {
+        return responses.size();
+    }
+
+    /**
+     * Controller responses in attempt order, null entries mean the call itself failed.
+     */
+    public List<String> getResponses() {
+        return Collections.unmodifiableList(responses);
+    }
+
+    /**
+     * @return the response of the last attempt, null if the controller could not be reached.
+     */
+    public String getResponse() {
+        return responses.isEmpty() ? null : responses.get(responses.size() - 1);
+    }
+
+    @Override
+    public String toString() {
+        return "GateCommandResult{" +
+                "ticketType=" + ticketType +
+                ", gateKey='" + gateKey + '\'' +
+                ", ticketNo='" + ticketNo + '\'' +
+                ", attempts=" + responses.size() +
+                ", success=" + success +
+                (rejection != null ? ", rejection='" + rejection + '\'' : "") +
+                (cancelled ? ", cancelled=true" : "") +
+                (coalesced ? ", coalesced=true" : "") +
+                '}';
+    }
+}
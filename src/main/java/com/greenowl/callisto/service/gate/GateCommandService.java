@@ -0,0 +1,433 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.RateLimiter;
+import com.greenowl.callisto.config.AppConfigKey;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.service.config.ConfigService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Issues gate open commands off the request thread. Each command and its retries run on a dedicated
+ * scheduler, retries are delayed according to the configured backoff policy instead of sleeping.
+ * <p>
+ * A barrier handles one open at a time, so commands for the same gate are queued and sent one after the
+ * other. A repeated open of a ticket whose command is still queued or in progress joins that command. Commands
+ * beyond the admission rate or the queue depth of the gate are turned away at once, rather than left to time out,
+ * and so are commands that waited for their gate longer than the configured queue wait.
+ * <p>
+ * An open can be cancelled once its caller stops waiting, see {@link #getResponseTimeoutMillis()}, so the
+ * gate does not keep retrying on behalf of a request that was already answered.
+ */
+@Service
+public class GateCommandService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateCommandService.class);
+
+    private static final String SIMULATED_OK_RESPONSE = "OK Response with 33 chars:'TICKET: T12345 OPEN-GATE: OPEN OK'";
+
+    @Inject
+    private GateControllerClient gateControllerClient;
+
+    @Inject
+    private ConfigService configService;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private GateCycleTracker gateCycleTracker;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private final Map<String, GateQueue> queues = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "gate-command-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+                callistoProps.getGate().getSchedulerPoolSize(), threadFactory);
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduler = executor;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Take a place in the queue of :gate and an admission permit for an open whose ticket is not issued yet,
+     * so a busy gate turns the request away before anything is recorded for it. The caller either opens with
+     * the reservation or releases it.
+     */
+    public Reservation reserve(GateEndpoint gate) {
+        GateQueue queue = queues.computeIfAbsent(gate.getKey(), key -> new GateQueue(gate));
+        return new Reservation(queue, queue.reserve());
+    }
+
+    /**
+     * Cancel the open of ticket :ticketNo on :gate. A queued command is dropped, a command in progress makes
+     * no further attempt. Either way the command completes with a cancelled result, also seen by the opens
+     * that joined it.
+     */
+    public void cancel(GateEndpoint gate, String ticketNo) {
+        GateQueue queue = queues.get(gate.getKey());
+        Command dropped = (queue == null) ? null : queue.cancel(ticketNo);
+        if (dropped != null) {
+            dropped.future.complete(dropped.result.asCancelled());
+        }
+    }
+
+    /**
+     * @return the longest an open can take before its future completes: the allowed queue wait, the pool lease,
+     * connect and socket timeouts of every attempt and the backoffs between them, plus the margin to record the
+     * outcome. Callers waiting for an open should wait this long before giving up on it.
+     */
+    public long getResponseTimeoutMillis() {
+        CallistoBeanConfigurationProperties.Gate props = callistoProps.getGate();
+        long perAttempt = props.getPoolLeaseTimeoutMillis() + props.getConnectTimeoutMillis()
+                + props.getSocketTimeoutMillis();
+        long timeout = props.getQueue().getMaxWaitMillis() + props.getResponseMarginMillis();
+        for (int attempt = 1; attempt <= props.getRetry().getMaxAttempts(); attempt++) {
+            timeout += props.getRetry().backoffBefore(attempt) + perAttempt;
+        }
+        return timeout;
+    }
+
+    private void schedule(GateQueue queue, Command command, int attempt) {
+        synchronized (queue) {
+            // a command cancelled while its last attempt ran skips the backoff, the next attempt only completes it
+            long delay = command.cancelled ? 0 : callistoProps.getGate().getRetry().backoffBefore(attempt);
+            command.next = scheduler.schedule(() -> attempt(queue, command, attempt), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void attempt(GateQueue queue, Command command, int attempt) {
+        GateCommandResult result = command.result;
+        boolean done = true;
+        try {
+            if (command.cancelled) {
+                LOG.info("Open of ticket no:{} was cancelled, no further attempt is made", result.getTicketNo());
+            } else {
+                gateCycleTracker.mark(result.getTicketType(), result.getTicketNo(),
+                        attempt == 1 ? GateCycleTracker.Stage.COMMAND_SENT : GateCycleTracker.Stage.RETRY);
+                String response = send(queue.gate, result.getTicketNo(), command.simulateType);
+                boolean success = isOpenResponse(response);
+                result.addAttempt(response, success);
+                if (success) {
+                    gateCycleTracker.mark(result.getTicketType(), result.getTicketNo(),
+                            GateCycleTracker.Stage.CONTROLLER_ACK);
+                }
+                int maxAttempts = callistoProps.getGate().getRetry().getMaxAttempts();
+                if (!success && attempt < maxAttempts && !command.cancelled) {
+                    LOG.info("Failed to open the gate, attempt {} of {}, will try again, ticket no:{}", attempt,
+                            maxAttempts, result.getTicketNo());
+                    schedule(queue, command, attempt + 1);
+                    done = false;
+                }
+            }
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+        if (done) {
+            // hand the gate to the next command before running the callbacks of this one
+            List<Command> expired = queue.finished(command);
+            command.future.complete(command.cancelled ? result.asCancelled() : result);
+            for (Command turnedAway : expired) {
+                turnedAway.future.complete(queue.turnAway(turnedAway.result.getTicketNo(), "waited too long"));
+            }
+        }
+    }
+
+    private String send(GateEndpoint gate, String ticketNo, String simulateType) {
+        String response = null;
+        try {
+            response = gateControllerClient.openGate(gate, ticketNo, simulateType);
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+        boolean simulateMode = configService.get(AppConfigKey.GATE_SIMULATION_MODE, Boolean.class, false);
+        LOG.debug("GATE_SIMULATE_MODE:" + simulateMode);
+        if (simulateMode && response != null && (response.contains("OPEN-GATE: NOT-PRESENT") || response.contains("Process exited with an error"))) {
+            response = SIMULATED_OK_RESPONSE;
+            LOG.info("replace response with \"" + SIMULATED_OK_RESPONSE + "\"");
+        }
+        return response;
+    }
+
+    /**
+     * @return true if the controller response confirms the gate is open.
+     */
+    public static boolean isOpenResponse(String response) {
+        return response != null && (response.contains(Constants.GATE_OPEN_RESPONSE_1)
+                || response.contains(Constants.GATE_OPEN_RESPONSE_2));
+    }
+
+    /**
+     * An open command waiting for, or holding, its gate.
+     */
+    private static class Command {
+
+        private final GateCommandResult result;
+
+        private final String simulateType;
+
+        private final long queuedNanos = System.nanoTime();
+
+        private final CompletableFuture<GateCommandResult> future = new CompletableFuture<>();
+
+        private volatile boolean cancelled;
+
+        /**
+         * The attempt scheduled last, guarded by the queue of the gate.
+         */
+        private ScheduledFuture<?> next;
+
+        Command(GateEndpoint gate, String ticketNo, String simulateType) {
+            this.result = new GateCommandResult(gate.getGateType(), gate.getKey(), ticketNo);
+            this.simulateType = simulateType;
+        }
+    }
+
+    /**
+     * A place in the queue of a gate, taken before the ticket of the open is known.
+     */
+    public final class Reservation {
+
+        private final GateQueue queue;
+
+        private final String rejection;
+
+        private boolean used;
+
+        private Reservation(GateQueue queue, String rejection) {
+            this.queue = queue;
+            this.rejection = rejection;
+        }
+
+        /**
+         * @return true if the gate had room for the open, false if it was turned away.
+         */
+        public boolean isAdmitted() {
+            return rejection == null;
+        }
+
+        /**
+         * Open the gate for ticket :ticketNo in the reserved place, retrying with backoff until the controller
+         * confirms or the configured attempts are used up. The returned future never completes exceptionally,
+         * the open of a reservation that was not admitted completes with a rejected result at once.
+         */
+        public CompletableFuture<GateCommandResult> open(String ticketNo, String simulateType) {
+            if (!isAdmitted()) {
+                return CompletableFuture.completedFuture(
+                        GateCommandResult.rejected(queue.gate, ticketNo, rejection));
+            }
+            take();
+            return queue.submit(ticketNo, simulateType);
+        }
+
+        /**
+         * Give the place back when no open is made with it, does nothing once it was used.
+         */
+        public void release() {
+            if (isAdmitted() && !used) {
+                used = true;
+                queue.release();
+            }
+        }
+
+        private void take() {
+            if (used) {
+                throw new IllegalStateException("Gate reservation already used");
+            }
+            used = true;
+        }
+    }
+
+    /**
+     * Commands of one gate. At most one is in progress, the others wait in arrival order.
+     */
+    private class GateQueue {
+
+        private final GateEndpoint gate;
+
+        private final Deque<Command> waiting = new ArrayDeque<>();
+
+        /**
+         * Commands waiting or in progress, by ticket.
+         */
+        private final Map<String, Command> pending = new HashMap<>();
+
+        private final RateLimiter admission;
+
+        private final Timer queueWait;
+
+        private final Meter rejected;
+
+        private final Meter coalesced;
+
+        private final Meter cancelled;
+
+        private boolean busy;
+
+        /**
+         * Places taken by reservations not submitted yet.
+         */
+        private int reserved;
+
+        GateQueue(GateEndpoint gate) {
+            this.gate = gate;
+            this.admission = RateLimiter.create(callistoProps.getGate().getQueue().getPermitsPerSecond());
+            String name = gate.getMetricName();
+            this.queueWait = metricRegistry.timer(MetricRegistry.name(GateCommandService.class, "gate", name, "queueWait"));
+            this.rejected = metricRegistry.meter(MetricRegistry.name(GateCommandService.class, "gate", name, "rejected"));
+            this.coalesced = metricRegistry.meter(MetricRegistry.name(GateCommandService.class, "gate", name, "coalesced"));
+            this.cancelled = metricRegistry.meter(MetricRegistry.name(GateCommandService.class, "gate", name, "cancelled"));
+            String depthName = MetricRegistry.name(GateCommandService.class, "gate", name, "queueDepth");
+            metricRegistry.remove(depthName);
+            metricRegistry.register(depthName, (Gauge<Integer>) this::depth);
+        }
+
+        /**
+         * @return null once a place is taken, otherwise the reason the gate has no room.
+         */
+        synchronized String reserve() {
+            String reason = null;
+            if (waiting.size() + reserved >= callistoProps.getGate().getQueue().getMaxDepth()) {
+                reason = "queue full";
+            } else if (!admission.tryAcquire()) {
+                reason = "admission rate exceeded";
+            }
+            if (reason == null) {
+                reserved++;
+            } else {
+                rejected.mark();
+                LOG.warn("Gate {} turned away an open, {}", gate.getKey(), reason);
+            }
+            return reason;
+        }
+
+        synchronized void release() {
+            reserved--;
+        }
+
+        synchronized CompletableFuture<GateCommandResult> submit(String ticketNo, String simulateType) {
+            reserved--;
+            Command existing = pending.get(ticketNo);
+            if (existing != null) {
+                coalesced.mark();
+                LOG.info("Gate {} is already opening for ticket no:{}, joining that command", gate.getKey(), ticketNo);
+                return existing.future.thenApply(GateCommandResult::asCoalesced);
+            }
+            Command command = new Command(gate, ticketNo, simulateType);
+            pending.put(ticketNo, command);
+            if (busy) {
+                waiting.addLast(command);
+            } else {
+                busy = true;
+                start(command);
+            }
+            return command.future;
+        }
+
+        /**
+         * Hand the gate to the next command once :command is done.
+         *
+         * @return the commands that waited longer than allowed, taken out of the queue for the caller to turn
+         * away once the lock is released.
+         */
+        synchronized List<Command> finished(Command command) {
+            pending.remove(command.result.getTicketNo(), command);
+            long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(callistoProps.getGate().getQueue().getMaxWaitMillis());
+            List<Command> expired = Collections.emptyList();
+            Command next = waiting.pollFirst();
+            while (next != null && System.nanoTime() - next.queuedNanos > maxWaitNanos) {
+                pending.remove(next.result.getTicketNo(), next);
+                if (expired.isEmpty()) {
+                    expired = new ArrayList<>();
+                }
+                expired.add(next);
+                next = waiting.pollFirst();
+            }
+            if (next == null) {
+                busy = false;
+            } else {
+                start(next);
+            }
+            return expired;
+        }
+
+        /**
+         * Cancel the command of ticket :ticketNo. A later open of the ticket issues a new command.
+         *
+         * @return the command if it was still waiting, taken out of the queue for the caller to complete once
+         * the lock is released. A command in progress completes on the gate scheduler.
+         */
+        synchronized Command cancel(String ticketNo) {
+            Command command = pending.remove(ticketNo);
+            if (command == null) {
+                return null;
+            }
+            command.cancelled = true;
+            cancelled.mark();
+            LOG.info("Gate {} cancelled the open of ticket no:{}", gate.getKey(), ticketNo);
+            if (waiting.remove(command)) {
+                return command;
+            }
+            // a retry waiting for its backoff runs at once, to complete the command without sending it
+            if (command.next != null && command.next.cancel(false)) {
+                command.next = scheduler.schedule(() -> attempt(this, command, 0), 0, TimeUnit.MILLISECONDS);
+            }
+            return null;
+        }
+
+        synchronized int depth() {
+            return waiting.size();
+        }
+
+        private void start(Command command) {
+            queueWait.update(System.nanoTime() - command.queuedNanos, TimeUnit.NANOSECONDS);
+            schedule(this, command, 1);
+        }
+
+        GateCommandResult turnAway(String ticketNo, String reason) {
+            rejected.mark();
+            LOG.warn("Gate {} turned away the open of ticket no:{}, {}", gate.getKey(), ticketNo, reason);
+            return GateCommandResult.rejected(gate, ticketNo, reason);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP client for the gate controllers, which are located through the {@link GateRegistry}. Keeps one pooled, keep-alive connection manager per
+ * controller endpoint so a gate command re-uses an open socket instead of paying a TCP handshake,
+ * and records per-gate latency and error metrics.
+ */
+@Component
+public class GateControllerClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateControllerClient.class);
+
+    private static final String OPEN_CMD_PATH = "gatecmd/gate_open_cmd";
+
+    private static final String OPEN_READY_PATH = "gatecmd/gate_open_ready";
+
+    private final Map<String, CloseableHttpClient> clients = new ConcurrentHashMap<>();
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    /**
+     * Send the open command for ticket :ticketNo to :gate.
+     *
+     * @return the trimmed response body of the controller.
+     */
+    public String openGate(GateEndpoint gate, String ticketNo, String simulateType) throws IOException {
+        StringBuilder query = new StringBuilder();
+        query.append("gate_id=").append(gate.getGateNo());
+        query.append("&ticket=").append(ticketNo);
+        if (simulateType != null) {
+            query.append("&set_sim_mode=").append(simulateType);
+        }
+        return execute(gate.getHost(), gate.getPort(), OPEN_CMD_PATH, query.toString(), gate.getMetricName());
+    }
+
+    /**
+     * Ask the controller of :gate whether its loop is ready to open.
+     *
+     * @return the trimmed response body of the controller.
+     */
+    public String getOpenReady(GateEndpoint gate) throws IOException {
+        return execute(gate.getHost(), gate.getPort(), OPEN_READY_PATH, "gate_id=" + gate.getGateNo(),
+                gate.getMetricName());
+    }
+
+    /**
+     * Issue a GET against a controller endpoint through its pooled client.
+     *
+     * @param metricName the gate in the latency and error metrics, see {@link GateEndpoint#getMetricName()}.
+     */
+    public String execute(String host, int port, String path, String query, String metricName) throws IOException {
+        String url = "http://" + host + ":" + port + "/" + path + "?" + query;
+        Timer.Context context = latencyTimer(metricName).time();
+        try {
+            HttpGet httpGet = new HttpGet(url);
+            try (CloseableHttpResponse httpResponse = clientFor(host, port).execute(httpGet)) {
+                HttpEntity entity = httpResponse.getEntity();
+                String response = (entity == null) ? "" : EntityUtils.toString(entity, "utf-8").trim();
+                LOG.info("gate controller call,url:" + url + ",response:" + response);
+                return response;
+            }
+        } catch (IOException e) {
+            errorMeter(metricName).mark();
+            throw e;
+        } finally {
+            context.stop();
+        }
+    }
+
+    private CloseableHttpClient clientFor(String host, int port) {
+        return clients.computeIfAbsent(host + ":" + port, key -> createClient());
+    }
+
+    private CloseableHttpClient createClient() {
+        CallistoBeanConfigurationProperties.Gate gate = callistoProps.getGate();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(
+                gate.getKeepAliveSeconds(), TimeUnit.SECONDS);
+        connectionManager.setMaxTotal(gate.getMaxConnectionsPerController());
+        connectionManager.setDefaultMaxPerRoute(gate.getMaxConnectionsPerController());
+        connectionManager.setValidateAfterInactivity(1000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(gate.getConnectTimeoutMillis())
+                .setSocketTimeout(gate.getSocketTimeoutMillis())
+                .setConnectionRequestTimeout(gate.getPoolLeaseTimeoutMillis())
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> TimeUnit.SECONDS.toMillis(gate.getKeepAliveSeconds()))
+                .evictExpiredConnections()
+                .evictIdleConnections((long) gate.getKeepAliveSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    private Timer latencyTimer(String metricName) {
+        return metricRegistry.timer(MetricRegistry.name(GateControllerClient.class, "gate", metricName, "latency"));
+    }
+
+    private Meter errorMeter(String metricName) {
+        return metricRegistry.meter(MetricRegistry.name(GateControllerClient.class, "gate", metricName, "errors"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        clients.values().forEach(client -> {
+            try {
+                client.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close gate controller client", e);
+            }
+        });
+        clients.clear();
+    }
+}
@@ -0,0 +1,241 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.web.rest.dto.GateCycleDTO;
+import com.greenowl.callisto.web.rest.dto.GateCycleReportDTO;
+import com.greenowl.callisto.web.rest.dto.GateCycleStatsDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Follows every gate cycle from the open request of the user to the ticket callback of the gate controller,
+ * correlated by ticket type and ticket number, the only identity the callback carries. The time each stage is
+ * first reached is recorded, and completed cycles feed timers of the metric registry for the gate that was
+ * opened, named by lot and gate, and for the lot. The latest completed cycles are kept so
+ * the slowest ones can be looked at.
+ */
+@Service
+public class GateCycleTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateCycleTracker.class);
+
+    public enum Stage {
+        REQUEST_RECEIVED, COMMAND_SENT, RETRY, CONTROLLER_ACK, TICKET_CALLBACK
+    }
+
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private final Deque<GateCycleDTO> recent = new ArrayDeque<>();
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private Cache<String, Cycle> open;
+
+    private Counter abandoned;
+
+    @PostConstruct
+    public void init() {
+        CallistoBeanConfigurationProperties.Gate.Cycle cycleProps = callistoProps.getGate().getCycle();
+        abandoned = metricRegistry.counter(MetricRegistry.name(GateCycleTracker.class, "abandoned"));
+        open = CacheBuilder.newBuilder()
+                .maximumSize(cycleProps.getMaxOpenCycles())
+                .expireAfterWrite(cycleProps.getOpenCycleTimeoutMinutes(), TimeUnit.MINUTES)
+                .<String, Cycle>removalListener(notification -> {
+                    if (notification.getCause() == RemovalCause.EXPIRED || notification.getCause() == RemovalCause.SIZE) {
+                        abandoned.inc();
+                    }
+                })
+                .build();
+    }
+
+    /**
+     * Start the cycle of ticket :ticketNo at :gate of lot :lotId, unless a repeated request already started it.
+     *
+     * @param ticketType    {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_ENTER} or
+     *                      {@link com.greenowl.callisto.config.Constants#PARKING_TICKET_TYPE_EXIT}, reported back by
+     *                      the ticket callback.
+     * @param receivedNanos {@link System#nanoTime()} when the request for the gate was received.
+     */
+    public void start(GateEndpoint gate, int ticketType, String ticketNo, Long lotId, long receivedNanos) {
+        open.asMap().putIfAbsent(key(ticketType, ticketNo), new Cycle(gate, ticketType, ticketNo, lotId, receivedNanos));
+    }
+
+    /**
+     * Record that the cycle of ticket :ticketNo of type :ticketType reached :stage, ignored if no such cycle is open.
+     */
+    public void mark(int ticketType, String ticketNo, Stage stage) {
+        Cycle cycle = open.getIfPresent(key(ticketType, ticketNo));
+        if (cycle == null) {
+            return;
+        }
+        long elapsed = cycle.reach(stage);
+        if (stage == Stage.CONTROLLER_ACK) {
+            timer("gate", cycle.gateName, "ack").update(elapsed, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Drop the cycle of ticket :ticketNo of type :ticketType, the gate did not open so no callback will come.
+     */
+    public void cancel(int ticketType, String ticketNo) {
+        open.invalidate(key(ticketType, ticketNo));
+    }
+
+    /**
+     * Close the cycle of ticket :ticketNo of type :ticketType, the gate controller reported the pass.
+     */
+    public void complete(int ticketType, String ticketNo, boolean passed) {
+        String key = key(ticketType, ticketNo);
+        Cycle cycle = open.getIfPresent(key);
+        if (cycle == null) {
+            return;
+        }
+        open.invalidate(key);
+        long elapsed = cycle.reach(Stage.TICKET_CALLBACK);
+        timer("gate", cycle.gateName, "cycle").update(elapsed, TimeUnit.NANOSECONDS);
+        if (cycle.lotId != null) {
+            timer("lot", String.valueOf(cycle.lotId), "cycle").update(elapsed, TimeUnit.NANOSECONDS);
+        }
+        GateCycleDTO completed = cycle.toDTO(passed);
+        LOG.debug("Gate cycle of ticket {} at gate {} took {} ms", ticketNo, completed.getGate(), completed.getTotalMillis());
+        int maxRecent = callistoProps.getGate().getCycle().getRecentCycles();
+        synchronized (recent) {
+            recent.addLast(completed);
+            while (recent.size() > maxRecent) {
+                recent.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * @param slowest how many of the slowest recent cycles to include.
+     * @return the cycle latency percentiles per gate and lot, and the slowest recent cycles.
+     */
+    public GateCycleReportDTO getReport(int slowest) {
+        List<GateCycleStatsDTO> latencies = timers.entrySet().stream()
+                .sorted(Map.Entry.comparingByKey())
+                .map(entry -> toStats(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        List<GateCycleDTO> cycles;
+        synchronized (recent) {
+            cycles = new ArrayList<>(recent);
+        }
+        cycles.sort(Comparator.comparingLong(GateCycleDTO::getTotalMillis).reversed());
+        return new GateCycleReportDTO(latencies, cycles.subList(0, Math.min(slowest, cycles.size())),
+                abandoned.getCount());
+    }
+
+    private Timer timer(String scope, String id, String kind) {
+        String name = MetricRegistry.name(GateCycleTracker.class, scope, id, kind);
+        return timers.computeIfAbsent(name, metricRegistry::timer);
+    }
+
+    private static GateCycleStatsDTO toStats(String name, Timer timer) {
+        Snapshot snapshot = timer.getSnapshot();
+        String shortName = name.substring(GateCycleTracker.class.getName().length() + 1);
+        return new GateCycleStatsDTO(shortName, timer.getCount(), toMillis(snapshot.getMean()),
+                toMillis(snapshot.getMedian()), toMillis(snapshot.get95thPercentile()),
+                toMillis(snapshot.get99thPercentile()), toMillis(snapshot.getMax()));
+    }
+
+    private static double toMillis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private static String key(int ticketType, String ticketNo) {
+        return ticketType + ":" + ticketNo;
+    }
+
+    private static class Cycle {
+
+        /**
+         * {@link GateEndpoint#getKey()} of the gate that was opened.
+         */
+        private final String gateKey;
+
+        /**
+         * {@link GateEndpoint#getMetricName()} of the gate that was opened, bounded by the registered gates.
+         */
+        private final String gateName;
+
+        private final int ticketType;
+
+        private final String ticketNo;
+
+        private final Long lotId;
+
+        private final long startedAt;
+
+        private final long startNanos;
+
+        /**
+         * Nanoseconds from the start to the first time each stage was reached, -1 if not reached.
+         */
+        private final long[] reached = new long[Stage.values().length];
+
+        private int attempts;
+
+        Cycle(GateEndpoint gate, int ticketType, String ticketNo, Long lotId, long startNanos) {
+            this.gateKey = gate.getKey();
+            this.gateName = gate.getMetricName();
+            this.ticketType = ticketType;
+            this.ticketNo = ticketNo;
+            this.lotId = lotId;
+            this.startNanos = startNanos;
+            this.startedAt = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+            Arrays.fill(reached, -1);
+            reached[Stage.REQUEST_RECEIVED.ordinal()] = 0;
+        }
+
+        /**
+         * @return nanoseconds since the start of the cycle.
+         */
+        synchronized long reach(Stage stage) {
+            long elapsed = System.nanoTime() - startNanos;
+            if (stage == Stage.COMMAND_SENT || stage == Stage.RETRY) {
+                attempts++;
+            }
+            if (reached[stage.ordinal()] < 0) {
+                reached[stage.ordinal()] = elapsed;
+            }
+            return elapsed;
+        }
+
+        synchronized GateCycleDTO toDTO(boolean passed) {
+            Map<String, Long> stages = new LinkedHashMap<>();
+            for (Stage stage : Stage.values()) {
+                if (reached[stage.ordinal()] >= 0) {
+                    stages.put(stage.name(), TimeUnit.NANOSECONDS.toMillis(reached[stage.ordinal()]));
+                }
+            }
+            long total = TimeUnit.NANOSECONDS.toMillis(reached[Stage.TICKET_CALLBACK.ordinal()]);
+            return new GateCycleDTO(ticketNo, ticketType, gateKey, lotId, startedAt, total, attempts, passed, stages);
+        }
+    }
+}
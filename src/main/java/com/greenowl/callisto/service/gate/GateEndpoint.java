@@ -0,0 +1,105 @@
+package com.greenowl.callisto.service.gate;
+
+import com.greenowl.callisto.domain.LotGate;
+
+/**
+ * Where to reach a gate: the controller endpoint and the number of the gate on that controller.
+ */
+public class GateEndpoint {
+
+    public static final String UNKNOWN_METRIC_NAME = "unknown";
+
+    private final Long lotId;
+
+    private final String gateId;
+
+    private final String gateNo;
+
+    private final int gateType;
+
+    private final String host;
+
+    private final int port;
+
+    public GateEndpoint(Long lotId, String gateId, String gateNo, int gateType, String host, int port) {
+        this.lotId = lotId;
+        this.gateId = gateId;
+        this.gateNo = gateNo;
+        this.gateType = gateType;
+        this.host = host;
+        this.port = port;
+    }
+
+    static GateEndpoint of(LotGate gate) {
+        return new GateEndpoint(gate.getLotId(), gate.getGateId(), String.valueOf(gate.getGateNo()), gate.getGateType(),
+                gate.getControllerHost(), gate.getControllerPort());
+    }
+
+    /**
+     * @return the lot of the gate, null for a gate of the default controller that is not registered.
+     */
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public String getGateNo() {
+        return gateNo;
+    }
+
+    /**
+     * @return whether this is an entrance or an exit gate, as the ticket callback reports it, 0 if unknown.
+     */
+    public int getGateType() {
+        return gateType;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * @return identifies the physical gate: two endpoints with the same key drive the same barrier.
+     */
+    public String getKey() {
+        return host + ":" + port + "/" + gateNo;
+    }
+
+    /**
+     * @return the name of the gate in the metric registry: the bare gate number for the entrance and exit of the
+     * default controller, {@link #UNKNOWN_METRIC_NAME} for any other gate id a device sent, so requests cannot
+     * add metrics to the registry.
+     */
+    public String getMetricName() {
+        if (lotId != null) {
+            return "lot" + lotId + "." + gateId;
+        }
+        return isKnown() ? gateNo : UNKNOWN_METRIC_NAME;
+    }
+
+    /**
+     * @return false for a gate id of the default controller that is neither its entrance nor its exit.
+     */
+    public boolean isKnown() {
+        return lotId != null || gateType != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "GateEndpoint{" +
+                "lotId=" + lotId +
+                ", gateId='" + gateId + '\'' +
+                ", gateNo='" + gateNo + '\'' +
+                ", gateType=" + gateType +
+                ", host='" + host + '\'' +
+                ", port=" + port +
+                '}';
+    }
+}
@@ -0,0 +1,355 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.GateStatus;
+import com.greenowl.callisto.domain.GateStatusRollup;
+import com.greenowl.callisto.repository.GateStatusRepository;
+import com.greenowl.callisto.repository.GateStatusRollupRepository;
+import com.greenowl.callisto.web.rest.dto.GateStatusHistoryDTO;
+import com.greenowl.callisto.web.rest.dto.GateStatusRollupDTO;
+import com.greenowl.callisto.web.rest.dto.StatusLogDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps the heartbeats reported by the gates. The latest heartbeats of every gate are held in memory in a
+ * fixed size ring, only the changes of the reported status are stored one row each, and the heartbeats are
+ * downsampled to per minute up and down counts stored once the minute is over. Rollups and status changes
+ * past the retention period are purged in batches.
+ */
+@Service
+public class GateHealthService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateHealthService.class);
+
+    private static final long BUCKET_MILLIS = 60000;
+
+    /**
+     * Closed minutes kept per gate while the database is unreachable, about a day.
+     */
+    private static final int MAX_PENDING_ROLLUPS = 1440;
+
+    private static final BiFunction<GateStatusRollupDTO, GateStatusRollupDTO, GateStatusRollupDTO> MERGE_MINUTES =
+            (first, second) -> new GateStatusRollupDTO(first.getBucketStart(), first.getUpCount() + second.getUpCount(),
+                    first.getDownCount() + second.getDownCount(), second.getLastStatus());
+
+    private final Map<String, GateMonitor> monitors = new ConcurrentHashMap<>();
+
+    @Inject
+    private GateStatusRepository gateStatusRepository;
+
+    @Inject
+    private GateStatusRollupRepository gateStatusRollupRepository;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private PlatformTransactionManager transactionManager;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private TransactionTemplate transactionTemplate;
+
+    private Set<String> upStatuses;
+
+    private Meter heartbeats;
+
+    private Meter transitions;
+
+    @PostConstruct
+    public void init() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        upStatuses = callistoProps.getGate().getHealth().getUpStatuses().stream()
+                .map(String::toUpperCase)
+                .collect(Collectors.toSet());
+        heartbeats = metricRegistry.meter(MetricRegistry.name(GateHealthService.class, "heartbeats"));
+        transitions = metricRegistry.meter(MetricRegistry.name(GateHealthService.class, "transitions"));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush(true);
+    }
+
+    /**
+     * Record a heartbeat of gate :gateId reporting :status. Only a change of status is written right away.
+     */
+    public void report(String gateId, String status) {
+        DateTime now = DateTime.now(DateTimeZone.UTC);
+        heartbeats.mark();
+        GateMonitor monitor = monitors.computeIfAbsent(gateId, this::newMonitor);
+        if (!monitor.record(now.getMillis(), status, isUp(status))) {
+            return;
+        }
+        transitions.mark();
+        GateStatus gateStatus = new GateStatus();
+        gateStatus.setGateId(gateId);
+        gateStatus.setStatus(status);
+        gateStatus.setCheckTime(now);
+        try {
+            gateStatusRepository.save(gateStatus);
+        } catch (Exception e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the heartbeats of gate :gateId still held in memory since :since, oldest first.
+     */
+    public List<StatusLogDTO> getRecent(String gateId, long since) {
+        GateMonitor monitor = monitors.get(gateId);
+        return (monitor == null) ? Collections.emptyList() : monitor.recent(since);
+    }
+
+    /**
+     * @return the status changes and per minute heartbeat counts of gate :gateId between :startTime and :endTime,
+     * including the minutes not stored yet.
+     */
+    public GateStatusHistoryDTO getHistory(String gateId, DateTime startTime, DateTime endTime) {
+        List<StatusLogDTO> changes = gateStatusRepository.getGateStatusBetweenForGate(gateId, startTime, endTime).stream()
+                .map(gateStatus -> toStatusLog(gateStatus.getCheckTime().getMillis(), gateStatus.getStatus()))
+                .collect(Collectors.toList());
+
+        List<GateStatusRollup> rollups = new ArrayList<>(
+                gateStatusRollupRepository.getRollupsBetweenForGate(gateId, startTime, endTime));
+        GateMonitor monitor = monitors.get(gateId);
+        if (monitor != null) {
+            monitor.pending().stream()
+                    .filter(rollup -> !rollup.getBucketStart().isBefore(startTime) && rollup.getBucketStart().isBefore(endTime))
+                    .forEach(rollups::add);
+        }
+        // a minute may have been stored in several rows, by several nodes or across a restart
+        Map<Long, GateStatusRollupDTO> minutes = new TreeMap<>();
+        for (GateStatusRollup rollup : rollups) {
+            GateStatusRollupDTO dto = new GateStatusRollupDTO(rollup.getBucketStart().getMillis(), rollup.getUpCount(),
+                    rollup.getDownCount(), rollup.getLastStatus());
+            minutes.merge(dto.getBucketStart(), dto, MERGE_MINUTES);
+        }
+        return new GateStatusHistoryDTO(gateId, changes, new ArrayList<>(minutes.values()));
+    }
+
+    /**
+     * Store the rollups of the minutes that are over.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.gate.health.rollupFlushIntervalMillis:60000}",
+            fixedDelayString = "${callisto_config.gate.health.rollupFlushIntervalMillis:60000}")
+    public void flushRollups() {
+        flush(false);
+    }
+
+    /**
+     * Delete the rollups and status changes older than the retention period, a batch per transaction.
+     */
+    @Scheduled(initialDelayString = "${callisto_config.gate.health.purgeIntervalMillis:3600000}",
+            fixedDelayString = "${callisto_config.gate.health.purgeIntervalMillis:3600000}")
+    public void purge() {
+        CallistoBeanConfigurationProperties.Gate.Health health = callistoProps.getGate().getHealth();
+        DateTime cutoff = DateTime.now(DateTimeZone.UTC).minusDays(health.getRetentionDays());
+        PageRequest batch = new PageRequest(0, health.getPurgeBatchSize());
+        try {
+            int rollups = purgeInBatches(gateStatusRollupRepository::deleteByIds,
+                    () -> gateStatusRollupRepository.getIdsBefore(cutoff, batch));
+            int changes = purgeInBatches(gateStatusRepository::deleteByIds,
+                    () -> gateStatusRepository.getIdsCheckedBefore(cutoff, batch));
+            if (rollups > 0 || changes > 0) {
+                LOG.info("Purged {} gate status rollups and {} gate status changes older than {}", rollups, changes, cutoff);
+            }
+        } catch (Exception e) {
+            LOG.warn("Unable to purge gate status history", e);
+        }
+    }
+
+    private int purgeInBatches(Function<List<Long>, Integer> delete, Supplier<List<Long>> nextBatch) {
+        int total = 0;
+        while (true) {
+            Integer deleted = transactionTemplate.execute(status -> {
+                List<Long> ids = nextBatch.get();
+                return ids.isEmpty() ? 0 : delete.apply(ids);
+            });
+            if (deleted == null || deleted == 0) {
+                return total;
+            }
+            total += deleted;
+        }
+    }
+
+    private void flush(boolean all) {
+        long now = System.currentTimeMillis();
+        for (GateMonitor monitor : monitors.values()) {
+            List<GateStatusRollup> rollups = monitor.drain(now, all);
+            if (rollups.isEmpty()) {
+                continue;
+            }
+            try {
+                gateStatusRollupRepository.save(rollups);
+            } catch (Exception e) {
+                LOG.warn("Unable to store {} gate status rollups of gate {}, keeping them for the next flush: {}",
+                        rollups.size(), monitor.gateId, e.getMessage());
+                monitor.restore(rollups);
+            }
+        }
+    }
+
+    private GateMonitor newMonitor(String gateId) {
+        String lastStatus = null;
+        try {
+            List<GateStatus> latest = gateStatusRepository.getLatestGateStatus(gateId, new PageRequest(0, 1));
+            lastStatus = latest.isEmpty() ? null : latest.get(0).getStatus();
+        } catch (Exception e) {
+            LOG.warn("Unable to read the last status of gate {}: {}", gateId, e.getMessage());
+        }
+        return new GateMonitor(gateId, lastStatus, callistoProps.getGate().getHealth().getRecentHeartbeats());
+    }
+
+    private boolean isUp(String status) {
+        return status != null && upStatuses.contains(status.toUpperCase());
+    }
+
+    private static StatusLogDTO toStatusLog(long time, String status) {
+        StatusLogDTO dto = new StatusLogDTO();
+        dto.setStatusTime(time);
+        dto.setStatus(status);
+        return dto;
+    }
+
+    /**
+     * Heartbeats of one gate: the ring of the latest ones, the minute being counted and the minutes over but
+     * not stored yet.
+     */
+    private static class GateMonitor {
+
+        private final String gateId;
+
+        private final long[] times;
+
+        private final String[] statuses;
+
+        private int next;
+
+        private int size;
+
+        private String lastStatus;
+
+        private long bucketStart = -1;
+
+        private int upCount;
+
+        private int downCount;
+
+        private String bucketStatus;
+
+        private final List<GateStatusRollup> closed = new ArrayList<>();
+
+        GateMonitor(String gateId, String lastStatus, int capacity) {
+            this.gateId = gateId;
+            this.lastStatus = lastStatus;
+            this.times = new long[capacity];
+            this.statuses = new String[capacity];
+        }
+
+        /**
+         * @return true if :status differs from the status of the previous heartbeat.
+         */
+        synchronized boolean record(long time, String status, boolean up) {
+            times[next] = time;
+            statuses[next] = status;
+            next = (next + 1) % times.length;
+            size = Math.min(size + 1, times.length);
+
+            long bucket = time - time % BUCKET_MILLIS;
+            if (bucket != bucketStart) {
+                closeBucket();
+                bucketStart = bucket;
+            }
+            if (up) {
+                upCount++;
+            } else {
+                downCount++;
+            }
+            bucketStatus = status;
+
+            boolean changed = !Objects.equals(lastStatus, status);
+            lastStatus = status;
+            return changed;
+        }
+
+        synchronized List<StatusLogDTO> recent(long since) {
+            List<StatusLogDTO> recent = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int index = (next - size + i + times.length) % times.length;
+                if (times[index] >= since) {
+                    recent.add(toStatusLog(times[index], statuses[index]));
+                }
+            }
+            return recent;
+        }
+
+        /**
+         * Take the minutes over at :now, or every minute including the current one if :all.
+         */
+        synchronized List<GateStatusRollup> drain(long now, boolean all) {
+            if (all || now - now % BUCKET_MILLIS > bucketStart) {
+                closeBucket();
+                bucketStart = -1;
+            }
+            List<GateStatusRollup> drained = new ArrayList<>(closed);
+            closed.clear();
+            return drained;
+        }
+
+        synchronized void restore(List<GateStatusRollup> rollups) {
+            closed.addAll(0, rollups);
+            while (closed.size() > MAX_PENDING_ROLLUPS) {
+                closed.remove(0);
+            }
+        }
+
+        /**
+         * @return the minutes not stored yet, including the current one.
+         */
+        synchronized List<GateStatusRollup> pending() {
+            List<GateStatusRollup> pending = new ArrayList<>(closed);
+            if (upCount + downCount > 0) {
+                pending.add(new GateStatusRollup(gateId, new DateTime(bucketStart, DateTimeZone.UTC), upCount,
+                        downCount, bucketStatus));
+            }
+            return pending;
+        }
+
+        private void closeBucket() {
+            if (upCount + downCount > 0) {
+                closed.add(new GateStatusRollup(gateId, new DateTime(bucketStart, DateTimeZone.UTC), upCount,
+                        downCount, bucketStatus));
+            }
+            upCount = 0;
+            downCount = 0;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.AppConfigKey;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.domain.LotGate;
+import com.greenowl.callisto.repository.LotGateRepository;
+import com.greenowl.callisto.service.config.ConfigService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps the gates of every lot to the controller that drives them, from T_LOT_GATE. The table is read into an
+ * immutable snapshot at startup and reloaded periodically, lookups never hit the database. Gates that are
+ * not registered, which is every gate of a single lot deployment, are driven by the default controller set
+ * by GATE_API_IP and GATE_API_PORT. Each reload is announced with a {@link GateRegistryRefreshedEvent}.
+ */
+@Service
+public class GateRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateRegistry.class);
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList());
+
+    @Inject
+    private LotGateRepository lotGateRepository;
+
+    @Inject
+    private ConfigService configService;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostConstruct
+    public void init() {
+        metricRegistry.register(MetricRegistry.name(GateRegistry.class, "gates"),
+                (Gauge<Integer>) () -> snapshot.all.size());
+        try {
+            reload();
+        } catch (Exception e) {
+            LOG.error("Unable to load the gate registry, only the default controller will be used", e);
+        }
+    }
+
+    @Scheduled(initialDelayString = "${callisto_config.gate.registry.refreshIntervalMillis:60000}",
+            fixedDelayString = "${callisto_config.gate.registry.refreshIntervalMillis:60000}")
+    public void refresh() {
+        try {
+            reload();
+        } catch (Exception e) {
+            LOG.warn("Unable to refresh the gate registry, keeping the previous one", e);
+        }
+    }
+
+    public void reload() {
+        List<GateEndpoint> gates = new ArrayList<>();
+        for (LotGate gate : lotGateRepository.findByEnabledTrue()) {
+            gates.add(GateEndpoint.of(gate));
+        }
+        snapshot = new Snapshot(gates);
+        LOG.debug("Loaded {} gates into the gate registry", gates.size());
+        eventPublisher.publishEvent(new GateRegistryRefreshedEvent(this));
+    }
+
+    /**
+     * The gate of lot :lotId to open for a :gateType pass.
+     *
+     * @param requestedGateId the gate the device asked for, null to take the first gate of that type.
+     * @return the registered gate, or the :gateType gate of the default controller if the lot has none.
+     */
+    public GateEndpoint resolve(Long lotId, Long requestedGateId, int gateType) {
+        List<GateEndpoint> gates = snapshot.byLot.getOrDefault(lotId, Collections.emptyList());
+        GateEndpoint first = null;
+        for (GateEndpoint gate : gates) {
+            if (gate.getGateType() != gateType) {
+                continue;
+            }
+            if (requestedGateId == null || String.valueOf(requestedGateId).equals(gate.getGateId())) {
+                return gate;
+            }
+            if (first == null) {
+                first = gate;
+            }
+        }
+        return first != null ? first : defaultEndpoint(gateType);
+    }
+
+    /**
+     * The gate known to the devices as :gateId.
+     *
+     * @return the registered gate, or the matching gate of the default controller if it is not registered.
+     */
+    public GateEndpoint forGateId(String gateId) {
+        GateEndpoint gate = snapshot.byGateId.get(gateId);
+        return gate != null ? gate : defaultEndpoint(gateId);
+    }
+
+    /**
+     * @return the registered gates of lot :lotId, empty if the lot has none.
+     */
+    public List<GateEndpoint> getGates(Long lotId) {
+        return snapshot.byLot.getOrDefault(lotId, Collections.emptyList());
+    }
+
+    /**
+     * @return every registered gate.
+     */
+    public List<GateEndpoint> getAll() {
+        return snapshot.all;
+    }
+
+    /**
+     * The :gateType gate of the default controller, whose gates are numbered by type: 1 is the entrance, 2 the exit.
+     */
+    public GateEndpoint defaultEndpoint(int gateType) {
+        return defaultEndpoint(String.valueOf(gateType), gateType);
+    }
+
+    /**
+     * Map the gate ids sent by the devices to the gate of the default controller.
+     */
+    private GateEndpoint defaultEndpoint(String gateId) {
+        if (gateId.toLowerCase().contains("park-hospital-entry") || gateId.contains("HMSensor")) {
+            return defaultEndpoint(Constants.PARKING_TICKET_TYPE_ENTER);
+        } else if (gateId.toLowerCase().contains("park-hospital-exit")) {
+            return defaultEndpoint(Constants.PARKING_TICKET_TYPE_EXIT);
+        } else if (String.valueOf(Constants.PARKING_TICKET_TYPE_ENTER).equals(gateId)) {
+            return defaultEndpoint(Constants.PARKING_TICKET_TYPE_ENTER);
+        } else if (String.valueOf(Constants.PARKING_TICKET_TYPE_EXIT).equals(gateId)) {
+            return defaultEndpoint(Constants.PARKING_TICKET_TYPE_EXIT);
+        }
+        return defaultEndpoint(gateId, 0);
+    }
+
+    private GateEndpoint defaultEndpoint(String gateNo, int gateType) {
+        return new GateEndpoint(null, gateNo, gateNo, gateType,
+                configService.get(AppConfigKey.GATE_API_IP, String.class, "localhost"),
+                configService.get(AppConfigKey.GATE_API_PORT, Integer.class, 2222));
+    }
+
+    private static class Snapshot {
+
+        private final List<GateEndpoint> all;
+
+        private final Map<Long, List<GateEndpoint>> byLot = new HashMap<>();
+
+        private final Map<String, GateEndpoint> byGateId = new HashMap<>();
+
+        Snapshot(List<GateEndpoint> gates) {
+            this.all = Collections.unmodifiableList(gates);
+            for (GateEndpoint gate : gates) {
+                byLot.computeIfAbsent(gate.getLotId(), key -> new ArrayList<>()).add(gate);
+                // a gate id shared by several lots is ambiguous without the lot, the first one wins
+                byGateId.putIfAbsent(gate.getGateId(), gate);
+            }
+        }
+    }
+}
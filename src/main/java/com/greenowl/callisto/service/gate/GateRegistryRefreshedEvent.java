@@ -0,0 +1,13 @@
+package com.greenowl.callisto.service.gate;
+
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published each time the {@link GateRegistry} reloaded T_LOT_GATE.
+ */
+public class GateRegistryRefreshedEvent extends ApplicationEvent {
+
+    public GateRegistryRefreshedEvent(GateRegistry source) {
+        super(source);
+    }
+}
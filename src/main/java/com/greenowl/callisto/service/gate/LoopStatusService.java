@@ -0,0 +1,305 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.web.rest.dto.LoopStatusDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Samples the loop of every configured and registered gate at a fixed cadence and keeps the latest sample per
+ * gate in memory, so loop status requests never call the gate controller themselves. The polled gates follow the
+ * registry as it is refreshed, the status of any other gate id is not served. Clients subscribed to a gate are
+ * pushed the new status whenever the loop changes. The live status of all gates of a lot is read in parallel,
+ * bounded by one timeout for the whole lot.
+ */
+@Service
+public class LoopStatusService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoopStatusService.class);
+
+    private static final String LOOP_EVENT = "loopStatus";
+
+    private static final String UNKNOWN_STATUS = "UNKNOWN";
+
+    /**
+     * Latest sample per gate, by {@link GateEndpoint#getKey()}.
+     */
+    private final Map<String, LoopState> states = new ConcurrentHashMap<>();
+
+    /**
+     * Subscribers per polled gate, by {@link GateEndpoint#getKey()}.
+     */
+    private final Map<String, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * The sampling task of each polled gate, by {@link GateEndpoint#getKey()}.
+     */
+    private final Map<String, ScheduledFuture<?>> pollers = new ConcurrentHashMap<>();
+
+    @Inject
+    private GateControllerClient gateControllerClient;
+
+    @Inject
+    private GateRegistry gateRegistry;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private ScheduledThreadPoolExecutor poller;
+
+    private ExecutorService fanOut;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "gate-loop-poller-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        poller = new ScheduledThreadPoolExecutor(1, threadFactory);
+        poller.setRemoveOnCancelPolicy(true);
+        syncPollers();
+        AtomicInteger fanOutCount = new AtomicInteger();
+        fanOut = Executors.newFixedThreadPool(callistoProps.getGate().getRegistry().getFanOutPoolSize(), runnable -> {
+            Thread thread = new Thread(runnable, "gate-fan-out-" + fanOutCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        metricRegistry.register(MetricRegistry.name(LoopStatusService.class, "subscribers"),
+                (Gauge<Integer>) () -> subscribers.values().stream().mapToInt(Set::size).sum());
+    }
+
+    @EventListener
+    public void onRegistryRefreshed(GateRegistryRefreshedEvent event) {
+        syncPollers();
+    }
+
+    /**
+     * Poll the configured gates and every registered gate: start the gates that are new, stop the ones that are
+     * gone, closing the streams of their subscribers.
+     */
+    synchronized void syncPollers() {
+        CallistoBeanConfigurationProperties.Gate.LoopPoll loopPoll = callistoProps.getGate().getLoopPoll();
+        Map<String, GateEndpoint> gates = new LinkedHashMap<>();
+        for (String gateNo : loopPoll.getGates()) {
+            GateEndpoint gate = gateRegistry.forGateId(gateNo);
+            gates.putIfAbsent(gate.getKey(), gate);
+        }
+        gateRegistry.getAll().forEach(gate -> gates.putIfAbsent(gate.getKey(), gate));
+
+        for (String key : new ArrayList<>(pollers.keySet())) {
+            if (!gates.containsKey(key)) {
+                pollers.remove(key).cancel(false);
+                states.remove(key);
+                Set<Subscriber> gateSubscribers = subscribers.remove(key);
+                if (gateSubscribers != null) {
+                    gateSubscribers.forEach(subscriber -> subscriber.emitter.complete());
+                }
+                LOG.info("Stopped polling the loop status of gate {}", key);
+            }
+        }
+        // one thread per gate, a controller that hangs until the socket timeout only delays its own gate
+        poller.setCorePoolSize(Math.max(1, gates.size()));
+        for (GateEndpoint gate : gates.values()) {
+            pollers.computeIfAbsent(gate.getKey(), key -> {
+                LOG.info("Polling the loop status of gate {} every {} ms", key, loopPoll.getIntervalMillis());
+                return poller.scheduleWithFixedDelay(() -> sample(gate), 0, loopPoll.getIntervalMillis(),
+                        TimeUnit.MILLISECONDS);
+            });
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        poller.shutdownNow();
+        fanOut.shutdownNow();
+        subscribers.values().forEach(set -> set.forEach(subscriber -> subscriber.emitter.complete()));
+        subscribers.clear();
+    }
+
+    /**
+     * Current loop status of gate :gateId, as last sampled by its poller.
+     *
+     * @param gateId the gate id as sent by the devices, see {@link GateRegistry#forGateId(String)}.
+     * @return null if gate :gateId is not polled.
+     */
+    public LoopStatusDTO getStatus(String gateId) {
+        GateEndpoint gate = gateRegistry.forGateId(gateId);
+        if (!pollers.containsKey(gate.getKey())) {
+            return null;
+        }
+        LoopState state = states.get(gate.getKey());
+        return (state == null) ? unknown(gateId, "Not sampled yet") : state.toDTO(gateId);
+    }
+
+    /**
+     * Live loop status of every registered gate of lot :lotId. The gates are queried in parallel, a gate that
+     * has not answered when the lot timeout runs out is reported with an UNKNOWN status.
+     *
+     * @return one status per gate of the lot, in registry order.
+     */
+    public List<LoopStatusDTO> getLotStatus(Long lotId) {
+        List<GateEndpoint> gates = gateRegistry.getGates(lotId);
+        long timeoutMillis = callistoProps.getGate().getRegistry().getFanOutTimeoutMillis();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        List<Future<LoopState>> samples = new ArrayList<>();
+        for (GateEndpoint gate : gates) {
+            samples.add(fanOut.submit(() -> sample(gate)));
+        }
+        List<LoopStatusDTO> statuses = new ArrayList<>();
+        for (int i = 0; i < gates.size(); i++) {
+            String gateId = gates.get(i).getGateId();
+            Future<LoopState> sample = samples.get(i);
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                statuses.add(sample.get(remaining, TimeUnit.NANOSECONDS).toDTO(gateId));
+            } catch (TimeoutException e) {
+                sample.cancel(true);
+                statuses.add(unknown(gateId, "No answer from the gate controller within " + timeoutMillis + " ms"));
+            } catch (ExecutionException e) {
+                statuses.add(unknown(gateId, e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                statuses.add(unknown(gateId, "Interrupted"));
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * Subscribe to the loop status of gate :gateId, the current status is sent right away and every
+     * change afterwards.
+     *
+     * @param gateId the gate id as sent by the devices.
+     * @return null if gate :gateId is not polled.
+     */
+    public SseEmitter subscribe(String gateId) throws IOException {
+        GateEndpoint gate = gateRegistry.forGateId(gateId);
+        LoopStatusDTO status = getStatus(gateId);
+        if (status == null) {
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(gateId,
+                new SseEmitter(callistoProps.getGate().getLoopPoll().getStreamTimeoutMillis()));
+        Set<Subscriber> gateSubscribers = subscribers.computeIfAbsent(gate.getKey(), key -> new CopyOnWriteArraySet<>());
+        gateSubscribers.add(subscriber);
+        subscriber.emitter.onCompletion(() -> gateSubscribers.remove(subscriber));
+        subscriber.emitter.onTimeout(() -> gateSubscribers.remove(subscriber));
+        subscriber.emitter.send(SseEmitter.event().name(LOOP_EVENT).data(status));
+        return subscriber.emitter;
+    }
+
+    private LoopState sample(GateEndpoint gate) {
+        LoopState state = read(gate);
+        LoopState previous = states.put(gate.getKey(), state);
+        if (previous == null || previous.ready != state.ready) {
+            LOG.debug("Loop of gate {} is now {}", gate.getKey(), state.ready ? "ON" : "OFF");
+            publish(gate.getKey(), state);
+        }
+        return state;
+    }
+
+    private LoopState read(GateEndpoint gate) {
+        try {
+            String response = gateControllerClient.getOpenReady(gate);
+            boolean ready = response != null && response.contains("NCF");
+            return new LoopState(ready, ready ? null : response);
+        } catch (Exception e) {
+            LOG.warn("Unable to read loop status of gate {}: {}", gate.getKey(), e.getMessage());
+            return new LoopState(false, e.getMessage());
+        }
+    }
+
+    private void publish(String gateKey, LoopState state) {
+        Set<Subscriber> gateSubscribers = subscribers.get(gateKey);
+        if (gateSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : gateSubscribers) {
+            try {
+                subscriber.emitter.send(SseEmitter.event().name(LOOP_EVENT).data(state.toDTO(subscriber.gateId)));
+            } catch (Exception e) {
+                LOG.debug("Dropping loop status subscriber of gate {}: {}", gateKey, e.getMessage());
+                gateSubscribers.remove(subscriber);
+                subscriber.emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static LoopStatusDTO unknown(String gateId, String errorMessage) {
+        LoopStatusDTO dto = new LoopStatusDTO();
+        dto.setGateId(gateId);
+        dto.setStatus(UNKNOWN_STATUS);
+        dto.setErrorMessage(errorMessage);
+        return dto;
+    }
+
+    /**
+     * One sample of a gate loop.
+     */
+    private static class LoopState {
+
+        private final boolean ready;
+
+        private final String errorMessage;
+
+        private final long sampledAt = System.currentTimeMillis();
+
+        LoopState(boolean ready, String errorMessage) {
+            this.ready = ready;
+            this.errorMessage = errorMessage;
+        }
+
+        LoopStatusDTO toDTO(String gateId) {
+            LoopStatusDTO dto = new LoopStatusDTO();
+            dto.setGateId(gateId);
+            dto.setStatus(ready ? "ON" : "OFF");
+            dto.setErrorMessage(errorMessage);
+            dto.setSampledAt(sampledAt);
+            return dto;
+        }
+    }
+
+    private static class Subscriber {
+
+        private final String gateId;
+
+        private final SseEmitter emitter;
+
+        Subscriber(String gateId, SseEmitter emitter) {
+            this.gateId = gateId;
+            this.emitter = emitter;
+        }
+    }
+}
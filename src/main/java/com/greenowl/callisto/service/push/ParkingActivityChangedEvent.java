@@ -0,0 +1,38 @@
+package com.greenowl.callisto.service.push;
+
+import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
+import org.springframework.context.ApplicationEvent;
+
+/**
+ * Published once a change of a parking activity is committed.
+ */
+public class ParkingActivityChangedEvent extends ApplicationEvent {
+
+    private final Long userId;
+
+    private final ParkingActivityDTO activity;
+
+    private final long changedAt;
+
+    public ParkingActivityChangedEvent(Object source, Long userId, ParkingActivityDTO activity, long changedAt) {
+        super(source);
+        this.userId = userId;
+        this.activity = activity;
+        this.changedAt = changedAt;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public ParkingActivityDTO getActivity() {
+        return activity;
+    }
+
+    /**
+     * @return the last modification time of the activity, in millis.
+     */
+    public long getChangedAt() {
+        return changedAt;
+    }
+}
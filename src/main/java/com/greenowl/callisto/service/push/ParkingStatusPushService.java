@@ -0,0 +1,207 @@
+package com.greenowl.callisto.service.push;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.service.ParkingActivityService;
+import com.greenowl.callisto.service.cache.CacheService;
+import com.greenowl.callisto.util.ParkingActivityUtil;
+import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes parking activity changes to the devices of their user over server sent events. Each event id is
+ * the second the activity was last modified in, a device reconnecting with a Last-Event-ID is sent again
+ * every activity of its user modified since, timeline included, so no transition is lost in between.
+ * Idle connections only cost their emitter, a periodic comment keeps proxies from closing them.
+ * A change is announced to the other nodes through the {@link CacheService}, the node holding a connection of
+ * its user reads the activity and pushes it.
+ */
+@Service
+public class ParkingStatusPushService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParkingStatusPushService.class);
+
+    private static final String ACTIVITY_EVENT = "parkingActivity";
+
+    static final String TOPIC = "parkingActivity";
+
+    private final Map<Long, Set<SseEmitter>> emitters = new ConcurrentHashMap<>();
+
+    @Inject
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Inject
+    private ParkingActivityService parkingActivityService;
+
+    @Inject
+    private CallistoBeanConfigurationProperties callistoProps;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Inject
+    private CacheService cacheService;
+
+    /**
+     * Single thread sending pushes, replays and heartbeats, so a slow device never holds up the thread that saved
+     * the activity and each device gets its events in the order they were queued.
+     */
+    private ScheduledExecutorService sender;
+
+    @PostConstruct
+    public void init() {
+        sender = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "parking-status-push");
+            thread.setDaemon(true);
+            return thread;
+        });
+        int heartbeat = callistoProps.getPush().getHeartbeatSeconds();
+        sender.scheduleWithFixedDelay(this::heartbeat, heartbeat, heartbeat, TimeUnit.SECONDS);
+        metricRegistry.register(MetricRegistry.name(ParkingStatusPushService.class, "connections"),
+                (Gauge<Integer>) () -> emitters.values().stream().mapToInt(Set::size).sum());
+        cacheService.subscribe(TOPIC, this::onRemoteChange);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        sender.shutdownNow();
+        emitters.values().forEach(set -> set.forEach(SseEmitter::complete));
+        emitters.clear();
+    }
+
+    /**
+     * Open the push channel of user :userId.
+     *
+     * @param userId      the user whose activities are pushed.
+     * @param lastEventId the id of the last event the device received before reconnecting, null on a first connect.
+     * @return
+     */
+    public SseEmitter subscribe(Long userId, String lastEventId) throws IOException {
+        CallistoBeanConfigurationProperties.Push push = callistoProps.getPush();
+        SseEmitter emitter = new SseEmitter(push.getStreamTimeoutMillis());
+        emitters.compute(userId, (key, set) -> {
+            Set<SseEmitter> userEmitters = (set == null) ? new CopyOnWriteArraySet<>() : set;
+            userEmitters.add(emitter);
+            return userEmitters;
+        });
+        emitter.onCompletion(() -> remove(userId, emitter));
+        emitter.onTimeout(() -> remove(userId, emitter));
+        emitter.send(SseEmitter.event().reconnectTime(push.getReconnectMillis()).comment("connected"));
+        Long since = parseEventId(lastEventId);
+        if (since != null) {
+            sender.execute(() -> replay(userId, emitter, since, push.getMaxReplay()));
+        }
+        return emitter;
+    }
+
+    @EventListener
+    public void onActivityChanged(ParkingActivityChangedEvent event) {
+        cacheService.publish(TOPIC, event.getUserId() + ":" + event.getActivity().getId());
+        Set<SseEmitter> userEmitters = emitters.get(event.getUserId());
+        if (userEmitters == null || userEmitters.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> userEmitters.forEach(emitter ->
+                send(event.getUserId(), emitter, event.getActivity(), event.getChangedAt())));
+    }
+
+    /**
+     * A change committed on another node, as "userId:activityId". Only a node holding a connection of the user
+     * reads the activity.
+     */
+    private void onRemoteChange(String message) {
+        int separator = message.indexOf(':');
+        Long userId = Long.valueOf(message.substring(0, separator));
+        Long activityId = Long.valueOf(message.substring(separator + 1));
+        Set<SseEmitter> userEmitters = emitters.get(userId);
+        if (userEmitters == null || userEmitters.isEmpty()) {
+            return;
+        }
+        sender.execute(() -> {
+            ParkingActivity activity = parkingActivityService.findById(activityId);
+            if (activity == null) {
+                return;
+            }
+            ParkingActivityDTO dto = ParkingActivityUtil.constructDTO(activity, activity.getActivityHolder());
+            long changedAt = activity.getLastModifiedDate().getMillis();
+            userEmitters.forEach(emitter -> send(userId, emitter, dto, changedAt));
+        });
+    }
+
+    private void replay(Long userId, SseEmitter emitter, long since, int maxReplay) {
+        for (ParkingActivity activity : parkingActivityRepository.getActivitiesForUserModifiedSince(
+                userId, new DateTime(since, DateTimeZone.UTC), new PageRequest(0, maxReplay))) {
+            ParkingActivityDTO dto = parkingActivityService.withTimeline(ParkingActivityUtil.constructDTO(activity));
+            send(userId, emitter, dto, activity.getLastModifiedDate().getMillis());
+        }
+    }
+
+    private void send(Long userId, SseEmitter emitter, ParkingActivityDTO activity, long changedAt) {
+        try {
+            emitter.send(SseEmitter.event().id(eventId(changedAt)).name(ACTIVITY_EVENT).data(activity));
+        } catch (Exception e) {
+            LOG.debug("Dropping push channel of user {}: {}", userId, e.getMessage());
+            remove(userId, emitter);
+            emitter.completeWithError(e);
+        }
+    }
+
+    private void heartbeat() {
+        emitters.forEach((userId, userEmitters) -> userEmitters.forEach(emitter -> {
+            try {
+                emitter.send(SseEmitter.event().comment("heartbeat"));
+            } catch (Exception e) {
+                remove(userId, emitter);
+                emitter.completeWithError(e);
+            }
+        }));
+    }
+
+    private void remove(Long userId, SseEmitter emitter) {
+        emitters.computeIfPresent(userId, (key, set) -> {
+            set.remove(emitter);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    /**
+     * Ids are truncated to the second, the database may not keep milliseconds, replays overlap instead of skipping.
+     */
+    private static String eventId(long changedAt) {
+        return Long.toString(changedAt - changedAt % 1000);
+    }
+
+    private static Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isEmpty()) {
+            return null;
+        }
+        try {
+            return Long.valueOf(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            LOG.debug("Ignoring malformed Last-Event-ID {}", lastEventId);
+            return null;
+        }
+    }
+}
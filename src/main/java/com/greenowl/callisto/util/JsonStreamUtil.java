@@ -0,0 +1,51 @@
+package com.greenowl.callisto.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Utility class for writing JSON responses straight to the servlet output stream.
+ */
+public class JsonStreamUtil {
+
+    /**
+     * Write a JSON array whose elements are pushed one by one by :producer, each element is serialized
+     * as soon as it is produced so the response never sits in memory as a whole.
+     *
+     * @param mapper   the mapper used by the rest of the api.
+     * @param producer receives the element sink and calls it once per element.
+     * @return
+     */
+    public static StreamingResponseBody array(ObjectMapper mapper, Consumer<Consumer<Object>> producer) {
+        ObjectWriter writer = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                producer.accept(element -> {
+                    try {
+                        writer.writeValue(generator, element);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                generator.writeEndArray();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        };
+    }
+
+    /**
+     * Write :value as a single JSON document.
+     */
+    public static StreamingResponseBody value(ObjectMapper mapper, Object value) {
+        return out -> mapper.writeValue(out, value);
+    }
+}
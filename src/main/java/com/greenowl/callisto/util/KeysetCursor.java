@@ -0,0 +1,63 @@
+package com.greenowl.callisto.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of the last record of a page ordered by (created_date desc, id desc). Clients receive it as
+ * an opaque string and send it back to fetch the next page, the database resumes from the index instead
+ * of skipping an offset.
+ */
+public class KeysetCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    private final long createdDate;
+
+    private final long id;
+
+    public KeysetCursor(long createdDate, long id) {
+        this.createdDate = createdDate;
+        this.id = id;
+    }
+
+    public static KeysetCursor of(DateTime createdDate, Long id) {
+        return new KeysetCursor(createdDate.getMillis(), id);
+    }
+
+    /**
+     * Parse a cursor previously returned by {@link #encode()}.
+     *
+     * @throws IllegalArgumentException if :cursor was not produced by this class.
+     */
+    public static KeysetCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            return new KeysetCursor(Long.parseLong(raw.substring(0, separator)), Long.parseLong(raw.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        String raw = createdDate + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public DateTime getCreatedDate() {
+        return new DateTime(createdDate, DateTimeZone.UTC);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
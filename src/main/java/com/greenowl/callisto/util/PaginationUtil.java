@@ -8,6 +8,8 @@ import org.springframework.http.HttpHeaders;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
+import java.util.function.Function;
 
 /**
  * Utility class for handling pagination.
@@ -27,6 +29,10 @@ public class PaginationUtil {
 
     public static final int MAX_LIMIT = 100;
 
+    public static final int DEFAULT_KEYSET_LIMIT = 100;
+
+    public static final int MAX_KEYSET_LIMIT = 1000;
+
     public static Pageable generatePageRequest(Integer offset, Integer limit) {
         if (offset == null || offset < MIN_OFFSET) {
             offset = DEFAULT_OFFSET;
@@ -67,4 +73,22 @@ public class PaginationUtil {
         headers.add(HttpHeaders.LINK, link);
         return headers;
     }
+
+    public static int generateKeysetLimit(Integer limit) {
+        if (limit == null || limit < 1) {
+            return DEFAULT_KEYSET_LIMIT;
+        }
+        return Math.min(limit, MAX_KEYSET_LIMIT);
+    }
+
+    /**
+     * Headers for a keyset page: the cursor of the next page is only sent when the page is full.
+     */
+    public static <T> HttpHeaders generateKeysetHttpHeaders(List<T> page, int limit, Function<T, KeysetCursor> cursorOf) {
+        HttpHeaders headers = new HttpHeaders();
+        if (!page.isEmpty() && page.size() >= limit) {
+            headers.add(KeysetCursor.NEXT_CURSOR_HEADER, cursorOf.apply(page.get(page.size() - 1)).encode());
+        }
+        return headers;
+    }
 }
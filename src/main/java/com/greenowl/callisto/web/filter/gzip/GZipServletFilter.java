@@ -30,6 +30,12 @@ public class GZipServletFilter implements Filter {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
 
+        if (httpRequest.getDispatcherType() == DispatcherType.ASYNC) {
+            // The first pass left the response of an asynchronous request uncompressed, write its result as is
+            chain.doFilter(request, response);
+            return;
+        }
+
         if (!isIncluded(httpRequest) && acceptsGZipEncoding(httpRequest) && !response.isCommitted()) {
             // Client accepts zipped content
             if (log.isTraceEnabled()) {
@@ -41,9 +47,21 @@ public class GZipServletFilter implements Filter {
             final GZIPOutputStream gzout = new GZIPOutputStream(compressed);
 
             // Handle the request
-            final GZipServletResponseWrapper wrapper = new GZipServletResponseWrapper(httpResponse, gzout);
+            final GZipServletResponseWrapper wrapper = new GZipServletResponseWrapper(httpRequest, httpResponse, gzout);
             wrapper.setDisableFlushBuffer(true);
             chain.doFilter(request, wrapper);
+
+            // A streamed, event-stream or deferred body is written after this returns, by another thread or an
+            // async dispatch: it cannot be buffered here and goes out uncompressed
+            if (httpRequest.isAsyncStarted()) {
+                wrapper.stopCompressing();
+            }
+            if (!wrapper.isCompressing()) {
+                if (log.isTraceEnabled()) {
+                    log.trace("{} Written without gzip compression because the response is streamed", httpRequest.getRequestURL());
+                }
+                return;
+            }
             wrapper.flush();
 
             gzout.close();
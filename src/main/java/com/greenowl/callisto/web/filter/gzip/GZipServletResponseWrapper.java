@@ -1,23 +1,83 @@
 package com.greenowl.callisto.web.filter.gzip;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpServletResponseWrapper;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.zip.GZIPOutputStream;
 
 class GZipServletResponseWrapper extends HttpServletResponseWrapper {
 
+    private static final String EVENT_STREAM = "text/event-stream";
+
+    private final HttpServletRequest request;
+    private final GZIPOutputStream gzout;
     private GZipServletOutputStream gzipOutputStream = null;
     private PrintWriter printWriter = null;
     private boolean disableFlushBuffer = false;
 
-    public GZipServletResponseWrapper(HttpServletResponse response, GZIPOutputStream gzout)
+    /**
+     * Whether the body goes through gzout, decided on the first write. A body written once the request went
+     * asynchronous (StreamingResponseBody, SseEmitter) or sent as text/event-stream is written as is: the filter
+     * is done with the response by then, and each write has to reach the client without being buffered.
+     */
+    private Boolean compressing = null;
+
+    public GZipServletResponseWrapper(HttpServletRequest request, HttpServletResponse response, GZIPOutputStream gzout)
             throws IOException {
         super(response);
-        gzipOutputStream = new GZipServletOutputStream(gzout);
+        this.request = request;
+        this.gzout = gzout;
+        gzipOutputStream = new GZipServletOutputStream(new OutputStream() {
+
+            @Override
+            public void write(int b) throws IOException {
+                target().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                target().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                target().flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                target().close();
+            }
+        });
+    }
+
+    private synchronized OutputStream target() throws IOException {
+        if (compressing == null) {
+            String contentType = getContentType();
+            compressing = !request.isAsyncStarted() && (contentType == null || !contentType.startsWith(EVENT_STREAM));
+        }
+        return compressing ? gzout : getResponse().getOutputStream();
+    }
+
+    /**
+     * Writes the body as is if nothing was written to it yet.
+     */
+    synchronized void stopCompressing() {
+        if (compressing == null) {
+            compressing = false;
+        }
+    }
+
+    /**
+     * @return false if the body is written as is, see {@link #compressing}
+     */
+    synchronized boolean isCompressing() {
+        return compressing == null || compressing;
     }
 
     public void close() throws IOException {
@@ -55,7 +115,7 @@ class GZipServletResponseWrapper extends HttpServletResponseWrapper {
         // Happens in Weblogic when a servlet forward to a JSP page and the forward
         // method trigger a flush before it forwarded to the JSP
         // disableFlushBuffer for that purpose is 'true' by default
-        if (!disableFlushBuffer) {
+        if (!disableFlushBuffer || !isCompressing()) {
             super.flushBuffer();
         }
     }
@@ -88,6 +148,9 @@ class GZipServletResponseWrapper extends HttpServletResponseWrapper {
     public void setContentLength(int length) {
         //ignore, since content length of zipped content
         //does not match content length of unzipped content.
+        if (!isCompressing()) {
+            super.setContentLength(length);
+        }
     }
 
     /**
@@ -9,6 +9,7 @@ import com.greenowl.callisto.security.AuthoritiesConstants;
 import com.greenowl.callisto.security.SecurityUtils;
 import com.greenowl.callisto.service.*;
 import com.greenowl.callisto.service.config.ConfigService;
+import com.greenowl.callisto.service.push.ParkingStatusPushService;
 import com.greenowl.callisto.service.register.RegistrationService;
 import com.greenowl.callisto.service.util.UserUtil;
 import com.greenowl.callisto.util.ParkingActivityUtil;
@@ -29,10 +30,12 @@ import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
@@ -86,6 +89,9 @@ public class AccountResource {
     @Inject
     private ExceptionLogService exceptionLogService;
 
+    @Inject
+    private ParkingStatusPushService parkingStatusPushService;
+
     /**
      * POST /register -> register the user while adding a stripe token and
      * return parking plans the user can subscribe.
@@ -116,7 +122,7 @@ public class AccountResource {
                     genericBadReq(PLAN_NOT_FOUND, "/register", ErrorCodeConstants.REGISTER_PLAN_NOTFOUND), BAD_REQUEST);
         }
         // Check to see if payment is enabled atm.
-        Boolean stripeEnabled = configService.get(AppConfigKey.STRIPE_ENABLED.name(), Boolean.class, false);
+        Boolean stripeEnabled = configService.get(AppConfigKey.STRIPE_ENABLED, Boolean.class, false);
         String stripeToken = null;
         if (stripeEnabled) {
             LOG.info("Stripe payment provider is currently enabled. Attempting to add payment info during registration flow.");
@@ -180,6 +186,21 @@ public class AccountResource {
         return new ResponseEntity<>(userDTO, OK);
     }
 
+    /**
+     * GET /account/activity/stream -> server sent events carrying the current user's parking activity each
+     * time it changes. Reconnecting with the Last-Event-ID header replays the changes missed in between.
+     */
+    @RequestMapping(value = "/account/activity/stream", method = RequestMethod.GET, produces = "text/event-stream")
+    public SseEmitter streamParkingActivity(@PathVariable("apiVersion") final String apiVersion,
+                                            @RequestHeader(value = "Last-Event-ID", required = false) final String lastEventId)
+            throws IOException {
+        Long userId = SecurityUtils.getCurrentUserId();
+        if (userId == null) {
+            userId = userService.getCurrentUser().getId();
+        }
+        return parkingStatusPushService.subscribe(userId, lastEventId);
+    }
+
     /**
      * POST /account -> update the current user information.
      */
@@ -9,12 +9,15 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.greenowl.callisto.security.AuthoritiesConstants;
-import com.greenowl.callisto.domain.GateStatus;
-import com.greenowl.callisto.repository.GateStatusRepository;
+import com.greenowl.callisto.service.gate.GateHealthService;
+import com.greenowl.callisto.web.rest.dto.GateStatusHistoryDTO;
+import com.greenowl.callisto.web.rest.dto.StatusLogDTO;
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import javax.annotation.security.RolesAllowed;
 
 import javax.inject.Inject;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,25 +29,42 @@ public class GateHealthResource {
 	private static final Logger LOG = LoggerFactory.getLogger(GateHealthResource.class);
 	
 	@Inject
-	private GateStatusRepository gateStatusRepository;
+	private GateHealthService gateHealthService;
 	
 	@RequestMapping(value = "/status", method = {RequestMethod.GET, RequestMethod.POST}
     , produces = MediaType.APPLICATION_JSON_VALUE)
 	@RolesAllowed(AuthoritiesConstants.TICKET)
 	public ResponseEntity<?> reportGateStatus(@PathVariable("apiVersion") final String apiVersion,@RequestParam(required = true) final String status,@RequestParam(required = true) final String gateId) {
-		GateStatus gateStatus = new GateStatus();
-		gateStatus.setGateId(gateId);
- 		gateStatus.setStatus(status);
-		gateStatus.setCheckTime(DateTime.now());
 		try{			
-		    gateStatusRepository.save(gateStatus);
+		    gateHealthService.report(gateId, status);
 		}
 		catch(Exception e){
 			LOG.error(e.getMessage(), e);
 		}
 		return new ResponseEntity<>(org.springframework.http.HttpStatus.OK);
 	}
-	
-	
+
+	/**
+	 * GET -> /gate/status/recent returns the heartbeats of a gate held in memory, oldest first.
+	 */
+	@RequestMapping(value = "/status/recent", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@RolesAllowed({AuthoritiesConstants.ADMIN, AuthoritiesConstants.TICKET})
+	public ResponseEntity<?> getRecentGateStatus(@PathVariable("apiVersion") final String apiVersion, @RequestParam(required = true) final String gateId,
+	                                             @RequestParam(required = false, defaultValue = "0") final Long since) {
+		List<StatusLogDTO> heartbeats = gateHealthService.getRecent(gateId, since);
+		return new ResponseEntity<>(heartbeats, org.springframework.http.HttpStatus.OK);
+	}
+
+	/**
+	 * GET -> /gate/status/history returns the status changes and per minute heartbeat counts of a gate.
+	 */
+	@RequestMapping(value = "/status/history", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	@RolesAllowed({AuthoritiesConstants.ADMIN, AuthoritiesConstants.TICKET})
+	public ResponseEntity<?> getGateStatusHistory(@PathVariable("apiVersion") final String apiVersion, @RequestParam(required = true) final String gateId,
+	                                              @RequestParam(required = true) final Long startTime, @RequestParam(required = true) final Long endTime) {
+		GateStatusHistoryDTO history = gateHealthService.getHistory(gateId, new DateTime(startTime, DateTimeZone.UTC),
+				new DateTime(endTime, DateTimeZone.UTC));
+		return new ResponseEntity<>(history, org.springframework.http.HttpStatus.OK);
+	}
 	
 }
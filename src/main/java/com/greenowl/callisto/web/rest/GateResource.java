@@ -1,57 +1,52 @@
 package com.greenowl.callisto.web.rest;
 
-import com.codahale.metrics.annotation.Timed;
-import com.greenowl.callisto.config.AppConfigKey;
 import com.greenowl.callisto.config.Constants;
 import com.greenowl.callisto.config.ErrorCodeConstants;
-import com.greenowl.callisto.domain.ParkingActivity;
-import com.greenowl.callisto.domain.ParkingPlan;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingTrigger;
 import com.greenowl.callisto.domain.User;
-import com.greenowl.callisto.domain.ExceptionLog;
-import com.greenowl.callisto.factory.ParkingActivityFactory;
-import com.greenowl.callisto.repository.ParkingActivityRepository;
 import com.greenowl.callisto.service.ParkingActivityService;
-import com.greenowl.callisto.service.ParkingValTicketStatusService;
+import com.greenowl.callisto.service.ParkingLifecycleEngine;
 import com.greenowl.callisto.service.UserService;
 import com.greenowl.callisto.service.config.ConfigService;
-import com.greenowl.callisto.service.ExceptionLogService;
+import com.greenowl.callisto.service.gate.AdmissionService;
+import com.greenowl.callisto.service.gate.GateCycleTracker;
+import com.greenowl.callisto.service.gate.AdmissionSnapshot;
+import com.greenowl.callisto.service.gate.GateCommandResult;
+import com.greenowl.callisto.service.gate.GateCommandService;
+import com.greenowl.callisto.service.gate.GateEndpoint;
+import com.greenowl.callisto.service.gate.GateRegistry;
+import com.greenowl.callisto.service.gate.LoopStatusService;
 import com.greenowl.callisto.util.ParkingActivityUtil;
-import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
 import com.greenowl.callisto.web.rest.dto.LoopStatusDTO;
+import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
 import com.greenowl.callisto.web.rest.parking.GateOpenRequest;
-import com.greenowl.callisto.web.rest.parking.LogRequest;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.util.EntityUtils;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.inject.Inject;
 
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Optional;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
 
 
 import static com.greenowl.callisto.exception.ErrorResponseFactory.genericBadReq;
+import static com.greenowl.callisto.exception.ErrorResponseFactory.notFound;
 
 @RestController
 @RequestMapping("/api/{apiVersion}/parking")
 public class GateResource {
 
-    @Inject
-    private ParkingValTicketStatusService ticketStatusService;
-
     @Inject
     private UserService userService;
 
@@ -60,361 +55,375 @@ public class GateResource {
 
     @Inject
     private ParkingActivityService parkingActivityService;
-    
-       
-    private Long sleepTime = 2000L;
 
-    private SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
-   
+    @Inject
+    private ParkingLifecycleEngine parkingLifecycleEngine;
+
+    @Inject
+    private AdmissionService admissionService;
+
+    @Inject
+    private GateCommandService gateCommandService;
+
+    @Inject
+    private LoopStatusService loopStatusService;
+
+    @Inject
+    private GateRegistry gateRegistry;
+
+    @Inject
+    private GateCycleTracker gateCycleTracker;
+
     private static final Logger LOG = LoggerFactory.getLogger(GateResource.class);
 
     /**
      * POST /enter -> open the entrance gate of the parking lot.
+     * The gate command runs on the gate scheduler, the request thread is released while the controller responds.
      */
     @RequestMapping(value = "/enter", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    @Transactional(readOnly = false)
-    public ResponseEntity<?> enterParkingLot(@PathVariable("apiVersion") final String apiVersion,
-                                             @RequestBody GateOpenRequest req, @RequestParam(required = false) final String simulationType) {
-        return enterParkingLot(req,false,simulationType);
+    public DeferredResult<ResponseEntity<?>> enterParkingLot(@PathVariable("apiVersion") final String apiVersion,
+                                                             @RequestBody GateOpenRequest req, @RequestParam(required = false) final String simulationType) {
+        return enterParkingLot(req, false, simulationType);
     }
 
     @RequestMapping(value = "/manualEnter", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    @Transactional(readOnly = false)
-    public ResponseEntity<?> manualEnter(@PathVariable("apiVersion") final String apiVersion,
-                                             @RequestBody GateOpenRequest req) {
-        return enterParkingLot(req,true,null);
+    public DeferredResult<ResponseEntity<?>> manualEnter(@PathVariable("apiVersion") final String apiVersion,
+                                                         @RequestBody GateOpenRequest req) {
+        return enterParkingLot(req, true, null);
     }
-    
-    
-    @Timed
-    private ResponseEntity<?> enterParkingLot(GateOpenRequest req, boolean manualMode, String simulationType) {
+
+    private DeferredResult<ResponseEntity<?>> enterParkingLot(GateOpenRequest req, boolean manualMode, String simulationType) {
+        long receivedNanos = System.nanoTime();
+        DeferredResult<ResponseEntity<?>> deferred = newDeferredResult("/enter", Constants.PARKING_ENTRY_EXCEPTION_GATE_OPEN_FAILED);
         User user = userService.getCurrentUser();
-        // No in flight record Exists.
-        Optional<ParkingActivity> optional = parkingActivityService.getLatestActivityForUser(user);
-        if (optional.isPresent() && Constants.PARKING_STATUS_IN_FLIGHT.equals(optional.get().getParkingStatus())) {
-            return new ResponseEntity<>(
-                    genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_ALREADY_INSIDE, String.class), "/enter",
-                            ErrorCodeConstants.GATE_USER_INSIDE_PARKING_LOT),
-                    org.springframework.http.HttpStatus.BAD_REQUEST);
+        AdmissionSnapshot snapshot = admissionService.getSnapshot(user.getId());
+        ResponseEntity<?> rejection = rejectEnter(snapshot, req);
+        if (rejection != null) {
+            // the snapshot may predate a change made on another node, only the stored state turns the user away
+            snapshot = admissionService.reload(user.getId());
+            rejection = rejectEnter(snapshot, req);
+        }
+        if (rejection != null) {
+            deferred.setResult(rejection);
+            return deferred;
         }
 
-        // User not associated with a plan subscription.
-        if (user.getPlanSubscriptions() == null || user.getPlanSubscriptions().isEmpty()) {
-            return new ResponseEntity<>(
-                    genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_UNSUBSCRIBED, String.class), "/enter", ErrorCodeConstants.GATE_USER_UNSUBSCRIBED),
-                    org.springframework.http.HttpStatus.BAD_REQUEST);
+        // a busy gate turns the request away before the activity is recorded
+        GateEndpoint gate = gateRegistry.resolve(snapshot.getLotId(), req.getGateId(), Constants.PARKING_TICKET_TYPE_ENTER);
+        GateCommandService.Reservation reservation = gateCommandService.reserve(gate);
+        if (!reservation.isAdmitted()) {
+            deferred.setResult(badRequest(Constants.PARKING_ENTRY_EXCEPTION_GATE_OPEN_FAILED, "/enter",
+                    ErrorCodeConstants.GATE_BUSY));
+            return deferred;
+        }
+
+        ParkingActivityDTO parkingActivityDTO;
+        try {
+            parkingActivityDTO = parkingActivityService.createParkingActivityForLot(user, snapshot.getLotId(), req.getDeviceInfo());
+            if (parkingActivityDTO == null) {
+                reservation.release();
+                deferred.setResult(badRequest(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, "/enter",
+                        ErrorCodeConstants.GATE_DATABASE_ERROR));
+                return deferred;
+            }
+
+            parkingLifecycleEngine.fire(parkingActivityDTO.getId(),
+                    manualMode ? ParkingTrigger.REQUEST_ENTER_MANUAL : ParkingTrigger.REQUEST_ENTER);
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
         }
+        gateCycleTracker.start(gate, Constants.PARKING_TICKET_TYPE_ENTER, parkingActivityDTO.getId().toString(),
+                snapshot.getLotId(), receivedNanos);
+
+        // open gate
+        String ticketNo = parkingActivityDTO.getId().toString();
+        awaitGate(deferred, "/enter", gate, ticketNo, reservation.open(ticketNo, simulationType),
+                (result, timedOut) -> completeEnter(parkingActivityDTO, req, result, timedOut),
+                result -> gateFailed(Constants.PARKING_TICKET_TYPE_ENTER, parkingActivityDTO.getId(),
+                        ParkingTrigger.ENTER_GATE_FAILED, req, result, attemptEvents(parkingActivityDTO.getId(),
+                                result, Constants.PARKING_STATUS_CONNECTION_TIMEOUT_ENTER)));
+        return deferred;
+    }
 
-        ParkingPlan subscribedPlan = user.getPlanSubscriptions().iterator().next().getPlanGroup();
-        
-        if (subscribedPlan == null) {
-            return new ResponseEntity<>(
-                    genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, String.class), "/enter", ErrorCodeConstants.GATE_DATABASE_ERROR),
-                    org.springframework.http.HttpStatus.BAD_REQUEST);
+    /**
+     * @return the answer turning the user of :snapshot away from the entrance of the lot of :req, null to let them in.
+     */
+    private ResponseEntity<?> rejectEnter(AdmissionSnapshot snapshot, GateOpenRequest req) {
+        // No in flight record Exists.
+        if (Constants.PARKING_STATUS_IN_FLIGHT.equals(snapshot.getParkingStatus())) {
+            return badRequest(Constants.PARKING_ENTRY_EXCEPTION_ALREADY_INSIDE, "/enter",
+                    ErrorCodeConstants.GATE_USER_INSIDE_PARKING_LOT);
         }
 
+        // User not associated with a plan subscription.
+        if (!snapshot.isSubscribed()) {
+            return badRequest(Constants.PARKING_ENTRY_EXCEPTION_UNSUBSCRIBED, "/enter",
+                    ErrorCodeConstants.GATE_USER_UNSUBSCRIBED);
+        }
 
-        if (subscribedPlan.getLotId() != req.getLotId()) {
-            return new ResponseEntity<>(
-                    genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_INCORRECT_LOT, String.class), "/enter",
-                            ErrorCodeConstants.GATE_INCORRECT_PARKING_LOT),
-                    org.springframework.http.HttpStatus.BAD_REQUEST);
+        if (snapshot.getPlanId() == null) {
+            return badRequest(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, "/enter",
+                    ErrorCodeConstants.GATE_DATABASE_ERROR);
         }
-       
-        ParkingActivityDTO parkingActivityDTO=parkingActivityService.createParkingActivityForPlanUser(user, subscribedPlan, req.getDeviceInfo());
-
-                
-        if (parkingActivityDTO != null) {        	
-            // open gate
-        	ParkingActivity parkingActivity = parkingActivityService.findById(parkingActivityDTO.getId());
-        	if(manualMode){
-        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER_MANUAL);
-        		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_ENTER_MANUAL);
-        	}
-        	else{
-        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER);
-        		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_ENTER);
-        	}
-        	parkingActivityService.save(parkingActivity);
-            String result = openGate(1, parkingActivityDTO.getId().toString(), simulationType);
-            if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){
-	        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":(parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" ENTER_FIRST_SUCCESSFUL");
-	        	
-	        }
-	        else{
-	        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":(parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" ENTER_FIRST_UNSUCCESSFUL");
-	        }		        
-	        
-	        if(result==null ||  !(result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){
-	        	
-        		LOG.info("Failed to open the gate, will try again after 2 seconds, ticket no:"+parkingActivity.getId());
-        		LOG.info("time1:"+sdf.format(Calendar.getInstance().getTime()));
-        		try{
-        			Thread.sleep(sleepTime);		
-        		}
-        		catch(Exception e){
-        			LOG.error(e.getMessage(), e);
-        		}        		
-	        	LOG.info("time2:"+sdf.format(Calendar.getInstance().getTime()));
-	        	parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_CONNECTION_TIMEOUT_ENTER);
-	        	
-	        	result = openGate(1, Long.toString(parkingActivity.getId()),simulationType);
-	        	if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){
-		        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":(parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" ENTER_SECOND_SUCCESSFUL");
-		        }
-		        else{
-		        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":(parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" ENTER_SECOND_UNSUCCESSFUL");
-		        }	
-	        }
-	        
-	        parkingActivity.setDeviceInfo(req.getDeviceInfo());
-            if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1)
-                    || result.contains(Constants.GATE_OPEN_RESPONSE_2))) {  
-            	/**
-                if(manualMode){
-                	parkingActivityDTO.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER_MANUAL);
-                	parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER_MANUAL);
-                	parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_ENTER_MANUAL);                	
-                }
-                else{
-                	parkingActivityDTO.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER);
-                	parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_ENTER);
-                	parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_ENTER);                	
-                }
-                */
-                parkingActivity.setGateResponse(sdf.format(Calendar.getInstance().getTime())+" "+result);
-                parkingActivityService.save(parkingActivity);
-               
-                return new ResponseEntity<>(parkingActivityDTO, org.springframework.http.HttpStatus.OK);
-            } else {
-            	if(result!=null && result.toUpperCase().contains("TIMEOUT")){
-            		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_CONNECTION_TIMEOUT_ENTER);
-            	}
-            	if(manualMode){
-            		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_ENTER_MANUAL);
-            		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_EXCEPTION_ENTER_MANUAL);            		
-            	}
-            	else{
-            		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_ENTER);
-            		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_EXCEPTION_ENTER);            		
-            	}
-            	parkingActivity.setGateResponse(sdf.format(Calendar.getInstance().getTime())+" "+result);
-                parkingActivityService.save(parkingActivity);
-                return new ResponseEntity<>(
-                        genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_GATE_OPEN_FAILED, String.class), "/enter",
-                                ErrorCodeConstants.GATE_OPEN_FAILED),
-                        org.springframework.http.HttpStatus.BAD_REQUEST);
-            }
-        } else {
-            return new ResponseEntity<>(
-                    genericBadReq(configService.get(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, String.class), "/enter",
-                            ErrorCodeConstants.GATE_DATABASE_ERROR),
-                    org.springframework.http.HttpStatus.BAD_REQUEST);
+
+        if (snapshot.getLotId() == null || !snapshot.getLotId().equals(req.getLotId())) {
+            return badRequest(Constants.PARKING_ENTRY_EXCEPTION_INCORRECT_LOT, "/enter",
+                    ErrorCodeConstants.GATE_INCORRECT_PARKING_LOT);
         }
+        return null;
     }
 
-    @Timed
-    private String openGate(int gateId, String ticketNo, String simulateType) {
-        String ip = configService.get(Constants.GATE_API_IP, String.class, "localhost");
-        Integer port = Integer.parseInt(configService.get(Constants.GATE_API_PORT, String.class, "2222"));
-        String response = null;
-
-        try{
-	        HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();  	        
-	        CloseableHttpClient closeableHttpClient = httpClientBuilder.build();
-	        StringBuilder url = new StringBuilder();
-	        url.append("http://");
-	        url.append(ip).append(":").append(port).append("/");
-	        url.append("gatecmd/gate_open_cmd?gate_id=");
-	        url.append(gateId);
-	        url.append("&ticket=");
-	        url.append(ticketNo);	       
-	        if(simulateType!=null){
-	        	url.append("&set_sim_mode=").append(simulateType);
-	        }
-			HttpGet httpGet = new HttpGet(url.toString());							
-	        HttpResponse httpResponse = closeableHttpClient.execute(httpGet); 
-	        HttpEntity entity = httpResponse.getEntity();  
-	        response = EntityUtils.toString(entity,"utf-8").trim();	
-	        LOG.info("open gate,url:"+url.toString()+",response:"+response);
-
-        } catch (Exception e) {
-            LOG.error(e.getMessage(), e);
-        }
-        Boolean simulateMode = Boolean.parseBoolean(configService.get(AppConfigKey.GATE_SIMULATION_MODE.name(), String.class, "false"));
-        LOG.info("GATE_SIMULATE_MODE:" + simulateMode);
-        if (simulateMode && response != null && (response.contains("OPEN-GATE: NOT-PRESENT") || response.contains("Process exited with an error"))) {
-            response = "OK Response with 33 chars:'TICKET: T12345 OPEN-GATE: OPEN OK'";
-            LOG.info("replace response with \"OK Response with 33 chars:'TICKET: T12345 OPEN-GATE: OPEN OK'\"");
+    /**
+     * Record the outcome of the entrance gate command once the controller has answered, as a failure if the
+     * response has :timedOut meanwhile.
+     */
+    private ResponseEntity<?> completeEnter(ParkingActivityDTO parkingActivityDTO, GateOpenRequest req,
+                                            GateCommandResult commandResult, boolean timedOut) {
+        Long activityId = parkingActivityDTO.getId();
+        List<ParkingActivityEvent> events = attemptEvents(activityId, commandResult,
+                Constants.PARKING_STATUS_CONNECTION_TIMEOUT_ENTER);
+        if (commandResult.isSuccess() && !timedOut) {
+            parkingActivityService.recordGateAttempts(activityId, req.getDeviceInfo(), events);
+            return new ResponseEntity<>(parkingActivityService.withTimeline(parkingActivityDTO), org.springframework.http.HttpStatus.OK);
         }
-        return response;
+        gateFailed(Constants.PARKING_TICKET_TYPE_ENTER, activityId, ParkingTrigger.ENTER_GATE_FAILED, req, commandResult, events);
+        return badRequest(Constants.PARKING_ENTRY_EXCEPTION_GATE_OPEN_FAILED, "/enter", gateFailureCode(commandResult));
     }
 
     /**
      * POST /exit -> open the exit gate of the parking lot.
      */
     @RequestMapping(value = "/exit", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    @Transactional(readOnly = false)
-    public ResponseEntity<?> exitParkingLot(@PathVariable("apiVersion") final String apiVersion,
-                                            @RequestBody GateOpenRequest req, @RequestParam(required = false) final String simulationType) {
-        return exitParkingLot(req,false,simulationType);
+    public DeferredResult<ResponseEntity<?>> exitParkingLot(@PathVariable("apiVersion") final String apiVersion,
+                                                            @RequestBody GateOpenRequest req, @RequestParam(required = false) final String simulationType) {
+        return exitParkingLot(req, false, simulationType);
     }
-    
+
     /**
      * POST /exit -> manuallly open the exit gate of the parking lot.
      */
     @RequestMapping(value = "/manualExit", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
-    @Transactional(readOnly = false)
-    public ResponseEntity<?> manualExit(@PathVariable("apiVersion") final String apiVersion,
-                                            @RequestBody GateOpenRequest req) {
-        return exitParkingLot(req, true,null);
+    public DeferredResult<ResponseEntity<?>> manualExit(@PathVariable("apiVersion") final String apiVersion,
+                                                        @RequestBody GateOpenRequest req) {
+        return exitParkingLot(req, true, null);
     }
 
-
-    @Timed
-    private ResponseEntity<?> exitParkingLot(GateOpenRequest req, boolean manualMode, String simulationType) {
+    private DeferredResult<ResponseEntity<?>> exitParkingLot(GateOpenRequest req, boolean manualMode, String simulationType) {
+        long receivedNanos = System.nanoTime();
+        DeferredResult<ResponseEntity<?>> deferred = newDeferredResult("/exit", Constants.PARKING_EXIT_EXCEPTION_GATE_OPEN_FAILLED);
         User user = userService.getCurrentUser();
-        Optional<ParkingActivity> opt = parkingActivityService.getLatestActivityForUser(user);
-        ParkingActivity parkingActivity = null;
-        if(opt.isPresent()){        
-	        if(opt.get().getExitDatetime()!=null || (Constants.PARKING_STATUS_COMPLETED.equals(opt.get().getParkingStatus()))){
-	        	return new ResponseEntity<>(genericBadReq(configService.get(Constants.PARKING_EXIT_EXCEPTION_NOT_INSIDE,String.class), "/exit",
-	                    ErrorCodeConstants.GATE_USER_NOT_INSIDE_PARKING_LOT), org.springframework.http.HttpStatus.BAD_REQUEST);
-	        }
-	        else{
-	        	parkingActivity = opt.get();	
-	        	if(manualMode){
-	        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_EXIT_MANUAL);
-	        		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_EXIT_MANUAL);
-	        	}
-	        	else{
-	        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_EXIT);
-	        		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_PENDING_EXIT);
-	        	}
-	        	parkingActivityService.save(parkingActivity);
-		        String result = openGate(2, Long.toString(parkingActivity.getId()),simulationType);	
-		        
-		        if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){
-		        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":((parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" EXIT_FIRST_SUCCESSFUL"));
-		        }
-		        else{
-		        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":((parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" EXIT_FIRST_UNSUCCESSFUL"));
-		        }		        
-		        
-		        if(result==null ||  !(result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){		        	
-	        		LOG.info("Failed to open the gate, will try again after 2 seconds, ticket no:"+parkingActivity.getId());
-	        		try{
-	        			Thread.sleep(sleepTime);	
-	        		}
-	        		catch(Exception e){
-	        			LOG.error(e.getMessage(), e);
-	        		}
-	        		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_CONNECTION_TIMEOUT_EXIT);
-	        		
-		        	result = openGate(2, Long.toString(parkingActivity.getId()),simulationType);
-		        	if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1) || result.contains(Constants.GATE_OPEN_RESPONSE_2))){
-			        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":((parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" EXIT_SECOND_SUCCESSFUL"));
-			        }
-			        else{
-			        	parkingActivity.setOpenLog(((parkingActivity.getOpenLog()==null || parkingActivity.getOpenLog().trim().length()==0)?"":((parkingActivity.getOpenLog()+";"))+sdf.format(Calendar.getInstance().getTime())+" EXIT_SECOND_UNSUCCESSFUL"));
-			        }	
-		        }	        
-		        parkingActivity.setDeviceInfo(req.getDeviceInfo());
-		        parkingActivity.setGateResponse(((parkingActivity.getGateResponse()==null || parkingActivity.getGateResponse().trim().length()==0)?"":(parkingActivity.getGateResponse()+";"))+sdf.format(Calendar.getInstance().getTime())+" "+result);  
-		        if (result != null && (result.contains(Constants.GATE_OPEN_RESPONSE_1)
-		                || result.contains(Constants.GATE_OPEN_RESPONSE_2))) { 
-		        	/**
-		        	if(manualMode){
-		        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_EXIT_MANUAL); 
-		        	}
-		        	else{
-		        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_PENDING_EXIT);  
-		        	}	
-		        	parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+parkingActivity.getParkingStatus());
-		        	*/
-		            parkingActivityService.save(parkingActivity); 		                      
-		            ParkingActivityDTO parkingActivityDTO = ParkingActivityUtil.constructDTO(parkingActivity, user);
-		            return new ResponseEntity<>(parkingActivityDTO, org.springframework.http.HttpStatus.OK);
-		        } else {   
-		        	if(result!=null && result.toUpperCase().contains("TIMEOUT")){
-	            		parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+Constants.PARKING_STATUS_CONNECTION_TIMEOUT_EXIT);
-	            	}		        	
-		        	if(manualMode){
-		        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_EXIT_MANUAL);
-		        	}
-		        	else{
-		        		parkingActivity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_EXIT);  
-		        	}
-		        	parkingActivity.setExceptionFlag(((parkingActivity.getExceptionFlag()==null || parkingActivity.getExceptionFlag().trim().length()==0)?"":(parkingActivity.getExceptionFlag()+","))+sdf.format(Calendar.getInstance().getTime())+" "+parkingActivity.getParkingStatus());
-		            parkingActivityService.save(parkingActivity);
-		            return new ResponseEntity<>(genericBadReq(configService.get(Constants.PARKING_EXIT_EXCEPTION_GATE_OPEN_FAILLED, String.class), "/exit",
-		                    ErrorCodeConstants.GATE_OPEN_FAILED), org.springframework.http.HttpStatus.BAD_REQUEST);
-		        }
-	        }
+        AdmissionSnapshot snapshot = admissionService.getSnapshot(user.getId());
+        if (!mayExit(snapshot)) {
+            // the snapshot may predate a change made on another node, only the stored state turns the user away
+            snapshot = admissionService.reload(user.getId());
+        }
+        if (!mayExit(snapshot)) {
+            deferred.setResult(badRequest(Constants.PARKING_EXIT_EXCEPTION_NOT_INSIDE, "/exit",
+                    ErrorCodeConstants.GATE_USER_NOT_INSIDE_PARKING_LOT));
+            return deferred;
+        }
+
+        // a busy gate turns the request away before the exit is requested
+        GateEndpoint gate = gateRegistry.resolve(snapshot.getLotId(), req.getGateId(), Constants.PARKING_TICKET_TYPE_EXIT);
+        GateCommandService.Reservation reservation = gateCommandService.reserve(gate);
+        if (!reservation.isAdmitted()) {
+            deferred.setResult(badRequest(Constants.PARKING_EXIT_EXCEPTION_GATE_OPEN_FAILLED, "/exit",
+                    ErrorCodeConstants.GATE_BUSY));
+            return deferred;
+        }
+
+        Long activityId = snapshot.getActivityId();
+        ParkingLifecycleEngine.Result requested;
+        try {
+            requested = parkingLifecycleEngine.fire(activityId,
+                    manualMode ? ParkingTrigger.REQUEST_EXIT_MANUAL : ParkingTrigger.REQUEST_EXIT);
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
         }
-        else{
-        	return new ResponseEntity<>(genericBadReq(configService.get(Constants.PARKING_EXIT_EXCEPTION_NOT_INSIDE,String.class), "/exit",
-                    ErrorCodeConstants.GATE_USER_NOT_INSIDE_PARKING_LOT), org.springframework.http.HttpStatus.BAD_REQUEST);
+        if (!requested.isApplied()) {
+            reservation.release();
+            admissionService.evict(user.getId());
+            if (requested.getState() == null || !requested.getState().mayRequestExit()) {
+                deferred.setResult(badRequest(Constants.PARKING_EXIT_EXCEPTION_NOT_INSIDE, "/exit",
+                        ErrorCodeConstants.GATE_USER_NOT_INSIDE_PARKING_LOT));
+            } else {
+                deferred.setResult(badRequest(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, "/exit",
+                        ErrorCodeConstants.GATE_DATABASE_ERROR));
+            }
+            return deferred;
         }
-	        
+
+        gateCycleTracker.start(gate, Constants.PARKING_TICKET_TYPE_EXIT, Long.toString(activityId), snapshot.getLotId(),
+                receivedNanos);
+        String ticketNo = Long.toString(activityId);
+        awaitGate(deferred, "/exit", gate, ticketNo, reservation.open(ticketNo, simulationType),
+                (result, timedOut) -> completeExit(activityId, user, req, result, timedOut),
+                result -> gateFailed(Constants.PARKING_TICKET_TYPE_EXIT, activityId, ParkingTrigger.EXIT_GATE_FAILED,
+                        req, result, attemptEvents(activityId, result, Constants.PARKING_STATUS_CONNECTION_TIMEOUT_EXIT)));
+        return deferred;
     }
-    
-    
-    
+
     /**
-     *  /loopStatus -> check the loop status
+     * @return true if the latest activity of :snapshot is still open, the engine decides whether it may be exited.
      */
-    @RequestMapping(value = "/loopStatus", method = {RequestMethod.GET, RequestMethod.POST}, produces = MediaType.APPLICATION_JSON_VALUE)    
+    private static boolean mayExit(AdmissionSnapshot snapshot) {
+        return snapshot.hasActivity() && !snapshot.isExited()
+                && !Constants.PARKING_STATUS_COMPLETED.equals(snapshot.getParkingStatus());
+    }
+
+    /**
+     * Record the outcome of the exit gate command once the controller has answered, as a failure if the
+     * response has :timedOut meanwhile.
+     */
+    private ResponseEntity<?> completeExit(Long activityId, User user, GateOpenRequest req,
+                                           GateCommandResult commandResult, boolean timedOut) {
+        List<ParkingActivityEvent> events = attemptEvents(activityId, commandResult,
+                Constants.PARKING_STATUS_CONNECTION_TIMEOUT_EXIT);
+        if (commandResult.isSuccess() && !timedOut) {
+            parkingActivityService.recordGateAttempts(activityId, req.getDeviceInfo(), events);
+            ParkingActivityDTO parkingActivityDTO = ParkingActivityUtil.constructDTO(parkingActivityService.findById(activityId), user);
+            return new ResponseEntity<>(parkingActivityService.withTimeline(parkingActivityDTO), org.springframework.http.HttpStatus.OK);
+        }
+        gateFailed(Constants.PARKING_TICKET_TYPE_EXIT, activityId, ParkingTrigger.EXIT_GATE_FAILED, req, commandResult, events);
+        return badRequest(Constants.PARKING_EXIT_EXCEPTION_GATE_OPEN_FAILLED, "/exit", gateFailureCode(commandResult));
+    }
+
+    /**
+     * Answer :deferred with :complete once the open of :ticketNo on :gate completes. If the response times out
+     * first, the command is cancelled and its outcome is recorded as the failure the caller was answered with.
+     * Should the gate have opened anyway, the ticket callback of the controller records the passage. If
+     * :complete fails, the open is recorded as failed with :failed, so the activity does not stay pending.
+     */
+    private void awaitGate(DeferredResult<ResponseEntity<?>> deferred, String api, GateEndpoint gate, String ticketNo,
+                           CompletableFuture<GateCommandResult> command,
+                           BiFunction<GateCommandResult, Boolean, ResponseEntity<?>> complete,
+                           Consumer<GateCommandResult> failed) {
+        AtomicBoolean answered = new AtomicBoolean();
+        deferred.onTimeout(() -> {
+            if (answered.compareAndSet(false, true)) {
+                LOG.warn("Gate {} did not complete the open of ticket no:{} in time, cancelling it", gate.getKey(), ticketNo);
+                gateCommandService.cancel(gate, ticketNo);
+            }
+        });
+        command.thenAccept(result -> {
+            boolean timedOut = !answered.compareAndSet(false, true);
+            ResponseEntity<?> response;
+            try {
+                response = complete.apply(result, timedOut);
+            } catch (RuntimeException e) {
+                LOG.error("Could not record the open of ticket no:{} on gate {}", ticketNo, gate.getKey(), e);
+                try {
+                    failed.accept(result);
+                } catch (RuntimeException failure) {
+                    LOG.error("Could not record the failed open of ticket no:{}", ticketNo, failure);
+                }
+                response = badRequest(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, api,
+                        ErrorCodeConstants.GATE_DATABASE_ERROR);
+            }
+            if (!timedOut) {
+                deferred.setResult(response);
+            }
+        }).exceptionally(e -> {
+            LOG.error(e.getMessage(), e);
+            deferred.setResult(badRequest(Constants.PARKING_ENTRY_EXCEPTION_INTERNAL_ERROR, api,
+                    ErrorCodeConstants.GATE_DATABASE_ERROR));
+            return null;
+        });
+    }
+
+    /**
+     * Record an open that failed, or that the caller was told failed. A coalesced open leaves that to the
+     * open that issued the command, so the failure is recorded once.
+     */
+    private void gateFailed(int ticketType, Long activityId, ParkingTrigger trigger, GateOpenRequest req,
+                            GateCommandResult commandResult, List<ParkingActivityEvent> events) {
+        if (commandResult.isCoalesced()) {
+            return;
+        }
+        gateCycleTracker.cancel(ticketType, activityId.toString());
+        parkingLifecycleEngine.fire(activityId, trigger,
+                new ParkingLifecycleEngine.Change().deviceInfo(req.getDeviceInfo()), events);
+    }
+
+    /**
+     * One timeline event per command attempt. An unsuccessful attempt that was retried, or that timed out,
+     * carries the connection timeout flag as its status.
+     */
+    private List<ParkingActivityEvent> attemptEvents(Long activityId, GateCommandResult commandResult, String timeoutFlag) {
+        List<ParkingActivityEvent> events = new ArrayList<>();
+        if (commandResult.isCoalesced()) {
+            // the attempts are recorded by the open that issued the command
+            return events;
+        }
+        List<String> responses = commandResult.getResponses();
+        for (int i = 0; i < responses.size(); i++) {
+            String response = responses.get(i);
+            boolean success = GateCommandService.isOpenResponse(response);
+            ParkingActivityEvent event = ParkingActivityEvent.gateOpen(activityId, commandResult.getGateKey(),
+                    commandResult.getTicketType(), i + 1, response, success);
+            boolean retried = i < responses.size() - 1;
+            if (!success && (retried || (response != null && response.toUpperCase().contains("TIMEOUT")))) {
+                event.setParkingStatus(timeoutFlag);
+            }
+            events.add(event);
+        }
+        return events;
+    }
+
+    /**
+     * @return the error code of an unsuccessful gate command, telling a busy gate from a gate that failed to open.
+     */
+    private static Integer gateFailureCode(GateCommandResult commandResult) {
+        return commandResult.isRejected() ? ErrorCodeConstants.GATE_BUSY : ErrorCodeConstants.GATE_OPEN_FAILED;
+    }
+
+    private DeferredResult<ResponseEntity<?>> newDeferredResult(String api, String timeoutMessageKey) {
+        return new DeferredResult<>(gateCommandService.getResponseTimeoutMillis(),
+                badRequest(timeoutMessageKey, api, ErrorCodeConstants.GATE_OPEN_FAILED));
+    }
+
+    private ResponseEntity<?> badRequest(String messageKey, String api, Integer errorCode) {
+        return new ResponseEntity<>(genericBadReq(configService.get(messageKey, String.class), api, errorCode),
+                org.springframework.http.HttpStatus.BAD_REQUEST);
+    }
+
+    /**
+     *  /loopStatus -> the loop status of the gate, as last sampled by the loop poller. 404 for a gate that is not polled.
+     */
+    @RequestMapping(value = "/loopStatus", method = {RequestMethod.GET, RequestMethod.POST}, produces = MediaType.APPLICATION_JSON_VALUE)
     public ResponseEntity<?> getLoopStatus(@PathVariable("apiVersion") final String apiVersion,
     		@RequestParam(required = true) final String gateId) {
-    	String ip = configService.get(Constants.GATE_API_IP, String.class, "localhost");
-        Integer port = Integer.parseInt(configService.get(Constants.GATE_API_PORT, String.class, "2222"));
-    	try{
-    		HttpClientBuilder httpClientBuilder = HttpClientBuilder.create();  	        
- 	        CloseableHttpClient closeableHttpClient = httpClientBuilder.build();
- 	        
- 	        StringBuilder url = new StringBuilder();
- 	        url.append("http://");
- 	        url.append(ip).append(":").append(port).append("/");
- 	        url.append("gatecmd/gate_open_ready?gate_id=");
- 	        if(gateId.toLowerCase().contains("park-hospital-entry") || gateId.contains("HMSensor")){
- 	        	url.append(Constants.PARKING_TICKET_TYPE_ENTER);
- 	        }
- 	        else if(gateId.toLowerCase().contains("park-hospital-exit")){
- 	        	url.append(Constants.PARKING_TICKET_TYPE_EXIT);
- 	        } 	        
- 	        else{ 	        	
- 	            url.append(gateId);
- 	        }
- 	        HttpGet httpGet = new HttpGet(url.toString());	
- 	        RequestConfig requestConfig = RequestConfig.custom().setSocketTimeout(20000).setConnectTimeout(10000).build();
-	        httpGet.setConfig(requestConfig);
- 	        HttpResponse httpResponse = closeableHttpClient.execute(httpGet); 
-	        HttpEntity entity = httpResponse.getEntity();  
-	        String response = EntityUtils.toString(entity,"utf-8").trim();	
-	        LOG.info("check loop status,url:"+url.toString()+",response:"+response);
- 	        LoopStatusDTO loopStatusDTO = new LoopStatusDTO();
- 	        loopStatusDTO.setGateId(gateId);
- 	        if(response!=null && response.contains("NCF")){		
- 	        	loopStatusDTO.setStatus("ON");
- 	        }
- 	        else{
- 	        	loopStatusDTO.setStatus("OFF");
- 	        	loopStatusDTO.setErrorMessage(response);
- 	        }
- 	        return new ResponseEntity<>(loopStatusDTO, org.springframework.http.HttpStatus.OK);
-    	}
-    	catch(Exception e){
-    		LOG.error(e.getMessage(), e);
-    		LoopStatusDTO loopStatusDTO = new LoopStatusDTO();
- 	        loopStatusDTO.setGateId(gateId);
- 	        loopStatusDTO.setStatus("OFF");
-        	loopStatusDTO.setErrorMessage(e.getMessage());
-        	return new ResponseEntity<>(loopStatusDTO, org.springframework.http.HttpStatus.INTERNAL_SERVER_ERROR);
-    	}
+        LoopStatusDTO status = loopStatusService.getStatus(gateId);
+        if (status == null) {
+            return new ResponseEntity<>(notFound("Unknown gate id " + gateId, "/api/" + apiVersion + "/parking/loopStatus"),
+                    org.springframework.http.HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(status, org.springframework.http.HttpStatus.OK);
+    }
+
+    /**
+     *  GET /lots/:lotId/gates/status -> the live loop status of every gate of the lot, queried in parallel.
+     */
+    @RequestMapping(value = "/lots/{lotId}/gates/status", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getLotGatesStatus(@PathVariable("apiVersion") final String apiVersion,
+                                               @PathVariable("lotId") final Long lotId) {
+        return new ResponseEntity<>(loopStatusService.getLotStatus(lotId), org.springframework.http.HttpStatus.OK);
+    }
+
+    /**
+     *  GET /loopStatus/stream -> server sent events carrying the loop status of the gate each time it changes.
+     *  404 for a gate that is not polled.
+     */
+    @RequestMapping(value = "/loopStatus/stream", method = RequestMethod.GET, produces = "text/event-stream")
+    public ResponseEntity<SseEmitter> streamLoopStatus(@PathVariable("apiVersion") final String apiVersion,
+                                                       @RequestParam(required = true) final String gateId) throws IOException {
+        SseEmitter emitter = loopStatusService.subscribe(gateId);
+        if (emitter == null) {
+            return new ResponseEntity<>(org.springframework.http.HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(emitter, org.springframework.http.HttpStatus.OK);
     }
-    
-     
-    
 
 }
@@ -1,23 +1,27 @@
 package com.greenowl.callisto.web.rest;
 
-import com.greenowl.callisto.domain.ParkingActivity;
-import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.greenowl.callisto.service.ParkingActivityService;
-import com.greenowl.callisto.util.ParkingActivityUtil;
+import com.greenowl.callisto.util.JsonStreamUtil;
+import com.greenowl.callisto.util.KeysetCursor;
+import com.greenowl.callisto.util.PaginationUtil;
 import com.greenowl.callisto.web.rest.dto.ParkingActivityDTO;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.inject.Inject;
 import java.util.List;
-import java.util.stream.Collectors;
 
+import static com.greenowl.callisto.exception.ErrorResponseFactory.genericBadReq;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.OK;
 
 @RestController
@@ -25,40 +29,49 @@ import static org.springframework.http.HttpStatus.OK;
 public class ParkingActivityResource {
 
     @Inject
-    private ParkingActivityRepository parkingActivityRepository;
+    private ParkingActivityService parkingActivityService;
 
     @Inject
-    private ParkingActivityService parkingActivityService;
+    private MappingJackson2HttpMessageConverter jacksonConverter;
+
     private static final Logger LOG = LoggerFactory.getLogger(ParkingActivityResource.class);
 
     /**
-     * POST /records -> get the parking activities based on type.
+     * GET /records -> get the parking activities based on type, newest first.
+     * With :cursor or :limit one keyset page is returned and the cursor of the next page is sent in the
+     * X-Next-Cursor header, otherwise every matching record is streamed.
      */
     @RequestMapping(value = "/records", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-    @Transactional(readOnly = false)
-    public ResponseEntity<?> getRecords(@PathVariable("apiVersion") final String apiVersion,
-                                        @RequestParam(required = false) final Long start,
-                                        @RequestParam(required = false) final Long end,
-                                        @RequestParam(required = false) final String type) {
-        List<ParkingActivity> parkingActivities;
-        if (start == null && end == null) {
-            LOG.debug("No start and end date requested. Returning all records.");
-            parkingActivities = (StringUtils.isEmpty(type)) ? parkingActivityRepository.findAll() : parkingActivityRepository.findAllByStatus(type);
-        } else {
-            LOG.debug("Checking for records for start date = {} and end date = {}", start, end);
-            DateTime startDate = new DateTime(start);
-            DateTime endDate = new DateTime(end);
-            if (!StringUtils.isEmpty(type)) {
-                LOG.info("Looking for parking activities between {} and {} with type = {}", start, end, type);
-                parkingActivities = parkingActivityService.findAllActivitiesBetweenStartAndEndDates(startDate, endDate, type);
-            } else {
-                parkingActivities = parkingActivityService.findAllActivitiesBetweenStartAndEndDates(startDate, endDate);
-            }
+    public ResponseEntity<StreamingResponseBody> getRecords(@PathVariable("apiVersion") final String apiVersion,
+                                                            @RequestParam(required = false) final Long start,
+                                                            @RequestParam(required = false) final Long end,
+                                                            @RequestParam(required = false) final String type,
+                                                            @RequestParam(required = false) final String cursor,
+                                                            @RequestParam(required = false) final Integer limit) {
+        ObjectMapper mapper = jacksonConverter.getObjectMapper();
+        boolean ranged = start != null || end != null;
+        DateTime startDate = ranged ? new DateTime(start) : null;
+        DateTime endDate = ranged ? new DateTime(end) : null;
+        String status = StringUtils.isEmpty(type) ? null : type;
+
+        if (cursor == null && limit == null) {
+            LOG.debug("Streaming records for start date = {}, end date = {} and type = {}", start, end, type);
+            return new ResponseEntity<>(JsonStreamUtil.array(mapper, sink ->
+                    parkingActivityService.streamRecords(startDate, endDate, status, sink::accept)), OK);
         }
 
-        List<ParkingActivityDTO> parkingActivityDTOs = parkingActivities.stream().map(ParkingActivityUtil::constructDTO).collect(Collectors.toList());
+        KeysetCursor after;
+        try {
+            after = (cursor == null) ? null : KeysetCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(JsonStreamUtil.value(mapper,
+                    genericBadReq(e.getMessage(), "/api/" + apiVersion + "/parking/records")), BAD_REQUEST);
+        }
+        int pageSize = PaginationUtil.generateKeysetLimit(limit);
+        List<ParkingActivityDTO> parkingActivityDTOs = parkingActivityService.getRecordsPage(startDate, endDate, status, after, pageSize);
         LOG.info("Returning {} records", parkingActivityDTOs.size());
-        return new ResponseEntity<>(parkingActivityDTOs, OK);
-
+        HttpHeaders headers = PaginationUtil.generateKeysetHttpHeaders(parkingActivityDTOs, pageSize,
+                activity -> new KeysetCursor(activity.getCreatedDate(), activity.getId()));
+        return new ResponseEntity<>(JsonStreamUtil.value(mapper, parkingActivityDTOs), headers, OK);
     }
 }
@@ -1,24 +1,32 @@
 package com.greenowl.callisto.web.rest;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.greenowl.callisto.domain.PlanSubscription;
-import com.greenowl.callisto.domain.SalesRecord;
 import com.greenowl.callisto.repository.SalesRecordRepository;
 import com.greenowl.callisto.service.SalesRecordService;
 import com.greenowl.callisto.service.SubscriptionService;
-import com.greenowl.callisto.util.SalesActivityUtil;
+import com.greenowl.callisto.util.JsonStreamUtil;
+import com.greenowl.callisto.util.KeysetCursor;
+import com.greenowl.callisto.util.PaginationUtil;
+import com.greenowl.callisto.web.rest.dto.RevenueSummaryDTO;
 import com.greenowl.callisto.web.rest.dto.SalesRecordDTO;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.inject.Inject;
+import java.util.Collections;
 import java.util.List;
-import java.util.stream.Collectors;
 
+import static com.greenowl.callisto.exception.ErrorResponseFactory.genericBadReq;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.OK;
 
 @RestController
@@ -36,45 +44,70 @@ public class SalesActivityResource {
 	@Inject
 	private SubscriptionService subscriptionService;
 
+	@Inject
+	private MappingJackson2HttpMessageConverter jacksonConverter;
+
 	/**
-	 * GET /api/{version}/parking/records -> Returns a list of records between a
-	 * start and end date of type :type.
+	 * GET /api/{version}/sales/records -> Returns a list of records between a
+	 * start and end date of type :type, newest first. :cursor or :limit return
+	 * one keyset page with the next cursor in the X-Next-Cursor header,
+	 * otherwise every record is streamed.
 	 */
 	@RequestMapping(value = "/records", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
-	@Transactional(readOnly = false)
-	public ResponseEntity<?> getRecords(@PathVariable("apiVersion") final String apiVersion,
+	public ResponseEntity<StreamingResponseBody> getRecords(@PathVariable("apiVersion") final String apiVersion,
 			@RequestParam(defaultValue = "all") final String type, @RequestParam(required = false) final Long start,
-			@RequestParam(required = false) final Long end) {
-		return getRecords(type, start, end);
-	}
-
-	/**
-	 * Get sales records in new table.
-	 *
-	 * @param type
-	 * @param start
-	 * @param end
-	 * @return
-	 */
-	private ResponseEntity<?> getRecords(String type, Long start, Long end) {
+			@RequestParam(required = false) final Long end, @RequestParam(required = false) final String cursor,
+			@RequestParam(required = false) final Integer limit) {
 		LOG.debug("Checking for records using type = {}, for start date = {} and end date = {}", type, start, end);
-		List<SalesRecord> salesRecords;
-		if (type.equals("all")) {
-			salesRecords = salesRecordRepository.findAll();
-		} else {
-			DateTime startDate = new DateTime(start);
-			DateTime endDate = new DateTime(end);
-			salesRecords = salesRecordService.findAllFilteredSalesRecordsBetweenStartAndEndDate(startDate, endDate,
-					type);
+		ObjectMapper mapper = jacksonConverter.getObjectMapper();
+		if (!SalesRecordService.isKnownType(type)) {
+			return new ResponseEntity<>(JsonStreamUtil.value(mapper, Collections.emptyList()), OK);
 		}
+		String recordType = SalesRecordService.toRecordType(type);
 
-		List<SalesRecordDTO> salesRecordDTOs = salesRecords.stream()
-				.map(salesRecord -> SalesActivityUtil.constructDTO(salesRecord, salesRecord.getActivityHolder()))
-				.collect(Collectors.toList());
+		boolean ranged = start != null || end != null;
+		DateTime startDate = ranged ? new DateTime(start) : null;
+		DateTime endDate = ranged ? new DateTime(end) : null;
+		if (cursor == null && limit == null) {
+			return new ResponseEntity<>(JsonStreamUtil.array(mapper,
+					sink -> salesRecordService.streamRecords(startDate, endDate, recordType, sink::accept)), OK);
+		}
 
+		KeysetCursor after;
+		try {
+			after = (cursor == null) ? null : KeysetCursor.decode(cursor);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity<>(JsonStreamUtil.value(mapper,
+					genericBadReq(e.getMessage(), "/api/" + apiVersion + "/sales/records")), BAD_REQUEST);
+		}
+		int pageSize = PaginationUtil.generateKeysetLimit(limit);
+		List<SalesRecordDTO> salesRecordDTOs = salesRecordService.getRecordsPage(startDate, endDate, recordType, after,
+				pageSize);
 		LOG.info("Returning {} records", salesRecordDTOs.size());
-		return new ResponseEntity<>(salesRecordDTOs, OK);
+		HttpHeaders headers = PaginationUtil.generateKeysetHttpHeaders(salesRecordDTOs, pageSize,
+				salesRecord -> new KeysetCursor(salesRecord.getCreatedDate(), salesRecord.getId()));
+		return new ResponseEntity<>(JsonStreamUtil.value(mapper, salesRecordDTOs), headers, OK);
+	}
 
+	/**
+	 * GET /api/{version}/sales/summary -> Returns the charge, service and net
+	 * amount totals per lot, plan, type and day of the records created between
+	 * :start (inclusive) and :end (exclusive), of lot :lotId and stored type
+	 * :type if given. Defaults to the last 30 days.
+	 */
+	@RequestMapping(value = "/summary", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+	public ResponseEntity<?> getRevenueSummary(@PathVariable("apiVersion") final String apiVersion,
+			@RequestParam(required = false) final Long start, @RequestParam(required = false) final Long end,
+			@RequestParam(required = false) final Long lotId, @RequestParam(required = false) final String type) {
+		DateTime endDate = (end == null) ? DateTime.now() : new DateTime(end);
+		DateTime startDate = (start == null) ? endDate.minusDays(30) : new DateTime(start);
+		if (!startDate.isBefore(endDate)) {
+			return new ResponseEntity<>(genericBadReq("start must be before end",
+					"/api/" + apiVersion + "/sales/summary"), BAD_REQUEST);
+		}
+		List<RevenueSummaryDTO> summary = salesRecordService.getRevenueSummary(startDate, endDate, lotId, type);
+		LOG.debug("Returning {} revenue summary rows", summary.size());
+		return new ResponseEntity<>(summary, OK);
 	}
 
 	/**
@@ -1,7 +1,5 @@
 package com.greenowl.callisto.web.rest;
 
-import com.greenowl.callisto.domain.ParkingPlan;
-import com.greenowl.callisto.domain.PlanEligibleUser;
 import com.greenowl.callisto.domain.User;
 import com.greenowl.callisto.repository.PaymentProfileRepository;
 import com.greenowl.callisto.service.*;
@@ -52,20 +50,19 @@ public class SubscribeResource {
     @Transactional(readOnly = false)
     public ResponseEntity<?> getAllPlan(@PathVariable("apiVersion") final String apiVersion) {
         User currentUser = userService.getCurrentUser();
-        List<PlanEligibleUser> users = eligiblePlanUserService.getPlansByUserEmail(currentUser.getLogin());
-        if (users.size() == 0) {
+        List<Long> planIds = eligiblePlanUserService.getEligiblePlanIdsByUserEmail(currentUser.getLogin());
+        if (planIds.size() == 0) {
             return new ResponseEntity<>(genericBadReq(PLAN_NOT_FOUND, "/plan"), BAD_REQUEST);
         } else {
-            if (users.size() == 1) {
-                ParkingPlanDTO parkingPlanDTO = parkingPlanService
-                        .createParkingPlanInformation(users.get(0).getPlanGroup());
+            if (planIds.size() == 1) {
+                ParkingPlanDTO parkingPlanDTO = parkingPlanService.getParkingPlanInformation(planIds.get(0));
                 return new ResponseEntity<>(parkingPlanDTO, OK);
             }
             List<ParkingPlanDTO> parkingPlanDTOs = new ArrayList<ParkingPlanDTO>();
-            for (PlanEligibleUser user : users) {
-                ParkingPlan plan = user.getPlanGroup();
-                if (plan != null) {
-                    parkingPlanDTOs.add(parkingPlanService.createParkingPlanInformation(plan));
+            for (Long planId : planIds) {
+                ParkingPlanDTO parkingPlanDTO = parkingPlanService.getParkingPlanInformation(planId);
+                if (parkingPlanDTO != null) {
+                    parkingPlanDTOs.add(parkingPlanDTO);
                 }
 
             }
@@ -5,17 +5,25 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingTrigger;
 import com.greenowl.callisto.exception.ErrorResponseFactory;
 import com.greenowl.callisto.repository.ParkingActivityRepository;
 import com.greenowl.callisto.security.AuthoritiesConstants;
+import com.greenowl.callisto.service.ParkingLifecycleEngine;
+import com.greenowl.callisto.service.TicketCallbackService;
+import com.greenowl.callisto.service.gate.GateCycleTracker;
+import com.greenowl.callisto.web.rest.dto.TicketEventDTO;
+import com.greenowl.callisto.web.rest.dto.TicketEventResultDTO;
 import com.greenowl.callisto.web.rest.dto.TicketStatusDTO;
-import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import javax.annotation.security.RolesAllowed;
@@ -37,6 +45,18 @@ public class TicketResource {
 	
 	@Inject
     private ParkingActivityRepository parkingActivityRepository;
+
+	@Inject
+    private ParkingLifecycleEngine parkingLifecycleEngine;
+
+	@Inject
+    private TicketCallbackService ticketCallbackService;
+
+	@Inject
+    private GateCycleTracker gateCycleTracker;
+
+	@Inject
+    private CallistoBeanConfigurationProperties callistoProps;
 	
 	@RequestMapping(value = "/status", method = {RequestMethod.GET, RequestMethod.POST}
     , produces = MediaType.APPLICATION_JSON_VALUE)
@@ -49,7 +69,6 @@ public class TicketResource {
             return new ResponseEntity<>(ErrorResponseFactory.genericBadReq("Unable to find ticket with id = " + ticketNo,"/api/"+apiVersion+"/ticket/status",204), org.springframework.http.HttpStatus.BAD_REQUEST);
         }
 		SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd_HH:mm:ss");
-		SimpleDateFormat sdf2 = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
 		Date time = null;
         try{
         	time = sdf.parse(accessDateTime);        	
@@ -64,72 +83,24 @@ public class TicketResource {
         catch(Exception e){
         	LOG.error("Wrong gate id:"+gateId,e);
         }
-        if(Constants.PARKING_TICKET_TYPE_ENTER==gId){
-        	if(activity.getEntryDatetime()==null){
-	        	activity.setEntryDatetime(new DateTime(Calendar.getInstance().getTime(),DateTimeZone.UTC));        	
-	        	if(status!=null && status.toLowerCase().contains("pass")){  
-	        		if(Constants.PARKING_STATUS_PENDING_ENTER_MANUAL.equals(activity.getParkingStatus())){
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_IN_FLIGHT_MANUAL);
-	        		}
-	        		else{
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_IN_FLIGHT);
-	        		}
-	        	}
-	        	else{
-	        		if(Constants.PARKING_STATUS_PENDING_ENTER_MANUAL.equals(activity.getParkingStatus())){
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_ENTER_MANUAL);
-	        		}
-	        		else{
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_ENTER);
-	        		}
-	        	}
-        	}
-        	else{
-        		LOG.error("EntryDateTime is not empty, ticket no:"+ticketNo);
-        	}
-        }
-        else if(Constants.PARKING_TICKET_TYPE_EXIT==gId){
-        	if(activity.getExitDatetime()==null){
-	            activity.setExitDatetime(new DateTime(Calendar.getInstance().getTime(), DateTimeZone.UTC));	            
-	            if(status!=null && status.toLowerCase().contains("pass")){            	
-	        		if(Constants.PARKING_STATUS_PENDING_EXIT_MANUAL.equals(activity.getParkingStatus())){
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_COMPLETED_MANUAL);
-	        		}
-	        		else{
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_COMPLETED);
-	        		}            	
-	        	}
-	        	else{
-	        		if(Constants.PARKING_STATUS_PENDING_EXIT_MANUAL.equals(activity.getParkingStatus())){
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_EXIT_MANUAL);
-	        		}
-	        		else{
-	        			activity.setParkingStatus(Constants.PARKING_STATUS_EXCEPTION_EXIT);
-	        		}
-	        	}
-        	}
-        	else{
-        		LOG.error("ExitDateTime is not empty, ticket no:"+ticketNo);
-        	}
-        }
-        else{
+        ParkingTrigger trigger = TicketCallbackService.toTrigger(gId, status);
+        if(trigger==null){
         	return new ResponseEntity<>(ErrorResponseFactory.genericBadReq("Bad gateId parameter:" + gateId,"/api/"+apiVersion+"/ticket/status",400), org.springframework.http.HttpStatus.BAD_REQUEST);
         }
-        if(message!=null){
-        	try{
-        		activity.setGateResponse((activity.getGateResponse()==null?"":(activity.getGateResponse()+";"))+sdf2.format(Calendar.getInstance().getTime())+" "+status+", "+URLDecoder.decode(message,"utf-8"));
-        	}
-        	catch(Exception e){
-        		LOG.error(e.getMessage(),e);
-        		activity.setGateResponse((activity.getGateResponse()==null?"":(activity.getGateResponse()+";"))+sdf2.format(Calendar.getInstance().getTime())+" "+status+", "+message);
-        	}
-        }
-        else{
-        	activity.setGateResponse((activity.getGateResponse()==null?"":(activity.getGateResponse()+";"))+sdf2.format(Calendar.getInstance().getTime())+" "+status);
-        }
-        activity.setExceptionFlag(((activity.getExceptionFlag()==null || activity.getExceptionFlag().trim().length()==0)?"":(activity.getExceptionFlag()+","))+sdf2.format(time)+" "+activity.getParkingStatus());
+        ParkingLifecycleEngine.Change change = TicketCallbackService.changeFor(gId,
+        		new DateTime(Calendar.getInstance().getTime(), DateTimeZone.UTC));
+        String payload = TicketCallbackService.payload(status, message);
+        // the status change, if any, is recorded by the lifecycle engine right after this event
+        ParkingActivityEvent event = ParkingActivityEvent.ticketCallback(activity.getId(), gId, null, payload,
+        		new DateTime(time, DateTimeZone.UTC));
         try{
-            parkingActivityRepository.save(activity);
+        	ParkingLifecycleEngine.Result result = parkingLifecycleEngine.fire(activity.getId(), trigger, change,
+        			Collections.singletonList(event));
+        	if(!result.isApplied()){
+        		LOG.error("Ticket no:"+ticketNo+" ignored "+trigger+" in state "+result.getState());
+        	}
+        	gateCycleTracker.complete(gId, String.valueOf(ticketNo),
+        			trigger == ParkingTrigger.ENTER_PASSED || trigger == ParkingTrigger.EXIT_PASSED);
 		    TicketStatusDTO ticketStatusDTO = new TicketStatusDTO(ticketNo, accessDateTime,status,"OK");
 			return new ResponseEntity(ticketStatusDTO,org.springframework.http.HttpStatus.OK);
         }
@@ -138,9 +109,22 @@ public class TicketResource {
         	return new ResponseEntity<>(ErrorResponseFactory.genericBadReq("Failed to update parkingActivity","/api/"+apiVersion+"/ticket/status",500), org.springframework.http.HttpStatus.BAD_REQUEST);
         }
 	}
-	
-	
-	
-	
-	
+
+	/**
+	 * POST -> /ticket/status/batch applies a backlog of passes in one transaction. Items already applied,
+	 * recognised by their idempotency key, are reported as duplicates and skipped.
+	 */
+	@RequestMapping(value = "/status/batch", method = RequestMethod.POST
+    , consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
+	@RolesAllowed(AuthoritiesConstants.TICKET)
+	public ResponseEntity<?> updateTicketStatuses(@PathVariable("apiVersion") final String apiVersion,
+                                       @RequestBody List<TicketEventDTO> events) {
+		int maxBatchSize = callistoProps.getTicket().getMaxBatchSize();
+		if (events == null || events.isEmpty() || events.size() > maxBatchSize) {
+			return new ResponseEntity<>(ErrorResponseFactory.genericBadReq("A batch holds 1 to " + maxBatchSize + " ticket events",
+					"/api/"+apiVersion+"/ticket/status/batch",400), org.springframework.http.HttpStatus.BAD_REQUEST);
+		}
+		List<TicketEventResultDTO> results = ticketCallbackService.applyAll(events);
+		return new ResponseEntity<>(results, org.springframework.http.HttpStatus.OK);
+	}
 }
@@ -0,0 +1,31 @@
+package com.greenowl.callisto.web.rest.admin;
+
+import com.greenowl.callisto.security.AuthoritiesConstants;
+import com.greenowl.callisto.service.gate.GateCycleTracker;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.security.RolesAllowed;
+import javax.inject.Inject;
+
+import static org.springframework.http.HttpStatus.OK;
+
+@RestController
+@RequestMapping("/api/{version}/admin/gate")
+@RolesAllowed(AuthoritiesConstants.ADMIN)
+public class AdminGateResource {
+
+    @Inject
+    private GateCycleTracker gateCycleTracker;
+
+    /**
+     * GET -> /gate/cycles gate cycle latency percentiles per gate and lot, and the slowest recent cycles.
+     */
+    @RequestMapping(value = "/cycles", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> getGateCycles(@PathVariable("version") final String version,
+                                           @RequestParam(defaultValue = "20") final Integer slowest) {
+        return new ResponseEntity<>(gateCycleTracker.getReport(Math.max(0, slowest)), OK);
+    }
+}
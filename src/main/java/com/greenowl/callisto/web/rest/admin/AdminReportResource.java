@@ -0,0 +1,107 @@
+package com.greenowl.callisto.web.rest.admin;
+
+import com.greenowl.callisto.domain.LotTrafficRollup;
+import com.greenowl.callisto.security.AuthoritiesConstants;
+import com.greenowl.callisto.service.OccupancyRegistry;
+import com.greenowl.callisto.service.ParkingAnalyticsService;
+import com.greenowl.callisto.service.ReportingService;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import javax.annotation.security.RolesAllowed;
+import javax.inject.Inject;
+import java.util.Collections;
+
+import static com.greenowl.callisto.exception.ErrorResponseFactory.genericBadReq;
+import static org.springframework.http.HttpStatus.ACCEPTED;
+import static org.springframework.http.HttpStatus.BAD_REQUEST;
+import static org.springframework.http.HttpStatus.OK;
+
+@RestController
+@RequestMapping("/api/{version}/admin/reports")
+@RolesAllowed(AuthoritiesConstants.ADMIN)
+public class AdminReportResource {
+
+    @Inject
+    private ReportingService reportingService;
+
+    @Inject
+    private OccupancyRegistry occupancyRegistry;
+
+    @Inject
+    private ParkingAnalyticsService parkingAnalyticsService;
+
+    /**
+     * POST -> /reports/backfill rebuild the traffic rollups of the days :from to :to (yyyy-MM-dd, both included)
+     * in the background.
+     */
+    @RequestMapping(value = "/backfill", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> backfill(@PathVariable("version") final String version,
+                                      @RequestParam final String from, @RequestParam final String to) {
+        LocalDate fromDay;
+        LocalDate toDay;
+        try {
+            fromDay = LocalDate.parse(from);
+            toDay = LocalDate.parse(to);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(genericBadReq("Bad from or to parameter, expected yyyy-MM-dd",
+                    "/api/" + version + "/admin/reports/backfill"), BAD_REQUEST);
+        }
+        int days = reportingService.backfill(fromDay, toDay);
+        return new ResponseEntity<>(Collections.singletonMap("days", days), ACCEPTED);
+    }
+
+    /**
+     * GET -> /reports/traffic entries, exits, exceptions, manual opens and occupancy of lot :lotId per hour or
+     * per day, read from the traffic rollups. Defaults to the last 24 hours.
+     */
+    @RequestMapping(value = "/traffic", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> getTraffic(@PathVariable("version") final String version,
+                                        @RequestParam final Long lotId,
+                                        @RequestParam(defaultValue = "hour") final String period,
+                                        @RequestParam(required = false) final Long start,
+                                        @RequestParam(required = false) final Long end) {
+        String rollupPeriod = period.toUpperCase();
+        if (!LotTrafficRollup.HOUR.equals(rollupPeriod) && !LotTrafficRollup.DAY.equals(rollupPeriod)) {
+            return new ResponseEntity<>(genericBadReq("Bad period parameter:" + period,
+                    "/api/" + version + "/admin/reports/traffic"), BAD_REQUEST);
+        }
+        DateTime endDate = (end == null) ? DateTime.now() : new DateTime(end);
+        DateTime startDate = (start == null) ? endDate.minusDays(1) : new DateTime(start);
+        return new ResponseEntity<>(reportingService.getTraffic(lotId, rollupPeriod, startDate, endDate), OK);
+    }
+
+    /**
+     * GET -> /reports/occupancy how many cars are inside lot :lotId right now, against its capacity.
+     */
+    @RequestMapping(value = "/occupancy", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> getOccupancy(@PathVariable("version") final String version,
+                                          @RequestParam final Long lotId) {
+        return new ResponseEntity<>(occupancyRegistry.getOccupancy(lotId), OK);
+    }
+
+    /**
+     * GET -> /reports/analytics unique parkers and dwell time percentiles of lot :lotId per day and over the
+     * range, the last 7 days unless :start and :end are given.
+     */
+    @RequestMapping(value = "/analytics", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> getAnalytics(@PathVariable("version") final String version,
+                                          @RequestParam final Long lotId,
+                                          @RequestParam(required = false) final Long start,
+                                          @RequestParam(required = false) final Long end) {
+        DateTime endDate = (end == null) ? DateTime.now() : new DateTime(end);
+        DateTime startDate = (start == null) ? endDate.minusDays(7) : new DateTime(start);
+        if (!startDate.isBefore(endDate)) {
+            return new ResponseEntity<>(genericBadReq("start must be before end",
+                    "/api/" + version + "/admin/reports/analytics"), BAD_REQUEST);
+        }
+        return new ResponseEntity<>(parkingAnalyticsService.getAnalytics(lotId, startDate, endDate), OK);
+    }
+}
@@ -1,15 +1,18 @@
 package com.greenowl.callisto.web.rest.admin;
 
 import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
 import com.greenowl.callisto.exception.ErrorResponseFactory;
-import com.greenowl.callisto.repository.ParkingActivityRepository;
 import com.greenowl.callisto.security.AuthoritiesConstants;
 import com.greenowl.callisto.security.SecurityUtils;
+import com.greenowl.callisto.service.ParkingActivityService;
+import com.greenowl.callisto.service.gate.AdmissionService;
 import org.apache.commons.lang.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -17,6 +20,8 @@ import org.springframework.web.bind.annotation.*;
 
 import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.springframework.http.HttpStatus.OK;
 
@@ -28,7 +33,10 @@ public class AdminTaskResource {
     private static final Logger LOG = LoggerFactory.getLogger(AdminTaskResource.class);
 
     @Inject
-    private ParkingActivityRepository parkingActivityRepository;
+    private ParkingActivityService parkingActivityService;
+
+    @Inject
+    private AdmissionService admissionService;
 
     /**
      * GET -> /task/updateParkingActivity updates a parking activity.
@@ -41,36 +49,41 @@ public class AdminTaskResource {
                                                @RequestParam(required = false) String parkingStatus, @RequestParam(required = false) String gateResponse) {
 
         LOG.info("Attempting to modify activity with id = {} for administrator = {}", id, SecurityUtils.getCurrentLogin());
-        ParkingActivity activity = parkingActivityRepository.findOne(id);
-        if (activity == null) {
-            return new ResponseEntity<>(ErrorResponseFactory.notFound("Unable to find ParkingActivity with id = " + id, "/api/admin/task/updateParkingActivity/" + id), HttpStatus.NOT_FOUND);
-        }
-
-        if (entryDateTime != null) {
-            DateTime dateTime = new DateTime(entryDateTime, DateTimeZone.UTC);
-            LOG.info("Setting entry date time for parking activity id = {} to {}", id, entryDateTime);
-            activity.setEntryDatetime(dateTime);
+        List<ParkingActivityEvent> events = new ArrayList<>();
+        if (!StringUtils.isEmpty(gateResponse) || !StringUtils.isEmpty(parkingStatus)) {
+            LOG.info("Recording admin update for parking activity id = {}, gate_response = {}", id, gateResponse);
+            events.add(ParkingActivityEvent.adminUpdate(id, StringUtils.isEmpty(parkingStatus) ? null : parkingStatus,
+                    gateResponse));
         }
 
-        if (exitDateTime != null) {
-            DateTime dateTime = new DateTime(exitDateTime, DateTimeZone.UTC);
-            LOG.info("Setting exit date time for parking activity id = {} to {}", id, exitDateTime);
-            activity.setExitDatetime(dateTime);
+        // only the fields given by the administrator are set, a concurrent gate update of the others is kept
+        ParkingActivity activity;
+        try {
+            activity = parkingActivityService.update(id, current -> {
+                if (entryDateTime != null) {
+                    LOG.info("Setting entry date time for parking activity id = {} to {}", id, entryDateTime);
+                    current.setEntryDatetime(new DateTime(entryDateTime, DateTimeZone.UTC));
+                }
+                if (exitDateTime != null) {
+                    LOG.info("Setting exit date time for parking activity id = {} to {}", id, exitDateTime);
+                    current.setExitDatetime(new DateTime(exitDateTime, DateTimeZone.UTC));
+                }
+                if (!StringUtils.isEmpty(parkingStatus)) {
+                    LOG.info("Setting gate_status for parking activity id = {} to {}", id, parkingStatus);
+                    current.setParkingStatus(parkingStatus);
+                }
+            }, events);
+        } catch (OptimisticLockingFailureException e) {
+            return new ResponseEntity<>(ErrorResponseFactory.conflict("ParkingActivity with id = " + id + " is being updated, try again", "/api/admin/task/updateParkingActivity/" + id), HttpStatus.CONFLICT);
         }
-
-        if (!StringUtils.isEmpty(gateResponse)) {
-            LOG.info("Setting gate_response for parking activity id = {} to {}", id, gateResponse);
-            activity.setGateResponse(gateResponse);
+        if (activity == null) {
+            return new ResponseEntity<>(ErrorResponseFactory.notFound("Unable to find ParkingActivity with id = " + id, "/api/admin/task/updateParkingActivity/" + id), HttpStatus.NOT_FOUND);
         }
-
-        if (!StringUtils.isEmpty(parkingStatus)) {
-            LOG.info("Setting gate_status for parking activity id = {} to {}", id, parkingStatus);
-            activity.setParkingStatus(parkingStatus);
+        LOG.info("Saved Parking activity = {} into database.", activity);
+        // a correction may concern any activity of the user, their admission is decided afresh on every node
+        if (activity.getActivityHolder() != null) {
+            admissionService.evict(activity.getActivityHolder().getId());
         }
-
-        LOG.info("Saving new Parking activity = {} into database.", activity);
-
-        parkingActivityRepository.save(activity);
         return new ResponseEntity<>(OK);
     }
 
@@ -1,14 +1,17 @@
 package com.greenowl.callisto.web.rest.admin;
 
+import com.greenowl.callisto.cache.CacheKeys;
 import com.greenowl.callisto.domain.AppConfig;
 import com.greenowl.callisto.repository.AppConfigRepository;
 import com.greenowl.callisto.security.AuthoritiesConstants;
+import com.greenowl.callisto.service.cache.CacheService;
 import com.greenowl.callisto.service.config.ConfigService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -18,6 +21,8 @@ import javax.annotation.security.RolesAllowed;
 import javax.inject.Inject;
 import java.util.Map;
 
+import static com.greenowl.callisto.exception.ErrorResponseFactory.genericBadReq;
+
 @RestController
 @RequestMapping("/api/admin")
 @RolesAllowed(AuthoritiesConstants.ADMIN)
@@ -31,6 +36,8 @@ public class GeneralAdminResource {
     @Inject
     private AppConfigRepository appConfigRepository;
 
+    @Inject
+    private CacheService cacheService;
 
     @RequestMapping(value = "/configs",
             method = RequestMethod.GET,
@@ -51,7 +58,29 @@ public class GeneralAdminResource {
         config.setType(type);
         config.setValue(value);
         AppConfig savedConfig = appConfigRepository.save(config);
+        configService.update();
         return new ResponseEntity<>(savedConfig, HttpStatus.OK);
     }
 
+    /**
+     * DELETE -> /cache/{region} drop every entry of cache region :region, after parking plans or eligible
+     * users were changed directly in the database.
+     */
+    @RequestMapping(value = "/cache/{region}",
+            method = RequestMethod.DELETE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    @RolesAllowed(AuthoritiesConstants.ADMIN)
+    public ResponseEntity<?> clearCache(@PathVariable final String region) {
+        CacheKeys cacheRegion;
+        try {
+            cacheRegion = CacheKeys.valueOf(region);
+        } catch (IllegalArgumentException e) {
+            return new ResponseEntity<>(genericBadReq("Unknown cache region " + region, "/api/admin/cache/" + region),
+                    HttpStatus.BAD_REQUEST);
+        }
+        LOG.info("Clearing cache region {}", cacheRegion);
+        cacheService.clear(cacheRegion);
+        return new ResponseEntity<>(HttpStatus.OK);
+    }
+
 }
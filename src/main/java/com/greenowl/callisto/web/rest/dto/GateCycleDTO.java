@@ -0,0 +1,121 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import java.util.Map;
+
+/**
+ * One gate cycle, from the open request to the ticket callback.
+ */
+public class GateCycleDTO {
+
+    private String ticketNo;
+
+    private int ticketType;
+
+    /**
+     * Host, port and gate number of the gate that was opened.
+     */
+    private String gate;
+
+    private Long lotId;
+
+    private Long startedAt;
+
+    private long totalMillis;
+
+    private int attempts;
+
+    private boolean passed;
+
+    /**
+     * Milliseconds from the open request to the first time each stage was reached.
+     */
+    private Map<String, Long> stages;
+
+    public GateCycleDTO() {
+    }
+
+    public GateCycleDTO(String ticketNo, int ticketType, String gate, Long lotId, Long startedAt, long totalMillis,
+                        int attempts, boolean passed, Map<String, Long> stages) {
+        this.ticketNo = ticketNo;
+        this.ticketType = ticketType;
+        this.gate = gate;
+        this.lotId = lotId;
+        this.startedAt = startedAt;
+        this.totalMillis = totalMillis;
+        this.attempts = attempts;
+        this.passed = passed;
+        this.stages = stages;
+    }
+
+    public String getTicketNo() {
+        return ticketNo;
+    }
+
+    public void setTicketNo(String ticketNo) {
+        this.ticketNo = ticketNo;
+    }
+
+    public int getTicketType() {
+        return ticketType;
+    }
+
+    public void setTicketType(int ticketType) {
+        this.ticketType = ticketType;
+    }
+
+    public String getGate() {
+        return gate;
+    }
+
+    public void setGate(String gate) {
+        this.gate = gate;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public Long getStartedAt() {
+        return startedAt;
+    }
+
+    public void setStartedAt(Long startedAt) {
+        this.startedAt = startedAt;
+    }
+
+    public long getTotalMillis() {
+        return totalMillis;
+    }
+
+    public void setTotalMillis(long totalMillis) {
+        this.totalMillis = totalMillis;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public void setPassed(boolean passed) {
+        this.passed = passed;
+    }
+
+    public Map<String, Long> getStages() {
+        return stages;
+    }
+
+    public void setStages(Map<String, Long> stages) {
+        this.stages = stages;
+    }
+}
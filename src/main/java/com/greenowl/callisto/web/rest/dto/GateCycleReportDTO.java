@@ -0,0 +1,48 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import java.util.List;
+
+public class GateCycleReportDTO {
+
+    private List<GateCycleStatsDTO> latencies;
+
+    private List<GateCycleDTO> slowest;
+
+    private long abandoned;
+
+    public GateCycleReportDTO() {
+    }
+
+    public GateCycleReportDTO(List<GateCycleStatsDTO> latencies, List<GateCycleDTO> slowest, long abandoned) {
+        this.latencies = latencies;
+        this.slowest = slowest;
+        this.abandoned = abandoned;
+    }
+
+    public List<GateCycleStatsDTO> getLatencies() {
+        return latencies;
+    }
+
+    public void setLatencies(List<GateCycleStatsDTO> latencies) {
+        this.latencies = latencies;
+    }
+
+    public List<GateCycleDTO> getSlowest() {
+        return slowest;
+    }
+
+    public void setSlowest(List<GateCycleDTO> slowest) {
+        this.slowest = slowest;
+    }
+
+    /**
+     * Cycles given up on because no ticket callback came in time.
+     */
+    public long getAbandoned() {
+        return abandoned;
+    }
+
+    public void setAbandoned(long abandoned) {
+        this.abandoned = abandoned;
+    }
+}
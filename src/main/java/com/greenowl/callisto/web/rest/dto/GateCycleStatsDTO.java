@@ -0,0 +1,90 @@
+package com.greenowl.callisto.web.rest.dto;
+
+/**
+ * Latency distribution of the gate cycles of one gate or lot, in milliseconds.
+ */
+public class GateCycleStatsDTO {
+
+    private String name;
+
+    private long count;
+
+    private double mean;
+
+    private double p50;
+
+    private double p95;
+
+    private double p99;
+
+    private double max;
+
+    public GateCycleStatsDTO() {
+    }
+
+    public GateCycleStatsDTO(String name, long count, double mean, double p50, double p95, double p99, double max) {
+        this.name = name;
+        this.count = count;
+        this.mean = mean;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+        this.max = max;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    public void setMean(double mean) {
+        this.mean = mean;
+    }
+
+    public double getP50() {
+        return p50;
+    }
+
+    public void setP50(double p50) {
+        this.p50 = p50;
+    }
+
+    public double getP95() {
+        return p95;
+    }
+
+    public void setP95(double p95) {
+        this.p95 = p95;
+    }
+
+    public double getP99() {
+        return p99;
+    }
+
+    public void setP99(double p99) {
+        this.p99 = p99;
+    }
+
+    public double getMax() {
+        return max;
+    }
+
+    public void setMax(double max) {
+        this.max = max;
+    }
+}
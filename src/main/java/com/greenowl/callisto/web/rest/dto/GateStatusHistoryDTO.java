@@ -0,0 +1,48 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import java.util.List;
+
+/**
+ * Status history of a gate: every change of the reported status, and per minute heartbeat counts.
+ */
+public class GateStatusHistoryDTO {
+
+    private String gateId;
+
+    private List<StatusLogDTO> transitions;
+
+    private List<GateStatusRollupDTO> rollups;
+
+    public GateStatusHistoryDTO() {
+    }
+
+    public GateStatusHistoryDTO(String gateId, List<StatusLogDTO> transitions, List<GateStatusRollupDTO> rollups) {
+        this.gateId = gateId;
+        this.transitions = transitions;
+        this.rollups = rollups;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+
+    public List<StatusLogDTO> getTransitions() {
+        return transitions;
+    }
+
+    public void setTransitions(List<StatusLogDTO> transitions) {
+        this.transitions = transitions;
+    }
+
+    public List<GateStatusRollupDTO> getRollups() {
+        return rollups;
+    }
+
+    public void setRollups(List<GateStatusRollupDTO> rollups) {
+        this.rollups = rollups;
+    }
+}
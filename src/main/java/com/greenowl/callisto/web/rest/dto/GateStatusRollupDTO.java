@@ -0,0 +1,54 @@
+package com.greenowl.callisto.web.rest.dto;
+
+public class GateStatusRollupDTO {
+
+    private Long bucketStart;
+
+    private int upCount;
+
+    private int downCount;
+
+    private String lastStatus;
+
+    public GateStatusRollupDTO() {
+    }
+
+    public GateStatusRollupDTO(Long bucketStart, int upCount, int downCount, String lastStatus) {
+        this.bucketStart = bucketStart;
+        this.upCount = upCount;
+        this.downCount = downCount;
+        this.lastStatus = lastStatus;
+    }
+
+    public Long getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Long bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public int getUpCount() {
+        return upCount;
+    }
+
+    public void setUpCount(int upCount) {
+        this.upCount = upCount;
+    }
+
+    public int getDownCount() {
+        return downCount;
+    }
+
+    public void setDownCount(int downCount) {
+        this.downCount = downCount;
+    }
+
+    public String getLastStatus() {
+        return lastStatus;
+    }
+
+    public void setLastStatus(String lastStatus) {
+        this.lastStatus = lastStatus;
+    }
+}
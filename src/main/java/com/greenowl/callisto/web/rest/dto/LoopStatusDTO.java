@@ -5,6 +5,7 @@ public class LoopStatusDTO {
 	private String gateId;
 	private String status;
 	private String errorMessage;
+	private Long sampledAt;
 	
 	public String getGateId() {
 		return gateId;
@@ -23,7 +24,13 @@ public class LoopStatusDTO {
 	}
 	public void setErrorMessage(String errorMessage) {
 		this.errorMessage = errorMessage;
-	}	
+	}
+	public Long getSampledAt() {
+		return sampledAt;
+	}
+	public void setSampledAt(Long sampledAt) {
+		this.sampledAt = sampledAt;
+	}
 	
 	
 }
@@ -0,0 +1,70 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import java.util.List;
+
+public class LotAnalyticsDTO {
+
+    private Long lotId;
+
+    private Long start;
+
+    private Long end;
+
+    /**
+     * The whole range, a parker seen on several days counts once.
+     */
+    private ParkerStatsDTO total;
+
+    private List<ParkerStatsDTO> days;
+
+    public LotAnalyticsDTO() {
+    }
+
+    public LotAnalyticsDTO(Long lotId, Long start, Long end, ParkerStatsDTO total, List<ParkerStatsDTO> days) {
+        this.lotId = lotId;
+        this.start = start;
+        this.end = end;
+        this.total = total;
+        this.days = days;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public Long getStart() {
+        return start;
+    }
+
+    public void setStart(Long start) {
+        this.start = start;
+    }
+
+    public Long getEnd() {
+        return end;
+    }
+
+    public void setEnd(Long end) {
+        this.end = end;
+    }
+
+    public ParkerStatsDTO getTotal() {
+        return total;
+    }
+
+    public void setTotal(ParkerStatsDTO total) {
+        this.total = total;
+    }
+
+    public List<ParkerStatsDTO> getDays() {
+        return days;
+    }
+
+    public void setDays(List<ParkerStatsDTO> days) {
+        this.days = days;
+    }
+}
@@ -0,0 +1,77 @@
+package com.greenowl.callisto.web.rest.dto;
+
+public class LotOccupancyDTO {
+
+    private Long lotId;
+
+    private long occupancy;
+
+    private Long updatedAt;
+
+    private int capacity;
+
+    private boolean nearCapacity;
+
+    private boolean full;
+
+    public LotOccupancyDTO() {
+    }
+
+    public LotOccupancyDTO(Long lotId, long occupancy, Long updatedAt, int capacity, boolean nearCapacity,
+                           boolean full) {
+        this.lotId = lotId;
+        this.occupancy = occupancy;
+        this.updatedAt = updatedAt;
+        this.capacity = capacity;
+        this.nearCapacity = nearCapacity;
+        this.full = full;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public void setOccupancy(long occupancy) {
+        this.occupancy = occupancy;
+    }
+
+    public Long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public boolean isNearCapacity() {
+        return nearCapacity;
+    }
+
+    public void setNearCapacity(boolean nearCapacity) {
+        this.nearCapacity = nearCapacity;
+    }
+
+    public boolean isFull() {
+        return full;
+    }
+
+    public void setFull(boolean full) {
+        this.full = full;
+    }
+}
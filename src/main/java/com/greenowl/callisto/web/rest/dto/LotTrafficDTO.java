@@ -0,0 +1,98 @@
+package com.greenowl.callisto.web.rest.dto;
+
+public class LotTrafficDTO {
+
+    private Long lotId;
+
+    private String period;
+
+    private Long bucketStart;
+
+    private long entries;
+
+    private long exits;
+
+    private long exceptions;
+
+    private long manualOpens;
+
+    private long occupancy;
+
+    public LotTrafficDTO() {
+    }
+
+    public LotTrafficDTO(Long lotId, String period, Long bucketStart, long entries, long exits, long exceptions, long manualOpens, long occupancy) {
+        this.lotId = lotId;
+        this.period = period;
+        this.bucketStart = bucketStart;
+        this.entries = entries;
+        this.exits = exits;
+        this.exceptions = exceptions;
+        this.manualOpens = manualOpens;
+        this.occupancy = occupancy;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public String getPeriod() {
+        return period;
+    }
+
+    public void setPeriod(String period) {
+        this.period = period;
+    }
+
+    public Long getBucketStart() {
+        return bucketStart;
+    }
+
+    public void setBucketStart(Long bucketStart) {
+        this.bucketStart = bucketStart;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public void setEntries(long entries) {
+        this.entries = entries;
+    }
+
+    public long getExits() {
+        return exits;
+    }
+
+    public void setExits(long exits) {
+        this.exits = exits;
+    }
+
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public void setExceptions(long exceptions) {
+        this.exceptions = exceptions;
+    }
+
+    public long getManualOpens() {
+        return manualOpens;
+    }
+
+    public void setManualOpens(long manualOpens) {
+        this.manualOpens = manualOpens;
+    }
+
+    public long getOccupancy() {
+        return occupancy;
+    }
+
+    public void setOccupancy(long occupancy) {
+        this.occupancy = occupancy;
+    }
+}
@@ -0,0 +1,117 @@
+package com.greenowl.callisto.web.rest.dto;
+
+/**
+ * Unique parkers and dwell time percentiles of a lot over one day, or over a range of days. Dwell times
+ * are in seconds.
+ */
+public class ParkerStatsDTO {
+
+    private Long lotId;
+
+    /**
+     * Start of the day, null for a range.
+     */
+    private Long day;
+
+    private long uniqueParkers;
+
+    private long stays;
+
+    private double meanDwell;
+
+    private long p50Dwell;
+
+    private long p90Dwell;
+
+    private long p99Dwell;
+
+    private long maxDwell;
+
+    public ParkerStatsDTO() {
+    }
+
+    public ParkerStatsDTO(Long lotId, Long day, long uniqueParkers, long stays, double meanDwell, long p50Dwell,
+                          long p90Dwell, long p99Dwell, long maxDwell) {
+        this.lotId = lotId;
+        this.day = day;
+        this.uniqueParkers = uniqueParkers;
+        this.stays = stays;
+        this.meanDwell = meanDwell;
+        this.p50Dwell = p50Dwell;
+        this.p90Dwell = p90Dwell;
+        this.p99Dwell = p99Dwell;
+        this.maxDwell = maxDwell;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public Long getDay() {
+        return day;
+    }
+
+    public void setDay(Long day) {
+        this.day = day;
+    }
+
+    public long getUniqueParkers() {
+        return uniqueParkers;
+    }
+
+    public void setUniqueParkers(long uniqueParkers) {
+        this.uniqueParkers = uniqueParkers;
+    }
+
+    public long getStays() {
+        return stays;
+    }
+
+    public void setStays(long stays) {
+        this.stays = stays;
+    }
+
+    public double getMeanDwell() {
+        return meanDwell;
+    }
+
+    public void setMeanDwell(double meanDwell) {
+        this.meanDwell = meanDwell;
+    }
+
+    public long getP50Dwell() {
+        return p50Dwell;
+    }
+
+    public void setP50Dwell(long p50Dwell) {
+        this.p50Dwell = p50Dwell;
+    }
+
+    public long getP90Dwell() {
+        return p90Dwell;
+    }
+
+    public void setP90Dwell(long p90Dwell) {
+        this.p90Dwell = p90Dwell;
+    }
+
+    public long getP99Dwell() {
+        return p99Dwell;
+    }
+
+    public void setP99Dwell(long p99Dwell) {
+        this.p99Dwell = p99Dwell;
+    }
+
+    public long getMaxDwell() {
+        return maxDwell;
+    }
+
+    public void setMaxDwell(long maxDwell) {
+        this.maxDwell = maxDwell;
+    }
+}
@@ -5,6 +5,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
 import com.greenowl.callisto.domain.ParkingActivity;
@@ -38,13 +39,15 @@ public class ParkingActivityDTO {
 
     private String deviceInfo;
 
+    private List<ParkingActivityEventDTO> timeline;
+
     public ParkingActivityDTO() {
 
     }
 
     public ParkingActivityDTO(ParkingActivity activity, User user) {
         this.id = activity.getId();
-        this.lotId = activity.getId();
+        this.lotId = activity.getLotId();
         this.userEmail = user.getLogin();
         this.userPhoneNumber = user.getMobileNumber();
         this.userPlateNumber = user.getLicensePlate();
@@ -80,6 +83,22 @@ public class ParkingActivityDTO {
         this.createdDate = createdDate;
     }
 
+    /**
+     * Read model constructor used by the record projection queries, the holder columns are selected
+     * in the same joined query.
+     */
+    public ParkingActivityDTO(Long id, Long lotId, String userEmail, String userPhoneNumber, String userPlateNumber, String type,
+                              Long saleId, DateTime entryDateTime, DateTime exitDateTime, String parkingStatus, String exceptionFlag,
+                              DateTime createdDate, String deviceInfo) {
+        this(id, lotId, userEmail, userPhoneNumber, userPlateNumber, type, saleId, toMillis(entryDateTime),
+                toMillis(exitDateTime), parkingStatus, exceptionFlag, toMillis(createdDate));
+        this.deviceInfo = deviceInfo;
+    }
+
+    private static Long toMillis(DateTime dateTime) {
+        return (dateTime == null) ? null : dateTime.withZone(DateTimeZone.UTC).getMillis();
+    }
+
     public Long getId() {
         return id;
     }
@@ -191,8 +210,18 @@ public class ParkingActivityDTO {
         this.deviceInfo = deviceInfo;
     }
 
+    public List<ParkingActivityEventDTO> getTimeline() {
+        return timeline;
+    }
+
+    public void setTimeline(List<ParkingActivityEventDTO> timeline) {
+        this.timeline = timeline;
+    }
+
     public List<StatusLogDTO> getStatusLogs(){
-    	
+    	if(timeline != null && !timeline.isEmpty()){
+    		return getTimelineStatusLogs();
+    	}
     	if(exceptionFlag == null){
     		return null;
     	}    	
@@ -227,14 +256,40 @@ public class ParkingActivityDTO {
     	return statusLogs;
     }
     
+    /**
+     * Status logs built from the event timeline, every event carrying a parking status is a step.
+     */
+    private List<StatusLogDTO> getTimelineStatusLogs(){
+    	ArrayList<StatusLogDTO> statusLogs = new ArrayList<StatusLogDTO>();
+    	for(ParkingActivityEventDTO event : timeline){
+    		if(event.getParkingStatus() == null){
+    			continue;
+    		}
+    		StatusLogDTO statusLog = new StatusLogDTO();
+    		statusLog.setStatusTime(event.getEventTime());
+    		statusLog.setStatus("IN_FLIGHT".equals(event.getParkingStatus()) ? "PARKED" : event.getParkingStatus());
+    		statusLogs.add(statusLog);
+    	}
+    	return statusLogs;
+    }
+
     public boolean getErrorStatusFlag(){
-    	if(exceptionFlag==null){
+    	if(timeline != null && !timeline.isEmpty()){
+    		for(ParkingActivityEventDTO event : timeline){
+    			if(isErrorStatus(event.getParkingStatus())){
+    				return true;
+    			}
+    		}
     		return false;
     	}
-    	if(exceptionFlag.contains("TIMEOUT") || exceptionFlag.contains("ALARM")){
-    		return true;
+    	if(exceptionFlag==null){
+    		return isErrorStatus(parkingStatus);
     	}
-    	return false;
+    	return isErrorStatus(exceptionFlag);
+    }
+
+    private static boolean isErrorStatus(String status){
+    	return status != null && (status.contains("TIMEOUT") || status.contains("ALARM"));
     }
     
     @Override
@@ -0,0 +1,104 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import org.joda.time.DateTimeZone;
+
+public class ParkingActivityEventDTO {
+
+    private String code;
+
+    private String parkingStatus;
+
+    private Integer gateId;
+
+    private String gate;
+
+    private Integer attempt;
+
+    private String payload;
+
+    private Long eventTime;
+
+    public ParkingActivityEventDTO() {
+
+    }
+
+    public ParkingActivityEventDTO(ParkingActivityEvent event) {
+        this.code = event.getCode().name();
+        this.parkingStatus = event.getParkingStatus();
+        this.gateId = event.getGateId();
+        this.gate = event.getGate();
+        this.attempt = event.getAttempt();
+        this.payload = event.getPayload();
+        if (event.getEventTime() != null) {
+            this.eventTime = event.getEventTime().withZone(DateTimeZone.UTC).getMillis();
+        }
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public void setCode(String code) {
+        this.code = code;
+    }
+
+    public String getParkingStatus() {
+        return parkingStatus;
+    }
+
+    public void setParkingStatus(String parkingStatus) {
+        this.parkingStatus = parkingStatus;
+    }
+
+    public Integer getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(Integer gateId) {
+        this.gateId = gateId;
+    }
+
+    public String getGate() {
+        return gate;
+    }
+
+    public void setGate(String gate) {
+        this.gate = gate;
+    }
+
+    public Integer getAttempt() {
+        return attempt;
+    }
+
+    public void setAttempt(Integer attempt) {
+        this.attempt = attempt;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public Long getEventTime() {
+        return eventTime;
+    }
+
+    public void setEventTime(Long eventTime) {
+        this.eventTime = eventTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ParkingActivityEventDTO{" +
+                "code='" + code + '\'' +
+                ", parkingStatus='" + parkingStatus + '\'' +
+                ", gateId=" + gateId +
+                ", attempt=" + attempt +
+                ", eventTime=" + eventTime +
+                '}';
+    }
+}
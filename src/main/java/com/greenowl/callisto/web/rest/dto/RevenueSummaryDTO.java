@@ -0,0 +1,102 @@
+package com.greenowl.callisto.web.rest.dto;
+
+public class RevenueSummaryDTO {
+
+    private Long lotId;
+
+    private Long planId;
+
+    private String type;
+
+    /**
+     * Day the records were created, yyyy-MM-dd in the database time zone.
+     */
+    private String day;
+
+    private long records;
+
+    private double chargeAmount;
+
+    private double serviceAmount;
+
+    private double netAmount;
+
+    public RevenueSummaryDTO() {
+    }
+
+    public RevenueSummaryDTO(Long lotId, Long planId, String type, Integer year, Integer month, Integer day,
+                             Long records, Double chargeAmount, Double serviceAmount, Double netAmount) {
+        this.lotId = lotId;
+        this.planId = planId;
+        this.type = type;
+        this.day = String.format("%04d-%02d-%02d", year, month, day);
+        this.records = records;
+        this.chargeAmount = (chargeAmount == null) ? 0 : chargeAmount;
+        this.serviceAmount = (serviceAmount == null) ? 0 : serviceAmount;
+        this.netAmount = (netAmount == null) ? 0 : netAmount;
+    }
+
+    public Long getLotId() {
+        return lotId;
+    }
+
+    public void setLotId(Long lotId) {
+        this.lotId = lotId;
+    }
+
+    public Long getPlanId() {
+        return planId;
+    }
+
+    public void setPlanId(Long planId) {
+        this.planId = planId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public void setDay(String day) {
+        this.day = day;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public void setRecords(long records) {
+        this.records = records;
+    }
+
+    public double getChargeAmount() {
+        return chargeAmount;
+    }
+
+    public void setChargeAmount(double chargeAmount) {
+        this.chargeAmount = chargeAmount;
+    }
+
+    public double getServiceAmount() {
+        return serviceAmount;
+    }
+
+    public void setServiceAmount(double serviceAmount) {
+        this.serviceAmount = serviceAmount;
+    }
+
+    public double getNetAmount() {
+        return netAmount;
+    }
+
+    public void setNetAmount(double netAmount) {
+        this.netAmount = netAmount;
+    }
+}
@@ -2,6 +2,7 @@ package com.greenowl.callisto.web.rest.dto;
 
 import com.greenowl.callisto.domain.SalesRecord;
 import com.greenowl.callisto.domain.User;
+import org.joda.time.DateTime;
 
 public class SalesRecordDTO {
     private Long id;
@@ -55,6 +56,31 @@ public class SalesRecordDTO {
         }
     }
 
+    /**
+     * Read model constructor used by the record projection queries, the holder columns are selected
+     * in the same joined query.
+     */
+    public SalesRecordDTO(Long id, Long lotId, Long userId, Long planId, String userEmail, String userPhoneNumber,
+                          String userLicensePlate, Double chargeAmount, Double serviceAmount, Double netAmount, Long ppId,
+                          String type, String invoiceId, DateTime createdDate) {
+        this.id = id;
+        this.lotId = lotId;
+        this.userId = userId;
+        this.planId = planId;
+        this.userEmail = userEmail;
+        this.userPhoneNumber = userPhoneNumber;
+        this.userLicensePlate = userLicensePlate;
+        this.chargeAmount = chargeAmount;
+        this.serviceAmount = serviceAmount;
+        this.netAmount = netAmount;
+        this.ppId = ppId;
+        this.type = type;
+        this.invoiceId = invoiceId;
+        if (createdDate != null) {
+            this.createdDate = createdDate.getMillis();
+        }
+    }
+
     public Long getId() {
         return id;
     }
@@ -0,0 +1,73 @@
+package com.greenowl.callisto.web.rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * One pass reported by the gate controller, the batch form of the /ticket/status parameters.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class TicketEventDTO {
+
+    private String idempotencyKey;
+
+    private Long ticketNo;
+
+    private String accessDateTime;
+
+    private String status;
+
+    private String gateId;
+
+    private String message;
+
+    public TicketEventDTO() {
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Long getTicketNo() {
+        return ticketNo;
+    }
+
+    public void setTicketNo(Long ticketNo) {
+        this.ticketNo = ticketNo;
+    }
+
+    public String getAccessDateTime() {
+        return accessDateTime;
+    }
+
+    public void setAccessDateTime(String accessDateTime) {
+        this.accessDateTime = accessDateTime;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getGateId() {
+        return gateId;
+    }
+
+    public void setGateId(String gateId) {
+        this.gateId = gateId;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
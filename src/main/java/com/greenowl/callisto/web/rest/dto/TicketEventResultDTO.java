@@ -0,0 +1,92 @@
+package com.greenowl.callisto.web.rest.dto;
+
+/**
+ * Outcome of one item of a ticket event batch.
+ */
+public class TicketEventResultDTO {
+
+    /**
+     * The activity moved to :parkingStatus.
+     */
+    public static final String APPLIED = "APPLIED";
+
+    /**
+     * The event was recorded but the activity was not in a state the event applies to.
+     */
+    public static final String IGNORED = "IGNORED";
+
+    /**
+     * An event with the same idempotency key was already recorded, nothing was done.
+     */
+    public static final String DUPLICATE = "DUPLICATE";
+
+    public static final String NOT_FOUND = "NOT_FOUND";
+
+    public static final String INVALID = "INVALID";
+
+    /**
+     * The activity kept changing under the batch, the item can be sent again.
+     */
+    public static final String FAILED = "FAILED";
+
+    private String idempotencyKey;
+
+    private Long ticketNo;
+
+    private String result;
+
+    private String parkingStatus;
+
+    private String message;
+
+    public TicketEventResultDTO() {
+    }
+
+    public TicketEventResultDTO(TicketEventDTO event, String result, String parkingStatus, String message) {
+        this.idempotencyKey = event.getIdempotencyKey();
+        this.ticketNo = event.getTicketNo();
+        this.result = result;
+        this.parkingStatus = parkingStatus;
+        this.message = message;
+    }
+
+    public String getIdempotencyKey() {
+        return idempotencyKey;
+    }
+
+    public void setIdempotencyKey(String idempotencyKey) {
+        this.idempotencyKey = idempotencyKey;
+    }
+
+    public Long getTicketNo() {
+        return ticketNo;
+    }
+
+    public void setTicketNo(Long ticketNo) {
+        this.ticketNo = ticketNo;
+    }
+
+    public String getResult() {
+        return result;
+    }
+
+    public void setResult(String result) {
+        this.result = result;
+    }
+
+    public String getParkingStatus() {
+        return parkingStatus;
+    }
+
+    public void setParkingStatus(String parkingStatus) {
+        this.parkingStatus = parkingStatus;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
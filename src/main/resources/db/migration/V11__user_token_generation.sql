@@ -0,0 +1,3 @@
+-- Bumped to revoke every v2 token issued to a user, see TokenProvider.
+
+ALTER TABLE T_USER ADD COLUMN token_generation INT NOT NULL DEFAULT 0;
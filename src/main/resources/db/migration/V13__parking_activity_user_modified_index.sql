@@ -0,0 +1,3 @@
+-- Activities of a user changed since a point in time, read when a device (re)subscribes to its updates.
+
+CREATE INDEX idx_parking_activity_user_modified ON T_PARKING_ACTIVITY (user_id, last_modified_date);
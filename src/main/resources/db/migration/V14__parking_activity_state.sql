@@ -0,0 +1,27 @@
+-- Lifecycle state code of a parking activity, see ParkingState. Rows written before this column carry only
+-- the legacy parking_status string and are backfilled from it; statuses that are not lifecycle states stay
+-- null. Queries by state keep matching on parking_status where parking_state is null, for rows written by
+-- nodes still running the previous release during the upgrade.
+
+ALTER TABLE T_PARKING_ACTIVITY ADD COLUMN parking_state INT;
+
+UPDATE T_PARKING_ACTIVITY SET parking_state = CASE parking_status
+    WHEN 'PARKING_START' THEN 1
+    WHEN 'PENDING_ENTER' THEN 10
+    WHEN 'PENDING_ENTER_MANUAL' THEN 11
+    WHEN 'CONNECTION_TIMEOUT_ENTER' THEN 12
+    WHEN 'IN_FLIGHT' THEN 20
+    WHEN 'IN_FLIGHT_MANUAL' THEN 21
+    WHEN 'ALARM_ENTER' THEN 30
+    WHEN 'ALARM_ENTER_MANUAL' THEN 31
+    WHEN 'PENDING_EXIT' THEN 40
+    WHEN 'PENDING_EXIT_MANUAL' THEN 41
+    WHEN 'CONNECTION_TIMEOUT_EXIT' THEN 42
+    WHEN 'ALARM_EXIT' THEN 50
+    WHEN 'ALARM_EXIT_MANUAL' THEN 51
+    WHEN 'COMPLETED' THEN 60
+    WHEN 'COMPLETED_MANUAL' THEN 61
+END
+WHERE parking_state IS NULL;
+
+CREATE INDEX idx_parking_activity_state ON T_PARKING_ACTIVITY (parking_state, created_date);
@@ -0,0 +1,3 @@
+-- Optimistic lock of a parking activity, see ParkingActivity#version. Existing rows start at 0.
+
+ALTER TABLE T_PARKING_ACTIVITY ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,6 @@
+-- Key of the report a ticket callback event records. Unique so a replayed report is recorded once, even
+-- when two deliveries of it race, see TicketCallbackService.
+
+ALTER TABLE T_PARKING_ACTIVITY_EVENT ADD COLUMN idempotency_key VARCHAR(64);
+
+CREATE UNIQUE INDEX uk_parking_activity_event_idempotency ON T_PARKING_ACTIVITY_EVENT (idempotency_key);
@@ -0,0 +1,20 @@
+-- Gate heartbeats: status changes stay in T_GATE_STATUS, repeated statuses are counted per minute in
+-- T_GATE_STATUS_ROLLUP, see GateHealthService.
+
+CREATE INDEX idx_gate_status_gate_time ON T_GATE_STATUS (gate_id, check_time);
+
+CREATE INDEX idx_gate_status_time ON T_GATE_STATUS (check_time);
+
+CREATE TABLE T_GATE_STATUS_ROLLUP (
+    id BIGINT NOT NULL,
+    gate_id VARCHAR(255) NOT NULL,
+    bucket_start DATETIME NOT NULL,
+    up_count INT NOT NULL,
+    down_count INT NOT NULL,
+    last_status VARCHAR(255),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_gate_status_rollup_gate_bucket ON T_GATE_STATUS_ROLLUP (gate_id, bucket_start);
+
+CREATE INDEX idx_gate_status_rollup_bucket ON T_GATE_STATUS_ROLLUP (bucket_start);
@@ -0,0 +1,229 @@
+-- Schema of the first release, before any migration. Databases that already hold it are baselined at this
+-- version and skip it, an empty database is built from it followed by the later migrations.
+
+CREATE TABLE T_AUTHORITY (
+    name VARCHAR(50) NOT NULL,
+    PRIMARY KEY (name)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_USER (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    login VARCHAR(255) NOT NULL,
+    password VARCHAR(100),
+    first_name VARCHAR(50),
+    last_name VARCHAR(50),
+    license_plate VARCHAR(30),
+    mobile_number VARCHAR(30),
+    activated BIT(1) NOT NULL,
+    lang_key VARCHAR(5),
+    activation_key INT,
+    region VARCHAR(255),
+    stripe_token VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_user_login UNIQUE (login),
+    CONSTRAINT uk_user_license_plate UNIQUE (license_plate),
+    CONSTRAINT uk_user_mobile_number UNIQUE (mobile_number)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_USER_AUTHORITY (
+    user_id BIGINT NOT NULL,
+    authority_name VARCHAR(50) NOT NULL,
+    PRIMARY KEY (user_id, authority_name),
+    CONSTRAINT fk_user_authority_user FOREIGN KEY (user_id) REFERENCES T_USER (id),
+    CONSTRAINT fk_user_authority_authority FOREIGN KEY (authority_name) REFERENCES T_AUTHORITY (name)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_APPLICATION_CONFIG (
+    key_name VARCHAR(255) NOT NULL,
+    value VARCHAR(255) NOT NULL,
+    type VARCHAR(255) NOT NULL,
+    PRIMARY KEY (key_name)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_DEVICE (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    device_id VARCHAR(255),
+    client_version VARCHAR(255),
+    platform VARCHAR(255),
+    os_version VARCHAR(255),
+    push_info VARCHAR(255) NOT NULL,
+    user_id BIGINT,
+    endpoint_arn VARCHAR(255),
+    registered_device BIT(1),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_device_user FOREIGN KEY (user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_EXCEPTION_LOG (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    user_id BIGINT,
+    log_message VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_exception_log_user FOREIGN KEY (user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_GATE_STATUS (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    gate_id VARCHAR(255),
+    status VARCHAR(255),
+    check_time DATETIME,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PARKING_PLAN (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    lot_id BIGINT NOT NULL,
+    plan_name VARCHAR(255) NOT NULL,
+    plan_desc VARCHAR(255) NOT NULL,
+    unit_charge_amount DOUBLE NOT NULL,
+    monthly_plan BIT(1) NOT NULL,
+    plan_terminated_days BIGINT NOT NULL,
+    active BIT(1),
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PARKING_PLAN_ELIGIBLE_USER (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    user_email VARCHAR(255) NOT NULL,
+    subscribed BIT(1) NOT NULL,
+    plan_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_plan_eligible_user_plan FOREIGN KEY (plan_id) REFERENCES T_PARKING_PLAN (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_CUSTOMER_PAYMENT_PROFILE (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    card_token VARCHAR(255) NOT NULL,
+    exp_month BIGINT NOT NULL,
+    exp_year BIGINT NOT NULL,
+    last4 VARCHAR(255) NOT NULL,
+    active BIT(1) NOT NULL,
+    user_id BIGINT,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_payment_profile_user FOREIGN KEY (user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_CUSTOMER_PLAN_SUBSCRIPTION (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    user_id BIGINT,
+    plan_id BIGINT,
+    pp_id BIGINT,
+    plan_start_date DATETIME NOT NULL,
+    plan_charge_amount DOUBLE NOT NULL,
+    plan_expiry_date DATETIME,
+    cancel_request_date DATETIME,
+    cancel_request_reason VARCHAR(255),
+    cancel_effective_date DATETIME,
+    cancel_handled_by VARCHAR(255),
+    cancel_refund_amount DOUBLE,
+    stripe_id VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_plan_subscription_user FOREIGN KEY (user_id) REFERENCES T_USER (id),
+    CONSTRAINT fk_plan_subscription_plan FOREIGN KEY (plan_id) REFERENCES T_PARKING_PLAN (id),
+    CONSTRAINT fk_plan_subscription_payment_profile FOREIGN KEY (pp_id) REFERENCES T_CUSTOMER_PAYMENT_PROFILE (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PARKING_ACTIVITY (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    lot_id BIGINT NOT NULL,
+    user_id BIGINT,
+    type VARCHAR(255),
+    sale_id BIGINT,
+    entry_datetime DATETIME,
+    exit_datetime DATETIME,
+    parking_status VARCHAR(255),
+    exception_flag VARCHAR(255),
+    gate_response VARCHAR(255),
+    device_info VARCHAR(255),
+    open_log VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_parking_activity_user FOREIGN KEY (user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_SALES_RECORD (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_by VARCHAR(50) NOT NULL,
+    created_date DATETIME NOT NULL,
+    last_modified_by VARCHAR(50),
+    last_modified_date DATETIME,
+    lot_id BIGINT NOT NULL,
+    user_id BIGINT,
+    charge_amount DOUBLE,
+    service_amount DOUBLE,
+    net_amount DOUBLE,
+    pp_id BIGINT,
+    invoice_id VARCHAR(255),
+    plan_id BIGINT,
+    type VARCHAR(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_sales_record_user FOREIGN KEY (user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PARKING_VAL_TICKET_STATUS (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    created_date_time DATETIME,
+    validate_date_time DATETIME,
+    validated_flag INT NOT NULL,
+    ticket_no BIGINT,
+    ticket_type INT NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PASSWORD_RESET_REQUEST (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    reset_token VARCHAR(255),
+    reset_pass_user_id BIGINT NOT NULL,
+    expires_at BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_password_reset_request_user FOREIGN KEY (reset_pass_user_id) REFERENCES T_USER (id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PERSISTENT_AUDIT_EVENT (
+    event_id BIGINT NOT NULL AUTO_INCREMENT,
+    principal VARCHAR(255) NOT NULL,
+    event_date DATETIME,
+    event_type VARCHAR(255),
+    PRIMARY KEY (event_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PERSISTENT_AUDIT_EVENT_DATA (
+    event_id BIGINT NOT NULL,
+    name VARCHAR(255) NOT NULL,
+    value VARCHAR(255),
+    PRIMARY KEY (event_id, name),
+    CONSTRAINT fk_persistent_audit_event_data_event FOREIGN KEY (event_id) REFERENCES T_PERSISTENT_AUDIT_EVENT (event_id)
+) ENGINE = InnoDB;
+
+INSERT INTO T_AUTHORITY (name) VALUES ('ROLE_ADMIN'), ('ROLE_USER'), ('ROLE_OPERATOR'), ('ROLE_TICKET');
@@ -0,0 +1,16 @@
+-- Gates of a lot and the controller that drives each of them, see GateRegistry.
+
+CREATE TABLE T_LOT_GATE (
+    id BIGINT NOT NULL AUTO_INCREMENT,
+    lot_id BIGINT NOT NULL,
+    gate_id VARCHAR(100) NOT NULL,
+    gate_no INT NOT NULL,
+    gate_type INT NOT NULL,
+    controller_host VARCHAR(255) NOT NULL,
+    controller_port INT NOT NULL,
+    enabled BIT(1) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_lot_gate_lot_gate UNIQUE (lot_id, gate_id)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_lot_gate_gate ON T_LOT_GATE (gate_id);
@@ -0,0 +1,26 @@
+-- Per lot occupancy and hourly and daily traffic rollups, see ReportingService.
+
+CREATE TABLE T_LOT_OCCUPANCY (
+    lot_id BIGINT NOT NULL,
+    occupancy BIGINT NOT NULL,
+    updated_at DATETIME NOT NULL,
+    PRIMARY KEY (lot_id)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_LOT_TRAFFIC_ROLLUP (
+    id BIGINT NOT NULL,
+    lot_id BIGINT NOT NULL,
+    period VARCHAR(8) NOT NULL,
+    bucket_start DATETIME NOT NULL,
+    entries BIGINT NOT NULL,
+    exits BIGINT NOT NULL,
+    exceptions BIGINT NOT NULL,
+    manual_opens BIGINT NOT NULL,
+    occupancy BIGINT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_lot_traffic_rollup_bucket UNIQUE (lot_id, period, bucket_start)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_parking_activity_event_time ON T_PARKING_ACTIVITY_EVENT (event_time);
+
+CREATE INDEX idx_parking_activity_entry ON T_PARKING_ACTIVITY (entry_datetime);
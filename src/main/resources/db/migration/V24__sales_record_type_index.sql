@@ -0,0 +1,3 @@
+-- Sales listings and the revenue summary filtered by record type.
+
+CREATE INDEX idx_sales_record_type_created ON T_SALES_RECORD (type, created_date, id);
@@ -0,0 +1,13 @@
+-- Per node, lot and day sketches of the unique parkers and dwell times, see ParkingAnalyticsService.
+
+CREATE TABLE T_LOT_DAY_SKETCH (
+    id BIGINT NOT NULL,
+    lot_id BIGINT NOT NULL,
+    day DATETIME NOT NULL,
+    node_id VARCHAR(64) NOT NULL,
+    unique_parkers LONGBLOB NOT NULL,
+    dwell_times LONGBLOB NOT NULL,
+    updated_at DATETIME NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_lot_day_sketch_node UNIQUE (lot_id, day, node_id)
+) ENGINE = InnoDB;
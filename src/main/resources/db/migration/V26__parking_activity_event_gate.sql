@@ -0,0 +1,3 @@
+-- Gate a gate open event was sent to, see ParkingActivityEvent. gate_id only tells the entrance from the exit.
+
+ALTER TABLE T_PARKING_ACTIVITY_EVENT ADD COLUMN gate VARCHAR(255);
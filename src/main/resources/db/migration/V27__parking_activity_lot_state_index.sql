@@ -0,0 +1,3 @@
+-- Occupancy reconciliation, which counts the activities inside one lot at a time, see OccupancyRegistry.
+
+CREATE INDEX idx_parking_activity_lot_state ON T_PARKING_ACTIVITY (lot_id, parking_state);
@@ -0,0 +1,21 @@
+-- Append-only steps of a parking activity, see ParkingActivityEvent.
+
+CREATE TABLE T_ID_GENERATOR (
+    sequence_name VARCHAR(255) NOT NULL,
+    next_val BIGINT,
+    PRIMARY KEY (sequence_name)
+) ENGINE = InnoDB;
+
+CREATE TABLE T_PARKING_ACTIVITY_EVENT (
+    id BIGINT NOT NULL,
+    activity_id BIGINT NOT NULL,
+    event_code INT NOT NULL,
+    parking_status VARCHAR(32),
+    gate_id INT,
+    attempt INT,
+    payload VARCHAR(512),
+    event_time DATETIME NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE = InnoDB;
+
+CREATE INDEX idx_parking_activity_event_activity ON T_PARKING_ACTIVITY_EVENT (activity_id, id);
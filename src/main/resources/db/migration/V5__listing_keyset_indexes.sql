@@ -0,0 +1,5 @@
+-- Keyset pagination and streaming of the parking activity and sales record listings.
+
+CREATE INDEX idx_parking_activity_created ON T_PARKING_ACTIVITY (created_date, id);
+
+CREATE INDEX idx_sales_record_created ON T_SALES_RECORD (created_date, id);
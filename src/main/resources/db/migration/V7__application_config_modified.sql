@@ -0,0 +1,5 @@
+-- Bumped on every configuration write so running nodes detect the change, see ConfigServiceImpl.
+
+ALTER TABLE T_APPLICATION_CONFIG ADD COLUMN last_modified_date DATETIME;
+
+UPDATE T_APPLICATION_CONFIG SET last_modified_date = UTC_TIMESTAMP() WHERE last_modified_date IS NULL;
@@ -0,0 +1,68 @@
+package com.greenowl.callisto.security.xauth;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.security.AuthoritiesConstants;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenCacheTest {
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    private final TokenCache tokenCache = new TokenCache(100, 3600, metricRegistry);
+
+    private static UserDetails user(String login) {
+        return new User(login, "hash", AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER));
+    }
+
+    private long inAnHour() {
+        return System.currentTimeMillis() + 3600 * 1000;
+    }
+
+    @Test
+    public void aValidatedTokenIsRemembered() {
+        UserDetails user = user("user@example.com");
+        tokenCache.put("token-1", user, inAnHour());
+
+        assertThat(tokenCache.get("token-1")).isSameAs(user);
+        assertThat(tokenCache.get("token-2")).isNull();
+        assertThat(metricRegistry.meter(MetricRegistry.name(TokenCache.class, "hits")).getCount()).isEqualTo(1L);
+        assertThat(metricRegistry.meter(MetricRegistry.name(TokenCache.class, "misses")).getCount()).isEqualTo(1L);
+    }
+
+    @Test
+    public void anEntryDoesNotOutliveItsToken() {
+        tokenCache.put("token-1", user("user@example.com"), System.currentTimeMillis() - 1);
+
+        assertThat(tokenCache.get("token-1")).isNull();
+    }
+
+    @Test
+    public void invalidatingAUserForgetsOnlyTheirTokens() {
+        UserDetails other = user("other@example.com");
+        tokenCache.put("token-1", user("user@example.com"), inAnHour());
+        tokenCache.put("token-2", user("user@example.com"), inAnHour());
+        tokenCache.put("token-3", other, inAnHour());
+
+        tokenCache.invalidate("user@example.com");
+
+        assertThat(tokenCache.get("token-1")).isNull();
+        assertThat(tokenCache.get("token-2")).isNull();
+        assertThat(tokenCache.get("token-3")).isSameAs(other);
+    }
+
+    @Test
+    public void invalidatingAllForgetsEveryToken() {
+        tokenCache.put("token-1", user("user@example.com"), inAnHour());
+        tokenCache.put("token-2", user("other@example.com"), inAnHour());
+
+        tokenCache.invalidateAll();
+
+        assertThat(tokenCache.get("token-1")).isNull();
+        assertThat(tokenCache.get("token-2")).isNull();
+    }
+}
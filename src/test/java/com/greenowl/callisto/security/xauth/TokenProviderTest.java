@@ -0,0 +1,96 @@
+package com.greenowl.callisto.security.xauth;
+
+import com.greenowl.callisto.security.AuthoritiesConstants;
+import com.greenowl.callisto.security.UserPrincipal;
+import org.junit.Test;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TokenProviderTest {
+
+    private static final String SECRET = "testXAuthSecret";
+
+    private final TokenProvider tokenProvider = new TokenProvider(SECRET, 3600);
+
+    private static UserPrincipal principal() {
+        return new UserPrincipal(42L, "user@example.com", "hash", 3,
+                AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER));
+    }
+
+    @Test
+    public void aV2TokenCarriesThePrincipal() {
+        Token token = tokenProvider.createToken(principal());
+
+        assertThat(tokenProvider.isV2Token(token.getToken())).isTrue();
+        UserPrincipal verified = tokenProvider.verifyV2Token(token.getToken());
+        assertThat(verified).isNotNull();
+        assertThat(verified.getId()).isEqualTo(42L);
+        assertThat(verified.getUsername()).isEqualTo("user@example.com");
+        assertThat(verified.getTokenGeneration()).isEqualTo(3);
+        assertThat(verified.getAuthorities()).extracting("authority").containsOnly(AuthoritiesConstants.USER);
+    }
+
+    @Test
+    public void aTamperedPayloadIsRejected() {
+        String token = tokenProvider.createToken(principal()).getToken();
+
+        String elevated = token.replace(":" + AuthoritiesConstants.USER + ":", ":" + AuthoritiesConstants.ADMIN + ":");
+        assertThat(elevated).isNotEqualTo(token);
+        assertThat(tokenProvider.verifyV2Token(elevated)).isNull();
+
+        assertThat(tokenProvider.verifyV2Token(token.replace("v2:42:", "v2:43:"))).isNull();
+        assertThat(tokenProvider.verifyV2Token(token.replace(":3:", ":4:"))).isNull();
+        assertThat(tokenProvider.verifyV2Token(token.replace("user@example.com", "admin@example.com"))).isNull();
+    }
+
+    @Test
+    public void aTamperedSignatureIsRejected() {
+        String token = tokenProvider.createToken(principal()).getToken();
+        char last = token.charAt(token.length() - 1);
+
+        String forged = token.substring(0, token.length() - 1) + (last == '0' ? '1' : '0');
+        assertThat(tokenProvider.verifyV2Token(forged)).isNull();
+    }
+
+    @Test
+    public void aTokenSignedWithAnotherSecretIsRejected() {
+        String token = new TokenProvider("anotherSecret", 3600).createToken(principal()).getToken();
+
+        assertThat(tokenProvider.verifyV2Token(token)).isNull();
+    }
+
+    @Test
+    public void anExpiredTokenIsRejected() {
+        TokenProvider expiring = new TokenProvider(SECRET, -1);
+        String token = expiring.createToken(principal()).getToken();
+
+        assertThat(expiring.verifyV2Token(token)).isNull();
+        assertThat(tokenProvider.verifyV2Token(token)).isNull();
+    }
+
+    @Test
+    public void aMalformedTokenIsRejected() {
+        String token = tokenProvider.createToken(principal()).getToken();
+
+        assertThat(tokenProvider.verifyV2Token("v2:")).isNull();
+        assertThat(tokenProvider.verifyV2Token("v2:42:3")).isNull();
+        assertThat(tokenProvider.verifyV2Token(token.substring(0, token.length() - 2))).isNull();
+        assertThat(tokenProvider.verifyV2Token(token.replace("v2:42:", "v2:x:"))).isNull();
+    }
+
+    @Test
+    public void aV1TokenIsStillValidatedAgainstThePassword() {
+        UserDetails user = new User("user@example.com", "hash",
+                AuthorityUtils.createAuthorityList(AuthoritiesConstants.USER));
+        String token = tokenProvider.createToken(user).getToken();
+
+        assertThat(tokenProvider.isV2Token(token)).isFalse();
+        assertThat(tokenProvider.getUserNameFromToken(token)).isEqualTo("user@example.com");
+        assertThat(tokenProvider.validateToken(token, user)).isTrue();
+        UserDetails changedPassword = new User("user@example.com", "otherHash", user.getAuthorities());
+        assertThat(tokenProvider.validateToken(token, changedPassword)).isFalse();
+    }
+}
@@ -0,0 +1,160 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.LotOccupancy;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.repository.LotOccupancyRepository;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OccupancyRegistryTest {
+
+    @Mock
+    private LotOccupancyRepository lotOccupancyRepository;
+
+    @Mock
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private OccupancyRegistry occupancyRegistry;
+
+    @Before
+    public void setUp() {
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(new SimpleTransactionStatus());
+        when(parkingActivityRepository.getLotIdsByState(anyCollectionOf(ParkingState.class),
+                anyCollectionOf(String.class))).thenReturn(Collections.<Long>emptyList());
+        when(lotOccupancyRepository.findAll()).thenReturn(Collections.<LotOccupancy>emptyList());
+        occupancyRegistry.init();
+    }
+
+    private void stubCount(Long lotId, long count) {
+        when(parkingActivityRepository.countByStateInLot(eq(lotId), anyCollectionOf(ParkingState.class),
+                anyCollectionOf(String.class))).thenReturn(count);
+    }
+
+    @Test
+    public void anEntryAddsACar() {
+        occupancyRegistry.transitioned(4L, ParkingState.PENDING_ENTER, ParkingState.IN_FLIGHT);
+
+        verify(lotOccupancyRepository).add(eq(4L), eq(1L), any(Date.class));
+    }
+
+    @Test
+    public void anActivityWithoutPreviousStateEntersFromOutside() {
+        occupancyRegistry.transitioned(4L, null, ParkingState.IN_FLIGHT_MANUAL);
+
+        verify(lotOccupancyRepository).add(eq(4L), eq(1L), any(Date.class));
+    }
+
+    @Test
+    public void anExitRemovesACar() {
+        occupancyRegistry.transitioned(4L, ParkingState.PENDING_EXIT, ParkingState.COMPLETED);
+        occupancyRegistry.transitioned(5L, ParkingState.CONNECTION_TIMEOUT_EXIT, ParkingState.ALARM_EXIT);
+
+        verify(lotOccupancyRepository).add(eq(4L), eq(-1L), any(Date.class));
+        verify(lotOccupancyRepository).add(eq(5L), eq(-1L), any(Date.class));
+    }
+
+    @Test
+    public void aMoveThatStaysInsideOrOutsideChangesNothing() {
+        occupancyRegistry.transitioned(4L, ParkingState.IN_FLIGHT, ParkingState.PENDING_EXIT);
+        occupancyRegistry.transitioned(4L, ParkingState.PENDING_EXIT, ParkingState.IN_FLIGHT);
+        occupancyRegistry.transitioned(4L, ParkingState.PENDING_ENTER, ParkingState.ALARM_ENTER);
+        occupancyRegistry.transitioned(4L, null, ParkingState.PENDING_ENTER);
+
+        verify(lotOccupancyRepository, never()).add(any(Long.class), anyLong(), any(Date.class));
+    }
+
+    @Test
+    public void anActivityWithoutLotIsNotCounted() {
+        occupancyRegistry.transitioned(null, ParkingState.PENDING_ENTER, ParkingState.IN_FLIGHT);
+
+        verify(lotOccupancyRepository, never()).add(any(Long.class), anyLong(), any(Date.class));
+    }
+
+    @Test
+    public void theReconciliationCorrectsTheDriftOfEachLot() {
+        LotOccupancy drifted = new LotOccupancy(4L, 7, new DateTime(0));
+        LotOccupancy exact = new LotOccupancy(5L, 2, new DateTime(0));
+        when(lotOccupancyRepository.findAll()).thenReturn(Arrays.asList(drifted, exact));
+        when(lotOccupancyRepository.getOccupancyForUpdate(4L)).thenReturn(drifted);
+        when(lotOccupancyRepository.getOccupancyForUpdate(5L)).thenReturn(exact);
+        stubCount(4L, 5);
+        stubCount(5L, 2);
+
+        occupancyRegistry.reconcile();
+
+        assertThat(drifted.getOccupancy()).isEqualTo(5L);
+        assertThat(drifted.getUpdatedAt()).isNotEqualTo(new DateTime(0));
+        assertThat(exact.getOccupancy()).isEqualTo(2L);
+        assertThat(exact.getUpdatedAt()).isEqualTo(new DateTime(0));
+        assertThat(metricRegistry.counter(MetricRegistry.name(OccupancyRegistry.class, "corrections")).getCount())
+                .isEqualTo(1L);
+        assertThat(occupancyRegistry.getOccupancy(4L).getOccupancy()).isEqualTo(5L);
+        verify(transactionManager, times(2)).commit(any(SimpleTransactionStatus.class));
+    }
+
+    @Test
+    public void aLotWithCarsInsideButNoRowGetsOne() {
+        LotOccupancy created = new LotOccupancy(6L, 0, new DateTime(0));
+        when(parkingActivityRepository.getLotIdsByState(anyCollectionOf(ParkingState.class),
+                anyCollectionOf(String.class))).thenReturn(Collections.singletonList(6L));
+        when(lotOccupancyRepository.getOccupancyForUpdate(6L)).thenReturn(null, created);
+        stubCount(6L, 3);
+
+        occupancyRegistry.reconcile();
+
+        verify(lotOccupancyRepository).add(eq(6L), eq(0L), any(Date.class));
+        assertThat(created.getOccupancy()).isEqualTo(3L);
+    }
+
+    @Test
+    public void aLotThatFailsToReconcileDoesNotStopTheOthers() {
+        LotOccupancy failing = new LotOccupancy(4L, 7, new DateTime(0));
+        LotOccupancy drifted = new LotOccupancy(5L, 1, new DateTime(0));
+        when(lotOccupancyRepository.findAll()).thenReturn(Arrays.asList(failing, drifted));
+        when(lotOccupancyRepository.getOccupancyForUpdate(4L)).thenThrow(new IllegalStateException("lock timeout"));
+        when(lotOccupancyRepository.getOccupancyForUpdate(5L)).thenReturn(drifted);
+        stubCount(5L, 0);
+
+        occupancyRegistry.reconcile();
+
+        assertThat(failing.getOccupancy()).isEqualTo(7L);
+        assertThat(drifted.getOccupancy()).isEqualTo(0L);
+    }
+}
@@ -0,0 +1,226 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingActivityEvent;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.domain.ParkingTrigger;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.OngoingStubbing;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ParkingLifecycleEngineTest {
+
+    private static final Long ACTIVITY_ID = 7L;
+
+    private static final Long LOT_ID = 3L;
+
+    @Mock
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Mock
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Mock
+    private ParkingActivityService parkingActivityService;
+
+    @Mock
+    private ReportingService reportingService;
+
+    @Mock
+    private OccupancyRegistry occupancyRegistry;
+
+    @Mock
+    private ParkingAnalyticsService parkingAnalyticsService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private ParkingLifecycleEngine engine;
+
+    @Before
+    public void setUp() {
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(new SimpleTransactionStatus());
+        engine.init();
+    }
+
+    private void activityIn(ParkingState state) {
+        ParkingActivity activity = new ParkingActivity();
+        activity.setId(ACTIVITY_ID);
+        activity.setLotId(LOT_ID);
+        activity.setParkingState(state);
+        when(parkingActivityRepository.findOne(ACTIVITY_ID)).thenReturn(activity);
+    }
+
+    private OngoingStubbing<Integer> whenTransition(ParkingState from, ParkingState to) {
+        return when(parkingActivityRepository.transition(eq(ACTIVITY_ID), eq(from), eq(from.getStatus()), eq(to),
+                eq(to.getStatus()), any(DateTime.class), any(DateTime.class), anyString(), any(DateTime.class)));
+    }
+
+    private long meterCount(String name) {
+        return metricRegistry.meter(MetricRegistry.name(ParkingLifecycleEngine.class, name)).getCount();
+    }
+
+    @Test
+    public void entryMovesThroughTheGateAndTheTicketCallback() {
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PARKING_START, ParkingTrigger.REQUEST_ENTER))
+                .isEqualTo(ParkingState.PENDING_ENTER);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PARKING_START, ParkingTrigger.REQUEST_ENTER_MANUAL))
+                .isEqualTo(ParkingState.PENDING_ENTER_MANUAL);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_ENTER, ParkingTrigger.ENTER_GATE_FAILED))
+                .isEqualTo(ParkingState.ALARM_ENTER);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_ENTER_MANUAL, ParkingTrigger.ENTER_GATE_FAILED))
+                .isEqualTo(ParkingState.ALARM_ENTER_MANUAL);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_ENTER, ParkingTrigger.ENTER_PASSED))
+                .isEqualTo(ParkingState.IN_FLIGHT);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_ENTER_MANUAL, ParkingTrigger.ENTER_PASSED))
+                .isEqualTo(ParkingState.IN_FLIGHT_MANUAL);
+    }
+
+    @Test
+    public void ticketCallbackWinsOverAnEarlierGateFailure() {
+        assertThat(ParkingLifecycleEngine.next(ParkingState.ALARM_ENTER, ParkingTrigger.ENTER_PASSED))
+                .isEqualTo(ParkingState.IN_FLIGHT);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.ALARM_ENTER_MANUAL, ParkingTrigger.ENTER_PASSED))
+                .isEqualTo(ParkingState.IN_FLIGHT_MANUAL);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.ALARM_EXIT, ParkingTrigger.EXIT_PASSED))
+                .isEqualTo(ParkingState.COMPLETED);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.ALARM_EXIT_MANUAL, ParkingTrigger.EXIT_PASSED))
+                .isEqualTo(ParkingState.COMPLETED_MANUAL);
+    }
+
+    @Test
+    public void exitCanBeRequestedOnceEnteredOrWhenTheEntryIsUnconfirmed() {
+        for (ParkingState from : ParkingState.values()) {
+            ParkingState exit = ParkingLifecycleEngine.next(from, ParkingTrigger.REQUEST_EXIT);
+            ParkingState manualExit = ParkingLifecycleEngine.next(from, ParkingTrigger.REQUEST_EXIT_MANUAL);
+            if (from.mayRequestExit()) {
+                assertThat(exit).as("exit from " + from).isEqualTo(ParkingState.PENDING_EXIT);
+                assertThat(manualExit).as("manual exit from " + from).isEqualTo(ParkingState.PENDING_EXIT_MANUAL);
+            } else {
+                assertThat(exit).as("exit from " + from).isNull();
+                assertThat(manualExit).as("manual exit from " + from).isNull();
+            }
+        }
+        // the entry callback was lost although the barrier opened
+        for (ParkingState from : new ParkingState[]{ParkingState.PENDING_ENTER, ParkingState.PENDING_ENTER_MANUAL,
+                ParkingState.CONNECTION_TIMEOUT_ENTER, ParkingState.ALARM_ENTER, ParkingState.ALARM_ENTER_MANUAL}) {
+            assertThat(ParkingLifecycleEngine.next(from, ParkingTrigger.REQUEST_EXIT)).as("exit from " + from)
+                    .isEqualTo(ParkingState.PENDING_EXIT);
+        }
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PARKING_START, ParkingTrigger.REQUEST_EXIT)).isNull();
+        assertThat(ParkingLifecycleEngine.next(ParkingState.COMPLETED, ParkingTrigger.REQUEST_EXIT)).isNull();
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_EXIT, ParkingTrigger.EXIT_GATE_FAILED))
+                .isEqualTo(ParkingState.ALARM_EXIT);
+        assertThat(ParkingLifecycleEngine.next(ParkingState.PENDING_EXIT_MANUAL, ParkingTrigger.EXIT_GATE_FAILED))
+                .isEqualTo(ParkingState.ALARM_EXIT_MANUAL);
+    }
+
+    @Test
+    public void completedActivitiesAcceptNoTrigger() {
+        for (ParkingTrigger trigger : ParkingTrigger.values()) {
+            assertThat(ParkingLifecycleEngine.next(ParkingState.COMPLETED, trigger)).as(trigger.name()).isNull();
+            assertThat(ParkingLifecycleEngine.next(ParkingState.COMPLETED_MANUAL, trigger)).as(trigger.name()).isNull();
+            assertThat(ParkingLifecycleEngine.next(null, trigger)).as(trigger.name()).isNull();
+        }
+    }
+
+    @Test
+    public void appliedTransitionRecordsTheStatusChange() {
+        activityIn(ParkingState.PENDING_ENTER);
+        whenTransition(ParkingState.PENDING_ENTER, ParkingState.IN_FLIGHT).thenReturn(1);
+
+        ParkingLifecycleEngine.Result result = engine.fire(ACTIVITY_ID, ParkingTrigger.ENTER_PASSED);
+
+        assertThat(result.isApplied()).isTrue();
+        assertThat(result.getPrevious()).isEqualTo(ParkingState.PENDING_ENTER);
+        assertThat(result.getState()).isEqualTo(ParkingState.IN_FLIGHT);
+        assertThat(savedEvents()).extracting("parkingStatus").containsExactly(ParkingState.IN_FLIGHT.getStatus());
+        verify(occupancyRegistry).transitioned(LOT_ID, ParkingState.PENDING_ENTER, ParkingState.IN_FLIGHT);
+        verify(parkingActivityService).activityChanged(ACTIVITY_ID);
+    }
+
+    @Test
+    public void triggerNotAllowedInTheCurrentStateIsIgnored() {
+        activityIn(ParkingState.COMPLETED);
+        ParkingActivityEvent callback = ParkingActivityEvent.statusChange(ACTIVITY_ID, "callback");
+
+        ParkingLifecycleEngine.Result result = engine.fire(ACTIVITY_ID, ParkingTrigger.ENTER_PASSED,
+                new ParkingLifecycleEngine.Change(), Collections.singletonList(callback));
+
+        assertThat(result.isApplied()).isFalse();
+        assertThat(result.getState()).isEqualTo(ParkingState.COMPLETED);
+        assertThat(savedEvents()).containsExactly(callback);
+        verify(parkingActivityService, never()).activityChanged(ACTIVITY_ID);
+    }
+
+    @Test
+    public void conflictingUpdateIsRetried() {
+        activityIn(ParkingState.PENDING_EXIT);
+        whenTransition(ParkingState.PENDING_EXIT, ParkingState.COMPLETED).thenReturn(0, 0, 1);
+
+        ParkingLifecycleEngine.Result result = engine.fire(ACTIVITY_ID, ParkingTrigger.EXIT_PASSED);
+
+        assertThat(result.isApplied()).isTrue();
+        assertThat(result.getState()).isEqualTo(ParkingState.COMPLETED);
+        assertThat(meterCount("conflicts")).isEqualTo(2);
+        assertThat(meterCount("failures")).isZero();
+    }
+
+    @Test
+    public void givesUpWhenTheActivityKeepsChanging() {
+        activityIn(ParkingState.PENDING_EXIT);
+        whenTransition(ParkingState.PENDING_EXIT, ParkingState.COMPLETED).thenReturn(0);
+        ParkingActivityEvent callback = ParkingActivityEvent.statusChange(ACTIVITY_ID, "callback");
+
+        ParkingLifecycleEngine.Result result = engine.fire(ACTIVITY_ID, ParkingTrigger.EXIT_PASSED,
+                new ParkingLifecycleEngine.Change(), Collections.singletonList(callback));
+
+        assertThat(result.isApplied()).isFalse();
+        assertThat(result.getState()).isEqualTo(ParkingState.PENDING_EXIT);
+        verify(parkingActivityRepository, times(3)).transition(eq(ACTIVITY_ID), eq(ParkingState.PENDING_EXIT),
+                anyString(), eq(ParkingState.COMPLETED), anyString(), any(DateTime.class), any(DateTime.class),
+                anyString(), any(DateTime.class));
+        assertThat(meterCount("conflicts")).isEqualTo(3);
+        assertThat(meterCount("failures")).isEqualTo(1);
+        // the events of the trigger are kept even though the state did not move
+        assertThat(savedEvents()).containsExactly(callback);
+        verify(occupancyRegistry, never()).transitioned(any(Long.class), any(ParkingState.class), any(ParkingState.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<ParkingActivityEvent> savedEvents() {
+        ArgumentCaptor<List> saved = ArgumentCaptor.forClass(List.class);
+        verify(parkingActivityEventRepository).save(saved.capture());
+        return saved.getValue();
+    }
+}
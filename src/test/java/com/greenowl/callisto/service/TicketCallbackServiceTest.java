@@ -0,0 +1,192 @@
+package com.greenowl.callisto.service;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.domain.ParkingState;
+import com.greenowl.callisto.repository.ParkingActivityEventRepository;
+import com.greenowl.callisto.service.gate.GateCycleTracker;
+import com.greenowl.callisto.web.rest.dto.TicketEventDTO;
+import com.greenowl.callisto.web.rest.dto.TicketEventResultDTO;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.stubbing.Answer;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TicketCallbackServiceTest {
+
+    @Mock
+    private ParkingLifecycleEngine parkingLifecycleEngine;
+
+    @Mock
+    private ParkingActivityService parkingActivityService;
+
+    @Mock
+    private ParkingActivityEventRepository parkingActivityEventRepository;
+
+    @Mock
+    private GateCycleTracker gateCycleTracker;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private TicketCallbackService ticketCallbackService;
+
+    @Before
+    public void setUp() {
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(new SimpleTransactionStatus());
+        when(parkingActivityEventRepository.findIdempotencyKeys(anyCollectionOf(String.class)))
+                .thenReturn(Collections.emptyList());
+        ticketCallbackService.init();
+    }
+
+    private static TicketEventDTO entered(String idempotencyKey, long ticketNo) {
+        TicketEventDTO event = new TicketEventDTO();
+        event.setIdempotencyKey(idempotencyKey);
+        event.setTicketNo(ticketNo);
+        event.setGateId("1");
+        event.setStatus("pass");
+        event.setAccessDateTime("2026-10-17_08:30:00");
+        return event;
+    }
+
+    /**
+     * The lifecycle engine moving every activity of the batch into the lot.
+     */
+    private static Answer<List<ParkingLifecycleEngine.Result>> allApplied() {
+        return invocation -> ((List<?>) invocation.getArguments()[0]).stream()
+                .map(command -> ParkingLifecycleEngine.Result.applied(ParkingState.PENDING_ENTER, ParkingState.IN_FLIGHT))
+                .collect(Collectors.toList());
+    }
+
+    private static List<String> outcomes(List<TicketEventResultDTO> results) {
+        return results.stream().map(TicketEventResultDTO::getResult).collect(Collectors.toList());
+    }
+
+    @Test
+    public void keyRepeatedInTheBatchIsAppliedOnce() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class))).thenAnswer(allApplied());
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Arrays.asList(entered("a", 7), entered("a", 7)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.APPLIED, TicketEventResultDTO.DUPLICATE);
+        verify(parkingActivityService).activityChanged(7L);
+    }
+
+    @Test
+    public void replayOfARecentKeyIsNotAppliedAgain() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class))).thenAnswer(allApplied());
+        ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.DUPLICATE);
+        verify(parkingLifecycleEngine, times(1)).applyAll(anyListOf(ParkingLifecycleEngine.Command.class));
+    }
+
+    @Test
+    public void replayOfARecordedKeyIsNotAppliedAgain() {
+        when(parkingActivityEventRepository.findIdempotencyKeys(anyCollectionOf(String.class)))
+                .thenReturn(Collections.singletonList("a"));
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.DUPLICATE);
+        verify(parkingLifecycleEngine, never()).applyAll(anyListOf(ParkingLifecycleEngine.Command.class));
+    }
+
+    @Test
+    public void keysRecordedByAConcurrentDeliveryAreSkippedOnRetry() {
+        // empty when the batch is read, "a" once the insert failed on its key, then empty for the rest
+        when(parkingActivityEventRepository.findIdempotencyKeys(anyCollectionOf(String.class)))
+                .thenReturn(Collections.emptyList(), Collections.singletonList("a"), Collections.emptyList());
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class)))
+                .thenThrow(new DataIntegrityViolationException("Duplicate entry 'a'"))
+                .thenAnswer(allApplied());
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Arrays.asList(entered("a", 7), entered("b", 8)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.DUPLICATE, TicketEventResultDTO.APPLIED);
+        verify(parkingLifecycleEngine, times(2)).applyAll(anyListOf(ParkingLifecycleEngine.Command.class));
+        verify(parkingActivityService).activityChanged(8L);
+        verify(parkingActivityService, never()).activityChanged(7L);
+    }
+
+    @Test
+    public void otherConstraintViolationFailsTheBatchAtOnce() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class)))
+                .thenThrow(new DataIntegrityViolationException("Column 'gate_id' cannot be null"));
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Arrays.asList(entered("a", 7), entered("b", 8)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.FAILED, TicketEventResultDTO.FAILED);
+        assertThat(results.get(0).getMessage()).isEqualTo("Unable to record the ticket event");
+        verify(parkingLifecycleEngine, times(1)).applyAll(anyListOf(ParkingLifecycleEngine.Command.class));
+    }
+
+    @Test
+    public void conflictingBatchIsRetriedThenFailed() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class)))
+                .thenThrow(new OptimisticLockingFailureException("Row was updated"));
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.FAILED);
+        verify(parkingLifecycleEngine, times(3)).applyAll(anyListOf(ParkingLifecycleEngine.Command.class));
+    }
+
+    @Test
+    public void failedItemCanBeSentAgain() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class)))
+                .thenThrow(new OptimisticLockingFailureException("Row was updated"))
+                .thenThrow(new OptimisticLockingFailureException("Row was updated"))
+                .thenThrow(new OptimisticLockingFailureException("Row was updated"))
+                .thenAnswer(allApplied());
+        ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Collections.singletonList(entered("a", 7)));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.APPLIED);
+    }
+
+    @Test
+    public void invalidItemIsReportedWithoutTouchingTheOthers() {
+        when(parkingLifecycleEngine.applyAll(anyListOf(ParkingLifecycleEngine.Command.class))).thenAnswer(allApplied());
+        TicketEventDTO badGate = entered("b", 8);
+        badGate.setGateId("9");
+
+        List<TicketEventResultDTO> results = ticketCallbackService.applyAll(Arrays.asList(entered("a", 7), badGate));
+
+        assertThat(outcomes(results)).containsExactly(TicketEventResultDTO.APPLIED, TicketEventResultDTO.INVALID);
+    }
+}
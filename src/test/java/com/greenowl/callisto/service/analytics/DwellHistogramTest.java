@@ -0,0 +1,82 @@
+package com.greenowl.callisto.service.analytics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DwellHistogramTest {
+
+    private static DwellHistogram recorded(long from, long to) {
+        DwellHistogram histogram = new DwellHistogram();
+        for (long seconds = from; seconds <= to; seconds++) {
+            histogram.record(seconds);
+        }
+        return histogram;
+    }
+
+    private static void assertCloseTo(long value, long expected) {
+        assertThat(value).isGreaterThanOrEqualTo(Math.round(expected * 0.97))
+                .isLessThanOrEqualTo(Math.round(expected * 1.03));
+    }
+
+    @Test
+    public void shortStaysAreExact() {
+        DwellHistogram histogram = recorded(0, 63);
+
+        assertThat(histogram.getCount()).isEqualTo(64);
+        assertThat(histogram.getMean()).isEqualTo(31.5);
+        assertThat(histogram.valueAtPercentile(50)).isEqualTo(31);
+        assertThat(histogram.valueAtPercentile(100)).isEqualTo(63);
+    }
+
+    @Test
+    public void percentilesAreWithinTheBucketError() {
+        DwellHistogram histogram = recorded(1, 10000);
+
+        assertCloseTo(histogram.valueAtPercentile(50), 5000);
+        assertCloseTo(histogram.valueAtPercentile(90), 9000);
+        assertCloseTo(histogram.valueAtPercentile(99), 9900);
+        assertThat(histogram.getMax()).isEqualTo(10000);
+        assertThat(histogram.getMean()).isEqualTo(5000.5);
+    }
+
+    @Test
+    public void durationsOutOfRangeAreClamped() {
+        DwellHistogram histogram = new DwellHistogram();
+        histogram.record(-5);
+        histogram.record(DwellHistogram.MAX_VALUE + 100);
+
+        assertThat(histogram.getCount()).isEqualTo(2);
+        assertThat(histogram.valueAtPercentile(50)).isZero();
+        assertThat(histogram.getMax()).isEqualTo(DwellHistogram.MAX_VALUE);
+    }
+
+    @Test
+    public void mergeAddsTheBuckets() {
+        DwellHistogram merged = recorded(1, 5000);
+        merged.merge(recorded(5001, 10000));
+
+        assertThat(merged.toBytes()).isEqualTo(recorded(1, 10000).toBytes());
+    }
+
+    @Test
+    public void histogramRoundTrips() {
+        DwellHistogram histogram = recorded(1, 10000);
+        byte[] bytes = histogram.toBytes();
+
+        DwellHistogram read = DwellHistogram.fromBytes(bytes);
+        assertThat(read.getCount()).isEqualTo(histogram.getCount());
+        assertThat(read.getMean()).isEqualTo(histogram.getMean());
+        assertThat(read.getMax()).isEqualTo(histogram.getMax());
+        assertThat(read.valueAtPercentile(99)).isEqualTo(histogram.valueAtPercentile(99));
+        assertThat(read.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    public void emptyHistogramRoundTrips() {
+        DwellHistogram read = DwellHistogram.fromBytes(new DwellHistogram().toBytes());
+
+        assertThat(read.getCount()).isZero();
+        assertThat(read.valueAtPercentile(50)).isZero();
+    }
+}
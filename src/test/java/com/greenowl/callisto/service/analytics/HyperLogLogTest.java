@@ -0,0 +1,79 @@
+package com.greenowl.callisto.service.analytics;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HyperLogLogTest {
+
+    private static HyperLogLog offered(long from, long to) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (long value = from; value < to; value++) {
+            sketch.offer(value);
+        }
+        return sketch;
+    }
+
+    private static void assertCloseTo(long estimate, long expected) {
+        // about 1.6% standard error at the default precision
+        assertThat(estimate).isGreaterThanOrEqualTo(Math.round(expected * 0.97))
+                .isLessThanOrEqualTo(Math.round(expected * 1.03));
+    }
+
+    @Test
+    public void estimatesTheNumberOfDistinctValues() {
+        assertCloseTo(offered(0, 100000).cardinality(), 100000);
+    }
+
+    @Test
+    public void repeatedValuesCountOnce() {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int round = 0; round < 5; round++) {
+            for (long value = 0; value < 1000; value++) {
+                sketch.offer(value);
+            }
+        }
+        assertCloseTo(sketch.cardinality(), 1000);
+    }
+
+    @Test
+    public void mergeGivesTheSketchOfTheUnion() {
+        HyperLogLog merged = offered(0, 60000);
+        merged.merge(offered(40000, 100000));
+
+        assertThat(merged.toBytes()).isEqualTo(offered(0, 100000).toBytes());
+        assertCloseTo(merged.cardinality(), 100000);
+    }
+
+    @Test
+    public void sparseSketchRoundTrips() {
+        HyperLogLog sketch = offered(0, 100);
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes.length).isLessThan(1 << HyperLogLog.DEFAULT_PRECISION);
+        HyperLogLog read = HyperLogLog.fromBytes(bytes);
+        assertThat(read.cardinality()).isEqualTo(sketch.cardinality());
+        assertThat(read.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    public void denseSketchRoundTrips() {
+        HyperLogLog sketch = offered(0, 100000);
+        byte[] bytes = sketch.toBytes();
+
+        assertThat(bytes.length).isEqualTo(2 + (1 << HyperLogLog.DEFAULT_PRECISION));
+        HyperLogLog read = HyperLogLog.fromBytes(bytes);
+        assertThat(read.cardinality()).isEqualTo(sketch.cardinality());
+        assertThat(read.toBytes()).isEqualTo(bytes);
+    }
+
+    @Test
+    public void emptySketchRoundTrips() {
+        assertThat(HyperLogLog.fromBytes(new HyperLogLog().toBytes()).cardinality()).isZero();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sketchesOfDifferentPrecisionDoNotMerge() {
+        new HyperLogLog(12).merge(new HyperLogLog(10));
+    }
+}
@@ -0,0 +1,49 @@
+package com.greenowl.callisto.service.analytics;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SketchCodecTest {
+
+    private static byte[] encoded(long value) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SketchCodec.writeVarLong(out, value);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void numbersRoundTripInSequence() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE};
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (long value : values) {
+            SketchCodec.writeVarLong(out, value);
+        }
+
+        ByteBuffer in = ByteBuffer.wrap(out.toByteArray());
+        for (long value : values) {
+            assertThat(SketchCodec.readVarLong(in)).isEqualTo(value);
+        }
+        assertThat(in.hasRemaining()).isFalse();
+    }
+
+    @Test
+    public void smallNumbersTakeFewBytes() {
+        assertThat(encoded(0)).hasSize(1);
+        assertThat(encoded(127)).hasSize(1);
+        assertThat(encoded(128)).hasSize(2);
+        assertThat(encoded(16384)).hasSize(3);
+        assertThat(encoded(Long.MAX_VALUE)).hasSize(9);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void numberLongerThanTenBytesIsRejected() {
+        byte[] bytes = new byte[11];
+        Arrays.fill(bytes, (byte) 0x80);
+        SketchCodec.readVarLong(ByteBuffer.wrap(bytes));
+    }
+}
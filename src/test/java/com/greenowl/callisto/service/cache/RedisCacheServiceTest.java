@@ -0,0 +1,145 @@
+package com.greenowl.callisto.service.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.greenowl.callisto.cache.CacheKeys;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.web.rest.dto.ParkingPlanDTO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.connection.jedis.JedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs two nodes' cache services against one local redis-server, so every read checked here on the second node
+ * comes from Redis and not from the near-cache of the node that wrote it.
+ */
+public class RedisCacheServiceTest {
+
+    private RedisServer redisServer;
+
+    private JedisConnectionFactory connectionFactory;
+
+    private StringRedisTemplate redis;
+
+    private RedisCacheService writer;
+
+    private RedisCacheService reader;
+
+    @Before
+    public void setUp() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        redisServer = new RedisServer(port);
+        redisServer.start();
+        connectionFactory = new JedisConnectionFactory();
+        connectionFactory.setHostName("localhost");
+        connectionFactory.setPort(port);
+        connectionFactory.afterPropertiesSet();
+        redis = new StringRedisTemplate(connectionFactory);
+        writer = newService();
+        reader = newService();
+    }
+
+    @After
+    public void tearDown() {
+        connectionFactory.destroy();
+        redisServer.stop();
+    }
+
+    private RedisCacheService newService() {
+        return new RedisCacheService(new CallistoBeanConfigurationProperties.Cache(), connectionFactory,
+                new ObjectMapper(), new MetricRegistry());
+    }
+
+    private static ParkingPlanDTO plan(long id) {
+        return new ParkingPlanDTO(id, "Plan " + id, "Monthly plan", 120.5, true, 30L);
+    }
+
+    @Test
+    public void valuesComeBackAsTheTypeOfTheirRegion() {
+        writer.set(CacheKeys.PARKING_PLAN, 7L, plan(7));
+        writer.set(CacheKeys.ELIGIBLE_PLAN_IDS, "user@example.com", Arrays.asList(1L, 2L));
+
+        ParkingPlanDTO cached = reader.get(CacheKeys.PARKING_PLAN, 7L, ParkingPlanDTO.class);
+        assertThat(cached.getPlanId()).isEqualTo(7L);
+        assertThat(cached.getPlanName()).isEqualTo("Plan 7");
+        assertThat(cached.getUnitChargeAmount()).isEqualTo(120.5);
+        @SuppressWarnings("unchecked")
+        List<Long> ids = reader.get(CacheKeys.ELIGIBLE_PLAN_IDS, "user@example.com", List.class);
+        assertThat(ids).containsExactly(1L, 2L);
+    }
+
+    @Test
+    public void springCacheReadsUseTheTypeOfTheRegion() {
+        writer.set(CacheKeys.PARKING_PLAN, 7L, plan(7));
+
+        Cache.ValueWrapper cached = reader.getCache(CacheKeys.PARKING_PLAN.name()).get(7L);
+        assertThat(cached.get()).isInstanceOf(ParkingPlanDTO.class);
+    }
+
+    @Test
+    public void noClassNameIsWrittenToRedis() {
+        writer.set(CacheKeys.PARKING_PLAN, 7L, plan(7));
+        writer.set("key", plan(8));
+
+        for (String key : redis.keys("callisto:cache:*")) {
+            assertThat(redis.opsForValue().get(key)).doesNotContain("@class").doesNotContain("com.greenowl");
+        }
+    }
+
+    @Test
+    public void defaultRegionConvertsToTheRequestedClass() {
+        writer.set("key", plan(8));
+
+        assertThat(reader.get("key", ParkingPlanDTO.class).getPlanName()).isEqualTo("Plan 8");
+    }
+
+    @Test
+    public void getAllReadsNearAndRemoteValues() {
+        writer.set(CacheKeys.PARKING_PLAN, 1L, plan(1));
+        writer.set(CacheKeys.PARKING_PLAN, 2L, plan(2));
+        reader.get(CacheKeys.PARKING_PLAN, 1L, ParkingPlanDTO.class);
+
+        Map<Object, ParkingPlanDTO> found = reader.getAll(CacheKeys.PARKING_PLAN, Arrays.asList(1L, 2L, 3L),
+                ParkingPlanDTO.class);
+        assertThat(found).hasSize(2);
+        assertThat(found.get(2L).getPlanId()).isEqualTo(2L);
+    }
+
+    @Test
+    public void clearRemovesEveryKeyOfTheRegionOnly() {
+        for (long id = 0; id < 1200; id++) {
+            writer.set(CacheKeys.ELIGIBLE_PLAN_IDS, "user" + id, Arrays.asList(id));
+        }
+        writer.set(CacheKeys.PARKING_PLAN, 7L, plan(7));
+
+        writer.clear(CacheKeys.ELIGIBLE_PLAN_IDS);
+
+        assertThat(redis.keys("callisto:cache:" + CacheKeys.ELIGIBLE_PLAN_IDS.name() + ":*")).isEmpty();
+        assertThat(writer.get(CacheKeys.ELIGIBLE_PLAN_IDS, "user1", List.class)).isNull();
+        assertThat(reader.get(CacheKeys.PARKING_PLAN, 7L, ParkingPlanDTO.class)).isNotNull();
+    }
+
+    @Test
+    public void evictRemovesTheValueFromRedis() {
+        writer.set(CacheKeys.PARKING_PLAN, 7L, plan(7));
+
+        writer.evict(CacheKeys.PARKING_PLAN, 7L);
+
+        assertThat(reader.get(CacheKeys.PARKING_PLAN, 7L, ParkingPlanDTO.class)).isNull();
+    }
+}
@@ -0,0 +1,177 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.domain.ParkingActivity;
+import com.greenowl.callisto.domain.ParkingPlan;
+import com.greenowl.callisto.domain.PlanSubscription;
+import com.greenowl.callisto.domain.User;
+import com.greenowl.callisto.factory.ParkingActivityFactory;
+import com.greenowl.callisto.repository.ParkingActivityRepository;
+import com.greenowl.callisto.repository.PlanSubscriptionRepository;
+import com.greenowl.callisto.service.cache.CacheService;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.data.domain.Pageable;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class AdmissionServiceTest {
+
+    private static final long USER_ID = 7L;
+
+    private static final long LOT_ID = 3L;
+
+    @Mock
+    private ParkingActivityRepository parkingActivityRepository;
+
+    @Mock
+    private PlanSubscriptionRepository planSubscriptionRepository;
+
+    @Mock
+    private CacheService cacheService;
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private AdmissionService admissionService;
+
+    private User user;
+
+    private Consumer<String> otherNodes;
+
+    private ParkingActivity stored;
+
+    private Runnable duringLoad = () -> {
+    };
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        user = new User();
+        user.setId(USER_ID);
+        ParkingPlan plan = new ParkingPlan();
+        plan.setId(11L);
+        plan.setLotId(LOT_ID);
+        PlanSubscription subscription = new PlanSubscription();
+        subscription.setPlanGroup(plan);
+        when(planSubscriptionRepository.getPlanSubscriptionWithPlanByUserId(USER_ID))
+                .thenReturn(Collections.singletonList(subscription));
+        stored = activity(100L, Constants.PARKING_STATUS_COMPLETED);
+        when(parkingActivityRepository.getLatestActivitiesForUser(eq(USER_ID), any(Pageable.class))).thenAnswer(invocation -> {
+            ParkingActivity read = stored;
+            duringLoad.run();
+            return Collections.singletonList(read);
+        });
+
+        admissionService.init();
+        ArgumentCaptor<Consumer> listener = ArgumentCaptor.forClass(Consumer.class);
+        verify(cacheService).subscribe(eq(AdmissionService.TOPIC), listener.capture());
+        otherNodes = listener.getValue();
+    }
+
+    private ParkingActivity activity(long id, String status) {
+        ParkingActivity activity = ParkingActivityFactory.create(user, LOT_ID, status, null);
+        activity.setId(id);
+        return activity;
+    }
+
+    private void verifyLoads(int times) {
+        verify(parkingActivityRepository, times(times)).getLatestActivitiesForUser(eq(USER_ID), any(Pageable.class));
+    }
+
+    @Test
+    public void missIsLoadedOnceThenServedFromMemory() {
+        AdmissionSnapshot first = admissionService.getSnapshot(USER_ID);
+        AdmissionSnapshot second = admissionService.getSnapshot(USER_ID);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.isSubscribed()).isTrue();
+        assertThat(first.getLotId()).isEqualTo(LOT_ID);
+        assertThat(first.getActivityId()).isEqualTo(100L);
+        verifyLoads(1);
+        assertThat(metricRegistry.meter(MetricRegistry.name(AdmissionService.class, "snapshot", "hits")).getCount())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void savedActivityUpdatesTheSnapshotAndIsAnnounced() {
+        admissionService.getSnapshot(USER_ID);
+
+        admissionService.onActivitySaved(activity(101L, Constants.PARKING_STATUS_IN_FLIGHT));
+
+        AdmissionSnapshot snapshot = admissionService.getSnapshot(USER_ID);
+        assertThat(snapshot.getActivityId()).isEqualTo(101L);
+        assertThat(snapshot.getParkingStatus()).isEqualTo(Constants.PARKING_STATUS_IN_FLIGHT);
+        verifyLoads(1);
+        verify(cacheService).publish(AdmissionService.TOPIC, Long.toString(USER_ID));
+    }
+
+    @Test
+    public void olderActivityDoesNotReplaceTheLatest() {
+        admissionService.getSnapshot(USER_ID);
+
+        admissionService.onActivitySaved(activity(99L, Constants.PARKING_STATUS_IN_FLIGHT));
+
+        assertThat(admissionService.getSnapshot(USER_ID).getActivityId()).isEqualTo(100L);
+    }
+
+    @Test
+    public void snapshotLoadedAcrossASaveIsNotKept() {
+        ParkingActivity entered = activity(101L, Constants.PARKING_STATUS_IN_FLIGHT);
+        duringLoad = () -> {
+            // the enter commits on another thread after this load read the activities
+            duringLoad = () -> {
+            };
+            stored = entered;
+            admissionService.onActivitySaved(entered);
+        };
+
+        assertThat(admissionService.getSnapshot(USER_ID).getActivityId()).isEqualTo(100L);
+
+        AdmissionSnapshot reloaded = admissionService.getSnapshot(USER_ID);
+        assertThat(reloaded.getActivityId()).isEqualTo(101L);
+        assertThat(reloaded.getParkingStatus()).isEqualTo(Constants.PARKING_STATUS_IN_FLIGHT);
+    }
+
+    @Test
+    public void changeOnAnotherNodeDropsTheSnapshot() {
+        admissionService.getSnapshot(USER_ID);
+        stored = activity(101L, Constants.PARKING_STATUS_IN_FLIGHT);
+
+        otherNodes.accept(Long.toString(USER_ID));
+
+        assertThat(admissionService.getSnapshot(USER_ID).getActivityId()).isEqualTo(101L);
+        verifyLoads(2);
+    }
+
+    @Test
+    public void reloadReadsTheStoredState() {
+        admissionService.getSnapshot(USER_ID);
+        stored = activity(101L, Constants.PARKING_STATUS_IN_FLIGHT);
+
+        assertThat(admissionService.reload(USER_ID).getActivityId()).isEqualTo(101L);
+        assertThat(admissionService.getSnapshot(USER_ID).getActivityId()).isEqualTo(101L);
+        verifyLoads(2);
+    }
+}
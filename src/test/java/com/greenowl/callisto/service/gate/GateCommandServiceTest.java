@@ -0,0 +1,235 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.AppConfigKey;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.service.config.ConfigService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GateCommandServiceTest {
+
+    private static final GateEndpoint GATE = new GateEndpoint(4L, "north", "1", Constants.PARKING_TICKET_TYPE_ENTER,
+            "10.0.0.4", 2222);
+
+    private static final String OPEN = "TICKET: T1 " + Constants.GATE_OPEN_RESPONSE_1 + " OK";
+
+    private static final String NOT_PRESENT = "TICKET: T1 OPEN-GATE: NOT-PRESENT";
+
+    @Mock
+    private GateControllerClient gateControllerClient;
+
+    @Mock
+    private ConfigService configService;
+
+    @Mock
+    private GateCycleTracker gateCycleTracker;
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private GateCommandService gateCommandService;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        CallistoBeanConfigurationProperties.Gate gate = callistoProps.getGate();
+        gate.getRetry().setMaxAttempts(3);
+        gate.getRetry().setInitialBackoffMillis(10);
+        gate.getQueue().setPermitsPerSecond(1000);
+        when(configService.get(eq(AppConfigKey.GATE_SIMULATION_MODE), eq(Boolean.class), anyBoolean()))
+                .thenReturn(false);
+        gateCommandService.init();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        gateCommandService.shutdown();
+    }
+
+    private CompletableFuture<GateCommandResult> open(String ticketNo) {
+        return gateCommandService.reserve(GATE).open(ticketNo, null);
+    }
+
+    /**
+     * Make the open of :ticketNo wait for {@link #release} before the controller answers :response.
+     *
+     * @return counted down once the open reached the controller.
+     */
+    private CountDownLatch blockOpen(String ticketNo, String response) throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        when(gateControllerClient.openGate(eq(GATE), eq(ticketNo), anyString())).thenAnswer(invocation -> {
+            started.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return response;
+        });
+        return started;
+    }
+
+    @Test
+    public void anUnsuccessfulAttemptIsRetriedUntilTheGateOpens() throws Exception {
+        when(gateControllerClient.openGate(eq(GATE), eq("10"), anyString())).thenReturn(NOT_PRESENT, OPEN);
+
+        GateCommandResult result = open("10").get(5, TimeUnit.SECONDS);
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getAttempts()).isEqualTo(2);
+        assertThat(result.getResponses()).containsExactly(NOT_PRESENT, OPEN);
+        assertThat(result.getTicketType()).isEqualTo(Constants.PARKING_TICKET_TYPE_ENTER);
+        assertThat(result.getGateKey()).isEqualTo(GATE.getKey());
+        verify(gateCycleTracker).mark(Constants.PARKING_TICKET_TYPE_ENTER, "10", GateCycleTracker.Stage.COMMAND_SENT);
+        verify(gateCycleTracker).mark(Constants.PARKING_TICKET_TYPE_ENTER, "10", GateCycleTracker.Stage.RETRY);
+        verify(gateCycleTracker).mark(Constants.PARKING_TICKET_TYPE_ENTER, "10", GateCycleTracker.Stage.CONTROLLER_ACK);
+    }
+
+    @Test
+    public void theCommandGivesUpAfterTheConfiguredAttempts() throws Exception {
+        when(gateControllerClient.openGate(eq(GATE), eq("10"), anyString())).thenReturn(NOT_PRESENT);
+
+        GateCommandResult result = open("10").get(5, TimeUnit.SECONDS);
+
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getAttempts()).isEqualTo(3);
+        assertThat(result.isRejected()).isFalse();
+        verify(gateCycleTracker, never()).mark(Constants.PARKING_TICKET_TYPE_ENTER, "10",
+                GateCycleTracker.Stage.CONTROLLER_ACK);
+    }
+
+    @Test
+    public void aRepeatedOpenJoinsTheCommandInProgress() throws Exception {
+        CountDownLatch started = blockOpen("10", OPEN);
+        CompletableFuture<GateCommandResult> first = open("10");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<GateCommandResult> repeated = open("10");
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).isCoalesced()).isFalse();
+        GateCommandResult joined = repeated.get(5, TimeUnit.SECONDS);
+        assertThat(joined.isCoalesced()).isTrue();
+        assertThat(joined.isSuccess()).isTrue();
+        verify(gateControllerClient, times(1)).openGate(eq(GATE), eq("10"), anyString());
+    }
+
+    @Test
+    public void opensOfTheSameGateAreSentOneAfterTheOther() throws Exception {
+        CountDownLatch started = blockOpen("10", OPEN);
+        when(gateControllerClient.openGate(eq(GATE), eq("11"), anyString())).thenReturn(OPEN);
+        CompletableFuture<GateCommandResult> first = open("10");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+
+        CompletableFuture<GateCommandResult> second = open("11");
+        Thread.sleep(50);
+        verify(gateControllerClient, never()).openGate(eq(GATE), eq("11"), anyString());
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).isSuccess()).isTrue();
+        assertThat(second.get(5, TimeUnit.SECONDS).isSuccess()).isTrue();
+    }
+
+    @Test
+    public void aQueuedOpenCancelledByItsCallerIsNeverSent() throws Exception {
+        CountDownLatch started = blockOpen("10", OPEN);
+        open("10");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<GateCommandResult> queued = open("11");
+
+        gateCommandService.cancel(GATE, "11");
+
+        GateCommandResult result = queued.get(5, TimeUnit.SECONDS);
+        assertThat(result.isCancelled()).isTrue();
+        assertThat(result.isSuccess()).isFalse();
+        assertThat(result.getAttempts()).isEqualTo(0);
+        release.countDown();
+        verify(gateControllerClient, never()).openGate(eq(GATE), eq("11"), anyString());
+    }
+
+    @Test
+    public void aCancelledOpenMakesNoFurtherAttempt() throws Exception {
+        callistoProps.getGate().getRetry().setInitialBackoffMillis(10000);
+        when(gateControllerClient.openGate(eq(GATE), eq("10"), anyString())).thenReturn(NOT_PRESENT);
+        CompletableFuture<GateCommandResult> command = open("10");
+        verify(gateControllerClient, timeout(5000)).openGate(eq(GATE), eq("10"), anyString());
+        Thread.sleep(50);
+
+        gateCommandService.cancel(GATE, "10");
+
+        GateCommandResult result = command.get(5, TimeUnit.SECONDS);
+        assertThat(result.isCancelled()).isTrue();
+        assertThat(result.getAttempts()).isEqualTo(1);
+        verify(gateControllerClient, times(1)).openGate(eq(GATE), eq("10"), anyString());
+    }
+
+    @Test
+    public void anOpenThatWaitedTooLongIsTurnedAway() throws Exception {
+        callistoProps.getGate().getQueue().setMaxWaitMillis(20);
+        CountDownLatch started = blockOpen("10", OPEN);
+        open("10");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<GateCommandResult> queued = open("11");
+        Thread.sleep(50);
+
+        release.countDown();
+
+        GateCommandResult result = queued.get(5, TimeUnit.SECONDS);
+        assertThat(result.isRejected()).isTrue();
+        assertThat(result.getRejection()).isEqualTo("waited too long");
+        verify(gateControllerClient, never()).openGate(eq(GATE), eq("11"), anyString());
+    }
+
+    @Test
+    public void aFullQueueTurnsTheOpenAwayBeforeItIsRecorded() throws Exception {
+        callistoProps.getGate().getQueue().setMaxDepth(1);
+        CountDownLatch started = blockOpen("10", OPEN);
+        open("10");
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        open("11");
+
+        GateCommandService.Reservation reservation = gateCommandService.reserve(GATE);
+
+        assertThat(reservation.isAdmitted()).isFalse();
+        GateCommandResult result = reservation.open("12", null).getNow(null);
+        assertThat(result).isNotNull();
+        assertThat(result.isRejected()).isTrue();
+        assertThat(result.getRejection()).isEqualTo("queue full");
+        assertThat(result.getGateKey()).isEqualTo(GATE.getKey());
+    }
+
+    @Test
+    public void theResponseTimeoutCoversTheQueueWaitAndEveryAttempt() {
+        CallistoBeanConfigurationProperties.Gate gate = callistoProps.getGate();
+        long perAttempt = gate.getPoolLeaseTimeoutMillis() + gate.getConnectTimeoutMillis()
+                + gate.getSocketTimeoutMillis();
+
+        assertThat(gateCommandService.getResponseTimeoutMillis()).isEqualTo(gate.getQueue().getMaxWaitMillis()
+                + gate.getResponseMarginMillis() + 3 * perAttempt + 2 * 10);
+    }
+}
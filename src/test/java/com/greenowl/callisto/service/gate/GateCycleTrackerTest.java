@@ -0,0 +1,100 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.web.rest.dto.GateCycleDTO;
+import com.greenowl.callisto.web.rest.dto.GateCycleReportDTO;
+import com.greenowl.callisto.web.rest.dto.GateCycleStatsDTO;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class GateCycleTrackerTest {
+
+    private static final GateEndpoint NORTH = new GateEndpoint(4L, "north", "1", 1, "10.0.0.4", 2222);
+
+    private static final GateEndpoint SOUTH = new GateEndpoint(4L, "south", "3", 1, "10.0.0.4", 2222);
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private GateCycleTracker gateCycleTracker;
+
+    @Before
+    public void setUp() {
+        gateCycleTracker.init();
+    }
+
+    private Map<String, Long> counts() {
+        return gateCycleTracker.getReport(10).getLatencies().stream()
+                .collect(Collectors.toMap(GateCycleStatsDTO::getName, GateCycleStatsDTO::getCount));
+    }
+
+    @Test
+    public void entrancesOfTheSameLotAreTimedPerGate() {
+        gateCycleTracker.start(NORTH, Constants.PARKING_TICKET_TYPE_ENTER, "10", 4L, System.nanoTime());
+        gateCycleTracker.start(SOUTH, Constants.PARKING_TICKET_TYPE_ENTER, "11", 4L, System.nanoTime());
+        gateCycleTracker.start(SOUTH, Constants.PARKING_TICKET_TYPE_ENTER, "12", 4L, System.nanoTime());
+
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_ENTER, "10", true);
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_ENTER, "11", true);
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_ENTER, "12", true);
+
+        Map<String, Long> counts = counts();
+        assertThat(counts.get("gate.lot4.north.cycle")).isEqualTo(1L);
+        assertThat(counts.get("gate.lot4.south.cycle")).isEqualTo(2L);
+        assertThat(counts.get("lot.4.cycle")).isEqualTo(3L);
+        assertThat(counts.containsKey("gate.1.cycle")).isFalse();
+    }
+
+    @Test
+    public void theControllerAckIsTimedAtTheGateThatWasOpened() {
+        gateCycleTracker.start(SOUTH, Constants.PARKING_TICKET_TYPE_ENTER, "10", 4L, System.nanoTime());
+
+        gateCycleTracker.mark(Constants.PARKING_TICKET_TYPE_ENTER, "10", GateCycleTracker.Stage.COMMAND_SENT);
+        gateCycleTracker.mark(Constants.PARKING_TICKET_TYPE_ENTER, "10", GateCycleTracker.Stage.CONTROLLER_ACK);
+
+        assertThat(counts().get("gate.lot4.south.ack")).isEqualTo(1L);
+    }
+
+    @Test
+    public void theCallbackIsCorrelatedByTicketType() {
+        gateCycleTracker.start(NORTH, Constants.PARKING_TICKET_TYPE_ENTER, "10", 4L, System.nanoTime());
+
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_EXIT, "10", true);
+        assertThat(gateCycleTracker.getReport(10).getSlowest()).isEmpty();
+
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_ENTER, "10", true);
+        GateCycleReportDTO report = gateCycleTracker.getReport(10);
+        assertThat(report.getSlowest()).hasSize(1);
+        GateCycleDTO cycle = report.getSlowest().get(0);
+        assertThat(cycle.getTicketType()).isEqualTo(Constants.PARKING_TICKET_TYPE_ENTER);
+        assertThat(cycle.getGate()).isEqualTo(NORTH.getKey());
+        assertThat(cycle.getLotId()).isEqualTo(4L);
+        assertThat(cycle.isPassed()).isTrue();
+    }
+
+    @Test
+    public void aCancelledCycleIsNotTimed() {
+        gateCycleTracker.start(NORTH, Constants.PARKING_TICKET_TYPE_EXIT, "10", 4L, System.nanoTime());
+
+        gateCycleTracker.cancel(Constants.PARKING_TICKET_TYPE_EXIT, "10");
+        gateCycleTracker.complete(Constants.PARKING_TICKET_TYPE_EXIT, "10", true);
+
+        assertThat(counts()).isEmpty();
+    }
+}
@@ -0,0 +1,116 @@
+package com.greenowl.callisto.service.gate;
+
+import com.codahale.metrics.MetricRegistry;
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.web.rest.dto.LoopStatusDTO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class LoopStatusServiceTest {
+
+    private static final GateEndpoint ENTRANCE = new GateEndpoint(null, "1", "1", 1, "localhost", 2222);
+
+    private static final GateEndpoint EXIT = new GateEndpoint(null, "2", "2", 2, "localhost", 2222);
+
+    private static final GateEndpoint UNKNOWN = new GateEndpoint(null, "9", "9", 0, "localhost", 2222);
+
+    private static final GateEndpoint LOT_GATE = new GateEndpoint(4L, "north", "3", 1, "10.0.0.4", 2222);
+
+    @Mock
+    private GateControllerClient gateControllerClient;
+
+    @Mock
+    private GateRegistry gateRegistry;
+
+    @Spy
+    private CallistoBeanConfigurationProperties callistoProps = new CallistoBeanConfigurationProperties();
+
+    @Spy
+    private MetricRegistry metricRegistry = new MetricRegistry();
+
+    @InjectMocks
+    private LoopStatusService loopStatusService;
+
+    @Before
+    public void setUp() throws Exception {
+        when(gateRegistry.forGateId("1")).thenReturn(ENTRANCE);
+        when(gateRegistry.forGateId("2")).thenReturn(EXIT);
+        when(gateRegistry.forGateId("9")).thenReturn(UNKNOWN);
+        when(gateRegistry.forGateId("north")).thenReturn(LOT_GATE);
+        when(gateRegistry.getAll()).thenReturn(Collections.emptyList());
+        when(gateControllerClient.getOpenReady(any(GateEndpoint.class))).thenReturn("NCF");
+        loopStatusService.init();
+    }
+
+    @After
+    public void tearDown() {
+        loopStatusService.shutdown();
+    }
+
+    /**
+     * @return the status of :gateId once its poller sampled it.
+     */
+    private LoopStatusDTO awaitSample(String gateId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        LoopStatusDTO status = loopStatusService.getStatus(gateId);
+        while ("UNKNOWN".equals(status.getStatus()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            status = loopStatusService.getStatus(gateId);
+        }
+        return status;
+    }
+
+    @Test
+    public void configuredGatesAreServedFromTheirPoller() throws Exception {
+        LoopStatusDTO status = awaitSample("1");
+
+        assertThat(status.getGateId()).isEqualTo("1");
+        assertThat(status.getStatus()).isEqualTo("ON");
+    }
+
+    @Test
+    public void unknownGateIsRejectedWithoutCallingTheController() throws Exception {
+        assertThat(loopStatusService.getStatus("9")).isNull();
+        assertThat(loopStatusService.subscribe("9")).isNull();
+
+        verify(gateControllerClient, never()).getOpenReady(UNKNOWN);
+    }
+
+    @Test
+    public void gateRegisteredLaterIsPolledOnceTheRegistryRefreshes() throws Exception {
+        assertThat(loopStatusService.getStatus("north")).isNull();
+
+        when(gateRegistry.getAll()).thenReturn(Collections.singletonList(LOT_GATE));
+        loopStatusService.onRegistryRefreshed(new GateRegistryRefreshedEvent(gateRegistry));
+
+        assertThat(awaitSample("north").getStatus()).isEqualTo("ON");
+    }
+
+    @Test
+    public void gateRemovedFromTheRegistryIsNoLongerServed() throws Exception {
+        when(gateRegistry.getAll()).thenReturn(Collections.singletonList(LOT_GATE));
+        loopStatusService.onRegistryRefreshed(new GateRegistryRefreshedEvent(gateRegistry));
+        assertThat(loopStatusService.subscribe("north")).isNotNull();
+
+        when(gateRegistry.getAll()).thenReturn(Collections.emptyList());
+        loopStatusService.onRegistryRefreshed(new GateRegistryRefreshedEvent(gateRegistry));
+
+        assertThat(loopStatusService.getStatus("north")).isNull();
+        assertThat(loopStatusService.getStatus("1")).isNotNull();
+    }
+}
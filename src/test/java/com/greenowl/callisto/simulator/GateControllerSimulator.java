@@ -0,0 +1,275 @@
+package com.greenowl.callisto.simulator;
+
+import com.greenowl.callisto.config.Constants;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.util.EntityUtils;
+import org.joda.time.DateTime;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stand-in for the gate controller, for load testing without hardware. Serves the gatecmd/gate_open_cmd and
+ * gatecmd/gate_open_ready calls of {@link com.greenowl.callisto.service.gate.GateControllerClient} with a
+ * configurable latency and failure rate, and reports every opened gate back to the /ticket/status callback
+ * the way the barrier does once the car went through.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.greenowl.callisto.simulator.GateControllerSimulator [--option=value]},
+ * see {@link Settings} for the options, and point the GATE_API_IP and GATE_API_PORT configuration at it.
+ * The set_sim_mode parameter of an open command forces an outcome: "fail" answers NOT-PRESENT, "reject"
+ * reports a rejected pass, "noCallback" never calls back.
+ */
+public class GateControllerSimulator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GateControllerSimulator.class);
+
+    private static final DateTimeFormatter ACCESS_TIME_FORMAT = DateTimeFormat.forPattern("yyyy-MM-dd_HH:mm:ss");
+
+    private final Settings settings;
+
+    private final AtomicLong opens = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    private final AtomicLong callbacks = new AtomicLong();
+
+    private final AtomicLong callbackErrors = new AtomicLong();
+
+    private HttpServer server;
+
+    private ExecutorService workers;
+
+    private ScheduledExecutorService callbackScheduler;
+
+    private CloseableHttpClient callbackClient;
+
+    public GateControllerSimulator(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws IOException {
+        GateControllerSimulator simulator = new GateControllerSimulator(Settings.parse(args));
+        simulator.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(simulator::stop));
+    }
+
+    public void start() throws IOException {
+        workers = Executors.newFixedThreadPool(settings.workerThreads);
+        callbackScheduler = Executors.newScheduledThreadPool(settings.callbackThreads);
+        callbackClient = HttpClients.custom()
+                .setMaxConnTotal(settings.callbackThreads)
+                .setMaxConnPerRoute(settings.callbackThreads)
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(5000).setSocketTimeout(30000).build())
+                .build();
+        server = HttpServer.create(new InetSocketAddress(settings.port), settings.backlog);
+        server.setExecutor(workers);
+        server.createContext("/gatecmd/gate_open_cmd", this::handleOpen);
+        server.createContext("/gatecmd/gate_open_ready", this::handleOpenReady);
+        server.start();
+        LOG.info("Gate controller simulator listening on port {}, {}", settings.port, settings);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (callbackScheduler != null) {
+            callbackScheduler.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+        if (callbackClient != null) {
+            try {
+                callbackClient.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close callback client", e);
+            }
+        }
+        LOG.info("Gate controller simulator stopped, opens = {}, failures = {}, callbacks = {}, callback errors = {}",
+                opens.get(), failures.get(), callbacks.get(), callbackErrors.get());
+    }
+
+    private void handleOpen(HttpExchange exchange) throws IOException {
+        Map<String, String> params = query(exchange);
+        String gateId = params.get("gate_id");
+        String ticket = params.get("ticket");
+        String simMode = params.get("set_sim_mode");
+        sleep(latency());
+        opens.incrementAndGet();
+        if ("fail".equals(simMode) || ThreadLocalRandom.current().nextDouble() < settings.failureRate) {
+            failures.incrementAndGet();
+            respond(exchange, "OK Response:'TICKET: " + ticket + " OPEN-GATE: NOT-PRESENT'");
+            return;
+        }
+        respond(exchange, "OK Response:'TICKET: " + ticket + " " + Constants.GATE_OPEN_RESPONSE_1 + " OK'");
+        if (settings.callbackUrl != null && !"noCallback".equals(simMode)) {
+            boolean passed = !"reject".equals(simMode) && ThreadLocalRandom.current().nextDouble() >= settings.rejectRate;
+            long delay = settings.callbackDelayMillis
+                    + (settings.callbackJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(settings.callbackJitterMillis) : 0);
+            callbackScheduler.schedule(() -> callback(gateId, ticket, passed), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void handleOpenReady(HttpExchange exchange) throws IOException {
+        sleep(latency());
+        boolean ready = ThreadLocalRandom.current().nextDouble() < settings.loopReadyRate;
+        respond(exchange, ready ? "OK Response:'NCF'" : "OK Response:'NO-CAR'");
+    }
+
+    /**
+     * Report the pass of :ticket through gate :gateId to the ticket status callback.
+     */
+    private void callback(String gateId, String ticket, boolean passed) {
+        try {
+            URIBuilder uri = new URIBuilder(settings.callbackUrl)
+                    .addParameter("ticketNo", ticket)
+                    .addParameter("accessDateTime", ACCESS_TIME_FORMAT.print(DateTime.now()))
+                    .addParameter("status", passed ? "pass" : "reject")
+                    .addParameter("gateId", gateId);
+            HttpGet get = new HttpGet(uri.build());
+            if (settings.callbackToken != null) {
+                get.setHeader("x-auth-token", settings.callbackToken);
+            }
+            try (CloseableHttpResponse response = callbackClient.execute(get)) {
+                EntityUtils.consumeQuietly(response.getEntity());
+                if (response.getStatusLine().getStatusCode() >= 300) {
+                    callbackErrors.incrementAndGet();
+                    LOG.debug("Ticket callback of {} answered {}", ticket, response.getStatusLine());
+                }
+            }
+            callbacks.incrementAndGet();
+        } catch (Exception e) {
+            callbackErrors.incrementAndGet();
+            LOG.debug("Ticket callback of {} failed: {}", ticket, e.getMessage());
+        }
+    }
+
+    private long latency() {
+        long jitter = settings.latencyJitterMillis > 0 ? ThreadLocalRandom.current().nextLong(settings.latencyJitterMillis) : 0;
+        return settings.latencyMillis + jitter;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return params;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, eq), "utf-8"), URLDecoder.decode(pair.substring(eq + 1), "utf-8"));
+            }
+        }
+        return params;
+    }
+
+    /**
+     * Simulator options, given on the command line as --name=value.
+     */
+    public static class Settings {
+
+        private int port = 2222;
+
+        private int backlog = 512;
+
+        private int workerThreads = 64;
+
+        private long latencyMillis = 150;
+
+        private long latencyJitterMillis = 100;
+
+        private double failureRate = 0.02;
+
+        private double loopReadyRate = 0.9;
+
+        /**
+         * Full url of the ticket status callback, e.g. http://localhost:8080/api/v1/ticket/status. No callbacks if null.
+         */
+        private String callbackUrl;
+
+        /**
+         * x-auth-token of a user with the ticket authority.
+         */
+        private String callbackToken;
+
+        private long callbackDelayMillis = 3000;
+
+        private long callbackJitterMillis = 2000;
+
+        private double rejectRate = 0.01;
+
+        private int callbackThreads = 16;
+
+        public static Settings parse(String[] args) {
+            Map<String, String> options = Options.parse(args);
+            Settings settings = new Settings();
+            settings.port = Options.intValue(options, "port", settings.port);
+            settings.backlog = Options.intValue(options, "backlog", settings.backlog);
+            settings.workerThreads = Options.intValue(options, "workerThreads", settings.workerThreads);
+            settings.latencyMillis = Options.longValue(options, "latencyMillis", settings.latencyMillis);
+            settings.latencyJitterMillis = Options.longValue(options, "latencyJitterMillis", settings.latencyJitterMillis);
+            settings.failureRate = Options.doubleValue(options, "failureRate", settings.failureRate);
+            settings.loopReadyRate = Options.doubleValue(options, "loopReadyRate", settings.loopReadyRate);
+            settings.callbackUrl = options.getOrDefault("callbackUrl", settings.callbackUrl);
+            settings.callbackToken = options.getOrDefault("callbackToken", settings.callbackToken);
+            settings.callbackDelayMillis = Options.longValue(options, "callbackDelayMillis", settings.callbackDelayMillis);
+            settings.callbackJitterMillis = Options.longValue(options, "callbackJitterMillis", settings.callbackJitterMillis);
+            settings.rejectRate = Options.doubleValue(options, "rejectRate", settings.rejectRate);
+            settings.callbackThreads = Options.intValue(options, "callbackThreads", settings.callbackThreads);
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return "Settings{" +
+                    "latencyMillis=" + latencyMillis +
+                    ", latencyJitterMillis=" + latencyJitterMillis +
+                    ", failureRate=" + failureRate +
+                    ", callbackUrl='" + callbackUrl + '\'' +
+                    ", callbackDelayMillis=" + callbackDelayMillis +
+                    ", rejectRate=" + rejectRate +
+                    '}';
+        }
+    }
+}
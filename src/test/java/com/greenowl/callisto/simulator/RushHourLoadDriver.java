@@ -0,0 +1,379 @@
+package com.greenowl.callisto.simulator;
+
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a rush hour against a running Callisto: every user enters its lot once, stays parked, then exits.
+ * Entries follow a triangular profile over the ramp, peaking half way, and with the {@link GateControllerSimulator}
+ * answering the gate commands and calling back each pass, the whole gate cycle is exercised.
+ * <p>
+ * Run with {@code java -cp <test classpath> com.greenowl.callisto.simulator.RushHourLoadDriver --users=users.csv
+ * --adminUsername=admin --adminPassword=admin [--option=value]}, where users.csv holds one
+ * {@code email,password,lotId} line per subscribed user. The report gives the throughput, the latency
+ * percentiles and status codes of each endpoint, and the connection pool saturation read from the
+ * Hikari metrics of the /metrics endpoint while the load ran.
+ */
+public class RushHourLoadDriver {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RushHourLoadDriver.class);
+
+    private static final String AUTH_HEADER = "x-auth-token";
+
+    private final Settings settings;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Timer> latencies = new ConcurrentHashMap<>();
+
+    private final Map<String, AtomicLong> statuses = new ConcurrentHashMap<>();
+
+    private final PoolSaturation pool = new PoolSaturation();
+
+    private CloseableHttpClient client;
+
+    private ScheduledExecutorService scheduler;
+
+    public RushHourLoadDriver(Settings settings) {
+        this.settings = settings;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new RushHourLoadDriver(Settings.parse(args)).run();
+    }
+
+    public void run() throws Exception {
+        List<Driver> drivers = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(settings.users), StandardCharsets.UTF_8)) {
+            String[] fields = line.trim().split(",");
+            if (fields.length == 3 && !line.startsWith("#")) {
+                drivers.add(new Driver(fields[0].trim(), fields[1].trim(), Long.valueOf(fields[2].trim())));
+            }
+        }
+        if (drivers.isEmpty()) {
+            throw new IllegalArgumentException("No email,password,lotId lines in " + settings.users);
+        }
+        client = HttpClients.custom()
+                .setMaxConnTotal(settings.threads)
+                .setMaxConnPerRoute(settings.threads)
+                .setDefaultRequestConfig(RequestConfig.custom().setConnectTimeout(5000).setSocketTimeout(60000).build())
+                .build();
+        scheduler = Executors.newScheduledThreadPool(settings.threads);
+        try {
+            String adminToken = authenticate(settings.adminUsername, settings.adminPassword);
+            LOG.info("Authenticating {} users", drivers.size());
+            CountDownLatch authenticated = new CountDownLatch(drivers.size());
+            for (Driver driver : drivers) {
+                scheduler.execute(() -> {
+                    try {
+                        driver.token = authenticate(driver.email, driver.password);
+                    } catch (Exception e) {
+                        LOG.warn("Unable to authenticate {}: {}", driver.email, e.getMessage());
+                    } finally {
+                        authenticated.countDown();
+                    }
+                });
+            }
+            authenticated.await();
+
+            LOG.info("Starting a rush hour of {} users over {} minutes", drivers.size(), settings.rampMinutes);
+            CountDownLatch done = new CountDownLatch(drivers.size());
+            long rampMillis = TimeUnit.MINUTES.toMillis(settings.rampMinutes);
+            for (Driver driver : drivers) {
+                if (driver.token == null) {
+                    done.countDown();
+                    continue;
+                }
+                scheduler.schedule(() -> enter(driver, done), arrival(rampMillis), TimeUnit.MILLISECONDS);
+            }
+            scheduler.scheduleAtFixedRate(() -> samplePool(adminToken), 0, settings.poolSampleMillis, TimeUnit.MILLISECONDS);
+            long started = System.nanoTime();
+            long timeoutMillis = rampMillis + TimeUnit.SECONDS.toMillis(settings.dwellSeconds * 2) + TimeUnit.MINUTES.toMillis(5);
+            if (!done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOG.warn("{} users did not finish in time", done.getCount());
+            }
+            report(System.nanoTime() - started);
+        } finally {
+            scheduler.shutdownNow();
+            client.close();
+        }
+    }
+
+    /**
+     * @return the delay of an arrival, drawn from a triangular distribution over :rampMillis peaking half way.
+     */
+    private static long arrival(long rampMillis) {
+        double u = ThreadLocalRandom.current().nextDouble();
+        double fraction = u < 0.5 ? Math.sqrt(u / 2) : 1 - Math.sqrt((1 - u) / 2);
+        return (long) (fraction * rampMillis);
+    }
+
+    private void enter(Driver driver, CountDownLatch done) {
+        int status = call("enter", parkingRequest("enter", driver));
+        if (status != 200) {
+            done.countDown();
+            return;
+        }
+        long dwellMillis = TimeUnit.SECONDS.toMillis(settings.dwellSeconds);
+        long jitter = dwellMillis > 0 ? ThreadLocalRandom.current().nextLong(dwellMillis) : 0;
+        scheduler.schedule(() -> exit(driver, done), dwellMillis / 2 + jitter, TimeUnit.MILLISECONDS);
+    }
+
+    private void exit(Driver driver, CountDownLatch done) {
+        try {
+            call("exit", parkingRequest("exit", driver));
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private HttpUriRequest parkingRequest(String action, Driver driver) {
+        HttpPost post = new HttpPost(api("/parking/" + action));
+        post.setHeader(AUTH_HEADER, driver.token);
+        String body = "{\"lotId\":" + driver.lotId + ",\"deviceInfo\":\"" + settings.deviceInfo + "\"}";
+        post.setEntity(new StringEntity(body, ContentType.APPLICATION_JSON));
+        return post;
+    }
+
+    private String authenticate(String username, String password) throws IOException {
+        HttpPost post = new HttpPost(api("/authenticate"));
+        List<NameValuePair> form = Arrays.asList(new BasicNameValuePair("username", username),
+                new BasicNameValuePair("password", password));
+        post.setEntity(new UrlEncodedFormEntity(form, StandardCharsets.UTF_8));
+        try (CloseableHttpResponse response = client.execute(post)) {
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (response.getStatusLine().getStatusCode() != 200) {
+                throw new IOException("Authentication answered " + response.getStatusLine());
+            }
+            return mapper.readTree(body).path("token").asText();
+        }
+    }
+
+    /**
+     * Send :request and record its latency under :name.
+     *
+     * @return the status code of the response, -1 if there was none.
+     */
+    private int call(String name, HttpUriRequest request) {
+        int status = -1;
+        long start = System.nanoTime();
+        try (CloseableHttpResponse response = client.execute(request)) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            status = response.getStatusLine().getStatusCode();
+        } catch (IOException e) {
+            LOG.debug("{} failed: {}", name, e.getMessage());
+        }
+        latencies.computeIfAbsent(name, key -> new Timer(new UniformReservoir(settings.latencySamples)))
+                .update(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        statuses.computeIfAbsent(name + " " + (status < 0 ? "error" : String.valueOf(status)), key -> new AtomicLong())
+                .incrementAndGet();
+        return status;
+    }
+
+    /**
+     * Read the connection pool gauges and wait timer of the Hikari data source from the metrics servlet.
+     */
+    private void samplePool(String adminToken) {
+        HttpGet get = new HttpGet(settings.baseUrl + "/metrics/metrics");
+        get.setHeader(AUTH_HEADER, adminToken);
+        try (CloseableHttpResponse response = client.execute(get)) {
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            if (response.getStatusLine().getStatusCode() != 200) {
+                LOG.debug("Metrics answered {}", response.getStatusLine());
+                return;
+            }
+            JsonNode metrics = mapper.readTree(body);
+            int active = 0, pending = 0, total = 0;
+            for (Iterator<Map.Entry<String, JsonNode>> it = metrics.path("gauges").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> gauge = it.next();
+                int value = gauge.getValue().path("value").asInt();
+                if (gauge.getKey().endsWith(".pool.ActiveConnections")) {
+                    active += value;
+                } else if (gauge.getKey().endsWith(".pool.PendingConnections")) {
+                    pending += value;
+                } else if (gauge.getKey().endsWith(".pool.TotalConnections")) {
+                    total += value;
+                }
+            }
+            double waitP99 = 0;
+            for (Iterator<Map.Entry<String, JsonNode>> it = metrics.path("timers").fields(); it.hasNext(); ) {
+                Map.Entry<String, JsonNode> timer = it.next();
+                if (timer.getKey().endsWith(".pool.Wait")) {
+                    waitP99 = Math.max(waitP99, timer.getValue().path("p99").asDouble());
+                }
+            }
+            pool.sample(active, pending, total, waitP99);
+        } catch (Exception e) {
+            LOG.debug("Unable to sample the connection pool: {}", e.getMessage());
+        }
+    }
+
+    private void report(long elapsedNanos) {
+        double seconds = elapsedNanos / (double) TimeUnit.SECONDS.toNanos(1);
+        long requests = latencies.values().stream().mapToLong(Timer::getCount).sum();
+        StringBuilder report = new StringBuilder("\n--- Rush hour report ---\n");
+        report.append(String.format("elapsed %.1f s, %d requests, %.1f requests/s%n", seconds, requests, requests / seconds));
+        new TreeMap<>(latencies).forEach((name, timer) -> {
+            Snapshot snapshot = timer.getSnapshot();
+            report.append(String.format("%-6s count %6d  %.1f/s  p50 %7.1f ms  p95 %7.1f ms  p99 %7.1f ms  max %7.1f ms%n",
+                    name, timer.getCount(), timer.getCount() / seconds, millis(snapshot.getMedian()),
+                    millis(snapshot.get95thPercentile()), millis(snapshot.get99thPercentile()), millis(snapshot.getMax())));
+        });
+        new TreeMap<>(statuses).forEach((name, count) -> report.append(String.format("%-10s %d%n", name, count.get())));
+        report.append(pool);
+        LOG.info(report.toString());
+    }
+
+    private static double millis(double nanos) {
+        return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private String api(String path) {
+        return settings.baseUrl + "/api/" + settings.apiVersion + path;
+    }
+
+    private static class Driver {
+
+        private final String email;
+
+        private final String password;
+
+        private final Long lotId;
+
+        private volatile String token;
+
+        Driver(String email, String password, Long lotId) {
+            this.email = email;
+            this.password = password;
+            this.lotId = lotId;
+        }
+    }
+
+    /**
+     * Peak use of the connection pool over the samples taken during the run.
+     */
+    private static class PoolSaturation {
+
+        private int samples;
+
+        private int saturatedSamples;
+
+        private int maxActive;
+
+        private int maxPending;
+
+        private int maxTotal;
+
+        private double maxWaitP99;
+
+        synchronized void sample(int active, int pending, int total, double waitP99) {
+            samples++;
+            if (total > 0 && (active >= total || pending > 0)) {
+                saturatedSamples++;
+            }
+            maxActive = Math.max(maxActive, active);
+            maxPending = Math.max(maxPending, pending);
+            maxTotal = Math.max(maxTotal, total);
+            maxWaitP99 = Math.max(maxWaitP99, waitP99);
+        }
+
+        @Override
+        public synchronized String toString() {
+            if (samples == 0) {
+                return "connection pool: no samples, check the admin credentials\n";
+            }
+            return String.format("connection pool: max active %d of %d, max pending %d, saturated in %d of %d samples, "
+                    + "max wait p99 %.1f ms%n", maxActive, maxTotal, maxPending, saturatedSamples, samples, maxWaitP99);
+        }
+    }
+
+    /**
+     * Load driver options, given on the command line as --name=value.
+     */
+    public static class Settings {
+
+        private String baseUrl = "http://localhost:8080";
+
+        private String apiVersion = "v1";
+
+        /**
+         * File with one email,password,lotId line per user.
+         */
+        private String users;
+
+        private String adminUsername;
+
+        private String adminPassword;
+
+        private long rampMinutes = 30;
+
+        /**
+         * Mean time parked, the actual time is drawn between half and one and a half times this.
+         */
+        private long dwellSeconds = 600;
+
+        private int threads = 200;
+
+        private long poolSampleMillis = 1000;
+
+        private int latencySamples = 100000;
+
+        private String deviceInfo = "rush-hour-load-driver";
+
+        public static Settings parse(String[] args) {
+            Map<String, String> options = Options.parse(args);
+            Settings settings = new Settings();
+            settings.baseUrl = options.getOrDefault("baseUrl", settings.baseUrl);
+            settings.apiVersion = options.getOrDefault("apiVersion", settings.apiVersion);
+            settings.users = options.get("users");
+            settings.adminUsername = options.get("adminUsername");
+            settings.adminPassword = options.get("adminPassword");
+            settings.rampMinutes = Options.longValue(options, "rampMinutes", settings.rampMinutes);
+            settings.dwellSeconds = Options.longValue(options, "dwellSeconds", settings.dwellSeconds);
+            settings.threads = Options.intValue(options, "threads", settings.threads);
+            settings.poolSampleMillis = Options.longValue(options, "poolSampleMillis", settings.poolSampleMillis);
+            settings.latencySamples = Options.intValue(options, "latencySamples", settings.latencySamples);
+            settings.deviceInfo = options.getOrDefault("deviceInfo", settings.deviceInfo);
+            if (settings.users == null || settings.adminUsername == null || settings.adminPassword == null) {
+                throw new IllegalArgumentException("--users, --adminUsername and --adminPassword are required");
+            }
+            return settings;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.greenowl.callisto.util;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class KeysetCursorTest {
+
+    @Test
+    public void aCursorSurvivesTheRoundTrip() {
+        DateTime createdDate = new DateTime(2016, 3, 1, 8, 30, 15, 123, DateTimeZone.UTC);
+        String encoded = KeysetCursor.of(createdDate, 9876543210L).encode();
+
+        KeysetCursor decoded = KeysetCursor.decode(encoded);
+        assertThat(decoded.getCreatedDate()).isEqualTo(createdDate);
+        assertThat(decoded.getId()).isEqualTo(9876543210L);
+        assertThat(decoded.encode()).isEqualTo(encoded);
+    }
+
+    @Test
+    public void theEncodedCursorIsUrlSafe() {
+        String encoded = new KeysetCursor(Long.MAX_VALUE, Long.MAX_VALUE).encode();
+
+        assertThat(encoded).matches("[A-Za-z0-9_-]+");
+        assertThat(KeysetCursor.decode(encoded).getId()).isEqualTo(Long.MAX_VALUE);
+    }
+
+    @Test
+    public void theEpochIsAValidPosition() {
+        KeysetCursor decoded = KeysetCursor.decode(new KeysetCursor(0, 0).encode());
+
+        assertThat(decoded.getCreatedDate().getMillis()).isEqualTo(0L);
+        assertThat(decoded.getId()).isEqualTo(0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aCursorThatIsNotBase64IsRejected() {
+        KeysetCursor.decode("not a cursor!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aCursorWithoutSeparatorIsRejected() {
+        KeysetCursor.decode(encode("1456821015123"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aCursorWithANonNumericIdIsRejected() {
+        KeysetCursor.decode(encode("1456821015123:abc"));
+    }
+
+    @Test
+    public void theNextCursorIsOnlySentForAFullPage() {
+        List<Long> full = Arrays.asList(3L, 2L, 1L);
+        HttpHeaders headers = PaginationUtil.generateKeysetHttpHeaders(full, 3, id -> new KeysetCursor(id * 1000, id));
+        assertThat(KeysetCursor.decode(headers.getFirst(KeysetCursor.NEXT_CURSOR_HEADER)).getId()).isEqualTo(1L);
+
+        assertThat(PaginationUtil.generateKeysetHttpHeaders(full, 4, id -> new KeysetCursor(id * 1000, id))
+                .containsKey(KeysetCursor.NEXT_CURSOR_HEADER)).isFalse();
+        assertThat(PaginationUtil.generateKeysetHttpHeaders(Collections.<Long>emptyList(), 3,
+                id -> new KeysetCursor(id * 1000, id)).containsKey(KeysetCursor.NEXT_CURSOR_HEADER)).isFalse();
+    }
+
+    @Test
+    public void theLimitIsDefaultedAndCapped() {
+        assertThat(PaginationUtil.generateKeysetLimit(null)).isEqualTo(PaginationUtil.DEFAULT_KEYSET_LIMIT);
+        assertThat(PaginationUtil.generateKeysetLimit(0)).isEqualTo(PaginationUtil.DEFAULT_KEYSET_LIMIT);
+        assertThat(PaginationUtil.generateKeysetLimit(1)).isEqualTo(1);
+        assertThat(PaginationUtil.generateKeysetLimit(PaginationUtil.MAX_KEYSET_LIMIT + 1))
+                .isEqualTo(PaginationUtil.MAX_KEYSET_LIMIT);
+    }
+
+    private static String encode(String raw) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,155 @@
+package com.greenowl.callisto.web.filter.gzip;
+
+import com.greenowl.callisto.config.CallistoBeanConfigurationProperties;
+import com.greenowl.callisto.config.Constants;
+import com.greenowl.callisto.config.WebConfigurer;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Runs requests through the gzip filter the prod profile registers on /api/*, for the ASYNC dispatch too, the way
+ * Spring MVC answers a plain body, a StreamingResponseBody, an SseEmitter and a DeferredResult.
+ */
+public class GZipServletFilterTest {
+
+    private static final String BODY = "[{\"id\":1,\"status\":\"ENTERED\"},{\"id\":2,\"status\":\"EXITED\"}]";
+
+    private Filter filter;
+
+    private MockHttpServletRequest request;
+
+    private MockHttpServletResponse response;
+
+    @Before
+    public void setUp() throws Exception {
+        MockEnvironment env = new MockEnvironment();
+        env.setActiveProfiles(Constants.SPRING_PROFILE_PRODUCTION);
+        WebConfigurer webConfigurer = new WebConfigurer();
+        ReflectionTestUtils.setField(webConfigurer, "env", env);
+        ReflectionTestUtils.setField(webConfigurer, "props", new CallistoBeanConfigurationProperties());
+        ServletContext servletContext = mock(ServletContext.class, RETURNS_MOCKS);
+        webConfigurer.onStartup(servletContext);
+        ArgumentCaptor<Filter> gzipFilter = ArgumentCaptor.forClass(Filter.class);
+        verify(servletContext).addFilter(eq("gzipFilter"), gzipFilter.capture());
+        filter = gzipFilter.getValue();
+
+        request = new MockHttpServletRequest("GET", "/api/v1/parking/records");
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        request.setAsyncSupported(true);
+        response = new MockHttpServletResponse();
+    }
+
+    @Test
+    public void bodyWrittenBeforeTheFilterReturnsIsCompressed() throws Exception {
+        filter.doFilter(request, response, (req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertThat(response.getHeader("Content-Encoding")).isEqualTo("gzip");
+        assertThat(response.getContentLength()).isEqualTo(response.getContentAsByteArray().length);
+        assertThat(gunzip(response.getContentAsByteArray())).isEqualTo(BODY);
+    }
+
+    @Test
+    public void streamedBodyIsWrittenAsIsAfterTheFilterReturns() throws Exception {
+        AtomicReference<ServletOutputStream> body = new AtomicReference<>();
+        filter.doFilter(request, response, (req, res) -> {
+            // StreamingResponseBodyReturnValueHandler takes the stream, then hands it to the MVC async thread
+            res.setContentType("application/json");
+            body.set(res.getOutputStream());
+            req.startAsync(req, res);
+        });
+        assertThat(response.getContentAsByteArray()).isEmpty();
+
+        byte[] bytes = BODY.getBytes(StandardCharsets.UTF_8);
+        body.get().write(bytes, 0, 10);
+        body.get().flush();
+        assertThat(response.getContentAsString()).isEqualTo(BODY.substring(0, 10));
+        body.get().write(bytes, 10, bytes.length - 10);
+
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+        assertThat(response.getHeader("Content-Length")).isNull();
+    }
+
+    @Test
+    public void eventStreamIsWrittenAsIsAndFlushedPerEvent() throws Exception {
+        AtomicReference<ServletResponse> emitter = new AtomicReference<>();
+        filter.doFilter(request, response, (req, res) -> {
+            // ResponseBodyEmitterReturnValueHandler commits the headers before it starts the async processing
+            res.setContentType("text/event-stream");
+            res.getOutputStream();
+            res.flushBuffer();
+            req.startAsync(req, res);
+            emitter.set(res);
+        });
+        assertThat(response.isCommitted()).isTrue();
+
+        sendEvent(emitter.get(), "data:ENTERED\n\n");
+        assertThat(response.getContentAsString()).isEqualTo("data:ENTERED\n\n");
+        sendEvent(emitter.get(), "data:EXITED\n\n");
+
+        assertThat(response.getContentAsString()).isEqualTo("data:ENTERED\n\ndata:EXITED\n\n");
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+    }
+
+    @Test
+    public void deferredResultIsWrittenAsIsByTheAsyncDispatch() throws Exception {
+        AtomicReference<ServletResponse> deferred = new AtomicReference<>();
+        filter.doFilter(request, response, (req, res) -> {
+            req.startAsync(req, res);
+            deferred.set(res);
+        });
+        assertThat(response.getContentAsByteArray()).isEmpty();
+
+        request.setDispatcherType(DispatcherType.ASYNC);
+        filter.doFilter(request, deferred.get(), (req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().write(BODY.getBytes(StandardCharsets.UTF_8));
+        });
+
+        assertThat(response.getContentAsString()).isEqualTo(BODY);
+        assertThat(response.getHeader("Content-Encoding")).isNull();
+    }
+
+    private static void sendEvent(ServletResponse res, String event) throws IOException {
+        res.getOutputStream().write(event.getBytes(StandardCharsets.UTF_8));
+        res.getOutputStream().flush();
+        res.flushBuffer();
+    }
+
+    private static String gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buffer = new byte[256];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}